@@ -0,0 +1,354 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Renders a {@link BdvOverlay} on background threads into screen tiles. The
+ * last complete rendering is painted until a newer one is complete. If the
+ * view changed only within the screen plane since the last complete
+ * rendering, that rendering is painted transformed accordingly.
+ * <p>
+ * At most one rendering is in flight. Requests made while rendering are
+ * coalesced, only the latest one is rendered next. If drawing fails, the last
+ * complete rendering is kept and the exception is passed to the uncaught
+ * exception handler of the rendering thread.
+ */
+final class AsyncOverlayRenderer
+{
+	private static final int TILE_SIZE = 256;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(
+			Runtime.getRuntime().availableProcessors(),
+			new ForkJoinPool.ForkJoinWorkerThreadFactory()
+			{
+				private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+				@Override
+				public ForkJoinWorkerThread newThread( final ForkJoinPool pool )
+				{
+					final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( pool );
+					thread.setName( "bdv-overlay-renderer-" + threadNumber.getAndIncrement() );
+					return thread;
+				}
+			},
+			null,
+			false );
+
+	/**
+	 * A complete rendering.
+	 */
+	private static final class Frame
+	{
+		/**
+		 * Source-to-screen transform of the rendering.
+		 */
+		final AffineTransform3D transform;
+
+		final List< Tile > tiles;
+
+		Frame( final AffineTransform3D transform, final List< Tile > tiles )
+		{
+			this.transform = transform;
+			this.tiles = tiles;
+		}
+	}
+
+	private static final class Tile
+	{
+		final int x;
+
+		final int y;
+
+		final BufferedImage image;
+
+		Tile( final int x, final int y, final int width, final int height )
+		{
+			this.x = x;
+			this.y = y;
+			this.image = new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB );
+		}
+	}
+
+	/**
+	 * A requested rendering.
+	 */
+	private static final class Request
+	{
+		final int generation;
+
+		final AffineTransform3D viewerTransform;
+
+		final AffineTransform3D transform;
+
+		final int width;
+
+		final int height;
+
+		final RenderingHints hints;
+
+		Request(
+				final int generation,
+				final AffineTransform3D viewerTransform,
+				final AffineTransform3D transform,
+				final int width,
+				final int height,
+				final RenderingHints hints )
+		{
+			this.generation = generation;
+			this.viewerTransform = viewerTransform;
+			this.transform = transform;
+			this.width = width;
+			this.height = height;
+			this.hints = hints;
+		}
+	}
+
+	private final BdvOverlay overlay;
+
+	/**
+	 * Incremented for each requested rendering. Renderings that are no longer
+	 * current are abandoned.
+	 */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	 * Whether a rendering job of this renderer is in flight. Guarded by
+	 * {@code this}.
+	 */
+	private boolean running;
+
+	/**
+	 * The latest rendering requested while a job was in flight, started when
+	 * the job finishes. Guarded by {@code this}.
+	 */
+	private Request pending;
+
+	private volatile Frame front;
+
+	private final AffineTransform3D delta = new AffineTransform3D();
+
+	AsyncOverlayRenderer( final BdvOverlay overlay )
+	{
+		this.overlay = overlay;
+	}
+
+	/**
+	 * Start rendering in the background. At most one rendering of the overlay
+	 * is in flight. If a rendering is in flight, it is abandoned and the
+	 * request is started when it finishes, replacing earlier pending
+	 * requests.
+	 *
+	 * @param viewerTransform
+	 *            viewer transform to render with
+	 * @param transform
+	 *            resulting source-to-screen transform
+	 */
+	void render(
+			final AffineTransform3D viewerTransform,
+			final AffineTransform3D transform,
+			final int width,
+			final int height,
+			final RenderingHints hints )
+	{
+		final Request request = new Request(
+				generation.incrementAndGet(),
+				viewerTransform.copy(),
+				transform.copy(),
+				width,
+				height,
+				hints );
+		synchronized ( this )
+		{
+			if ( running )
+			{
+				pending = request;
+				return;
+			}
+			running = true;
+		}
+		POOL.execute( () -> run( request ) );
+	}
+
+	/**
+	 * Abandon pending renderings.
+	 */
+	void cancel()
+	{
+		synchronized ( this )
+		{
+			pending = null;
+		}
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * Whether a rendering is in flight.
+	 */
+	synchronized boolean isRendering()
+	{
+		return running;
+	}
+
+	/**
+	 * Render {@code request}, then the pending requests until there are none.
+	 */
+	private void run( final Request request )
+	{
+		Request r = request;
+		while ( r != null )
+		{
+			try
+			{
+				renderFrame( r );
+			}
+			catch ( final RuntimeException e )
+			{
+				// Keep the last complete rendering and report the failure to
+				// the handler of this thread, which for the rendering pool
+				// delegates to the default uncaught exception handler.
+				final Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException( thread, e );
+			}
+			catch ( final Error e )
+			{
+				synchronized ( this )
+				{
+					pending = null;
+					running = false;
+				}
+				throw e;
+			}
+			synchronized ( this )
+			{
+				r = pending;
+				pending = null;
+				if ( r == null )
+					running = false;
+			}
+		}
+	}
+
+	/**
+	 * Render the tiles of {@code request} and make the rendering the front
+	 * frame if it is still current when complete.
+	 */
+	private void renderFrame( final Request request )
+	{
+		final int gen = request.generation;
+		if ( gen != generation.get() )
+			return;
+
+		final int width = request.width;
+		final int height = request.height;
+		final boolean concurrent = overlay.isConcurrentDrawSupported();
+		final int tileSize = concurrent ? TILE_SIZE : Math.max( width, height );
+		final List< Tile > tiles = new ArrayList<>();
+		for ( int y = 0; y < height; y += tileSize )
+			for ( int x = 0; x < width; x += tileSize )
+				tiles.add( new Tile( x, y, Math.min( tileSize, width - x ), Math.min( tileSize, height - y ) ) );
+
+		final List< ForkJoinTask< ? > > tasks = new ArrayList<>();
+		for ( final Tile tile : tiles )
+			tasks.add( ForkJoinTask.adapt( () -> {
+				if ( gen == generation.get() )
+					drawTile( tile, request.viewerTransform, request.hints );
+			} ) );
+		ForkJoinTask.invokeAll( tasks );
+		if ( gen == generation.get() )
+		{
+			front = new Frame( request.transform, tiles );
+			overlay.repaint();
+		}
+	}
+
+	/**
+	 * Paint the last complete rendering.
+	 *
+	 * @param transform
+	 *            current source-to-screen transform
+	 */
+	void paint( final Graphics2D g, final AffineTransform3D transform )
+	{
+		final Frame frame = front;
+		if ( frame == null )
+			return;
+
+		// screen transform from the frame to the current view
+		delta.set( frame.transform.inverse() );
+		delta.preConcatenate( transform );
+		final boolean inPlane = Math.abs( delta.get( 2, 0 ) ) < 1e-6
+				&& Math.abs( delta.get( 2, 1 ) ) < 1e-6
+				&& Math.abs( delta.get( 2, 3 ) ) < 1e-6
+				&& Math.abs( delta.get( 0, 2 ) ) < 1e-6
+				&& Math.abs( delta.get( 1, 2 ) ) < 1e-6;
+		final AffineTransform t = inPlane
+				? new AffineTransform(
+						delta.get( 0, 0 ), delta.get( 1, 0 ),
+						delta.get( 0, 1 ), delta.get( 1, 1 ),
+						delta.get( 0, 3 ), delta.get( 1, 3 ) )
+				: new AffineTransform();
+		for ( final Tile tile : frame.tiles )
+		{
+			final AffineTransform tileTransform = new AffineTransform( t );
+			tileTransform.translate( tile.x, tile.y );
+			g.drawImage( tile.image, tileTransform, null );
+		}
+	}
+
+	private void drawTile( final Tile tile, final AffineTransform3D viewerTransform, final RenderingHints hints )
+	{
+		final Graphics2D g = tile.image.createGraphics();
+		try
+		{
+			g.setComposite( AlphaComposite.SrcOver );
+			g.setRenderingHints( hints );
+			g.translate( -tile.x, -tile.y );
+			g.clipRect( tile.x, tile.y, tile.image.getWidth(), tile.image.getHeight() );
+			overlay.drawWithViewerTransform( g, viewerTransform );
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+}
@@ -78,6 +78,34 @@ public enum AxisOrder
 		this.flipZ = flipZ;
 	}
 
+	/**
+	 * Get the {@link AxisOrder} of a stack with this axis order after its
+	 * channel dimension has been removed (for example, by collapsing it into a
+	 * composite).
+	 *
+	 * @return axis order without the channel dimension.
+	 */
+	AxisOrder withoutChannel()
+	{
+		switch ( this )
+		{
+		case XYZC:
+		case XYCZ:
+			return XYZ;
+		case XYZCT:
+		case XYZTC:
+		case XYCZT:
+			return XYZT;
+		case XYC:
+			return XY;
+		case XYCT:
+		case XYTC:
+			return XYT;
+		default:
+			return this;
+		}
+	}
+
 	public static AxisOrder getAxisOrder( final AxisOrder axisOrder, final EuclideanSpace space, final boolean viewerIs2D )
 	{
 		if ( axisOrder == DEFAULT )
@@ -0,0 +1,254 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Locale;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.realtransform.AffineTransform;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.transform.integer.MixedTransform;
+import net.imglib2.view.MixedTransformView;
+import net.imglib2.view.Views;
+
+/**
+ * A general specification of the axes of an image, parsed from strings like
+ * {@code "xyz"}, {@code "zyx"}, {@code "czyx"}, or {@code "tczyx"}. The
+ * {@code i}-th character names dimension {@code i} of the image. Valid axis
+ * names are {@code x}, {@code y}, {@code z}, {@code c} (channel), and
+ * {@code t} (time), case-insensitive. Each axis may occur at most once and
+ * {@code x} and {@code y} are required.
+ * <p>
+ * An {@link AxisSpec} maps an image to the canonical order {@code XY[Z][C][T]}
+ * with a single permutation (instead of a chain of {@link Views#permute}), so
+ * that the resulting view can be handled by the corresponding
+ * {@link AxisOrder} (see {@link #getAxisOrder()}). If the image is already in
+ * canonical order, it is returned as is.
+ */
+public final class AxisSpec
+{
+	private static final String CANONICAL = "xyzct";
+
+	private final String axes;
+
+	/**
+	 * {@code sourceDimension[d]} is the dimension of the image that becomes
+	 * dimension {@code d} of the canonically ordered view.
+	 */
+	private final int[] sourceDimension;
+
+	private final AxisOrder axisOrder;
+
+	private AxisSpec( final String axes )
+	{
+		this.axes = axes;
+		final int n = axes.length();
+		sourceDimension = new int[ n ];
+		int d = 0;
+		for ( final char axis : CANONICAL.toCharArray() )
+		{
+			final int i = axes.indexOf( axis );
+			if ( i >= 0 )
+				sourceDimension[ d++ ] = i;
+		}
+		axisOrder = AxisOrder.valueOf( canonicalAxes().toUpperCase( Locale.ROOT ) );
+	}
+
+	/**
+	 * Parse an axis specification.
+	 *
+	 * @param axes
+	 *            axis names in the order of the image dimensions, e.g.
+	 *            {@code "tczyx"}.
+	 * @return the parsed {@link AxisSpec}.
+	 * @throws IllegalArgumentException
+	 *             if {@code axes} is not a valid axis specification.
+	 */
+	public static AxisSpec parse( final String axes )
+	{
+		final String lower = axes.trim().toLowerCase( Locale.ROOT );
+		for ( int i = 0; i < lower.length(); ++i )
+		{
+			final char axis = lower.charAt( i );
+			if ( CANONICAL.indexOf( axis ) < 0 )
+				throw new IllegalArgumentException( "unknown axis '" + axis + "' in \"" + axes + "\"" );
+			if ( lower.indexOf( axis ) != i )
+				throw new IllegalArgumentException( "duplicate axis '" + axis + "' in \"" + axes + "\"" );
+		}
+		if ( lower.indexOf( 'x' ) < 0 || lower.indexOf( 'y' ) < 0 )
+			throw new IllegalArgumentException( "axis specification \"" + axes + "\" must contain x and y" );
+		return new AxisSpec( lower );
+	}
+
+	public int numDimensions()
+	{
+		return axes.length();
+	}
+
+	/**
+	 * Get the image dimension of the given {@code axis}.
+	 *
+	 * @param axis
+	 *            one of {@code x, y, z, c, t}.
+	 * @return the dimension index, or -1 if the axis is not present.
+	 */
+	public int dimension( final char axis )
+	{
+		return axes.indexOf( Character.toLowerCase( axis ) );
+	}
+
+	/**
+	 * Whether images with this axis specification are already in canonical
+	 * order and do not need to be permuted.
+	 */
+	public boolean isCanonical()
+	{
+		for ( int d = 0; d < sourceDimension.length; ++d )
+			if ( sourceDimension[ d ] != d )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Get the {@link AxisOrder} of canonically ordered views created by
+	 * {@link #permute(RandomAccessibleInterval)}.
+	 */
+	public AxisOrder getAxisOrder()
+	{
+		return axisOrder;
+	}
+
+	/**
+	 * Permute {@code img} into canonical order {@code XY[Z][C][T]}.
+	 */
+	public < T > RandomAccessibleInterval< T > permute( final RandomAccessibleInterval< T > img )
+	{
+		checkDimensions( img.numDimensions() );
+		if ( isCanonical() )
+			return img;
+		return Views.interval( new MixedTransformView<>( img, createPermutation() ), permute( ( Interval ) img ) );
+	}
+
+	/**
+	 * Permute {@code img} into canonical order {@code XY[Z][C][T]}.
+	 */
+	public < T > RandomAccessible< T > permute( final RandomAccessible< T > img )
+	{
+		checkDimensions( img.numDimensions() );
+		if ( isCanonical() )
+			return img;
+		return new MixedTransformView<>( img, createPermutation() );
+	}
+
+	/**
+	 * Permute {@code img} into canonical order {@code XY[Z][C][T]}.
+	 */
+	public < T > RealRandomAccessible< T > permute( final RealRandomAccessible< T > img )
+	{
+		checkDimensions( img.numDimensions() );
+		if ( isCanonical() )
+			return img;
+		final int n = numDimensions();
+		final AffineTransform permutation = new AffineTransform( n );
+		for ( int d = 0; d < n; ++d )
+		{
+			permutation.set( 0, d, d );
+			permutation.set( 1, d, sourceDimension[ d ] );
+		}
+		return RealViews.affineReal( img, permutation );
+	}
+
+	/**
+	 * Permute {@code interval} into canonical order {@code XY[Z][C][T]}.
+	 */
+	public Interval permute( final Interval interval )
+	{
+		checkDimensions( interval.numDimensions() );
+		final int n = numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = interval.min( sourceDimension[ d ] );
+			max[ d ] = interval.max( sourceDimension[ d ] );
+		}
+		return new FinalInterval( min, max );
+	}
+
+	/**
+	 * Create the transform from canonical view coordinates to image
+	 * coordinates.
+	 */
+	private MixedTransform createPermutation()
+	{
+		final int n = numDimensions();
+		final int[] component = new int[ n ];
+		for ( int d = 0; d < n; ++d )
+			component[ sourceDimension[ d ] ] = d;
+		final MixedTransform t = new MixedTransform( n, n );
+		t.setComponentMapping( component );
+		return t;
+	}
+
+	private void checkDimensions( final int n )
+	{
+		if ( n != numDimensions() )
+			throw new IllegalArgumentException( "axis specification \"" + axes + "\" doesn't match dimensionality of image" );
+	}
+
+	private String canonicalAxes()
+	{
+		final char[] canonical = new char[ sourceDimension.length ];
+		for ( int d = 0; d < canonical.length; ++d )
+			canonical[ d ] = axes.charAt( sourceDimension[ d ] );
+		return new String( canonical );
+	}
+
+	@Override
+	public String toString()
+	{
+		return axes;
+	}
+
+	@Override
+	public boolean equals( final Object o )
+	{
+		return o instanceof AxisSpec && ( ( AxisSpec ) o ).axes.equals( axes );
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return axes.hashCode();
+	}
+}
@@ -42,6 +42,7 @@ import net.imglib2.RealRandomAccessible;
 import net.imglib2.converter.Converter;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.NumericType;
@@ -101,17 +102,28 @@ public class BdvFunctions
 				: bdv.getBdvHandle();
 		final AxisOrder axisOrder = AxisOrder.getAxisOrder( options.values.axisOrder(), img, handle.is2D() );
 		final AffineTransform3D sourceTransform = options.values.getSourceTransform();
+		final RandomAccessibleInterval< T > shown;
 		final T type;
+		final VolatileViewData< ?, ? > viewData;
 		if ( img instanceof VolatileView )
 		{
-			final VolatileViewData< ?, ? > viewData = ( ( VolatileView< ?, ? > ) img ).getVolatileViewData();
+			viewData = handle.attachVolatileView( ( ( VolatileView< ?, ? > ) img ).getVolatileViewData() );
+			shown = ( RandomAccessibleInterval< T > ) viewData.getImg();
 			type = ( T ) viewData.getVolatileType();
-			handle.getCacheControls().addCacheControl( viewData.getCacheControl() );
 		}
 		else
+		{
+			viewData = null;
+			shown = img;
 			type = Util.getTypeFromInterval( img );
+		}
 
-		return addRandomAccessibleInterval( handle, ( RandomAccessibleInterval ) img, ( NumericType ) type, name, axisOrder, sourceTransform );
+		final AxisSpec axisSpec = options.values.axisSpec();
+		final RandomAccessibleInterval< T > stack = axisSpec == null ? shown : axisSpec.permute( shown );
+		final BdvStackSource< T > bdvSource = addRandomAccessibleInterval( handle, ( RandomAccessibleInterval ) stack, ( NumericType ) type, name, axisOrder, sourceTransform );
+		if ( viewData != null )
+			handle.addVolatileSources( bdvSource.getSources(), viewData );
+		return bdvSource;
 	}
 
 	public static < T extends NumericType< T > > BdvStackSource< T > show(
@@ -137,17 +149,29 @@ public class BdvFunctions
 		final int numTimepoints = 1;
 		final AxisOrder axisOrder = AxisOrder.getAxisOrder( options.values.axisOrder(), img, handle.is2D() );
 		final AffineTransform3D sourceTransform = options.values.getSourceTransform();
+		final RandomAccessible< T > shown;
 		final T type;
+		final VolatileViewData< ?, ? > viewData;
 		if ( img instanceof VolatileView )
 		{
-			final VolatileViewData< ?, ? > viewData = ( ( VolatileView< ?, ? > ) img ).getVolatileViewData();
+			viewData = handle.attachVolatileView( ( ( VolatileView< ?, ? > ) img ).getVolatileViewData() );
+			shown = ( RandomAccessible< T > ) viewData.getImg();
 			type = ( T ) viewData.getVolatileType();
-			handle.getCacheControls().addCacheControl( viewData.getCacheControl() );
 		}
 		else
+		{
+			viewData = null;
+			shown = img;
 			type = Util.getTypeFromInterval( Views.interval( img, interval ) );
+		}
 
-		return addRandomAccessible( handle, img, interval, numTimepoints, type, name, axisOrder, sourceTransform );
+		final AxisSpec axisSpec = options.values.axisSpec();
+		final BdvStackSource< T > bdvSource = axisSpec == null
+				? addRandomAccessible( handle, shown, interval, numTimepoints, type, name, axisOrder, sourceTransform )
+				: addRandomAccessible( handle, axisSpec.permute( shown ), axisSpec.permute( interval ), numTimepoints, type, name, axisOrder, sourceTransform );
+		if ( viewData != null )
+			handle.addVolatileSources( bdvSource.getSources(), viewData );
+		return bdvSource;
 	}
 
 	public static < T extends Type< T > > BdvStackSource< T > show(
@@ -171,7 +195,12 @@ public class BdvFunctions
 		final AxisOrder axisOrder = AxisOrder.getAxisOrder( options.values.axisOrder(), img, handle.is2D() );
 		final AffineTransform3D sourceTransform = options.values.getSourceTransform();
 		final T type = img.realRandomAccess().get();
-		return addRealRandomAccessible( handle, img, interval, type, name, axisOrder, sourceTransform );
+		final AxisSpec axisSpec = options.values.axisSpec();
+		final int numMipmapLevels = options.values.numRealMipmapLevels();
+		if ( axisSpec == null )
+			return addRealRandomAccessible( handle, img, interval, type, name, axisOrder, numMipmapLevels, sourceTransform );
+		else
+			return addRealRandomAccessible( handle, axisSpec.permute( img ), axisSpec.permute( interval ), type, name, axisOrder, numMipmapLevels, sourceTransform );
 	}
 
 	public static List< BdvVirtualChannelSource > show(
@@ -191,6 +220,55 @@ public class BdvFunctions
 		return VirtualChannels.show( img, virtualChannels, name, options );
 	}
 
+	public static < T extends RealType< T > > List< BdvVirtualChannelSource > showFusedChannels(
+			final RandomAccessibleInterval< T > img,
+			final String name )
+	{
+		return showFusedChannels( img, name, Bdv.options() );
+	}
+
+	/**
+	 * Show a multi-channel image as a single source that samples all channels
+	 * of a voxel in one pass (see {@link FusedChannels}). The {@code img} must
+	 * have a channel dimension according to the {@link AxisOrder} specified in
+	 * {@code options}. Display range, color, and visibility can be adjusted
+	 * for each channel individually through the returned sources.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if {@code img} is {@link net.imglib2.Volatile} or a
+	 *             {@link VolatileView}.
+	 */
+	public static < T extends RealType< T > > List< BdvVirtualChannelSource > showFusedChannels(
+			final RandomAccessibleInterval< T > img,
+			final String name,
+			final BdvOptions options )
+	{
+		return FusedChannels.show( img, name, options );
+	}
+
+	public static < T > BdvLabelSource< T > showLabels(
+			final RandomAccessibleInterval< T > img,
+			final String name )
+	{
+		return showLabels( img, name, Bdv.options() );
+	}
+
+	/**
+	 * Show a label image, for example a {@code uint64} segmentation. Labels
+	 * are mapped to colors through the {@link LabelColors} of the returned
+	 * source (see {@link Labels}). The pixel type of {@code img} must be an
+	 * {@link net.imglib2.type.numeric.IntegerType} or a volatile
+	 * {@code IntegerType} (e.g., from
+	 * {@link bdv.util.volatiles.VolatileViews#wrapAsVolatile}).
+	 */
+	public static < T > BdvLabelSource< T > showLabels(
+			final RandomAccessibleInterval< T > img,
+			final String name,
+			final BdvOptions options )
+	{
+		return Labels.show( img, name, options );
+	}
+
 	public static < T > BdvStackSource< T > show(
 			final Source< T > source )
 	{
@@ -265,10 +343,50 @@ public class BdvFunctions
 		return showPoints( points, name, Bdv.options() );
 	}
 
+	/**
+	 * Show a list of points. The points are drawn directly from
+	 * {@code points}, without copying, so modifications of the list become
+	 * visible with the next repaint. For large numbers of points, use
+	 * {@link #showPoints(PointsData, String, BdvOptions)}.
+	 */
 	public static BdvPointsSource showPoints(
 			final List< ? extends RealLocalizable > points,
 			final String name,
 			final BdvOptions options )
+	{
+		final PointsOverlay overlay = new PointsOverlay();
+		overlay.setPoints( points );
+		return showPoints( overlay, 1, name, options );
+	}
+
+	public static BdvPointsSource showPoints(
+			final PointsData points,
+			final String name )
+	{
+		return showPoints( points, name, Bdv.options() );
+	}
+
+	/**
+	 * Show points stored in columnar {@link PointsData}. The points are
+	 * rendered directly from {@code points}, without copying. Coordinates are
+	 * stored as {@code float}. If the points have timepoints, each point is
+	 * shown only at its timepoint.
+	 */
+	public static BdvPointsSource showPoints(
+			final PointsData points,
+			final String name,
+			final BdvOptions options )
+	{
+		final PointsOverlay overlay = new PointsOverlay();
+		overlay.setPoints( points );
+		return showPoints( overlay, points.numTimepoints(), name, options );
+	}
+
+	private static BdvPointsSource showPoints(
+			final PointsOverlay overlay,
+			final int numTimepoints,
+			final String name,
+			final BdvOptions options )
 	{
 		final Bdv bdv = options.values.addTo();
 		final BdvHandle handle = ( bdv == null )
@@ -285,21 +403,95 @@ public class BdvFunctions
 		final List< ConverterSetup > converterSetups = new ArrayList<>( Collections.singletonList( setup ) );
 		final List< SourceAndConverter< Void > > sources = new ArrayList<>( Collections.singletonList( soc ) );
 
-		final int numTimepoints = 1;
 		handle.add( converterSetups, sources, numTimepoints );
 
-		final PlaceHolderOverlayInfo info = new PlaceHolderOverlayInfo( handle.getViewerPanel(), soc, setup );
-		final PointsOverlay overlay = new PointsOverlay();
+		final OverlayManager overlays = handle.getOverlayManager();
+		final PlaceHolderOverlayInfo info = overlays.createInfo( soc, setup );
 		overlay.setOverlayInfo( info );
-		overlay.setPoints( points );
 		overlay.setSourceTransform( sourceTransform );
-		handle.getViewerPanel().getDisplay().overlays().add( overlay );
+		overlays.add( overlay );
 
 		final BdvPointsSource bdvSource = new BdvPointsSource( handle, numTimepoints, setup, soc, info, overlay );
 		handle.addBdvSource( bdvSource );
 		return bdvSource;
 	}
 
+	public static BdvOverlaySource< MappedPointsOverlay > showPoints(
+			final MappedPointsStore points,
+			final String name )
+	{
+		return showPoints( points, name, Bdv.options() );
+	}
+
+	/**
+	 * Show points from a memory-mapped {@link MappedPointsStore}. Only the
+	 * parts of the store close to the current slice are read when drawing. If
+	 * the points have timepoints, each point is shown only at its timepoint.
+	 */
+	public static BdvOverlaySource< MappedPointsOverlay > showPoints(
+			final MappedPointsStore points,
+			final String name,
+			final BdvOptions options )
+	{
+		return showOverlay( new MappedPointsOverlay( points ), name, Math.max( 1, points.numTimepoints() ), options );
+	}
+
+	public static BdvOverlaySource< PolylinesOverlay > showLines(
+			final Polylines lines,
+			final String name )
+	{
+		return showLines( lines, name, Bdv.options() );
+	}
+
+	/**
+	 * Show the intersection of polylines with a slab around the current
+	 * slice. The polylines are rendered directly from {@code lines}, without
+	 * copying.
+	 */
+	public static BdvOverlaySource< PolylinesOverlay > showLines(
+			final Polylines lines,
+			final String name,
+			final BdvOptions options )
+	{
+		final PolylinesOverlay overlay = new PolylinesOverlay();
+		overlay.setPolylines( lines );
+		return showOverlay( overlay, name, options );
+	}
+
+	public static BdvOverlaySource< PolylinesOverlay > showLines(
+			final List< ? extends List< ? extends RealLocalizable > > lines,
+			final String name )
+	{
+		return showLines( lines, name, Bdv.options() );
+	}
+
+	public static BdvOverlaySource< PolylinesOverlay > showLines(
+			final List< ? extends List< ? extends RealLocalizable > > lines,
+			final String name,
+			final BdvOptions options )
+	{
+		return showLines( Polylines.of( lines, false ), name, options );
+	}
+
+	public static BdvOverlaySource< PolylinesOverlay > showPolygons(
+			final List< ? extends List< ? extends RealLocalizable > > polygons,
+			final String name )
+	{
+		return showPolygons( polygons, name, Bdv.options() );
+	}
+
+	/**
+	 * Show the intersection of closed polygons with a slab around the current
+	 * slice.
+	 */
+	public static BdvOverlaySource< PolylinesOverlay > showPolygons(
+			final List< ? extends List< ? extends RealLocalizable > > polygons,
+			final String name,
+			final BdvOptions options )
+	{
+		return showLines( Polylines.of( polygons, true ), name, options );
+	}
+
 	public static < O extends BdvOverlay > BdvOverlaySource< O > showOverlay(
 			final O overlay,
 			final String name )
@@ -311,6 +503,15 @@ public class BdvFunctions
 			final O overlay,
 			final String name,
 			final BdvOptions options )
+	{
+		return showOverlay( overlay, name, 1, options );
+	}
+
+	private static < O extends BdvOverlay > BdvOverlaySource< O > showOverlay(
+			final O overlay,
+			final String name,
+			final int numTimepoints,
+			final BdvOptions options )
 	{
 		final Bdv bdv = options.values.addTo();
 		final BdvHandle handle = ( bdv == null )
@@ -327,13 +528,13 @@ public class BdvFunctions
 		final List< ConverterSetup > converterSetups = new ArrayList<>( Collections.singletonList( setup ) );
 		final List< SourceAndConverter< Void > > sources = new ArrayList<>( Collections.singletonList( soc ) );
 
-		final int numTimepoints = 1;
 		handle.add( converterSetups, sources, numTimepoints );
 
-		final PlaceHolderOverlayInfo info = new PlaceHolderOverlayInfo( handle.getViewerPanel(), soc, setup );
+		final OverlayManager overlays = handle.getOverlayManager();
+		final PlaceHolderOverlayInfo info = overlays.createInfo( soc, setup );
 		overlay.setOverlayInfo( info );
 		overlay.setSourceTransform( sourceTransform );
-		handle.getViewerPanel().getDisplay().overlays().add( overlay );
+		overlays.add( overlay );
 
 		final BdvOverlaySource< O > bdvSource = new BdvOverlaySource<>( handle, numTimepoints, setup, soc, info, overlay );
 		handle.addBdvSource( bdvSource );
@@ -558,10 +759,16 @@ public class BdvFunctions
 	 * @param axisOrder
 	 *            {@link AxisOrder} of the source, must be {@link AxisOrder#XY}
 	 *            or {@link AxisOrder#XYZ}.
+	 * @param numMipmapLevels
+	 *            number of mipmap levels. If {@code numMipmapLevels > 1},
+	 *            coarser levels are synthesized by
+	 *            {@link RealRandomAccessibleIntervalMipmapSource}, and
+	 *            computed through the default queue of the {@code handle}.
 	 * @param sourceTransform
 	 *            transforms from source coordinates to global coordinates.
 	 * @return a new {@link BdvStackSource} handle for the newly added source.
 	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	private static < T extends Type< T > > BdvStackSource< T > addRealRandomAccessible(
 			final BdvHandle handle,
 			RealRandomAccessible< T > img,
@@ -569,6 +776,7 @@ public class BdvFunctions
 			final T type,
 			final String name,
 			final AxisOrder axisOrder,
+			final int numMipmapLevels,
 			final AffineTransform3D sourceTransform )
 	{
 		/*
@@ -583,7 +791,16 @@ public class BdvFunctions
 					new long[]{ interval.max( 0 ), interval.max( 1 ), 0 } );
 		}
 
-		final Source< T > s = new RealRandomAccessibleIntervalSource<>( img, interval, type, sourceTransform, name );
+		final Source< T > s;
+		if ( numMipmapLevels > 1 )
+		{
+			if ( !( type instanceof RealType && type instanceof NativeType ) )
+				throw new IllegalArgumentException( "Synthesized mipmap levels require a RealType & NativeType source" );
+			s = new RealRandomAccessibleIntervalMipmapSource( img, interval, ( RealType ) type, numMipmapLevels, sourceTransform, name )
+					.asVolatile( handle.getDefaultQueue() );
+		}
+		else
+			s = new RealRandomAccessibleIntervalSource<>( img, interval, type, sourceTransform, name );
 		return addSource( handle, s, 1 );
 	}
 
@@ -33,7 +33,9 @@ import bdv.ui.splitpanel.SplitPanel;
 import bdv.viewer.ConverterSetups;
 import bdv.viewer.ViewerStateChangeListener;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.scijava.ui.behaviour.util.InputActionBindings;
 import org.scijava.ui.behaviour.util.TriggerBehaviourBindings;
@@ -43,12 +45,20 @@ import bdv.tools.InitializeViewerState;
 import bdv.tools.brightness.ConverterSetup;
 import bdv.tools.brightness.SetupAssignments;
 import bdv.tools.transformation.ManualTransformationEditor;
+import bdv.util.volatiles.FlightRecorderEvents;
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileViewData;
+import bdv.util.volatiles.VolatileViews;
 import bdv.viewer.SourceAndConverter;
 import bdv.viewer.TimePointListener;
+import bdv.viewer.ViewerOptions;
 import bdv.viewer.ViewerPanel;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.realtransform.AffineTransform3D;
 import bdv.viewer.OverlayRenderer;
 import bdv.viewer.TransformListener;
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
 
 /**
  * Represents a BigDataViewer frame or panel and can be used to get to the bdv
@@ -79,11 +89,66 @@ public abstract class BdvHandle implements Bdv
 
 	protected CacheControls cacheControls;
 
+	/**
+	 * Queue for volatile views that were wrapped without a queue. Created on
+	 * first use, shut down when the handle is closed.
+	 */
+	private SharedQueue defaultQueue;
+
+	private OverlayManager overlayManager;
+
+	/**
+	 * Number of {@link #bdvSources} that are place-holder sources.
+	 */
+	private int numPlaceHolderSources;
+
+	/**
+	 * Maps number of timepoints to the number of {@link #bdvSources} with
+	 * that number of timepoints.
+	 */
+	private final TIntIntHashMap numBdvSourcesByNumTimepoints = new TIntIntHashMap();
+
+	/**
+	 * Next setup id returned by {@link #getUnusedSetupId()}, or {@code -1} if
+	 * not yet initialized.
+	 */
+	private int nextSetupId = -1;
+
+	/**
+	 * Nesting depth of {@link #batch(Runnable)} calls.
+	 */
+	private int batchDepth;
+
+	/**
+	 * Sources added during the current batch, not yet added to the viewer.
+	 */
+	private final Set< SourceAndConverter< ? > > pendingAdds = new LinkedHashSet<>();
+
+	/**
+	 * Sources removed during the current batch, not yet removed from the
+	 * viewer.
+	 */
+	private final Set< SourceAndConverter< ? > > pendingRemoves = new LinkedHashSet<>();
+
+	private boolean pendingNumTimepoints;
+
+	/**
+	 * Rendering and loading metrics, or {@code null} if not enabled.
+	 */
+	private final BdvMetrics metrics;
+
 	public BdvHandle( final BdvOptions options )
 	{
 		bdvOptions = options;
 		bdvSources = new ArrayList<>();
 		origNumTimepoints = 1;
+		if ( options.values.collectMetrics() )
+		{
+			metrics = new BdvMetrics( this );
+			metrics.registerMBean();
+		}
+		else
+			metrics = null;
 	}
 
 	@Override
@@ -124,10 +189,199 @@ public abstract class BdvHandle implements Bdv
 		return cacheControls;
 	}
 
+	/**
+	 * Get the rendering and loading metrics of this viewer, or {@code null}
+	 * if the handle was not created with {@link BdvOptions#collectMetrics()}.
+	 */
+	public BdvMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Get the {@link ViewerOptions} for creating the viewer. If metrics are
+	 * enabled, the accumulate projector factory records rendered frames.
+	 * Otherwise, if the Flight Recorder is available, it emits frame events.
+	 */
+	ViewerOptions getViewerOptions()
+	{
+		final ViewerOptions options = bdvOptions.values.getViewerOptions();
+		if ( metrics != null )
+			options.accumulateProjectorFactory( metrics.wrap( options.values.getAccumulateProjectorFactory() ) );
+		else if ( FlightRecorderEvents.AVAILABLE )
+			options.accumulateProjectorFactory( FrameTracing.wrap( options.values.getAccumulateProjectorFactory(), this ) );
+		return options;
+	}
+
+	/**
+	 * Get the queue through which volatile views that were wrapped without a
+	 * queue load when shown in this handle. It is created on first use, with
+	 * {@link VolatileViews#DEFAULT_NUM_FETCHER_THREADS} threads, and shut down
+	 * when the handle is closed.
+	 *
+	 * @throws IllegalStateException
+	 *             if the handle is closed
+	 */
+	public synchronized SharedQueue getDefaultQueue()
+	{
+		if ( cacheControls == null )
+			throw new IllegalStateException( "handle is closed" );
+		if ( defaultQueue == null )
+		{
+			defaultQueue = new SharedQueue( VolatileViews.DEFAULT_NUM_FETCHER_THREADS, 1 );
+			cacheControls.addCacheControl( defaultQueue );
+		}
+		return defaultQueue;
+	}
+
+	/**
+	 * Prepare the volatile view described by {@code viewData} for showing in
+	 * this handle. A view that was wrapped without a queue is wrapped again to
+	 * load through {@link #getDefaultQueue()}. Otherwise the cache control of
+	 * the view is added to the handle.
+	 *
+	 * @return the view data of the view to show
+	 */
+	VolatileViewData< ?, ? > attachVolatileView( final VolatileViewData< ?, ? > viewData )
+	{
+		if ( viewData.hasDefaultQueue() )
+			return viewData.withQueue( getDefaultQueue() );
+		cacheControls.addCacheControl( viewData.getCacheControl() );
+		return viewData;
+	}
+
+	/**
+	 * Record loading metrics for {@code sources}, which were created from the
+	 * volatile view described by {@code viewData}.
+	 */
+	void addVolatileSources( final List< ? extends SourceAndConverter< ? > > sources, final VolatileViewData< ?, ? > viewData )
+	{
+		if ( metrics == null )
+			return;
+		metrics.addSources( sources, viewData.getCellAccessStats() );
+		if ( viewData.getCacheControl() instanceof SharedQueue )
+			metrics.addQueue( ( SharedQueue ) viewData.getCacheControl() );
+	}
+
+	/**
+	 * Get the width of the screen area to which the viewer transform maps.
+	 */
+	int getViewerWidth()
+	{
+		return viewer.getDisplay().getWidth();
+	}
+
+	/**
+	 * Get the width of {@code targetScreenImage} relative to the width of the
+	 * viewer, or {@code NaN} if the width of the viewer is not known.
+	 */
+	double getScreenScale( final RandomAccessibleInterval< ? > targetScreenImage )
+	{
+		final int viewerWidth = viewer == null ? 0 : getViewerWidth();
+		return viewerWidth > 0 ? ( double ) targetScreenImage.dimension( 0 ) / viewerWidth : Double.NaN;
+	}
+
+	/**
+	 * Get the height of the screen area to which the viewer transform maps.
+	 */
+	int getViewerHeight()
+	{
+		return viewer.getDisplay().getHeight();
+	}
+
+	/**
+	 * Get the {@link OverlayManager} that draws the {@link BdvOverlay}s of
+	 * this handle. It is created and registered with the viewer on first use.
+	 */
+	synchronized OverlayManager getOverlayManager()
+	{
+		if ( overlayManager == null )
+			overlayManager = new OverlayManager( viewer );
+		return overlayManager;
+	}
+
+	/**
+	 * Remove an {@code info} created by the {@link #getOverlayManager()
+	 * OverlayManager} for a source without overlay.
+	 */
+	synchronized void removeOverlayInfo( final PlaceHolderOverlayInfo info )
+	{
+		if ( overlayManager != null )
+			overlayManager.removeInfo( info );
+	}
+
+	/**
+	 * Get a setup id that is not used by any source of this handle. Ids are
+	 * handed out from a counter, which is initialized from the existing
+	 * setups on first use.
+	 */
 	@Deprecated
-	int getUnusedSetupId()
+	synchronized int getUnusedSetupId()
+	{
+		if ( nextSetupId < 0 )
+			nextSetupId = BdvFunctions.getUnusedSetupId( setupAssignments );
+		return nextSetupId++;
+	}
+
+	/**
+	 * Run {@code changes}, which add sources to or remove sources from this
+	 * handle, as one batch. Sources are added to and removed from the viewer
+	 * state in bulk when the batch ends, so that state change listeners and
+	 * repaints are triggered once rather than for every source. The number of
+	 * timepoints is also updated when the batch ends.
+	 * <p>
+	 * Sources added during the batch are not yet part of the viewer state.
+	 * Methods that modify their state in the viewer (for example
+	 * {@link BdvSource#setActive(boolean)} or {@link BdvSource#setCurrent()})
+	 * must be called after the batch. Batches can be nested, changes are
+	 * applied when the outermost batch ends. Batches must not be run
+	 * concurrently from different threads.
+	 * <p>
+	 * Example: {@code handle.batch( () -> tiles.forEach( tile -> BdvFunctions.show( tile, "tile", Bdv.options().addTo( handle ) ) ) );}
+	 */
+	public void batch( final Runnable changes )
+	{
+		++batchDepth;
+		try
+		{
+			changes.run();
+		}
+		finally
+		{
+			if ( --batchDepth == 0 )
+				commitBatch();
+		}
+	}
+
+	private void commitBatch()
 	{
-		return BdvFunctions.getUnusedSetupId( setupAssignments );
+		if ( viewer != null )
+		{
+			if ( !pendingRemoves.isEmpty() )
+				viewer.state().removeSources( new ArrayList<>( pendingRemoves ) );
+			if ( !pendingAdds.isEmpty() )
+			{
+				final List< SourceAndConverter< ? > > sources = new ArrayList<>( pendingAdds );
+				final boolean initTransform = viewer.state().getSources().isEmpty();
+				viewer.state().addSources( sources );
+				viewer.state().setSourcesActive( sources, true );
+				if ( initTransform )
+				{
+					synchronized ( this )
+					{
+						initTransformPending = true;
+						tryInitTransform();
+					}
+				}
+			}
+		}
+		pendingAdds.clear();
+		pendingRemoves.clear();
+		if ( pendingNumTimepoints )
+		{
+			pendingNumTimepoints = false;
+			updateNumTimepoints();
+		}
 	}
 
 	@Override
@@ -137,7 +391,19 @@ public abstract class BdvHandle implements Bdv
 		{
 			viewer.stop();
 			bdvSources.clear();
+			numPlaceHolderSources = 0;
+			numBdvSourcesByNumTimepoints.clear();
+			pendingAdds.clear();
+			pendingRemoves.clear();
 			cacheControls.clear();
+			synchronized ( this )
+			{
+				if ( overlayManager != null )
+					overlayManager.dispose();
+				overlayManager = null;
+			}
+			if ( metrics != null )
+				metrics.clear();
 
 			viewer = null;
 			cards = null;
@@ -146,6 +412,14 @@ public abstract class BdvHandle implements Bdv
 			setupAssignments = null;
 			cacheControls = null;
 		}
+		synchronized ( this )
+		{
+			if ( defaultQueue != null )
+				defaultQueue.shutdown();
+			defaultQueue = null;
+		}
+		if ( metrics != null )
+			metrics.unregisterMBean();
 	}
 
 	public abstract ManualTransformationEditor getManualTransformEditor();
@@ -178,6 +452,7 @@ public abstract class BdvHandle implements Bdv
 
 			if ( converterSetups != null )
 			{
+				updateNextSetupId( converterSetups );
 				final int numSetups = Math.min( converterSetups.size(), sources.size() );
 				for ( int i = 0; i < numSetups; ++i )
 				{
@@ -191,6 +466,14 @@ public abstract class BdvHandle implements Bdv
 				converterSetups.forEach( setupAssignments::addSetup );
 			}
 
+			if ( sources != null && batchDepth > 0 )
+			{
+				// the transform is initialized when the batch ends
+				pendingAdds.addAll( sources );
+				pendingRemoves.removeAll( sources );
+				return;
+			}
+
 			if ( sources != null )
 				for ( final SourceAndConverter< ? > soc : sources )
 				{
@@ -209,6 +492,19 @@ public abstract class BdvHandle implements Bdv
 		}
 	}
 
+	/**
+	 * Make sure that {@link #getUnusedSetupId()} does not hand out the ids of
+	 * {@code converterSetups}.
+	 */
+	private synchronized void updateNextSetupId( final List< ? extends ConverterSetup > converterSetups )
+	{
+		if ( nextSetupId < 0 )
+			return;
+		for ( final ConverterSetup setup : converterSetups )
+			if ( setup != null )
+				nextSetupId = Math.max( nextSetupId, setup.getSetupId() + 1 );
+	}
+
 	private boolean initTransformPending;
 
 	protected synchronized void tryInitTransform()
@@ -251,43 +547,73 @@ public abstract class BdvHandle implements Bdv
 
 		if ( overlays != null )
 			for ( final OverlayRenderer o : overlays )
+			{
 				viewer.getDisplay().overlays().remove( o );
+				if ( overlayManager != null )
+					overlayManager.remove( o );
+			}
 
 		if ( sources != null )
-			viewer.state().removeSources( sources );
+		{
+			if ( metrics != null )
+				metrics.removeSources( sources );
+			if ( batchDepth > 0 )
+			{
+				for ( final SourceAndConverter< ? > soc : sources )
+					if ( !pendingAdds.remove( soc ) )
+						pendingRemoves.add( soc );
+			}
+			else
+				viewer.state().removeSources( sources );
+		}
 	}
 
 	void addBdvSource( final BdvSource bdvSource )
 	{
 		bdvSources.add( bdvSource );
-		updateHasPlaceHolderSources();
-		updateNumTimepoints();
+		countBdvSource( bdvSource, 1 );
 	}
 
 	void removeBdvSource( final BdvSource bdvSource )
 	{
-		bdvSources.remove( bdvSource );
+		if ( bdvSources.remove( bdvSource ) )
+			countBdvSource( bdvSource, -1 );
+	}
+
+	/**
+	 * Update the place-holder and timepoint counts for a {@code bdvSource}
+	 * that was added ({@code delta = 1}) or removed ({@code delta = -1}).
+	 */
+	private void countBdvSource( final BdvSource bdvSource, final int delta )
+	{
+		if ( bdvSource.isPlaceHolderSource() )
+			numPlaceHolderSources += delta;
+		final int n = bdvSource.getNumTimepoints();
+		if ( numBdvSourcesByNumTimepoints.adjustOrPutValue( n, delta, delta ) <= 0 )
+			numBdvSourcesByNumTimepoints.remove( n );
 		updateHasPlaceHolderSources();
 		updateNumTimepoints();
 	}
 
 	void updateHasPlaceHolderSources()
 	{
-		for ( final BdvSource s : bdvSources )
-			if ( s.isPlaceHolderSource() )
-			{
-				hasPlaceHolderSources = true;
-				return;
-			}
-		hasPlaceHolderSources = false;
+		hasPlaceHolderSources = numPlaceHolderSources > 0;
 	}
 
 	void updateNumTimepoints()
 	{
+		if ( batchDepth > 0 )
+		{
+			pendingNumTimepoints = true;
+			return;
+		}
 		int numTimepoints = origNumTimepoints;
-		for ( final BdvSource s : bdvSources )
-			numTimepoints = Math.max( numTimepoints, s.getNumTimepoints() );
-		if ( viewer != null )
+		for ( final TIntIntIterator it = numBdvSourcesByNumTimepoints.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			numTimepoints = Math.max( numTimepoints, it.key() );
+		}
+		if ( viewer != null && viewer.state().getNumTimepoints() != numTimepoints )
 			viewer.setNumTimepoints( numTimepoints );
 	}
 
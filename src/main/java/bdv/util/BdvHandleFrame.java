@@ -106,7 +106,7 @@ public class BdvHandleFrame extends BdvHandle
 			final int numTimepoints )
 	{
 		final ProgressWriter progressWriter = new ProgressWriterConsole();
-		final ViewerOptions viewerOptions = bdvOptions.values.getViewerOptions();
+		final ViewerOptions viewerOptions = getViewerOptions();
 		final InputTriggerConfig inputTriggerConfig = BigDataViewer.getInputTriggerConfig( viewerOptions );
 		bdv = new BigDataViewer(
 				new ArrayList<>( converterSetups ),
@@ -0,0 +1,244 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.scijava.ui.behaviour.util.InputActionBindings;
+import org.scijava.ui.behaviour.util.TriggerBehaviourBindings;
+
+import bdv.cache.CacheControl.CacheControls;
+import bdv.tools.InitializeViewerState;
+import bdv.tools.brightness.ConverterSetup;
+import bdv.tools.brightness.SetupAssignments;
+import bdv.tools.transformation.ManualTransformationEditor;
+import bdv.viewer.ConverterSetups;
+import bdv.viewer.DisplayMode;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerOptions;
+import bdv.viewer.ViewerPanel;
+import bdv.viewer.ViewerState;
+
+/**
+ * A {@link BdvHandle} without a window, for rendering on machines without a
+ * display. Sources are added as usual, e.g.,
+ * {@code BdvFunctions.show( img, "img", Bdv.options().addTo( handle ) )}, and
+ * the current view is rendered with {@link #render()} or
+ * {@link #render(int[])}, using the same sources, converters, and projectors
+ * as a {@link BdvHandleFrame}.
+ * <p>
+ * The size of the rendered image is the preferred size of the
+ * {@link BdvOptions} (800x600 by default), and the number of rendering
+ * threads is {@link BdvOptions#numRenderingThreads(int)}. The
+ * {@link ViewerPanel} of the handle is only used to hold the viewer state; it
+ * is never shown, and it is stopped right after construction, so it has no
+ * painter or rendering threads.
+ * <p>
+ * The handle does not need a display. On machines without one, run with
+ * {@code -Djava.awt.headless=true}; the {@link ViewerPanel} is a lightweight
+ * Swing component and can be created in headless mode.
+ * <p>
+ * Overlays are not rendered.
+ */
+public class BdvHandleHeadless extends BdvHandle
+{
+	private final int width;
+
+	private final int height;
+
+	private final OffscreenRenderer renderer;
+
+	private final InputActionBindings keybindings;
+
+	private final TriggerBehaviourBindings triggerbindings;
+
+	private final ManualTransformationEditor manualTransformationEditor;
+
+	/**
+	 * Create a headless handle that blocks in {@link #render()} until all
+	 * data is loaded.
+	 */
+	public BdvHandleHeadless( final BdvOptions options )
+	{
+		this( options, true );
+	}
+
+	/**
+	 * Create a headless handle.
+	 *
+	 * @param waitUntilLoaded
+	 *            whether {@link #render()} blocks until all data is loaded.
+	 *            Otherwise, only data that is already cached is rendered.
+	 */
+	public BdvHandleHeadless( final BdvOptions options, final boolean waitUntilLoaded )
+	{
+		super( options );
+
+		final ViewerOptions viewerOptions = getViewerOptions();
+		width = viewerOptions.values.getWidth();
+		height = viewerOptions.values.getHeight();
+
+		cacheControls = new CacheControls();
+
+		viewer = new ViewerPanel( new ArrayList<>(), 1, cacheControls, viewerOptions );
+		viewer.stop();
+		setupAssignments = new SetupAssignments( new ArrayList<>(), 0, 65535 );
+		setups = new ConverterSetups( viewer.state() );
+
+		keybindings = new InputActionBindings();
+		triggerbindings = new TriggerBehaviourBindings();
+		manualTransformationEditor = new ManualTransformationEditor( viewer, keybindings );
+
+		viewer.setDisplayMode( DisplayMode.FUSED );
+
+		renderer = new OffscreenRenderer(
+				width,
+				height,
+				viewerOptions.values.getNumRenderingThreads(),
+				waitUntilLoaded,
+				viewerOptions.values.getAccumulateProjectorFactory(),
+				cacheControls );
+	}
+
+	/**
+	 * Get the width of rendered images.
+	 */
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Get the height of rendered images.
+	 */
+	public int getHeight()
+	{
+		return height;
+	}
+
+	@Override
+	int getViewerWidth()
+	{
+		return width;
+	}
+
+	@Override
+	int getViewerHeight()
+	{
+		return height;
+	}
+
+	/**
+	 * Render the current view into a new {@link BufferedImage}.
+	 */
+	public BufferedImage render()
+	{
+		return renderer.render( viewer.state().snapshot() );
+	}
+
+	/**
+	 * Render the current view into {@code argb}, which must have at least
+	 * {@code width * height} elements. Pixels are stored row by row.
+	 *
+	 * @return {@code true} if the rendered image is complete, {@code false} if
+	 *         data was missing.
+	 */
+	public boolean render( final int[] argb )
+	{
+		return renderer.render( viewer.state().snapshot(), argb );
+	}
+
+	/**
+	 * Render {@code state}, e.g., a modified snapshot of the viewer state,
+	 * into {@code argb}.
+	 *
+	 * @return {@code true} if the rendered image is complete, {@code false} if
+	 *         data was missing.
+	 */
+	public boolean render( final ViewerState state, final int[] argb )
+	{
+		return renderer.render( state, argb );
+	}
+
+	/**
+	 * Set how long rendering waits for data to load, if this handle was
+	 * created to wait until loaded.
+	 */
+	public void setLoadTimeout( final long timeout, final TimeUnit unit )
+	{
+		renderer.setLoadTimeout( timeout, unit );
+	}
+
+	@Override
+	public ManualTransformationEditor getManualTransformEditor()
+	{
+		return manualTransformationEditor;
+	}
+
+	@Override
+	public InputActionBindings getKeybindings()
+	{
+		return keybindings;
+	}
+
+	@Override
+	public TriggerBehaviourBindings getTriggerbindings()
+	{
+		return triggerbindings;
+	}
+
+	@Override
+	boolean createViewer(
+			final List< ? extends ConverterSetup > converterSetups,
+			final List< ? extends SourceAndConverter< ? > > sources,
+			final int numTimepoints )
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Initialize the viewer transform for the size of rendered images, since
+	 * the display of the viewer has no size.
+	 */
+	@Override
+	protected synchronized void tryInitTransform()
+	{
+		viewer.state().setViewerTransform( InitializeViewerState.initTransform( width, height, false, viewer.state().snapshot() ) );
+	}
+
+	@Override
+	public void close()
+	{
+		renderer.dispose();
+		super.close();
+	}
+}
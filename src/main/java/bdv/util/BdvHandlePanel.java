@@ -90,7 +90,7 @@ public class BdvHandlePanel extends BdvHandle
 	{
 		super( options );
 
-		final ViewerOptions viewerOptions = options.values.getViewerOptions();
+		final ViewerOptions viewerOptions = getViewerOptions();
 		final InputTriggerConfig inputTriggerConfig = BigDataViewer.getInputTriggerConfig( viewerOptions );
 
 		cacheControls = new CacheControls();
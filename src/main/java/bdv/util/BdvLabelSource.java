@@ -0,0 +1,75 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.List;
+
+import bdv.tools.brightness.ConverterSetup;
+import bdv.viewer.SourceAndConverter;
+
+/**
+ * A {@link BdvStackSource} showing a label image. Colors, highlighted and
+ * hidden labels can be modified through {@link #getLabelColors()}.
+ */
+public class BdvLabelSource< T > extends BdvStackSource< T >
+{
+	private final LabelColors labelColors;
+
+	private final LabelColors.ChangeListener repaintListener;
+
+	protected BdvLabelSource(
+			final BdvHandle bdv,
+			final int numTimepoints,
+			final T type,
+			final List< ConverterSetup > converterSetups,
+			final List< SourceAndConverter< T > > sources,
+			final LabelColors labelColors )
+	{
+		super( bdv, numTimepoints, type, converterSetups, sources );
+		this.labelColors = labelColors;
+		repaintListener = () -> {
+			final BdvHandle handle = getBdvHandle();
+			if ( handle != null && handle.getViewerPanel() != null )
+				handle.getViewerPanel().requestRepaint();
+		};
+		labelColors.changeListeners().add( repaintListener );
+	}
+
+	public LabelColors getLabelColors()
+	{
+		return labelColors;
+	}
+
+	@Override
+	public void removeFromBdv()
+	{
+		labelColors.changeListeners().remove( repaintListener );
+		super.removeFromBdv();
+	}
+}
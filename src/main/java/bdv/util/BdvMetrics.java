@@ -0,0 +1,539 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.scijava.listeners.Listeners;
+
+import bdv.util.volatiles.CellAccessStats;
+import bdv.util.volatiles.FlightRecorderEvents;
+import bdv.util.volatiles.LatencyHistogram;
+import bdv.util.volatiles.SharedQueue;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Rendering and loading metrics of a {@link BdvHandle}, enabled with
+ * {@link BdvOptions#collectMetrics()}.
+ * <p>
+ * For every frame rendered by the viewer, {@link FrameListener}s receive a
+ * {@link FrameMetrics} with the render time, the screen scale, the number of
+ * cell lookups and invalid cells per source, the depth of the loading queues
+ * per priority, and the histogram of fetch durations during the frame. Cell
+ * lookups are counted for sources shown from volatile views (see
+ * {@link bdv.util.volatiles.VolatileViews}), queues are tracked for the
+ * {@link SharedQueue}s of those views.
+ * <p>
+ * Frames are measured by wrapping the {@link AccumulateProjectorFactory} of
+ * the viewer, so offscreen renderings with the factory of the viewer (for
+ * example by {@link MovieExporter}) are recorded as well. Recording a frame
+ * does not allocate, and listeners are called on the rendering thread, so
+ * they should return quickly. Aggregated values
+ * are also available through JMX, as {@code bdv.util:type=BdvMetrics,id=<n>}.
+ */
+public class BdvMetrics implements BdvMetricsMXBean
+{
+	public interface FrameListener
+	{
+		/**
+		 * Called after a frame was rendered. {@code metrics} is reused for
+		 * the next frame.
+		 */
+		void frameRendered( FrameMetrics metrics );
+	}
+
+	private static final AtomicInteger nextId = new AtomicInteger();
+
+	private final BdvHandle handle;
+
+	private final Listeners.List< FrameListener > frameListeners = new Listeners.SynchronizedList<>();
+
+	private final IdentityHashMap< SourceAndConverter< ? >, CellAccessStats > sourceStats = new IdentityHashMap<>();
+
+	private final List< SharedQueue > queues = new ArrayList<>();
+
+	private int[] queueDepths = new int[ 1 ];
+
+	/**
+	 * Fetch latency counts of all {@link #queues} at the end of the last frame.
+	 */
+	private final long[] lastFetchLatency = new long[ LatencyHistogram.NUM_BUCKETS ];
+
+	private final long[] fetchLatency = new long[ LatencyHistogram.NUM_BUCKETS ];
+
+	private final FrameMetrics frame = new FrameMetrics();
+
+	private long frameCount;
+
+	private long totalRenderNanos;
+
+	private long maxRenderNanos;
+
+	private long totalCellRequests;
+
+	private long totalInvalidCells;
+
+	private ObjectName objectName;
+
+	BdvMetrics( final BdvHandle handle )
+	{
+		this.handle = handle;
+		frame.screenScale = Double.NaN;
+	}
+
+	public Listeners< FrameListener > frameListeners()
+	{
+		return frameListeners;
+	}
+
+	/**
+	 * Record cell lookups of {@code sources} in {@code stats}.
+	 */
+	synchronized void addSources( final List< ? extends SourceAndConverter< ? > > sources, final CellAccessStats stats )
+	{
+		if ( stats != null )
+			for ( final SourceAndConverter< ? > source : sources )
+				sourceStats.put( source, stats );
+	}
+
+	synchronized void removeSources( final List< ? extends SourceAndConverter< ? > > sources )
+	{
+		for ( final SourceAndConverter< ? > source : sources )
+			sourceStats.remove( source );
+	}
+
+	synchronized void addQueue( final SharedQueue queue )
+	{
+		for ( final SharedQueue q : queues )
+			if ( q == queue )
+				return;
+		queues.add( queue );
+		if ( queueDepths.length < queue.numPriorities() + 1 )
+			queueDepths = new int[ queue.numPriorities() + 1 ];
+		final LatencyHistogram histogram = queue.getFetchLatency();
+		for ( int i = 0; i < LatencyHistogram.NUM_BUCKETS; ++i )
+			lastFetchLatency[ i ] += histogram.getCount( i );
+	}
+
+	synchronized void clear()
+	{
+		sourceStats.clear();
+		queues.clear();
+	}
+
+	/**
+	 * Wrap {@code factory} such that frames rendered by projectors it creates
+	 * are recorded.
+	 */
+	AccumulateProjectorFactory< ARGBType > wrap( final AccumulateProjectorFactory< ARGBType > factory )
+	{
+		return new AccumulateProjectorFactory< ARGBType >()
+		{
+			@Override
+			public VolatileProjector createProjector(
+					final List< VolatileProjector > sourceProjectors,
+					final List< SourceAndConverter< ? > > sources,
+					final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+					final RandomAccessibleInterval< ARGBType > targetScreenImage,
+					final int numThreads,
+					final ExecutorService executorService )
+			{
+				final VolatileProjector projector = factory.createProjector( sourceProjectors, sources, sourceScreenImages, targetScreenImage, numThreads, executorService );
+				return new MeasuredProjector( projector, sources, handle.getScreenScale( targetScreenImage ) );
+			}
+		};
+	}
+
+	private synchronized void frameRendered( final MeasuredProjector projector, final long nanos )
+	{
+		final int n = projector.sources.length;
+		frame.frameIndex = frameCount;
+		frame.renderNanos = nanos;
+		frame.screenScale = projector.screenScale;
+		frame.complete = projector.isValid();
+		frame.ensureSources( n );
+		long requests = 0;
+		long invalid = 0;
+		for ( int i = 0; i < n; ++i )
+		{
+			frame.sources[ i ] = projector.sources[ i ];
+			final CellAccessStats stats = projector.stats[ i ];
+			if ( stats == null )
+			{
+				frame.cellRequests[ i ] = -1;
+				frame.invalidCells[ i ] = -1;
+				continue;
+			}
+			frame.cellRequests[ i ] = stats.getRequests() - projector.requests[ i ];
+			frame.invalidCells[ i ] = stats.getInvalid() - projector.invalid[ i ];
+			if ( isFirst( projector.stats, i ) )
+			{
+				requests += frame.cellRequests[ i ];
+				invalid += frame.invalidCells[ i ];
+			}
+		}
+		frame.totalCellRequests = requests;
+		frame.totalInvalidCells = invalid;
+
+		int numPriorities = 0;
+		for ( final SharedQueue queue : queues )
+			numPriorities = Math.max( numPriorities, queue.numPriorities() );
+		frame.ensurePriorities( numPriorities );
+		Arrays.fill( fetchLatency, 0 );
+		for ( final SharedQueue queue : queues )
+		{
+			final int p = queue.numPriorities();
+			queue.getQueueDepths( queueDepths );
+			for ( int i = 0; i < p; ++i )
+				frame.queueDepths[ i ] += queueDepths[ i ];
+			frame.queueDepths[ numPriorities ] += queueDepths[ p ];
+			final LatencyHistogram histogram = queue.getFetchLatency();
+			for ( int i = 0; i < LatencyHistogram.NUM_BUCKETS; ++i )
+				fetchLatency[ i ] += histogram.getCount( i );
+		}
+		for ( int i = 0; i < LatencyHistogram.NUM_BUCKETS; ++i )
+		{
+			frame.fetchLatency[ i ] = fetchLatency[ i ] - lastFetchLatency[ i ];
+			lastFetchLatency[ i ] = fetchLatency[ i ];
+		}
+
+		++frameCount;
+		totalRenderNanos += nanos;
+		maxRenderNanos = Math.max( maxRenderNanos, nanos );
+		totalCellRequests += requests;
+		totalInvalidCells += invalid;
+
+		synchronized ( frameListeners )
+		{
+			final List< FrameListener > list = frameListeners.list;
+			for ( int i = 0; i < list.size(); ++i )
+				list.get( i ).frameRendered( frame );
+		}
+	}
+
+	/**
+	 * Whether {@code stats[i]} is not contained in {@code stats[0..i-1]}.
+	 */
+	private static boolean isFirst( final CellAccessStats[] stats, final int i )
+	{
+		for ( int j = 0; j < i; ++j )
+			if ( stats[ j ] == stats[ i ] )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Register this as an MBean with the platform MBean server. Names are
+	 * numbered. If a name is already taken (e.g., by metrics of a handle
+	 * created through another class loader), the next number is tried.
+	 *
+	 * @throws IllegalStateException
+	 *             if registering fails for another reason
+	 */
+	synchronized void registerMBean()
+	{
+		if ( objectName != null )
+			return;
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		while ( objectName == null )
+		{
+			try
+			{
+				final ObjectName name = new ObjectName( "bdv.util:type=BdvMetrics,id=" + nextId.getAndIncrement() );
+				server.registerMBean( this, name );
+				objectName = name;
+			}
+			catch ( final InstanceAlreadyExistsException e )
+			{
+				// try the next id
+			}
+			catch ( final JMException e )
+			{
+				throw new IllegalStateException( "cannot register metrics MBean", e );
+			}
+		}
+	}
+
+	/**
+	 * Unregister this from the platform MBean server, if it is registered.
+	 *
+	 * @throws IllegalStateException
+	 *             if unregistering fails for another reason than the MBean
+	 *             already being unregistered
+	 */
+	synchronized void unregisterMBean()
+	{
+		if ( objectName == null )
+			return;
+		final ObjectName name = objectName;
+		objectName = null;
+		try
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean( name );
+		}
+		catch ( final InstanceNotFoundException e )
+		{
+			// already unregistered
+		}
+		catch ( final JMException e )
+		{
+			throw new IllegalStateException( "cannot unregister metrics MBean " + name, e );
+		}
+	}
+
+	/**
+	 * Get the name under which this is registered with the platform MBean
+	 * server, or {@code null} if it is not registered.
+	 */
+	public synchronized ObjectName getObjectName()
+	{
+		return objectName;
+	}
+
+	@Override
+	public synchronized long getFrameCount()
+	{
+		return frameCount;
+	}
+
+	@Override
+	public synchronized double getLastRenderTimeMillis()
+	{
+		return frameCount == 0 ? Double.NaN : frame.renderNanos / 1e6;
+	}
+
+	@Override
+	public synchronized double getMeanRenderTimeMillis()
+	{
+		return frameCount == 0 ? Double.NaN : totalRenderNanos / 1e6 / frameCount;
+	}
+
+	@Override
+	public synchronized double getMaxRenderTimeMillis()
+	{
+		return maxRenderNanos / 1e6;
+	}
+
+	@Override
+	public synchronized double getLastScreenScale()
+	{
+		return frame.screenScale;
+	}
+
+	@Override
+	public synchronized long getLastInvalidCells()
+	{
+		return frame.totalInvalidCells;
+	}
+
+	/**
+	 * Get the fraction of cell lookups that returned valid cells, over all
+	 * frames since the last {@link #resetStatistics()}.
+	 */
+	@Override
+	public synchronized double getCacheHitRate()
+	{
+		return totalCellRequests == 0 ? Double.NaN : ( double ) ( totalCellRequests - totalInvalidCells ) / totalCellRequests;
+	}
+
+	/**
+	 * Get the current number of queued requests for each priority, followed
+	 * by the number of prefetch requests, summed over all queues.
+	 */
+	@Override
+	public synchronized int[] getQueueDepths()
+	{
+		int numPriorities = 0;
+		for ( final SharedQueue queue : queues )
+			numPriorities = Math.max( numPriorities, queue.numPriorities() );
+		final int[] depths = new int[ numPriorities + 1 ];
+		for ( final SharedQueue queue : queues )
+		{
+			final int p = queue.numPriorities();
+			queue.getQueueDepths( queueDepths );
+			for ( int i = 0; i < p; ++i )
+				depths[ i ] += queueDepths[ i ];
+			depths[ numPriorities ] += queueDepths[ p ];
+		}
+		return depths;
+	}
+
+	/**
+	 * Get the counts of fetch durations of all queues, with the buckets of
+	 * {@link LatencyHistogram}.
+	 */
+	@Override
+	public synchronized long[] getFetchLatencyHistogram()
+	{
+		final long[] counts = new long[ LatencyHistogram.NUM_BUCKETS ];
+		for ( final SharedQueue queue : queues )
+		{
+			final LatencyHistogram histogram = queue.getFetchLatency();
+			for ( int i = 0; i < LatencyHistogram.NUM_BUCKETS; ++i )
+				counts[ i ] += histogram.getCount( i );
+		}
+		return counts;
+	}
+
+	/**
+	 * Get the number of cells fetched for the current sources, since they
+	 * were shown.
+	 */
+	@Override
+	public synchronized long getFetchedCells()
+	{
+		long sum = 0;
+		for ( final CellAccessStats stats : distinctStats() )
+			sum += stats.getFetches();
+		return sum;
+	}
+
+	/**
+	 * Get the total size in bytes of cells fetched for the current sources,
+	 * since they were shown.
+	 */
+	@Override
+	public synchronized long getFetchedBytes()
+	{
+		long sum = 0;
+		for ( final CellAccessStats stats : distinctStats() )
+			sum += stats.getFetchedBytes();
+		return sum;
+	}
+
+	private Set< CellAccessStats > distinctStats()
+	{
+		final Set< CellAccessStats > set = Collections.newSetFromMap( new IdentityHashMap<>() );
+		set.addAll( sourceStats.values() );
+		return set;
+	}
+
+	@Override
+	public synchronized void resetStatistics()
+	{
+		frameCount = 0;
+		totalRenderNanos = 0;
+		maxRenderNanos = 0;
+		totalCellRequests = 0;
+		totalInvalidCells = 0;
+	}
+
+	private final class MeasuredProjector implements VolatileProjector
+	{
+		private final VolatileProjector projector;
+
+		private final double screenScale;
+
+		private final SourceAndConverter< ? >[] sources;
+
+		private final CellAccessStats[] stats;
+
+		/**
+		 * Cell lookup counters of {@link #stats} at the start of rendering.
+		 */
+		private final long[] requests;
+
+		private final long[] invalid;
+
+		MeasuredProjector(
+				final VolatileProjector projector,
+				final List< SourceAndConverter< ? > > sources,
+				final double screenScale )
+		{
+			this.projector = projector;
+			this.screenScale = screenScale;
+			final int n = sources.size();
+			this.sources = sources.toArray( new SourceAndConverter< ? >[ n ] );
+			stats = new CellAccessStats[ n ];
+			synchronized ( BdvMetrics.this )
+			{
+				for ( int i = 0; i < n; ++i )
+					stats[ i ] = sourceStats.get( this.sources[ i ] );
+			}
+			requests = new long[ n ];
+			invalid = new long[ n ];
+		}
+
+		@Override
+		public boolean map( final boolean clearUntouchedTargetPixels )
+		{
+			for ( int i = 0; i < stats.length; ++i )
+			{
+				if ( stats[ i ] != null )
+				{
+					requests[ i ] = stats[ i ].getRequests();
+					invalid[ i ] = stats[ i ].getInvalid();
+				}
+			}
+			final long t0 = System.nanoTime();
+			final boolean success = FlightRecorderEvents.AVAILABLE
+					? FrameTracing.map( projector, clearUntouchedTargetPixels, screenScale )
+					: projector.map( clearUntouchedTargetPixels );
+			frameRendered( this, System.nanoTime() - t0 );
+			return success;
+		}
+
+		@Override
+		public void cancel()
+		{
+			projector.cancel();
+		}
+
+		@Override
+		public long getLastFrameRenderNanoTime()
+		{
+			return projector.getLastFrameRenderNanoTime();
+		}
+
+		@Override
+		public boolean isValid()
+		{
+			return projector.isValid();
+		}
+	}
+}
@@ -225,6 +225,63 @@ public class BdvOptions
 	public BdvOptions axisOrder( final AxisOrder axisOrder )
 	{
 		values.axisOrder = axisOrder;
+		values.axisSpec = null;
+		return this;
+	}
+
+	/**
+	 * Specified when adding a stack. Describes how the axes of the stack are
+	 * ordered, for example {@code "tczyx"}. See {@link AxisSpec}.
+	 *
+	 * @param axes
+	 *            the axis names of the stack to add, in the order of its
+	 *            dimensions.
+	 */
+	public BdvOptions axisOrder( final String axes )
+	{
+		return axisOrder( AxisSpec.parse( axes ) );
+	}
+
+	/**
+	 * Specified when adding a stack. Describes how the axes of the stack are
+	 * ordered. The stack is permuted into the corresponding canonical
+	 * {@link AxisOrder}.
+	 *
+	 * @param axisSpec
+	 *            the axis specification of a stack to add.
+	 */
+	public BdvOptions axisOrder( final AxisSpec axisSpec )
+	{
+		values.axisOrder = axisSpec.getAxisOrder();
+		values.axisSpec = axisSpec;
+		return this;
+	}
+
+	/**
+	 * Specified when adding a {@link net.imglib2.RealRandomAccessible}. If
+	 * {@code n > 1}, the source provides {@code n} mipmap levels, where the
+	 * coarser levels are prefiltered, cached and asynchronously computed
+	 * samplings of the function (see
+	 * {@link RealRandomAccessibleIntervalMipmapSource}). This only works for
+	 * {@code RealType & NativeType} pixel types.
+	 *
+	 * @param n
+	 *            the number of mipmap levels of the real source to add.
+	 */
+	public BdvOptions numRealMipmapLevels( final int n )
+	{
+		values.numRealMipmapLevels = n;
+		return this;
+	}
+
+	/**
+	 * Collect rendering and loading metrics for the viewer, see
+	 * {@link BdvHandle#getMetrics()}. Metrics are also published through JMX.
+	 * This option is only used when a new viewer is created.
+	 */
+	public BdvOptions collectMetrics()
+	{
+		values.collectMetrics = true;
 		return this;
 	}
 
@@ -274,6 +331,12 @@ public class BdvOptions
 
 		private AxisOrder axisOrder = AxisOrder.DEFAULT;
 
+		private AxisSpec axisSpec = null;
+
+		private int numRealMipmapLevels = 1;
+
+		private boolean collectMetrics = false;
+
 		private Bdv addTo = null;
 
 		Values()
@@ -295,9 +358,14 @@ public class BdvOptions
 					.sourceTransform( sourceTransform )
 					.frameTitle( frameTitle )
 					.axisOrder( axisOrder )
+					.numRealMipmapLevels( numRealMipmapLevels )
 					.addTo( addTo );
+			if ( axisSpec != null )
+				o.axisOrder( axisSpec );
 			if ( is2D() )
 				o.is2D();
+			if ( collectMetrics() )
+				o.collectMetrics();
 			return o;
 		}
 
@@ -341,6 +409,25 @@ public class BdvOptions
 			return axisOrder;
 		}
 
+		/**
+		 * Get the {@link AxisSpec} of the stack to add, or {@code null} if the
+		 * stack is specified by {@link #axisOrder()} only.
+		 */
+		public AxisSpec axisSpec()
+		{
+			return axisSpec;
+		}
+
+		public int numRealMipmapLevels()
+		{
+			return numRealMipmapLevels;
+		}
+
+		public boolean collectMetrics()
+		{
+			return collectMetrics;
+		}
+
 		public InputTriggerConfig getInputTriggerConfig()
 		{
 			return inputTriggerConfig;
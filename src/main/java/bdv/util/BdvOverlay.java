@@ -28,12 +28,15 @@
  */
 package bdv.util;
 
+import java.awt.AlphaComposite;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
 
 import bdv.BigDataViewer;
 import bdv.tools.brightness.ConverterSetup;
 import bdv.viewer.Source;
+import net.imglib2.RealInterval;
 import net.imglib2.realtransform.AffineTransform2D;
 import net.imglib2.realtransform.AffineTransform3D;
 import bdv.viewer.OverlayRenderer;
@@ -50,6 +53,14 @@ import bdv.viewer.OverlayRenderer;
  * {@link #getCurrentTransform2D(AffineTransform2D)},
  * {@link #getCurrentTransform3D(AffineTransform3D)}. They can access the
  * user-set display range and color via {@link #info}.
+ * <p>
+ * Optionally, the overlay can be {@link #setCached(boolean) cached}: Then it
+ * is rendered into an offscreen image, which is reused for repaints until the
+ * viewer transform, timepoint, canvas size, color, or display range changes,
+ * or until {@link #invalidate()} is called. Optionally, the overlay can be
+ * rendered {@link #setAsync(boolean) asynchronously} on background threads.
+ * Derived classes that override {@link #setCanvasSize(int, int)} must call
+ * {@code super.setCanvasSize()} for caching to work.
  *
  * @author Tobias Pietzsch
  */
@@ -57,14 +68,54 @@ public abstract class BdvOverlay implements OverlayRenderer
 {
 	protected final AffineTransform3D sourceTransform;
 
-	private final AffineTransform3D tmp;
-
 	protected PlaceHolderOverlayInfo info;
 
+	private volatile boolean cached;
+
+	private volatile boolean async;
+
+	private AsyncOverlayRenderer asyncRenderer;
+
+	/**
+	 * Viewer transform snapshot used by {@link #getCurrentTransform3D} while
+	 * drawing on a background thread.
+	 */
+	private final ThreadLocal< AffineTransform3D > renderViewerTransform = new ThreadLocal<>();
+
+	private volatile boolean rasterValid;
+
+	private BufferedImage raster;
+
+	private final AffineTransform3D rasterTransform;
+
+	private final AffineTransform3D currentTransform;
+
+	private final AffineTransform3D viewerTransform;
+
+	private int rasterWidth;
+
+	private int rasterHeight;
+
+	private int rasterTimepoint;
+
+	private int rasterColor;
+
+	private double rasterMin;
+
+	private double rasterMax;
+
+	private long rasterModificationCount;
+
+	private int canvasWidth;
+
+	private int canvasHeight;
+
 	public BdvOverlay()
 	{
 		this.sourceTransform = new AffineTransform3D();
-		this.tmp = new AffineTransform3D();
+		this.rasterTransform = new AffineTransform3D();
+		this.currentTransform = new AffineTransform3D();
+		this.viewerTransform = new AffineTransform3D();
 		this.info = null;
 	}
 
@@ -76,6 +127,108 @@ public abstract class BdvOverlay implements OverlayRenderer
 	public void setSourceTransform( final AffineTransform3D t )
 	{
 		sourceTransform.set( t );
+		invalidate();
+	}
+
+	/**
+	 * Set whether the overlay is rendered into an offscreen image that is
+	 * reused for repaints that don't change the view. This is useful for
+	 * overlays that are expensive to draw, because repaints also happen when
+	 * image data finishes loading. By default, caching is disabled.
+	 */
+	public void setCached( final boolean cached )
+	{
+		this.cached = cached;
+		if ( !cached )
+			raster = null;
+		invalidate();
+	}
+
+	public boolean isCached()
+	{
+		return cached;
+	}
+
+	/**
+	 * Set whether the overlay is rendered asynchronously. Then, when the view
+	 * changes, the overlay is drawn into screen tiles on a background thread
+	 * pool, and the previous rendering is shown until the new one is complete.
+	 * This keeps the viewer responsive for overlays that are expensive to
+	 * draw. Like {@link #setCached(boolean) cached} overlays, the rendering is
+	 * reused for repaints that don't change the view.
+	 * <p>
+	 * The overlay is drawn in a single tile, unless
+	 * {@link #isConcurrentDrawSupported()} is overridden to return
+	 * {@code true}. By default, asynchronous rendering is disabled.
+	 */
+	public void setAsync( final boolean async )
+	{
+		this.async = async;
+		if ( !async && asyncRenderer != null )
+		{
+			asyncRenderer.cancel();
+			asyncRenderer = null;
+		}
+		invalidate();
+	}
+
+	public boolean isAsync()
+	{
+		return async;
+	}
+
+	/**
+	 * Abandon pending asynchronous renderings, e.g., when the overlay is
+	 * removed from the viewer.
+	 */
+	void cancelAsyncRendering()
+	{
+		final AsyncOverlayRenderer renderer = asyncRenderer;
+		if ( renderer != null )
+			renderer.cancel();
+	}
+
+	/**
+	 * Derived classes can override this to return {@code true} if
+	 * {@link #draw(Graphics2D)} can be called concurrently from multiple
+	 * threads. Then {@link #setAsync(boolean) asynchronous} rendering draws
+	 * screen tiles in parallel. Each tile is drawn with a {@link Graphics2D}
+	 * whose clip is set to the tile.
+	 */
+	protected boolean isConcurrentDrawSupported()
+	{
+		return false;
+	}
+
+	/**
+	 * Discard the cached rendering of the overlay, if any. Must be called when
+	 * the data shown by the overlay changes, unless the change is reported by
+	 * {@link #getModificationCount()}.
+	 */
+	public void invalidate()
+	{
+		rasterValid = false;
+	}
+
+	/**
+	 * Derived classes can override this to report modifications of the data
+	 * they draw. When the overlay is {@link #setCached(boolean) cached}, it is
+	 * redrawn whenever the returned value changes.
+	 */
+	protected long getModificationCount()
+	{
+		return 0;
+	}
+
+	/**
+	 * Derived classes can override this to return the bounding box of the
+	 * overlay content in source coordinates. It is used to skip drawing
+	 * overlays that are outside the screen. Returns {@code null} if the bounds
+	 * are unknown (the default), in which case the overlay is always drawn.
+	 */
+	protected RealInterval getSourceBounds()
+	{
+		return null;
 	}
 
 	@Override
@@ -84,7 +237,114 @@ public abstract class BdvOverlay implements OverlayRenderer
 		if ( info == null || !info.isVisible() )
 			return;
 
-		draw( ( Graphics2D ) g );
+		drawVisible( g );
+	}
+
+	/**
+	 * Draw the overlay, assuming that it is visible.
+	 */
+	void drawVisible( final Graphics g )
+	{
+		if ( ( !cached && !async ) || canvasWidth <= 0 || canvasHeight <= 0 )
+		{
+			draw( ( Graphics2D ) g );
+			return;
+		}
+
+		if ( async )
+		{
+			if ( asyncRenderer == null )
+				asyncRenderer = new AsyncOverlayRenderer( this );
+			if ( !isRasterValid() )
+				asyncRenderer.render( viewerTransform, currentTransform, canvasWidth, canvasHeight, ( ( Graphics2D ) g ).getRenderingHints() );
+			asyncRenderer.paint( ( Graphics2D ) g, currentTransform );
+			return;
+		}
+
+		if ( !isRasterValid() || raster == null )
+			drawRaster( ( Graphics2D ) g );
+		g.drawImage( raster, 0, 0, null );
+	}
+
+	/**
+	 * Draw with the given viewer transform. Called by
+	 * {@link AsyncOverlayRenderer} on background threads.
+	 */
+	void drawWithViewerTransform( final Graphics2D g, final AffineTransform3D viewerTransform )
+	{
+		renderViewerTransform.set( viewerTransform );
+		try
+		{
+			draw( g );
+		}
+		finally
+		{
+			renderViewerTransform.remove();
+		}
+	}
+
+	/**
+	 * Request a repaint of the viewer display.
+	 */
+	void repaint()
+	{
+		if ( info != null && info.getViewer() != null )
+			info.getViewer().getDisplay().repaint();
+	}
+
+	/**
+	 * Whether the cached {@link #raster} is up to date with the current view,
+	 * and records the current view otherwise.
+	 */
+	private boolean isRasterValid()
+	{
+		info.getViewerTransform( viewerTransform );
+		currentTransform.set( viewerTransform );
+		currentTransform.concatenate( sourceTransform );
+		final int timepoint = info.getTimePointIndex();
+		final int color = info.getColor().get();
+		final double min = info.getDisplayRangeMin();
+		final double max = info.getDisplayRangeMax();
+		final long modificationCount = getModificationCount();
+
+		boolean valid = rasterValid
+				&& canvasWidth == rasterWidth
+				&& canvasHeight == rasterHeight
+				&& timepoint == rasterTimepoint
+				&& color == rasterColor
+				&& min == rasterMin
+				&& max == rasterMax
+				&& modificationCount == rasterModificationCount;
+		for ( int r = 0; valid && r < 3; ++r )
+			for ( int c = 0; valid && c < 4; ++c )
+				valid = currentTransform.get( r, c ) == rasterTransform.get( r, c );
+
+		if ( !valid )
+		{
+			rasterValid = true;
+			rasterWidth = canvasWidth;
+			rasterHeight = canvasHeight;
+			rasterTransform.set( currentTransform );
+			rasterTimepoint = timepoint;
+			rasterColor = color;
+			rasterMin = min;
+			rasterMax = max;
+			rasterModificationCount = modificationCount;
+		}
+		return valid;
+	}
+
+	private void drawRaster( final Graphics2D g )
+	{
+		if ( raster == null || raster.getWidth() != canvasWidth || raster.getHeight() != canvasHeight )
+			raster = new BufferedImage( canvasWidth, canvasHeight, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D rg = raster.createGraphics();
+		rg.setComposite( AlphaComposite.Clear );
+		rg.fillRect( 0, 0, canvasWidth, canvasHeight );
+		rg.setComposite( AlphaComposite.SrcOver );
+		rg.setRenderingHints( g.getRenderingHints() );
+		draw( rg );
+		rg.dispose();
 	}
 
 	/**
@@ -96,8 +356,8 @@ public abstract class BdvOverlay implements OverlayRenderer
 	 */
 	protected void getCurrentTransform2D( final AffineTransform2D transform )
 	{
-		info.getViewerTransform( tmp );
-		tmp.concatenate( sourceTransform );
+		final AffineTransform3D tmp = new AffineTransform3D();
+		getCurrentTransform3D( tmp );
 		transform.set(
 				tmp.get( 0, 0 ), tmp.get( 0, 1 ), tmp.get( 0, 3 ),
 				tmp.get( 1, 0 ), tmp.get( 1, 1 ), tmp.get( 1, 3 ) );
@@ -113,7 +373,11 @@ public abstract class BdvOverlay implements OverlayRenderer
 	 */
 	protected void getCurrentTransform3D( final AffineTransform3D transform )
 	{
-		info.getViewerTransform( transform );
+		final AffineTransform3D snapshot = renderViewerTransform.get();
+		if ( snapshot != null )
+			transform.set( snapshot );
+		else
+			info.getViewerTransform( transform );
 		transform.concatenate( sourceTransform );
 	}
 
@@ -121,5 +385,8 @@ public abstract class BdvOverlay implements OverlayRenderer
 
 	@Override
 	public void setCanvasSize( final int width, final int height )
-	{}
+	{
+		canvasWidth = width;
+		canvasHeight = height;
+	}
 }
@@ -49,11 +49,78 @@ public class BdvPointsSource extends BdvOverlaySource< PointsOverlay >
 		super( bdv, numTimepoints, setup, source, info, overlay );
 	}
 
+	/**
+	 * Set points to draw. The points are drawn directly from the list,
+	 * modifications become visible with the next repaint.
+	 *
+	 * @see PointsOverlay#setPoints(List)
+	 */
 	public < T extends RealLocalizable > void setPoints( final List< T > points )
 	{
 		overlay.setPoints( points );
 	}
 
+	/**
+	 * Set points to draw. The points are rendered directly from
+	 * {@code points}, modifications become visible with the next repaint.
+	 */
+	public void setPoints( final PointsData points )
+	{
+		overlay.setPoints( points );
+		getBdvHandle().getViewerPanel().getDisplay().repaint();
+	}
+
+	public PointsData getPoints()
+	{
+		return overlay.getPoints();
+	}
+
+	/**
+	 * Set the maximum distance (in screen pixels) from the current slice for
+	 * which points are drawn.
+	 *
+	 * @see PointsOverlay#setMaxSliceDistance(double)
+	 */
+	public void setMaxSliceDistance( final double distance )
+	{
+		overlay.setMaxSliceDistance( distance );
+		getBdvHandle().getViewerPanel().getDisplay().repaint();
+	}
+
+	/**
+	 * Set the number of earlier timepoints for which track tails are drawn.
+	 *
+	 * @see PointsOverlay#setTrackTailLength(int)
+	 */
+	public void setTrackTailLength( final int numTimepoints )
+	{
+		overlay.setTrackTailLength( numTimepoints );
+		getBdvHandle().getViewerPanel().getDisplay().repaint();
+	}
+
+	/**
+	 * Set the number of points above which a density heatmap is drawn instead
+	 * of individual points.
+	 *
+	 * @see PointsOverlay#setDensityThreshold(int)
+	 */
+	public void setDensityThreshold( final int numPoints )
+	{
+		overlay.setDensityThreshold( numPoints );
+		getBdvHandle().getViewerPanel().getDisplay().repaint();
+	}
+
+	/**
+	 * Set the style that maps point values to colors and sizes.
+	 *
+	 * @see PointsOverlay#setStyle(PointsStyle)
+	 */
+	public void setStyle( final PointsStyle style )
+	{
+		overlay.setStyle( style );
+		getBdvHandle().getViewerPanel().getDisplay().repaint();
+	}
+
 	public void setSourceTransform( final AffineTransform3D t )
 	{
 		overlay.setSourceTransform( t );
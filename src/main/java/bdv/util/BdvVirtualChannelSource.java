@@ -69,12 +69,13 @@ public class BdvVirtualChannelSource extends BdvSource
 	public void removeFromBdv()
 	{
 		coordinator.sharedInfos.remove( info );
+		getBdvHandle().removeOverlayInfo( info );
 		getBdvHandle().remove(
 				Collections.singletonList( setup ),
 				Collections.singletonList( source ),
-				Collections.singletonList( info ),
-				Collections.singletonList( info ),
-				Collections.singletonList( info ),
+				null,
+				null,
+				null,
 				null );
 		getBdvHandle().removeBdvSource( this );
 		setBdvHandle( null );
@@ -0,0 +1,232 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+
+import bdv.util.volatiles.LatencyHistogram;
+import bdv.util.volatiles.SharedQueue;
+import bdv.viewer.SourceAndConverter;
+
+/**
+ * Metrics of one rendered frame, passed to
+ * {@link BdvMetrics.FrameListener}s. A frame is one rendering pass of the
+ * viewer, at one screen scale.
+ * <p>
+ * The same instance is reused for every frame, so listeners must copy values
+ * they want to keep.
+ */
+public final class FrameMetrics
+{
+	long frameIndex;
+
+	long renderNanos;
+
+	double screenScale;
+
+	boolean complete;
+
+	int numSources;
+
+	SourceAndConverter< ? >[] sources = new SourceAndConverter< ? >[ 0 ];
+
+	long[] cellRequests = new long[ 0 ];
+
+	long[] invalidCells = new long[ 0 ];
+
+	long totalCellRequests;
+
+	long totalInvalidCells;
+
+	int numPriorities;
+
+	int[] queueDepths = new int[ 1 ];
+
+	final long[] fetchLatency = new long[ LatencyHistogram.NUM_BUCKETS ];
+
+	FrameMetrics()
+	{}
+
+	/**
+	 * Make room for {@code n} sources.
+	 */
+	void ensureSources( final int n )
+	{
+		if ( sources.length < n )
+		{
+			sources = Arrays.copyOf( sources, n );
+			cellRequests = Arrays.copyOf( cellRequests, n );
+			invalidCells = Arrays.copyOf( invalidCells, n );
+		}
+		if ( numSources > n )
+			Arrays.fill( sources, n, numSources, null );
+		numSources = n;
+	}
+
+	/**
+	 * Make room for {@code n} queue priorities.
+	 */
+	void ensurePriorities( final int n )
+	{
+		if ( queueDepths.length < n + 1 )
+			queueDepths = new int[ n + 1 ];
+		numPriorities = n;
+		Arrays.fill( queueDepths, 0 );
+	}
+
+	/**
+	 * Get the number of frames rendered before this one.
+	 */
+	public long getFrameIndex()
+	{
+		return frameIndex;
+	}
+
+	/**
+	 * Get the time (in nanoseconds) it took to render the frame.
+	 */
+	public long getRenderNanos()
+	{
+		return renderNanos;
+	}
+
+	/**
+	 * Get the screen scale of the frame, i.e., the width of the rendered
+	 * image relative to the width of the viewer. This is {@code NaN} if the
+	 * width of the viewer is not known.
+	 */
+	public double getScreenScale()
+	{
+		return screenScale;
+	}
+
+	/**
+	 * Whether all data of the frame was available, i.e., whether the frame is
+	 * complete at its screen scale.
+	 */
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	/**
+	 * Get the number of rendered sources.
+	 */
+	public int numSources()
+	{
+		return numSources;
+	}
+
+	public SourceAndConverter< ? > getSource( final int i )
+	{
+		return sources[ i ];
+	}
+
+	/**
+	 * Get the number of cell lookups of source {@code i} in this frame, or
+	 * {@code -1} if the source doesn't record cell lookups. Sources wrapped
+	 * from the same volatile view share their counters.
+	 */
+	public long getCellRequests( final int i )
+	{
+		return cellRequests[ i ];
+	}
+
+	/**
+	 * Get the number of cell lookups of source {@code i} in this frame that
+	 * returned invalid (not yet loaded) cells, or {@code -1} if the source
+	 * doesn't record cell lookups. Cells touched repeatedly are counted
+	 * repeatedly.
+	 */
+	public long getInvalidCells( final int i )
+	{
+		return invalidCells[ i ];
+	}
+
+	/**
+	 * Get the number of cell lookups of all sources in this frame.
+	 */
+	public long getTotalCellRequests()
+	{
+		return totalCellRequests;
+	}
+
+	/**
+	 * Get the number of cell lookups of all sources in this frame that
+	 * returned invalid cells.
+	 */
+	public long getTotalInvalidCells()
+	{
+		return totalInvalidCells;
+	}
+
+	/**
+	 * Get the fraction of cell lookups in this frame that returned valid
+	 * cells, or {@code NaN} if there were no lookups.
+	 */
+	public double getCacheHitRate()
+	{
+		return totalCellRequests == 0 ? Double.NaN : ( double ) ( totalCellRequests - totalInvalidCells ) / totalCellRequests;
+	}
+
+	/**
+	 * Get the number of priorities of the loading queues.
+	 */
+	public int numPriorities()
+	{
+		return numPriorities;
+	}
+
+	/**
+	 * Get the number of requests with the given {@code priority} queued at
+	 * the end of the frame, summed over all {@link SharedQueue}s.
+	 */
+	public int getQueueDepth( final int priority )
+	{
+		return queueDepths[ priority ];
+	}
+
+	/**
+	 * Get the number of prefetch requests queued at the end of the frame,
+	 * summed over all {@link SharedQueue}s.
+	 */
+	public int getPrefetchDepth()
+	{
+		return queueDepths[ numPriorities ];
+	}
+
+	/**
+	 * Get the number of fetches that completed during the frame with a
+	 * duration in the given {@link LatencyHistogram} bucket.
+	 */
+	public long getFetchLatencyCount( final int bucket )
+	{
+		return fetchLatency[ bucket ];
+	}
+}
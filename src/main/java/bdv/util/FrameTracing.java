@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import bdv.util.volatiles.FlightRecorderEvents;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Emits Flight Recorder events for frames rendered by projectors of a wrapped
+ * {@link AccumulateProjectorFactory}. Must only be used if
+ * {@link FlightRecorderEvents#AVAILABLE}.
+ * <p>
+ * The events require Java 11, so this version does not emit any. It is
+ * replaced by the one in {@code src/main/java11} in the multi-release jar.
+ */
+final class FrameTracing
+{
+	private FrameTracing()
+	{}
+
+	static AccumulateProjectorFactory< ARGBType > wrap( final AccumulateProjectorFactory< ARGBType > factory, final BdvHandle handle )
+	{
+		return factory;
+	}
+
+	static boolean map( final VolatileProjector projector, final boolean clearUntouchedTargetPixels, final double screenScale )
+	{
+		return projector.map( clearUntouchedTargetPixels );
+	}
+}
@@ -0,0 +1,291 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bdv.util.VirtualChannels.VirtualChannel;
+import bdv.util.volatiles.VolatileView;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import net.imglib2.view.composite.Composite;
+
+/**
+ * Show a multi-channel image as a single fused source.
+ * <p>
+ * {@link AxisOrder#splitInputStackIntoSourceStacks} cuts the channel axis into
+ * one source per channel. Each of these sources is sampled separately, so a
+ * N-channel image is traversed N times per frame. Instead, {@link FusedChannels}
+ * collapses the channel axis into a {@link Composite} and converts all
+ * channels of a voxel to {@link ARGBType} in one pass, applying per-channel
+ * display range and color and blending additively.
+ * <p>
+ * The channels are added as {@link VirtualChannels}, so that display range,
+ * color, and visibility can still be adjusted per channel. Only one of the
+ * virtual channel sources actually renders the fused image.
+ * <p>
+ * The fused image is not volatile: {@link Volatile} images and
+ * {@link VolatileView}s are not supported.
+ */
+public class FusedChannels
+{
+	static < T extends RealType< T > > List< BdvVirtualChannelSource > show(
+			RandomAccessibleInterval< T > img,
+			final String name,
+			final BdvOptions options )
+	{
+		if ( img instanceof VolatileView || Util.getTypeFromInterval( img ) instanceof Volatile )
+			throw new IllegalArgumentException( "FusedChannels doesn't support volatile images" );
+
+		final AxisSpec axisSpec = options.values.axisSpec();
+		if ( axisSpec != null )
+			img = axisSpec.permute( img );
+
+		final Bdv bdv = options.values.addTo();
+		final BdvHandle handle = ( bdv == null )
+				? new BdvHandleFrame( options )
+				: bdv.getBdvHandle();
+		final AxisOrder axisOrder = AxisOrder.getAxisOrder( options.values.axisOrder(), img, handle.is2D() );
+		if ( img.numDimensions() != axisOrder.numDimensions )
+			throw new IllegalArgumentException( "provided AxisOrder doesn't match dimensionality of image" );
+		final int c = axisOrder.channelDimension;
+		if ( c < 0 )
+			throw new IllegalArgumentException( "AxisOrder " + axisOrder + " has no channel dimension" );
+
+		final int numChannels = ( int ) img.dimension( c );
+		final FusedChannelsConverter< T > converter = new FusedChannelsConverter<>( numChannels );
+		final RandomAccessibleInterval< ARGBType > fused = fuse( img, c, converter );
+
+		final List< FusedChannel > channels = new ArrayList<>();
+		for ( int i = 0; i < numChannels; ++i )
+			channels.add( new FusedChannel( converter, i ) );
+
+		final BdvOptions fusedOptions = options.values.optionsFromValues()
+				.axisOrder( axisOrder.withoutChannel() )
+				.addTo( handle );
+		final List< BdvVirtualChannelSource > bdvSources = VirtualChannels.show( fused, channels, name, fusedOptions );
+
+		final T type = Util.getTypeFromInterval( img );
+		final double typeMin = Math.max( 0, Math.min( type.getMinValue(), 65535 ) );
+		final double typeMax = Math.max( 0, Math.min( type.getMaxValue(), 65535 ) );
+		for ( int i = 0; i < numChannels; ++i )
+		{
+			final BdvVirtualChannelSource bdvSource = bdvSources.get( i );
+			channels.get( i ).setBdvSource( bdvSource );
+			bdvSource.setDisplayRange( typeMin, typeMax );
+		}
+
+		return bdvSources;
+	}
+
+	/**
+	 * Collapse dimension {@code c} of {@code img} into a {@link Composite} and
+	 * convert it to {@link ARGBType} with {@code converter}.
+	 */
+	static < T extends RealType< T > > RandomAccessibleInterval< ARGBType > fuse(
+			final RandomAccessibleInterval< T > img,
+			final int c,
+			final Converter< Composite< T >, ARGBType > converter )
+	{
+		final int n = img.numDimensions();
+		final long[] offset = new long[ n ];
+		offset[ n - 1 ] = -img.min( c );
+		final RandomAccessibleInterval< T > channelsLast = Views.translate( Views.moveAxis( img, c, n - 1 ), offset );
+		return Converters.convert( Views.collapse( channelsLast ), converter, new ARGBType() );
+	}
+
+	/**
+	 * Converts all channels of a voxel to {@link ARGBType}. Each channel is
+	 * scaled linearly from its display range to {@code [0,1]}, multiplied with
+	 * its color, and the results of all visible channels are summed.
+	 */
+	static class FusedChannelsConverter< T extends RealType< T > > implements Converter< Composite< T >, ARGBType >
+	{
+		private final int numChannels;
+
+		private final double[] min;
+
+		private final double[] scale;
+
+		private final double[] red;
+
+		private final double[] green;
+
+		private final double[] blue;
+
+		/**
+		 * Indices of the visible channels.
+		 */
+		private volatile int[] visibleChannels;
+
+		private final boolean[] visible;
+
+		FusedChannelsConverter( final int numChannels )
+		{
+			this.numChannels = numChannels;
+			min = new double[ numChannels ];
+			scale = new double[ numChannels ];
+			red = new double[ numChannels ];
+			green = new double[ numChannels ];
+			blue = new double[ numChannels ];
+			visible = new boolean[ numChannels ];
+			for ( int i = 0; i < numChannels; ++i )
+			{
+				setDisplayRange( i, 0, 255 );
+				setColor( i, 0xffffffff );
+				visible[ i ] = true;
+			}
+			updateVisibleChannels();
+		}
+
+		public int numChannels()
+		{
+			return numChannels;
+		}
+
+		public void setDisplayRange( final int channel, final double min, final double max )
+		{
+			this.min[ channel ] = min;
+			this.scale[ channel ] = 1.0 / ( max - min );
+		}
+
+		public void setColor( final int channel, final int argb )
+		{
+			red[ channel ] = ARGBType.red( argb );
+			green[ channel ] = ARGBType.green( argb );
+			blue[ channel ] = ARGBType.blue( argb );
+		}
+
+		public synchronized void setVisible( final int channel, final boolean isVisible )
+		{
+			if ( visible[ channel ] != isVisible )
+			{
+				visible[ channel ] = isVisible;
+				updateVisibleChannels();
+			}
+		}
+
+		private void updateVisibleChannels()
+		{
+			int count = 0;
+			for ( int i = 0; i < numChannels; ++i )
+				if ( visible[ i ] )
+					++count;
+			final int[] indices = new int[ count ];
+			count = 0;
+			for ( int i = 0; i < numChannels; ++i )
+				if ( visible[ i ] )
+					indices[ count++ ] = i;
+			visibleChannels = indices;
+		}
+
+		@Override
+		public void convert( final Composite< T > input, final ARGBType output )
+		{
+			double r = 0;
+			double g = 0;
+			double b = 0;
+			for ( final int i : visibleChannels )
+			{
+				final double v = ( input.get( i ).getRealDouble() - min[ i ] ) * scale[ i ];
+				if ( v <= 0 )
+					continue;
+				final double w = v > 1 ? 1 : v;
+				r += w * red[ i ];
+				g += w * green[ i ];
+				b += w * blue[ i ];
+			}
+			final int ir = r > 255 ? 255 : ( int ) r;
+			final int ig = g > 255 ? 255 : ( int ) g;
+			final int ib = b > 255 ? 255 : ( int ) b;
+			output.set( ARGBType.rgba( ir, ig, ib, 255 ) );
+		}
+	}
+
+	/**
+	 * Forwards settings and visibility of one virtual channel source to the
+	 * {@link FusedChannelsConverter}.
+	 */
+	static class FusedChannel implements VirtualChannel
+	{
+		private final FusedChannelsConverter< ? > converter;
+
+		private final int channel;
+
+		private BdvVirtualChannelSource bdvSource;
+
+		FusedChannel( final FusedChannelsConverter< ? > converter, final int channel )
+		{
+			this.converter = converter;
+			this.channel = channel;
+		}
+
+		void setBdvSource( final BdvVirtualChannelSource bdvSource )
+		{
+			this.bdvSource = bdvSource;
+			updateSetupParameters();
+			updateVisibility();
+		}
+
+		@Override
+		public void updateVisibility()
+		{
+			if ( bdvSource == null )
+				return;
+			final PlaceHolderOverlayInfo info = bdvSource.getPlaceHolderOverlayInfo();
+			converter.setVisible( channel, info.isVisible() );
+			requestRepaint();
+		}
+
+		@Override
+		public void updateSetupParameters()
+		{
+			if ( bdvSource == null )
+				return;
+			final PlaceHolderOverlayInfo info = bdvSource.getPlaceHolderOverlayInfo();
+			converter.setDisplayRange( channel, info.getDisplayRangeMin(), info.getDisplayRangeMax() );
+			converter.setColor( channel, info.getColor().get() );
+			requestRepaint();
+		}
+
+		private void requestRepaint()
+		{
+			final BdvHandle handle = bdvSource.getBdvHandle();
+			if ( handle != null && handle.getViewerPanel() != null )
+				handle.getViewerPanel().requestRepaint();
+		}
+	}
+}
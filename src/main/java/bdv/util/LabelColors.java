@@ -0,0 +1,651 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+import org.scijava.listeners.Listeners;
+
+/**
+ * Maps {@code long} labels to ARGB colors, for displaying label images (e.g.,
+ * {@code uint64} segmentations) with
+ * {@link BdvFunctions#showLabels(net.imglib2.RandomAccessibleInterval, String, BdvOptions)}.
+ * <p>
+ * Explicitly assigned colors are stored in a primitive {@code long} hash
+ * table. Labels without an assigned color get a deterministic color computed
+ * from a hash of the label (and {@link #setSeed(long) seed}), so arbitrarily
+ * many distinct labels can be shown without storing anything per label. The
+ * {@link #setBackgroundLabel(long) background label} and
+ * {@link #hide(long...) hidden} labels are transparent. If any labels are
+ * {@link #highlight(long...) highlighted}, all other labels are dimmed.
+ * <p>
+ * {@link #argb(long)} is called for every rendered pixel, concurrently from
+ * several rendering threads. Modifications update the table in place under
+ * the write lock of a {@link StampedLock}. Lookups read the table
+ * optimistically, without locking, and only take the read lock if a
+ * modification happened meanwhile. Every modification increments the
+ * {@link #getModCount() modification count} and notifies the
+ * {@link #changeListeners() listeners}, such that renderings can be
+ * invalidated. Use the bulk methods (e.g. {@link #setColors(long[], int[])})
+ * to modify many labels at once.
+ */
+public class LabelColors
+{
+	public interface ChangeListener
+	{
+		void labelColorsChanged();
+	}
+
+	/**
+	 * Color value that stands for "no assigned color".
+	 */
+	private static final int NO_COLOR = 0;
+
+	/**
+	 * Table entries hold the assigned color in the lower 32 bits, and the
+	 * {@link #HIDDEN} and {@link #HIGHLIGHTED} flags above.
+	 */
+	private static final long COLOR_BITS = 0xffffffffL;
+
+	private static final long HIDDEN = 1L << 32;
+
+	private static final long HIGHLIGHTED = 1L << 33;
+
+	private final StampedLock lock;
+
+	/**
+	 * Entries for labels with assigned color, or hidden or highlighted.
+	 * Modified while holding the write lock of {@link #lock}, read
+	 * optimistically.
+	 */
+	private Table table;
+
+	/**
+	 * Number of highlighted labels. Guarded like {@link #table}.
+	 */
+	private int numHighlighted;
+
+	/**
+	 * Whether {@link #table} is empty. Updated while holding the write lock.
+	 */
+	private volatile boolean empty;
+
+	private final AtomicLong modCount;
+
+	private volatile long backgroundLabel;
+
+	private volatile long seed;
+
+	private volatile int dimmedAlpha;
+
+	private final Listeners.List< ChangeListener > listeners;
+
+	public LabelColors()
+	{
+		lock = new StampedLock();
+		table = new Table( 16 );
+		numHighlighted = 0;
+		empty = true;
+		modCount = new AtomicLong();
+		backgroundLabel = 0;
+		seed = 0;
+		dimmedAlpha = 64;
+		listeners = new Listeners.SynchronizedList<>();
+	}
+
+	/**
+	 * Get the ARGB color to display for the given label.
+	 */
+	public int argb( final long label )
+	{
+		if ( label == backgroundLabel )
+			return 0;
+
+		if ( empty )
+			return hashColor( label, seed );
+
+		long stamp = lock.tryOptimisticRead();
+		long entry = table.get( label );
+		boolean dimmed = numHighlighted != 0;
+		if ( !lock.validate( stamp ) )
+		{
+			stamp = lock.readLock();
+			try
+			{
+				entry = table.get( label );
+				dimmed = numHighlighted != 0;
+			}
+			finally
+			{
+				lock.unlockRead( stamp );
+			}
+		}
+
+		if ( ( entry & HIDDEN ) != 0 )
+			return 0;
+
+		int argb = ( int ) ( entry & COLOR_BITS );
+		if ( argb == NO_COLOR )
+			argb = hashColor( label, seed );
+
+		if ( dimmed && ( entry & HIGHLIGHTED ) == 0 )
+			argb = dim( argb, dimmedAlpha );
+
+		return argb;
+	}
+
+	/**
+	 * Get the modification count. It is incremented by every modification,
+	 * so renderings of the label colors are outdated if it changed.
+	 */
+	public long getModCount()
+	{
+		return modCount.get();
+	}
+
+	/**
+	 * Assign a color to a label. Assigning {@code 0} removes the color, i.e.,
+	 * the label will be displayed with its hash color. (Use
+	 * {@link #hide(long...)} to make labels transparent.)
+	 */
+	public void setColor( final long label, final int argb )
+	{
+		setColors( new long[] { label }, new int[] { argb } );
+	}
+
+	/**
+	 * Assign colors to many labels at once.
+	 *
+	 * @param labels
+	 *            labels to assign colors to.
+	 * @param argbs
+	 *            ARGB colors, {@code argbs[i]} is assigned to
+	 *            {@code labels[i]}.
+	 */
+	public void setColors( final long[] labels, final int[] argbs )
+	{
+		if ( labels.length != argbs.length )
+			throw new IllegalArgumentException( "labels and colors must have the same length" );
+		final long stamp = lock.writeLock();
+		try
+		{
+			for ( int i = 0; i < labels.length; ++i )
+				update( labels[ i ], COLOR_BITS, argbs[ i ] & COLOR_BITS );
+			modified();
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+		notifyListeners();
+	}
+
+	/**
+	 * Remove all assigned colors.
+	 */
+	public void clearColors()
+	{
+		clearAll( COLOR_BITS );
+	}
+
+	/**
+	 * Highlight the given labels, replacing the previous highlight. While any
+	 * labels are highlighted, all other labels are dimmed.
+	 */
+	public void highlight( final long... labels )
+	{
+		final long stamp = lock.writeLock();
+		try
+		{
+			if ( numHighlighted != 0 )
+				retain( ~HIGHLIGHTED );
+			for ( final long label : labels )
+				update( label, 0, HIGHLIGHTED );
+			modified();
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+		notifyListeners();
+	}
+
+	public void clearHighlight()
+	{
+		highlight();
+	}
+
+	public boolean isHighlighted( final long label )
+	{
+		return ( entry( label ) & HIGHLIGHTED ) != 0;
+	}
+
+	/**
+	 * Hide the given labels (in addition to already hidden labels).
+	 */
+	public void hide( final long... labels )
+	{
+		final long stamp = lock.writeLock();
+		try
+		{
+			for ( final long label : labels )
+				update( label, 0, HIDDEN );
+			modified();
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+		notifyListeners();
+	}
+
+	/**
+	 * Un-hide the given labels.
+	 */
+	public void unhide( final long... labels )
+	{
+		final long stamp = lock.writeLock();
+		try
+		{
+			for ( final long label : labels )
+				update( label, HIDDEN, 0 );
+			modified();
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+		notifyListeners();
+	}
+
+	public void clearHidden()
+	{
+		clearAll( HIDDEN );
+	}
+
+	public boolean isHidden( final long label )
+	{
+		return ( entry( label ) & HIDDEN ) != 0;
+	}
+
+	/**
+	 * Set the label that is displayed transparent. Default is {@code 0}.
+	 */
+	public void setBackgroundLabel( final long label )
+	{
+		backgroundLabel = label;
+		notifyListeners();
+	}
+
+	public long getBackgroundLabel()
+	{
+		return backgroundLabel;
+	}
+
+	/**
+	 * Set the seed for computing colors of labels without assigned color.
+	 * Changing the seed shuffles all hash colors.
+	 */
+	public void setSeed( final long seed )
+	{
+		this.seed = seed;
+		notifyListeners();
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+
+	/**
+	 * Set the intensity of labels that are not highlighted (while other labels
+	 * are highlighted).
+	 *
+	 * @param alpha
+	 *            intensity in {@code [0, 255]}. {@code 0} makes labels that are
+	 *            not highlighted invisible, {@code 255} doesn't dim them at
+	 *            all.
+	 */
+	public void setDimmedAlpha( final int alpha )
+	{
+		dimmedAlpha = Math.max( 0, Math.min( 255, alpha ) );
+		notifyListeners();
+	}
+
+	public int getDimmedAlpha()
+	{
+		return dimmedAlpha;
+	}
+
+	public Listeners< ChangeListener > changeListeners()
+	{
+		return listeners;
+	}
+
+	/**
+	 * Get the table entry of {@code label}, or {@code 0} if there is none.
+	 */
+	private long entry( final long label )
+	{
+		long stamp = lock.tryOptimisticRead();
+		final long entry = table.get( label );
+		if ( lock.validate( stamp ) )
+			return entry;
+
+		stamp = lock.readLock();
+		try
+		{
+			return table.get( label );
+		}
+		finally
+		{
+			lock.unlockRead( stamp );
+		}
+	}
+
+	/**
+	 * Clear the {@code clear} bits of the entry of {@code label} and set the
+	 * {@code set} bits. Must be called while holding the write lock.
+	 */
+	private void update( final long label, final long clear, final long set )
+	{
+		final int slot = table.find( label );
+		final long previous = slot < 0 ? 0 : table.values[ slot ];
+		final long entry = ( previous & ~clear ) | set;
+		if ( entry == previous )
+			return;
+
+		if ( ( previous & HIGHLIGHTED ) != ( entry & HIGHLIGHTED ) )
+			numHighlighted += ( entry & HIGHLIGHTED ) != 0 ? 1 : -1;
+
+		if ( slot >= 0 )
+		{
+			if ( entry == 0 )
+				table.remove( slot );
+			else
+				table.values[ slot ] = entry;
+		}
+		else
+		{
+			if ( !table.hasRoomForOneMore() )
+				table = table.resize( 2 * table.capacity() );
+			table.put( label, entry );
+		}
+	}
+
+	/**
+	 * Clear the {@code clear} bits of all entries.
+	 */
+	private void clearAll( final long clear )
+	{
+		final long stamp = lock.writeLock();
+		try
+		{
+			retain( ~clear );
+			modified();
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+		notifyListeners();
+	}
+
+	/**
+	 * Replace {@link #table} by a copy with only the {@code keep} bits of all
+	 * entries. Must be called while holding the write lock.
+	 */
+	private void retain( final long keep )
+	{
+		final Table previous = table;
+		int size = 0;
+		for ( int i = 0; i < previous.capacity(); ++i )
+			if ( ( previous.values[ i ] & keep ) != 0 )
+				++size;
+		final Table retained = new Table( Table.capacityFor( size ) );
+		numHighlighted = 0;
+		for ( int i = 0; i < previous.capacity(); ++i )
+		{
+			final long entry = previous.values[ i ] & keep;
+			if ( entry != 0 )
+			{
+				retained.put( previous.keys[ i ], entry );
+				if ( ( entry & HIGHLIGHTED ) != 0 )
+					++numHighlighted;
+			}
+		}
+		table = retained;
+	}
+
+	/**
+	 * Update {@link #empty} after modifying the table. Must be called while
+	 * holding the write lock.
+	 */
+	private void modified()
+	{
+		empty = table.size == 0;
+	}
+
+	private void notifyListeners()
+	{
+		modCount.incrementAndGet();
+		listeners.list.forEach( ChangeListener::labelColorsChanged );
+	}
+
+	/**
+	 * Open addressing hash table with linear probing, from {@code long} labels
+	 * to non-zero {@code long} entries. Slots with entry {@code 0} are free.
+	 * <p>
+	 * A table is only modified in place, while holding the write lock. To
+	 * grow, it is replaced by a resized copy. Therefore, optimistic readers
+	 * always see arrays of the same, fixed length, and lookups terminate
+	 * without exceptions even while a writer modifies the table. (Their
+	 * result is then discarded because the stamp doesn't validate.)
+	 */
+	private static final class Table
+	{
+		final long[] keys;
+
+		final long[] values;
+
+		final int mask;
+
+		int size;
+
+		/**
+		 * @param capacity
+		 *            a power of two.
+		 */
+		Table( final int capacity )
+		{
+			keys = new long[ capacity ];
+			values = new long[ capacity ];
+			mask = capacity - 1;
+			size = 0;
+		}
+
+		/**
+		 * Smallest power-of-two capacity with load factor at most 1/2.
+		 */
+		static int capacityFor( final int size )
+		{
+			return Math.max( 16, Integer.highestOneBit( Math.max( 1, 2 * size ) - 1 ) << 1 );
+		}
+
+		int capacity()
+		{
+			return keys.length;
+		}
+
+		boolean hasRoomForOneMore()
+		{
+			return 2 * ( size + 1 ) <= keys.length;
+		}
+
+		Table resize( final int capacity )
+		{
+			final Table resized = new Table( capacity );
+			for ( int i = 0; i < keys.length; ++i )
+				if ( values[ i ] != 0 )
+					resized.put( keys[ i ], values[ i ] );
+			return resized;
+		}
+
+		static int hash( final long key )
+		{
+			final long h = key * 0x9e3779b97f4a7c15L;
+			return ( int ) ( h ^ ( h >>> 32 ) );
+		}
+
+		/**
+		 * Get the entry of {@code key}, or {@code 0} if there is none.
+		 */
+		long get( final long key )
+		{
+			for ( int i = hash( key ) & mask, n = 0; n <= mask; i = ( i + 1 ) & mask, ++n )
+			{
+				final long value = values[ i ];
+				if ( value == 0 )
+					return 0;
+				if ( keys[ i ] == key )
+					return value;
+			}
+			return 0;
+		}
+
+		/**
+		 * Get the slot of {@code key}, or {@code -1} if there is none.
+		 */
+		int find( final long key )
+		{
+			for ( int i = hash( key ) & mask;; i = ( i + 1 ) & mask )
+			{
+				if ( values[ i ] == 0 )
+					return -1;
+				if ( keys[ i ] == key )
+					return i;
+			}
+		}
+
+		/**
+		 * Put a new non-zero {@code value}. {@code key} must not be in the
+		 * table yet, and there must be room for one more.
+		 */
+		void put( final long key, final long value )
+		{
+			int i = hash( key ) & mask;
+			while ( values[ i ] != 0 )
+				i = ( i + 1 ) & mask;
+			keys[ i ] = key;
+			values[ i ] = value;
+			++size;
+		}
+
+		/**
+		 * Remove the entry in {@code slot}, shifting back following entries
+		 * of the same probe sequence.
+		 */
+		void remove( final int slot )
+		{
+			int free = slot;
+			for ( int i = ( slot + 1 ) & mask; values[ i ] != 0; i = ( i + 1 ) & mask )
+			{
+				final int home = hash( keys[ i ] ) & mask;
+				// move entry i into the free slot, unless its home slot lies
+				// cyclically in (slot, i]
+				final boolean stays = free <= i
+						? ( free < home && home <= i )
+						: ( free < home || home <= i );
+				if ( !stays )
+				{
+					keys[ free ] = keys[ i ];
+					values[ free ] = values[ i ];
+					free = i;
+				}
+			}
+			values[ free ] = 0;
+			--size;
+		}
+	}
+
+	/**
+	 * Compute a deterministic, saturated color for {@code label}.
+	 */
+	static int hashColor( final long label, final long seed )
+	{
+		long h = ( label ^ seed ) * 0x9e3779b97f4a7c15L;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+
+		final double hue = ( h >>> 40 ) * ( 6.0 / ( 1 << 24 ) );
+		final double s = 0.6 + 0.4 * ( ( h >>> 8 ) & 0xff ) / 255.0;
+		final double v = 0.75 + 0.25 * ( h & 0xff ) / 255.0;
+
+		final int i = ( int ) hue;
+		final double f = hue - i;
+		final double p = v * ( 1 - s );
+		final double q = v * ( 1 - s * f );
+		final double t = v * ( 1 - s * ( 1 - f ) );
+		final double r, g, b;
+		switch ( i )
+		{
+		case 0:
+			r = v; g = t; b = p;
+			break;
+		case 1:
+			r = q; g = v; b = p;
+			break;
+		case 2:
+			r = p; g = v; b = t;
+			break;
+		case 3:
+			r = p; g = q; b = v;
+			break;
+		case 4:
+			r = t; g = p; b = v;
+			break;
+		default:
+			r = v; g = p; b = q;
+			break;
+		}
+		return 0xff000000 | ( ( int ) ( r * 255 ) << 16 ) | ( ( int ) ( g * 255 ) << 8 ) | ( int ) ( b * 255 );
+	}
+
+	private static int dim( final int argb, final int alpha )
+	{
+		final int r = ( ( ( argb >> 16 ) & 0xff ) * alpha ) / 255;
+		final int g = ( ( ( argb >> 8 ) & 0xff ) * alpha ) / 255;
+		final int b = ( ( argb & 0xff ) * alpha ) / 255;
+		return ( alpha << 24 ) | ( r << 16 ) | ( g << 8 ) | b;
+	}
+}
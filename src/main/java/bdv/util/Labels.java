@@ -0,0 +1,206 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bdv.BigDataViewer;
+import bdv.tools.brightness.ConverterSetup;
+import bdv.util.volatiles.VolatileView;
+import bdv.util.volatiles.VolatileViewData;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import bdv.viewer.SourceAndConverter;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.converter.Converter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.util.Util;
+
+/**
+ * Show label images (e.g., {@code uint64} segmentations) with colors looked up
+ * in {@link LabelColors}, instead of treating labels as intensities.
+ * <p>
+ * Label images are always rendered with nearest-neighbor interpolation. Both
+ * {@link IntegerType} images and {@link Volatile} views of them (see
+ * {@link bdv.util.volatiles.VolatileViews}) are supported. For the latter,
+ * pixels that are not loaded yet are transparent.
+ */
+public class Labels
+{
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	static < T > BdvLabelSource< T > show(
+			final RandomAccessibleInterval< T > img,
+			final String name,
+			final BdvOptions options )
+	{
+		final Bdv bdv = options.values.addTo();
+		final BdvHandle handle = ( bdv == null )
+				? new BdvHandleFrame( options )
+				: bdv.getBdvHandle();
+		final AxisOrder axisOrder = AxisOrder.getAxisOrder( options.values.axisOrder(), img, handle.is2D() );
+		final AffineTransform3D sourceTransform = options.values.getSourceTransform();
+		final RandomAccessibleInterval< T > shown;
+		final T type;
+		final VolatileViewData< ?, ? > viewData;
+		if ( img instanceof VolatileView )
+		{
+			viewData = handle.attachVolatileView( ( ( VolatileView< ?, ? > ) img ).getVolatileViewData() );
+			shown = ( RandomAccessibleInterval< T > ) viewData.getImg();
+			type = ( T ) viewData.getVolatileType();
+		}
+		else
+		{
+			viewData = null;
+			shown = img;
+			type = Util.getTypeFromInterval( img );
+		}
+
+		final LabelColors colors = new LabelColors();
+		final Converter< T, ARGBType > converter = createConverter( type, colors );
+
+		final AxisSpec axisSpec = options.values.axisSpec();
+		final RandomAccessibleInterval< T > permuted = axisSpec == null ? shown : axisSpec.permute( shown );
+
+		final List< ConverterSetup > converterSetups = new ArrayList<>();
+		final List< SourceAndConverter< T > > sources = new ArrayList<>();
+		int numTimepoints = 1;
+		for ( final RandomAccessibleInterval< T > stack : AxisOrder.splitInputStackIntoSourceStacks( permuted, axisOrder ) )
+		{
+			final Source< T > s;
+			if ( stack.numDimensions() > 3 )
+			{
+				numTimepoints = ( int ) stack.max( 3 ) + 1;
+				s = new LabelSource4D( stack, ( NumericType ) type, sourceTransform, name );
+			}
+			else
+				s = new LabelSource( stack, ( NumericType ) type, sourceTransform, name );
+			final SourceAndConverter< T > soc = BigDataViewer.wrapWithTransformedSource( new SourceAndConverter<>( s, converter ) );
+			converterSetups.add( new PlaceHolderConverterSetup( handle.getUnusedSetupId(), 0, 255, new ARGBType( 0xffffffff ) ) );
+			sources.add( soc );
+		}
+		handle.add( converterSetups, sources, numTimepoints );
+		if ( viewData != null )
+			handle.addVolatileSources( sources, viewData );
+
+		final BdvLabelSource< T > bdvSource = new BdvLabelSource<>( handle, numTimepoints, type, converterSetups, sources, colors );
+		handle.addBdvSource( bdvSource );
+		return bdvSource;
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static < T > Converter< T, ARGBType > createConverter( final T type, final LabelColors colors )
+	{
+		if ( type instanceof IntegerType )
+			return ( Converter ) new LabelConverter( colors );
+		if ( type instanceof Volatile && ( ( Volatile< ? > ) type ).get() instanceof IntegerType )
+			return ( Converter ) new VolatileLabelConverter( colors );
+		throw new IllegalArgumentException( "Unknown label type. Expected IntegerType or Volatile IntegerType" );
+	}
+
+	static class LabelConverter< T extends IntegerType< T > > implements Converter< T, ARGBType >
+	{
+		private final LabelColors colors;
+
+		LabelConverter( final LabelColors colors )
+		{
+			this.colors = colors;
+		}
+
+		@Override
+		public void convert( final T input, final ARGBType output )
+		{
+			output.set( colors.argb( input.getIntegerLong() ) );
+		}
+	}
+
+	static class VolatileLabelConverter< T extends IntegerType< T >, V extends Volatile< T > > implements Converter< V, ARGBType >
+	{
+		private final LabelColors colors;
+
+		VolatileLabelConverter( final LabelColors colors )
+		{
+			this.colors = colors;
+		}
+
+		@Override
+		public void convert( final V input, final ARGBType output )
+		{
+			output.set( input.isValid() ? colors.argb( input.get().getIntegerLong() ) : 0 );
+		}
+	}
+
+	/**
+	 * A 3D label source that always uses nearest-neighbor interpolation.
+	 */
+	static class LabelSource< T extends NumericType< T > > extends RandomAccessibleIntervalSource< T >
+	{
+		public LabelSource(
+				final RandomAccessibleInterval< T > img,
+				final T type,
+				final AffineTransform3D sourceTransform,
+				final String name )
+		{
+			super( img, type, sourceTransform, name );
+		}
+
+		@Override
+		public RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
+		{
+			return super.getInterpolatedSource( t, level, Interpolation.NEARESTNEIGHBOR );
+		}
+	}
+
+	/**
+	 * A 4D (XYZT) label source that always uses nearest-neighbor
+	 * interpolation.
+	 */
+	static class LabelSource4D< T extends NumericType< T > > extends RandomAccessibleIntervalSource4D< T >
+	{
+		public LabelSource4D(
+				final RandomAccessibleInterval< T > img,
+				final T type,
+				final AffineTransform3D sourceTransform,
+				final String name )
+		{
+			super( img, type, sourceTransform, name );
+		}
+
+		@Override
+		public RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
+		{
+			return super.getInterpolatedSource( t, level, Interpolation.NEARESTNEIGHBOR );
+		}
+	}
+}
@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Draws the points of a {@link MappedPointsStore}. Only blocks of the store
+ * whose bounding box intersects the visible part of the current slice are
+ * visited, so that only their pages of the mapped file are touched.
+ */
+public class MappedPointsOverlay extends BdvOverlay
+{
+	/**
+	 * Default maximum distance (in screen pixels) from the current slice for
+	 * which points are drawn.
+	 */
+	private static final double DEFAULT_MAX_SLICE_DISTANCE = 10.0;
+
+	private static final double POINT_SIZE = 5.0;
+
+	private static final int MAX_CACHED_COLORS = 1 << 16;
+
+	private final MappedPointsStore store;
+
+	private volatile double maxSliceDistance = DEFAULT_MAX_SLICE_DISTANCE;
+
+	private int canvasWidth;
+
+	private int canvasHeight;
+
+	private final Color[] colors = new Color[ 256 ];
+
+	private int colorsArgb;
+
+	private final TIntObjectHashMap< Color > pointColors = new TIntObjectHashMap<>();
+
+	private final AffineTransform3D transform = new AffineTransform3D();
+
+	private final double[] lPos = new double[ 3 ];
+
+	private final double[] gPos = new double[ 3 ];
+
+	private final double[] bbMin = new double[ 3 ];
+
+	private final double[] bbMax = new double[ 3 ];
+
+	public MappedPointsOverlay( final MappedPointsStore store )
+	{
+		this.store = store;
+	}
+
+	public MappedPointsStore getStore()
+	{
+		return store;
+	}
+
+	/**
+	 * Set the maximum distance (in screen pixels) from the current slice for
+	 * which points are drawn. By default, this is {@code 10}. Larger distances
+	 * touch more blocks of the mapped file.
+	 */
+	public void setMaxSliceDistance( final double distance )
+	{
+		maxSliceDistance = distance;
+		invalidate();
+	}
+
+	public double getMaxSliceDistance()
+	{
+		return maxSliceDistance;
+	}
+
+	@Override
+	public void setCanvasSize( final int width, final int height )
+	{
+		super.setCanvasSize( width, height );
+		canvasWidth = width;
+		canvasHeight = height;
+	}
+
+	@Override
+	protected long getModificationCount()
+	{
+		return store.modCount();
+	}
+
+	/**
+	 * Returns the bounding box of the blocks of the main file, or {@code null}
+	 * if points have been added since it was written.
+	 */
+	@Override
+	protected RealInterval getSourceBounds()
+	{
+		synchronized ( store )
+		{
+			if ( store.appended().size() > 0 || store.edited().size() > 0 )
+				return null;
+			final int numBlocks = store.numBlocks();
+			if ( numBlocks == 0 )
+				return null;
+			final double[] min = new double[ 3 ];
+			final double[] max = new double[ 3 ];
+			Arrays.fill( min, Double.POSITIVE_INFINITY );
+			Arrays.fill( max, Double.NEGATIVE_INFINITY );
+			for ( int b = 0; b < numBlocks; ++b )
+				store.blockBounds( b, min, max );
+			return new FinalRealInterval( min, max );
+		}
+	}
+
+	@Override
+	protected void draw( final Graphics2D graphics )
+	{
+		if ( canvasWidth <= 0 || canvasHeight <= 0 )
+			return;
+
+		updateColors();
+		getCurrentTransform3D( transform );
+		final double maxDistance = maxSliceDistance;
+		if ( Double.isInfinite( maxDistance ) )
+		{
+			Arrays.fill( bbMin, Double.NEGATIVE_INFINITY );
+			Arrays.fill( bbMax, Double.POSITIVE_INFINITY );
+		}
+		else
+			PointsOverlay.getVisibleBoundingBox( transform, canvasWidth, canvasHeight, POINT_SIZE, maxDistance, bbMin, bbMax );
+		final int t = info.getTimePointIndex();
+
+		synchronized ( store )
+		{
+			final boolean filterTime = store.hasTimepoints();
+			final int numBlocks = store.numBlocks();
+			for ( int b = 0; b < numBlocks; ++b )
+			{
+				if ( !store.blockIntersects( b, bbMin, bbMax ) )
+					continue;
+				final long first = store.blockFirst( b );
+				final long last = first + store.blockCount( b );
+				for ( long i = first; i < last; ++i )
+				{
+					final ByteBuffer chunk = store.chunk( i );
+					final int o = MappedPointsStore.chunkOffset( i );
+					if ( filterTime && chunk.getInt( o + 16 ) != t )
+						continue;
+					if ( store.isEdited( i ) )
+						continue;
+					lPos[ 0 ] = chunk.getFloat( o );
+					lPos[ 1 ] = chunk.getFloat( o + 4 );
+					lPos[ 2 ] = chunk.getFloat( o + 8 );
+					drawPoint( graphics, chunk.getInt( o + 12 ), maxDistance );
+				}
+			}
+			drawPoints( graphics, store.appended(), filterTime, t, maxDistance );
+			drawPoints( graphics, store.edited(), filterTime, t, maxDistance );
+		}
+	}
+
+	private void drawPoints( final Graphics2D graphics, final PointsData points, final boolean filterTime, final int t, final double maxDistance )
+	{
+		final int size = points.size();
+		for ( int i = 0; i < size; ++i )
+		{
+			if ( filterTime && points.getTimepoint( i ) != t )
+				continue;
+			lPos[ 0 ] = points.getX( i );
+			lPos[ 1 ] = points.getY( i );
+			lPos[ 2 ] = points.getZ( i );
+			drawPoint( graphics, points.getColor( i ), maxDistance );
+		}
+	}
+
+	/**
+	 * Draw the point at source position {@link #lPos}.
+	 */
+	private void drawPoint( final Graphics2D graphics, final int argb, final double maxDistance )
+	{
+		transform.apply( lPos, gPos );
+		if ( Math.abs( gPos[ 2 ] ) > maxDistance )
+			return;
+		if ( gPos[ 0 ] < -POINT_SIZE || gPos[ 0 ] > canvasWidth + POINT_SIZE || gPos[ 1 ] < -POINT_SIZE || gPos[ 1 ] > canvasHeight + POINT_SIZE )
+			return;
+		final double size = Math.abs( gPos[ 2 ] ) < 3 ? POINT_SIZE : 0.6 * POINT_SIZE;
+		final int x = ( int ) ( gPos[ 0 ] - 0.5 * size );
+		final int y = ( int ) ( gPos[ 1 ] - 0.5 * size );
+		final int alpha = Math.max( 64, 255 - ( int ) Math.round( Math.abs( gPos[ 2 ] ) ) );
+		graphics.setColor( argb == 0 ? colors[ alpha ] : getColor( alpha, argb ) );
+		graphics.fillOval( x, y, ( int ) size, ( int ) size );
+	}
+
+	private void updateColors()
+	{
+		final int argb = info.getColor().get();
+		if ( colors[ 255 ] == null || argb != colorsArgb )
+		{
+			final Color col = new Color( argb );
+			for ( int alpha = 0; alpha < 256; ++alpha )
+				colors[ alpha ] = new Color( col.getRed(), col.getGreen(), col.getBlue(), alpha );
+			colorsArgb = argb;
+		}
+	}
+
+	private Color getColor( final int alpha, final int argb )
+	{
+		final int key = ( alpha << 24 ) | ( argb & 0x00ffffff );
+		Color color = pointColors.get( key );
+		if ( color == null )
+		{
+			if ( pointColors.size() >= MAX_CACHED_COLORS )
+				pointColors.clear();
+			color = new Color( key, true );
+			pointColors.put( key, color );
+		}
+		return color;
+	}
+}
@@ -0,0 +1,836 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * A point store backed by a memory-mapped binary file, for point sets that
+ * are too large to be held on the heap. Points can be shown with
+ * {@link BdvFunctions#showPoints(MappedPointsStore, String, BdvOptions)}.
+ * <p>
+ * The file contains fixed-stride records ({@code float x, y, z; int argb;
+ * int timepoint}), sorted into spatial blocks, and a table with the record
+ * range and bounding box of each block. Only the pages of blocks near the
+ * visible part of the current slice are touched when drawing.
+ * <p>
+ * Added and modified points are appended to a write-ahead segment (a file
+ * next to the store with suffix {@code .wal}) and kept on the heap. When the
+ * store is opened, the write-ahead segment is replayed. {@link #compact()}
+ * merges the write-ahead segment into the main file.
+ * <p>
+ * The main file and the write-ahead segment carry a generation number, which
+ * {@link #compact()} increments. A write-ahead segment is only replayed if
+ * its generation matches that of the main file, so a segment that was
+ * already merged (e.g., if compaction was interrupted after replacing the
+ * main file) is discarded instead of being applied to the re-sorted records.
+ * <p>
+ * Methods are synchronized on the store.
+ */
+public class MappedPointsStore implements Closeable
+{
+	private static final int MAGIC = 0x42445650; // "BDVP"
+
+	private static final int VERSION = 2;
+
+	private static final int WAL_MAGIC = 0x42445657; // "BDVW"
+
+	private static final int HEADER_SIZE = 64;
+
+	/**
+	 * Record size in bytes: {@code float x, y, z; int argb; int timepoint}.
+	 */
+	static final int STRIDE = 20;
+
+	/**
+	 * Block table entry size in bytes:
+	 * {@code long firstRecord; int count; float minX, minY, minZ, maxX, maxY, maxZ}.
+	 */
+	private static final int BLOCK_ENTRY_SIZE = 36;
+
+	/**
+	 * Average number of records per spatial block to aim for.
+	 */
+	private static final int RECORDS_PER_BLOCK = 4096;
+
+	private static final int MAX_BLOCKS = 1 << 20;
+
+	/**
+	 * Number of records per mapped chunk (about 1 GB).
+	 */
+	private static final int CHUNK_RECORDS = ( 1 << 30 ) / STRIDE;
+
+	/**
+	 * Write-ahead segment header size in bytes:
+	 * {@code int magic; int version; long generation}.
+	 */
+	static final int WAL_HEADER_SIZE = 16;
+
+	/**
+	 * Write-ahead entry size in bytes: {@code byte op; long index; record}.
+	 */
+	private static final int WAL_ENTRY_SIZE = 1 + 8 + STRIDE;
+
+	private static final byte WAL_ADD = 1;
+
+	private static final byte WAL_SET = 2;
+
+	private final Path file;
+
+	private final Path walFile;
+
+	private FileChannel channel;
+
+	private FileChannel walChannel;
+
+	private MappedByteBuffer[] chunks;
+
+	private long numRecords;
+
+	/**
+	 * Generation of the main file, incremented by {@link #compact()}.
+	 */
+	private long generation;
+
+	private boolean hasTimepoints;
+
+	private int numTimepoints;
+
+	private int numBlocks;
+
+	private long[] blockFirst;
+
+	private int[] blockCount;
+
+	private float[] blockBounds;
+
+	/**
+	 * Points added after the main file was written.
+	 */
+	private final PointsData appended = new PointsData();
+
+	/**
+	 * Modified versions of records in the main file.
+	 */
+	private final PointsData edited = new PointsData();
+
+	/**
+	 * Maps record index in the main file to index in {@link #edited}.
+	 */
+	private final TLongIntHashMap edits = new TLongIntHashMap( 16, 0.5f, -1, -1 );
+
+	private final ByteBuffer walBuffer = ByteBuffer.allocate( WAL_ENTRY_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+
+	private int modCount;
+
+	private MappedPointsStore( final Path file ) throws IOException
+	{
+		this.file = file;
+		this.walFile = file.resolveSibling( file.getFileName() + ".wal" );
+		openMain();
+		final long walSize = replayWal();
+		if ( walSize < 0 )
+		{
+			// missing, or stale (of an older generation)
+			writeWalHeader( walFile, generation );
+			walChannel = FileChannel.open( walFile, WRITE, APPEND );
+		}
+		else
+		{
+			// drop an incomplete trailing entry (from an interrupted write)
+			walChannel = FileChannel.open( walFile, WRITE, APPEND );
+			walChannel.truncate( walSize );
+		}
+	}
+
+	/**
+	 * Open an existing store and replay its write-ahead segment.
+	 */
+	public static MappedPointsStore open( final Path file ) throws IOException
+	{
+		return new MappedPointsStore( file );
+	}
+
+	/**
+	 * Create a store in {@code file} with the given {@code points}, and open
+	 * it. An existing store in {@code file} is overwritten.
+	 */
+	public static MappedPointsStore create( final Path file, final PointsData points ) throws IOException
+	{
+		write( file, new Records()
+		{
+			@Override
+			public long size()
+			{
+				return points.size();
+			}
+
+			@Override
+			public void get( final long i, final float[] xyz, final int[] attributes )
+			{
+				final int j = ( int ) i;
+				xyz[ 0 ] = points.getX( j );
+				xyz[ 1 ] = points.getY( j );
+				xyz[ 2 ] = points.getZ( j );
+				attributes[ 0 ] = points.getColor( j );
+				attributes[ 1 ] = points.getTimepoint( j );
+			}
+		}, points.hasTimepoints(), 0 );
+		Files.deleteIfExists( file.resolveSibling( file.getFileName() + ".wal" ) );
+		return open( file );
+	}
+
+	/**
+	 * Get the number of points, including added points.
+	 */
+	public synchronized long size()
+	{
+		return numRecords + appended.size();
+	}
+
+	public synchronized boolean hasTimepoints()
+	{
+		return hasTimepoints;
+	}
+
+	/**
+	 * Get the number of timepoints, i.e., one more than the largest timepoint
+	 * of any point.
+	 */
+	public synchronized int numTimepoints()
+	{
+		return numTimepoints;
+	}
+
+	/**
+	 * Append a point.
+	 *
+	 * @return index of the new point
+	 */
+	public synchronized long add( final float x, final float y, final float z, final int argb, final int timepoint ) throws IOException
+	{
+		final long index = size();
+		writeWal( WAL_ADD, index, x, y, z, argb, timepoint );
+		applyAdd( x, y, z, argb, timepoint );
+		return index;
+	}
+
+	/**
+	 * Modify point {@code i}.
+	 */
+	public synchronized void set( final long i, final float x, final float y, final float z, final int argb, final int timepoint ) throws IOException
+	{
+		if ( i < 0 || i >= size() )
+			throw new IndexOutOfBoundsException( "index " + i + " out of bounds for size " + size() );
+		writeWal( WAL_SET, i, x, y, z, argb, timepoint );
+		applySet( i, x, y, z, argb, timepoint );
+	}
+
+	/**
+	 * Get coordinates of point {@code i} into {@code xyz}.
+	 */
+	public synchronized void getPosition( final long i, final float[] xyz )
+	{
+		if ( i >= numRecords )
+		{
+			final int j = ( int ) ( i - numRecords );
+			xyz[ 0 ] = appended.getX( j );
+			xyz[ 1 ] = appended.getY( j );
+			xyz[ 2 ] = appended.getZ( j );
+			return;
+		}
+		final int e = edits.get( i );
+		if ( e >= 0 )
+		{
+			xyz[ 0 ] = edited.getX( e );
+			xyz[ 1 ] = edited.getY( e );
+			xyz[ 2 ] = edited.getZ( e );
+			return;
+		}
+		final ByteBuffer chunk = chunks[ ( int ) ( i / CHUNK_RECORDS ) ];
+		final int o = ( int ) ( i % CHUNK_RECORDS ) * STRIDE;
+		xyz[ 0 ] = chunk.getFloat( o );
+		xyz[ 1 ] = chunk.getFloat( o + 4 );
+		xyz[ 2 ] = chunk.getFloat( o + 8 );
+	}
+
+	public synchronized int getColor( final long i )
+	{
+		if ( i >= numRecords )
+			return appended.getColor( ( int ) ( i - numRecords ) );
+		final int e = edits.get( i );
+		if ( e >= 0 )
+			return edited.getColor( e );
+		return chunks[ ( int ) ( i / CHUNK_RECORDS ) ].getInt( ( int ) ( i % CHUNK_RECORDS ) * STRIDE + 12 );
+	}
+
+	public synchronized int getTimepoint( final long i )
+	{
+		if ( i >= numRecords )
+			return appended.getTimepoint( ( int ) ( i - numRecords ) );
+		final int e = edits.get( i );
+		if ( e >= 0 )
+			return edited.getTimepoint( e );
+		return chunks[ ( int ) ( i / CHUNK_RECORDS ) ].getInt( ( int ) ( i % CHUNK_RECORDS ) * STRIDE + 16 );
+	}
+
+	/**
+	 * Force the write-ahead segment to disk.
+	 */
+	public synchronized void sync() throws IOException
+	{
+		walChannel.force( false );
+	}
+
+	/**
+	 * Rewrite the main file with all added and modified points, and clear the
+	 * write-ahead segment. Point indices may change.
+	 * <p>
+	 * The new main file and an empty write-ahead segment of the next
+	 * generation are written to temporary files first, and then moved into
+	 * place. If this is interrupted between the two moves, the old
+	 * write-ahead segment is discarded when the store is opened, because its
+	 * generation doesn't match.
+	 */
+	public synchronized void compact() throws IOException
+	{
+		final Path tmp = file.resolveSibling( file.getFileName() + ".tmp" );
+		final Path walTmp = walFile.resolveSibling( walFile.getFileName() + ".tmp" );
+		final long nextGeneration = generation + 1;
+		write( tmp, new Records()
+		{
+			@Override
+			public long size()
+			{
+				return MappedPointsStore.this.size();
+			}
+
+			@Override
+			public void get( final long i, final float[] xyz, final int[] attributes )
+			{
+				getPosition( i, xyz );
+				attributes[ 0 ] = getColor( i );
+				attributes[ 1 ] = getTimepoint( i );
+			}
+		}, hasTimepoints, nextGeneration );
+		writeWalHeader( walTmp, nextGeneration );
+
+		closeMain();
+		walChannel.close();
+		walChannel = null;
+		Files.move( tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		Files.move( walTmp, walFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		walChannel = FileChannel.open( walFile, WRITE, APPEND );
+		appended.clear();
+		edited.clear();
+		edits.clear();
+		openMain();
+		++modCount;
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		closeMain();
+		if ( walChannel != null )
+		{
+			walChannel.close();
+			walChannel = null;
+		}
+	}
+
+	/**
+	 * Incremented on every modification.
+	 */
+	synchronized int modCount()
+	{
+		return modCount;
+	}
+
+	long numRecords()
+	{
+		return numRecords;
+	}
+
+	int numBlocks()
+	{
+		return numBlocks;
+	}
+
+	/**
+	 * Whether the bounding box of block {@code b} intersects the box
+	 * {@code [min, max]}.
+	 */
+	boolean blockIntersects( final int b, final double[] min, final double[] max )
+	{
+		final int o = 6 * b;
+		for ( int d = 0; d < 3; ++d )
+			if ( blockBounds[ o + d ] > max[ d ] || blockBounds[ o + 3 + d ] < min[ d ] )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Extend the box {@code [min, max]} to include the bounding box of block
+	 * {@code b}.
+	 */
+	void blockBounds( final int b, final double[] min, final double[] max )
+	{
+		final int o = 6 * b;
+		for ( int d = 0; d < 3; ++d )
+		{
+			min[ d ] = Math.min( min[ d ], blockBounds[ o + d ] );
+			max[ d ] = Math.max( max[ d ], blockBounds[ o + 3 + d ] );
+		}
+	}
+
+	long blockFirst( final int b )
+	{
+		return blockFirst[ b ];
+	}
+
+	int blockCount( final int b )
+	{
+		return blockCount[ b ];
+	}
+
+	/**
+	 * Get the mapped chunk containing main file record {@code i}.
+	 */
+	ByteBuffer chunk( final long i )
+	{
+		return chunks[ ( int ) ( i / CHUNK_RECORDS ) ];
+	}
+
+	/**
+	 * Get the offset in its {@link #chunk(long) chunk} of main file record
+	 * {@code i}.
+	 */
+	static int chunkOffset( final long i )
+	{
+		return ( int ) ( i % CHUNK_RECORDS ) * STRIDE;
+	}
+
+	/**
+	 * Whether main file record {@code i} has been modified.
+	 */
+	boolean isEdited( final long i )
+	{
+		return !edits.isEmpty() && edits.containsKey( i );
+	}
+
+	PointsData appended()
+	{
+		return appended;
+	}
+
+	PointsData edited()
+	{
+		return edited;
+	}
+
+	private void applyAdd( final float x, final float y, final float z, final int argb, final int timepoint )
+	{
+		final int j = appended.add( x, y, z );
+		appended.setColor( j, argb );
+		appended.setTimepoint( j, timepoint );
+		numTimepoints = Math.max( numTimepoints, timepoint + 1 );
+		++modCount;
+	}
+
+	private void applySet( final long i, final float x, final float y, final float z, final int argb, final int timepoint )
+	{
+		final PointsData data;
+		final int j;
+		if ( i >= numRecords )
+		{
+			data = appended;
+			j = ( int ) ( i - numRecords );
+			data.set( j, x, y, z );
+		}
+		else
+		{
+			data = edited;
+			final int e = edits.get( i );
+			if ( e >= 0 )
+			{
+				j = e;
+				data.set( j, x, y, z );
+			}
+			else
+			{
+				j = data.add( x, y, z );
+				edits.put( i, j );
+			}
+		}
+		data.setColor( j, argb );
+		data.setTimepoint( j, timepoint );
+		numTimepoints = Math.max( numTimepoints, timepoint + 1 );
+		++modCount;
+	}
+
+	private void writeWal( final byte op, final long index, final float x, final float y, final float z, final int argb, final int timepoint ) throws IOException
+	{
+		( ( Buffer ) walBuffer ).clear();
+		walBuffer.put( op ).putLong( index ).putFloat( x ).putFloat( y ).putFloat( z ).putInt( argb ).putInt( timepoint );
+		( ( Buffer ) walBuffer ).flip();
+		while ( walBuffer.hasRemaining() )
+			walChannel.write( walBuffer );
+	}
+
+	/**
+	 * Write an empty write-ahead segment of the given {@code generation} to
+	 * {@code path}.
+	 */
+	private static void writeWalHeader( final Path path, final long generation ) throws IOException
+	{
+		try ( final FileChannel out = FileChannel.open( path, CREATE, WRITE, TRUNCATE_EXISTING ) )
+		{
+			final ByteBuffer header = ByteBuffer.allocate( WAL_HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			header.putInt( WAL_MAGIC ).putInt( VERSION ).putLong( generation );
+			( ( Buffer ) header ).flip();
+			writeFully( out, header, 0 );
+			out.force( true );
+		}
+	}
+
+	/**
+	 * Replay the write-ahead segment, if it exists and is of the same
+	 * generation as the main file.
+	 *
+	 * @return the size in bytes of the valid part of the write-ahead segment,
+	 *         or {@code -1} if it is missing or stale
+	 */
+	private long replayWal() throws IOException
+	{
+		if ( !Files.exists( walFile ) )
+			return -1;
+		try ( final FileChannel wal = FileChannel.open( walFile, READ ) )
+		{
+			final ByteBuffer header = ByteBuffer.allocate( WAL_HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			while ( header.hasRemaining() )
+				if ( wal.read( header ) < 0 )
+					break;
+			( ( Buffer ) header ).flip();
+			if ( header.remaining() < WAL_HEADER_SIZE || header.getInt() != WAL_MAGIC || header.getInt() != VERSION )
+				return -1;
+			if ( header.getLong() != generation )
+				return -1;
+
+			long valid = WAL_HEADER_SIZE;
+			final ByteBuffer buffer = ByteBuffer.allocate( WAL_ENTRY_SIZE * 4096 ).order( ByteOrder.LITTLE_ENDIAN );
+			while ( wal.read( buffer ) > 0 || buffer.position() >= WAL_ENTRY_SIZE )
+			{
+				( ( Buffer ) buffer ).flip();
+				while ( buffer.remaining() >= WAL_ENTRY_SIZE )
+				{
+					final byte op = buffer.get();
+					final long index = buffer.getLong();
+					final float x = buffer.getFloat();
+					final float y = buffer.getFloat();
+					final float z = buffer.getFloat();
+					final int argb = buffer.getInt();
+					final int timepoint = buffer.getInt();
+					if ( op == WAL_ADD && index == size() )
+						applyAdd( x, y, z, argb, timepoint );
+					else if ( op == WAL_SET && index >= 0 && index < size() )
+						applySet( index, x, y, z, argb, timepoint );
+					else
+						throw new IOException( walFile + " does not match " + file + " (entry " + ( valid - WAL_HEADER_SIZE ) / WAL_ENTRY_SIZE + ")" );
+					valid += WAL_ENTRY_SIZE;
+				}
+				buffer.compact();
+			}
+			// an incomplete trailing entry (from an interrupted write) is ignored
+			return valid;
+		}
+	}
+
+	private void openMain() throws IOException
+	{
+		channel = FileChannel.open( file, READ );
+		final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+		readFully( channel, header, 0 );
+		( ( Buffer ) header ).flip();
+		if ( header.getInt() != MAGIC )
+			throw new IOException( file + " is not a point store" );
+		final int version = header.getInt();
+		if ( version != VERSION )
+			throw new IOException( "unsupported point store version " + version );
+		numRecords = header.getLong();
+		final int stride = header.getInt();
+		if ( stride != STRIDE )
+			throw new IOException( "unsupported record size " + stride );
+		numBlocks = header.getInt();
+		final long blockTableOffset = header.getLong();
+		numTimepoints = header.getInt();
+		hasTimepoints = header.getInt() != 0;
+		generation = header.getLong();
+
+		final int numChunks = ( int ) ( ( numRecords + CHUNK_RECORDS - 1 ) / CHUNK_RECORDS );
+		chunks = new MappedByteBuffer[ numChunks ];
+		for ( int c = 0; c < numChunks; ++c )
+		{
+			final long first = ( long ) c * CHUNK_RECORDS;
+			final long count = Math.min( CHUNK_RECORDS, numRecords - first );
+			chunks[ c ] = channel.map( FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * STRIDE, count * STRIDE );
+			chunks[ c ].order( ByteOrder.LITTLE_ENDIAN );
+		}
+
+		final ByteBuffer table = ByteBuffer.allocate( numBlocks * BLOCK_ENTRY_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+		readFully( channel, table, blockTableOffset );
+		( ( Buffer ) table ).flip();
+		blockFirst = new long[ numBlocks ];
+		blockCount = new int[ numBlocks ];
+		blockBounds = new float[ 6 * numBlocks ];
+		for ( int b = 0; b < numBlocks; ++b )
+		{
+			blockFirst[ b ] = table.getLong();
+			blockCount[ b ] = table.getInt();
+			for ( int i = 0; i < 6; ++i )
+				blockBounds[ 6 * b + i ] = table.getFloat();
+		}
+	}
+
+	private void closeMain() throws IOException
+	{
+		chunks = new MappedByteBuffer[ 0 ];
+		numRecords = 0;
+		numBlocks = 0;
+		if ( channel != null )
+		{
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Provides records to {@link #write(Path, Records, boolean, long)}.
+	 */
+	private interface Records
+	{
+		long size();
+
+		/**
+		 * Get coordinates and {@code argb, timepoint} of record {@code i}.
+		 */
+		void get( long i, float[] xyz, int[] attributes );
+	}
+
+	/**
+	 * Write a store file. Records are sorted into spatial blocks by a counting
+	 * sort in two passes over {@code records}, so that only per-block counts
+	 * are held on the heap.
+	 */
+	private static void write( final Path file, final Records records, final boolean hasTimepoints, final long generation ) throws IOException
+	{
+		final long n = records.size();
+		final float[] xyz = new float[ 3 ];
+		final int[] attributes = new int[ 2 ];
+
+		// bounds and number of timepoints
+		final double[] min = new double[ 3 ];
+		final double[] max = new double[ 3 ];
+		Arrays.fill( min, Double.POSITIVE_INFINITY );
+		Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		int maxTimepoint = 0;
+		for ( long i = 0; i < n; ++i )
+		{
+			records.get( i, xyz, attributes );
+			for ( int d = 0; d < 3; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], xyz[ d ] );
+				max[ d ] = Math.max( max[ d ], xyz[ d ] );
+			}
+			maxTimepoint = Math.max( maxTimepoint, attributes[ 1 ] );
+		}
+		if ( n == 0 )
+		{
+			Arrays.fill( min, 0 );
+			Arrays.fill( max, 0 );
+		}
+
+		// block grid with cubic cells
+		final int[] dims = new int[ 3 ];
+		double volume = 1;
+		int numNonFlat = 0;
+		for ( int d = 0; d < 3; ++d )
+			if ( max[ d ] > min[ d ] )
+			{
+				volume *= max[ d ] - min[ d ];
+				++numNonFlat;
+			}
+		final long target = Math.max( 1, n / RECORDS_PER_BLOCK );
+		double s = numNonFlat == 0 ? 1 : Math.pow( volume / target, 1.0 / numNonFlat );
+		while ( true )
+		{
+			long numCells = 1;
+			for ( int d = 0; d < 3; ++d )
+			{
+				dims[ d ] = ( int ) Math.min( MAX_BLOCKS, Math.max( 1, ( long ) Math.ceil( ( max[ d ] - min[ d ] ) / s ) ) );
+				numCells *= dims[ d ];
+			}
+			if ( numCells <= MAX_BLOCKS )
+				break;
+			s *= 2;
+		}
+		final double cellSize = s;
+		final int numCells = dims[ 0 ] * dims[ 1 ] * dims[ 2 ];
+
+		// count records per cell
+		final long[] cellStart = new long[ numCells + 1 ];
+		for ( long i = 0; i < n; ++i )
+		{
+			records.get( i, xyz, attributes );
+			++cellStart[ cell( xyz, min, cellSize, dims ) + 1 ];
+		}
+		int numBlocks = 0;
+		for ( int c = 0; c < numCells; ++c )
+		{
+			if ( cellStart[ c + 1 ] > 0 )
+				++numBlocks;
+			cellStart[ c + 1 ] += cellStart[ c ];
+		}
+
+		final long blockTableOffset = HEADER_SIZE + n * STRIDE;
+		final long fileSize = blockTableOffset + ( long ) numBlocks * BLOCK_ENTRY_SIZE;
+		try ( final FileChannel out = FileChannel.open( file, CREATE, READ, WRITE, TRUNCATE_EXISTING ) )
+		{
+			// write records sorted by cell
+			final int numChunks = ( int ) ( ( n + CHUNK_RECORDS - 1 ) / CHUNK_RECORDS );
+			final MappedByteBuffer[] chunks = new MappedByteBuffer[ numChunks ];
+			for ( int c = 0; c < numChunks; ++c )
+			{
+				final long first = ( long ) c * CHUNK_RECORDS;
+				final long count = Math.min( CHUNK_RECORDS, n - first );
+				chunks[ c ] = out.map( FileChannel.MapMode.READ_WRITE, HEADER_SIZE + first * STRIDE, count * STRIDE );
+				chunks[ c ].order( ByteOrder.LITTLE_ENDIAN );
+			}
+			final long[] next = Arrays.copyOf( cellStart, numCells );
+			final float[] bounds = new float[ 6 * numCells ];
+			for ( int c = 0; c < numCells; ++c )
+			{
+				Arrays.fill( bounds, 6 * c, 6 * c + 3, Float.POSITIVE_INFINITY );
+				Arrays.fill( bounds, 6 * c + 3, 6 * c + 6, Float.NEGATIVE_INFINITY );
+			}
+			for ( long i = 0; i < n; ++i )
+			{
+				records.get( i, xyz, attributes );
+				final int c = cell( xyz, min, cellSize, dims );
+				final long j = next[ c ]++;
+				final ByteBuffer chunk = chunks[ ( int ) ( j / CHUNK_RECORDS ) ];
+				final int o = chunkOffset( j );
+				chunk.putFloat( o, xyz[ 0 ] );
+				chunk.putFloat( o + 4, xyz[ 1 ] );
+				chunk.putFloat( o + 8, xyz[ 2 ] );
+				chunk.putInt( o + 12, attributes[ 0 ] );
+				chunk.putInt( o + 16, attributes[ 1 ] );
+				for ( int d = 0; d < 3; ++d )
+				{
+					bounds[ 6 * c + d ] = Math.min( bounds[ 6 * c + d ], xyz[ d ] );
+					bounds[ 6 * c + 3 + d ] = Math.max( bounds[ 6 * c + 3 + d ], xyz[ d ] );
+				}
+			}
+			for ( final MappedByteBuffer chunk : chunks )
+				chunk.force();
+
+			// block table
+			final ByteBuffer table = ByteBuffer.allocate( numBlocks * BLOCK_ENTRY_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			for ( int c = 0; c < numCells; ++c )
+			{
+				final long count = cellStart[ c + 1 ] - cellStart[ c ];
+				if ( count == 0 )
+					continue;
+				table.putLong( cellStart[ c ] ).putInt( ( int ) count );
+				for ( int i = 0; i < 6; ++i )
+					table.putFloat( bounds[ 6 * c + i ] );
+			}
+			( ( Buffer ) table ).flip();
+			writeFully( out, table, blockTableOffset );
+
+			final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+			header.putInt( MAGIC ).putInt( VERSION ).putLong( n ).putInt( STRIDE ).putInt( numBlocks ).putLong( blockTableOffset );
+			header.putInt( maxTimepoint + 1 ).putInt( hasTimepoints ? 1 : 0 ).putLong( generation );
+			( ( Buffer ) header ).position( HEADER_SIZE );
+			( ( Buffer ) header ).flip();
+			writeFully( out, header, 0 );
+			out.truncate( fileSize );
+			out.force( true );
+		}
+	}
+
+	private static int cell( final float[] xyz, final double[] min, final double cellSize, final int[] dims )
+	{
+		int index = 0;
+		for ( int d = 2; d >= 0; --d )
+		{
+			final double c = Math.floor( ( xyz[ d ] - min[ d ] ) / cellSize );
+			final int p = c < 0 ? 0 : c >= dims[ d ] ? dims[ d ] - 1 : ( int ) c;
+			index = index * dims[ d ] + p;
+		}
+		return index;
+	}
+
+	private static void readFully( final FileChannel channel, final ByteBuffer buffer, final long position ) throws IOException
+	{
+		long pos = position;
+		while ( buffer.hasRemaining() )
+		{
+			final int r = channel.read( buffer, pos );
+			if ( r < 0 )
+				throw new IOException( "unexpected end of file" );
+			pos += r;
+		}
+	}
+
+	private static void writeFully( final FileChannel channel, final ByteBuffer buffer, final long position ) throws IOException
+	{
+		long pos = position;
+		while ( buffer.hasRemaining() )
+			pos += channel.write( buffer, pos );
+	}
+}
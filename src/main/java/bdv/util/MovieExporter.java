@@ -0,0 +1,469 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+import bdv.export.ProgressWriter;
+import bdv.viewer.ViewerState;
+import bdv.viewer.animate.SimilarityTransformAnimator;
+import bdv.viewer.render.AccumulateProjectorFactory;
+
+/**
+ * Renders an animation of the sources of a {@link BdvHandle} into a sequence
+ * of frames, for example along a camera path. Frames are rendered in parallel
+ * with fully loaded data and written in order. Rendering a frame waits until
+ * all its data is loaded, also for sources that only exist as volatile views
+ * (see {@link OffscreenRenderer}). If loading takes longer than the
+ * {@link #setLoadTimeout(long, TimeUnit) load timeout}, the incomplete frame
+ * is written, and counted in {@link Metrics#getIncompleteFrames()}.
+ * <p>
+ * Up to {@link #setNumThreads(int) numThreads} frames are rendered
+ * concurrently. Rendered frames wait in a reordering buffer of
+ * {@link #setBufferSize(int) bufferSize} images until all preceding frames
+ * have been written, so memory use is bounded by the buffer size. Frames are
+ * started in order, so neighboring frames are rendered at the same time and
+ * share the data loaded into the cache of the sources.
+ * <p>
+ * Progress and throughput of the running export can be polled from other
+ * threads through {@link #getMetrics()}.
+ */
+public class MovieExporter
+{
+	/**
+	 * Sets up the viewer state for a frame.
+	 */
+	@FunctionalInterface
+	public interface FrameSetup
+	{
+		/**
+		 * Modify {@code state}, a copy of the viewer state at the start of
+		 * the export, for {@code frame}. For example, set the viewer
+		 * transform or the current timepoint.
+		 */
+		void setup( int frame, ViewerState state );
+	}
+
+	/**
+	 * Writes rendered frames. Frames are written in order, from a single
+	 * thread.
+	 */
+	public interface FrameWriter extends Closeable
+	{
+		/**
+		 * Write {@code frame}. The {@code image} is reused after this method
+		 * returns.
+		 */
+		void write( int frame, BufferedImage image ) throws IOException;
+	}
+
+	/**
+	 * Progress and throughput of an export.
+	 */
+	public static class Metrics
+	{
+		private final int numFrames;
+
+		private final long startNanos = System.nanoTime();
+
+		private final AtomicInteger framesRendered = new AtomicInteger();
+
+		private final AtomicInteger framesWritten = new AtomicInteger();
+
+		private final AtomicInteger incompleteFrames = new AtomicInteger();
+
+		private final AtomicLong renderNanos = new AtomicLong();
+
+		private final AtomicLong writeNanos = new AtomicLong();
+
+		private volatile long endNanos = -1;
+
+		Metrics( final int numFrames )
+		{
+			this.numFrames = numFrames;
+		}
+
+		public int getNumFrames()
+		{
+			return numFrames;
+		}
+
+		public int getFramesRendered()
+		{
+			return framesRendered.get();
+		}
+
+		public int getFramesWritten()
+		{
+			return framesWritten.get();
+		}
+
+		/**
+		 * Get the number of frames that were rendered with missing data,
+		 * because loading timed out.
+		 */
+		public int getIncompleteFrames()
+		{
+			return incompleteFrames.get();
+		}
+
+		/**
+		 * Get the number of rendered frames waiting to be written.
+		 */
+		public int getFramesBuffered()
+		{
+			return getFramesRendered() - getFramesWritten();
+		}
+
+		/**
+		 * Get the time since the start of the export, or the duration of the
+		 * export if it is finished.
+		 */
+		public long getElapsedNanos()
+		{
+			final long end = endNanos;
+			return ( end < 0 ? System.nanoTime() : end ) - startNanos;
+		}
+
+		/**
+		 * Get the number of frames written per second.
+		 */
+		public double getFramesPerSecond()
+		{
+			final long elapsed = getElapsedNanos();
+			return elapsed <= 0 ? 0 : getFramesWritten() * 1e9 / elapsed;
+		}
+
+		/**
+		 * Get the mean time (summed over threads) for rendering a frame.
+		 */
+		public double getMeanRenderMillis()
+		{
+			final int n = getFramesRendered();
+			return n == 0 ? 0 : renderNanos.get() / 1e6 / n;
+		}
+
+		/**
+		 * Get the mean time for writing a frame.
+		 */
+		public double getMeanWriteMillis()
+		{
+			final int n = getFramesWritten();
+			return n == 0 ? 0 : writeNanos.get() / 1e6 / n;
+		}
+
+		public boolean isFinished()
+		{
+			return endNanos >= 0;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%d/%d frames written, %.1f fps, render %.1f ms/frame, write %.1f ms/frame",
+					getFramesWritten(), numFrames, getFramesPerSecond(), getMeanRenderMillis(), getMeanWriteMillis() );
+		}
+	}
+
+	private final BdvHandle handle;
+
+	private final int width;
+
+	private final int height;
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	private int bufferSize = 2 * numThreads;
+
+	private ProgressWriter progressWriter;
+
+	private long loadTimeoutMillis = OffscreenRenderer.DEFAULT_LOAD_TIMEOUT_MILLIS;
+
+	private volatile Metrics metrics;
+
+	/**
+	 * Create an exporter for the sources of {@code handle}, rendering frames
+	 * of the given size. Viewer transforms of frames map to screen
+	 * coordinates of this size.
+	 */
+	public MovieExporter( final BdvHandle handle, final int width, final int height )
+	{
+		this.handle = handle;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Set the number of frames rendered in parallel. By default, this is the
+	 * number of available processors.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Set the maximum number of rendered frames held in memory, including
+	 * frames that are being rendered. Values smaller than the number of
+	 * threads are increased to the number of threads.
+	 */
+	public void setBufferSize( final int bufferSize )
+	{
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Set how long rendering a frame waits for its data to load.
+	 */
+	public void setLoadTimeout( final long timeout, final TimeUnit unit )
+	{
+		this.loadTimeoutMillis = unit.toMillis( timeout );
+	}
+
+	/**
+	 * Set a {@link ProgressWriter} that is notified whenever a frame is
+	 * written.
+	 */
+	public void setProgressWriter( final ProgressWriter progressWriter )
+	{
+		this.progressWriter = progressWriter;
+	}
+
+	/**
+	 * Get the metrics of the running or last export, or {@code null} if
+	 * nothing has been exported.
+	 */
+	public Metrics getMetrics()
+	{
+		return metrics;
+	}
+
+	/**
+	 * Export one frame for each viewer transform in {@code viewerTransforms}.
+	 */
+	public Metrics export( final List< AffineTransform3D > viewerTransforms, final FrameWriter writer ) throws IOException, InterruptedException
+	{
+		return export( viewerTransforms.size(), ( frame, state ) -> state.setViewerTransform( viewerTransforms.get( frame ) ), writer );
+	}
+
+	/**
+	 * Export {@code numFrames} frames, with the viewer state of each frame set
+	 * up by {@code frames}. The {@code writer} is closed when the export is
+	 * finished.
+	 */
+	public Metrics export( final int numFrames, final FrameSetup frames, final FrameWriter writer ) throws IOException, InterruptedException
+	{
+		final int numThreads = this.numThreads;
+		final int bufferSize = Math.max( this.bufferSize, numThreads );
+		final Metrics metrics = new Metrics( numFrames );
+		this.metrics = metrics;
+
+		final ViewerState base = handle.getViewerPanel().state().snapshot();
+		final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory = handle.getViewerPanel().getOptionValues().getAccumulateProjectorFactory();
+
+		final ExecutorService renderingExecutorService = Executors.newFixedThreadPool( numThreads, OffscreenRenderer.createThreadFactory() );
+		final ExecutorService frameExecutorService = Executors.newFixedThreadPool( numThreads, OffscreenRenderer.createThreadFactory() );
+		final BlockingQueue< OffscreenRenderer > renderers = new ArrayBlockingQueue<>( numThreads );
+		final List< OffscreenRenderer > allRenderers = new ArrayList<>();
+		for ( int i = 0; i < numThreads; ++i )
+		{
+			final OffscreenRenderer renderer = new OffscreenRenderer( width, height, 1, true, accumulateProjectorFactory, handle.getCacheControls(), renderingExecutorService );
+			renderer.setLoadTimeout( loadTimeoutMillis, TimeUnit.MILLISECONDS );
+			renderers.add( renderer );
+			allRenderers.add( renderer );
+		}
+		final ArrayDeque< BufferedImage > free = new ArrayDeque<>();
+		for ( int i = 0; i < bufferSize; ++i )
+			free.add( new BufferedImage( width, height, BufferedImage.TYPE_INT_ARGB ) );
+
+		// rendering frames, in frame order
+		final ArrayDeque< Future< BufferedImage > > pending = new ArrayDeque<>();
+		try
+		{
+			int next = 0;
+			for ( int frame = 0; frame < numFrames; ++frame )
+			{
+				while ( next < numFrames && !free.isEmpty() )
+				{
+					final int f = next++;
+					final BufferedImage image = free.poll();
+					pending.add( frameExecutorService.submit( () -> {
+						final long t0 = System.nanoTime();
+						final OffscreenRenderer renderer = renderers.take();
+						try
+						{
+							final ViewerState state = base.snapshot();
+							frames.setup( f, state );
+							if ( !renderer.render( state, ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData() ) )
+								metrics.incompleteFrames.incrementAndGet();
+						}
+						finally
+						{
+							renderers.add( renderer );
+						}
+						metrics.renderNanos.addAndGet( System.nanoTime() - t0 );
+						metrics.framesRendered.incrementAndGet();
+						return image;
+					} ) );
+				}
+
+				final BufferedImage image = getResult( pending.poll() );
+				final long t0 = System.nanoTime();
+				writer.write( frame, image );
+				metrics.writeNanos.addAndGet( System.nanoTime() - t0 );
+				metrics.framesWritten.incrementAndGet();
+				free.add( image );
+				if ( progressWriter != null )
+					progressWriter.setProgress( ( double ) ( frame + 1 ) / numFrames );
+			}
+		}
+		finally
+		{
+			metrics.endNanos = System.nanoTime();
+			for ( final Future< BufferedImage > f : pending )
+				f.cancel( true );
+			frameExecutorService.shutdownNow();
+			for ( final OffscreenRenderer renderer : allRenderers )
+				renderer.dispose();
+			renderingExecutorService.shutdownNow();
+			writer.close();
+		}
+		return metrics;
+	}
+
+	private static BufferedImage getResult( final Future< BufferedImage > future ) throws IOException, InterruptedException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new IOException( cause );
+		}
+	}
+
+	/**
+	 * Create viewer transforms for a camera path through {@code keyframes},
+	 * with {@code framesPerTransition} frames from each keyframe to the next.
+	 * Transitions are interpolated as for animated navigation in the viewer,
+	 * rotating and zooming around the center of a {@code width x height}
+	 * screen.
+	 */
+	public static List< AffineTransform3D > cameraPath( final List< AffineTransform3D > keyframes, final int framesPerTransition, final int width, final int height )
+	{
+		final List< AffineTransform3D > path = new ArrayList<>();
+		for ( int k = 0; k + 1 < keyframes.size(); ++k )
+		{
+			final SimilarityTransformAnimator animator = new SimilarityTransformAnimator( keyframes.get( k ), keyframes.get( k + 1 ), 0.5 * width, 0.5 * height, 0 );
+			for ( int i = 0; i < framesPerTransition; ++i )
+				path.add( animator.get( ( double ) i / framesPerTransition ) );
+		}
+		if ( !keyframes.isEmpty() )
+			path.add( keyframes.get( keyframes.size() - 1 ).copy() );
+		return path;
+	}
+
+	/**
+	 * Create a {@link FrameWriter} that writes each frame to a PNG file in
+	 * {@code directory}, named according to {@code pattern}, e.g.,
+	 * {@code "frame-%05d.png"}.
+	 */
+	public static FrameWriter pngWriter( final File directory, final String pattern )
+	{
+		directory.mkdirs();
+		return new FrameWriter()
+		{
+			@Override
+			public void write( final int frame, final BufferedImage image ) throws IOException
+			{
+				ImageIO.write( image, "png", new File( directory, String.format( pattern, frame ) ) );
+			}
+
+			@Override
+			public void close()
+			{}
+		};
+	}
+
+	/**
+	 * Create a {@link FrameWriter} that appends the ARGB pixels of each frame,
+	 * row by row, as big-endian ints to {@code file}.
+	 */
+	public static FrameWriter rawWriter( final File file ) throws IOException
+	{
+		final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), 1 << 20 ) );
+		return new FrameWriter()
+		{
+			@Override
+			public void write( final int frame, final BufferedImage image ) throws IOException
+			{
+				final int[] data = ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData();
+				final int size = image.getWidth() * image.getHeight();
+				for ( int i = 0; i < size; ++i )
+					out.writeInt( data[ i ] );
+			}
+
+			@Override
+			public void close() throws IOException
+			{
+				out.close();
+			}
+		};
+	}
+}
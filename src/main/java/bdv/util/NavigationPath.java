@@ -0,0 +1,178 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * A sequence of viewer transforms and timepoints with time stamps, recorded
+ * by {@link NavigationRecorder} and replayed by {@link NavigationReplay}.
+ * <p>
+ * Paths are saved in a compact binary format: time stamps are stored as
+ * microsecond deltas, the linear part of transforms as {@code float}, the
+ * translation as {@code double}, and the whole stream is gzip-compressed.
+ */
+public class NavigationPath
+{
+	private static final int MAGIC = 0x42445650; // "BDVP"
+
+	private static final int VERSION = 1;
+
+	private int size;
+
+	private long[] times = new long[ 16 ];
+
+	private int[] timepoints = new int[ 16 ];
+
+	private double[] transforms = new double[ 16 * 12 ];
+
+	/**
+	 * Append a sample.
+	 *
+	 * @param timeNanos
+	 *            time stamp in nanoseconds, relative to the start of the path.
+	 *            Time stamps must not decrease.
+	 */
+	public void add( final long timeNanos, final AffineTransform3D transform, final int timepoint )
+	{
+		if ( size > 0 && timeNanos < times[ size - 1 ] )
+			throw new IllegalArgumentException( "time stamps must not decrease" );
+		if ( size == times.length )
+		{
+			final int capacity = 2 * size;
+			times = Arrays.copyOf( times, capacity );
+			timepoints = Arrays.copyOf( timepoints, capacity );
+			transforms = Arrays.copyOf( transforms, 12 * capacity );
+		}
+		times[ size ] = timeNanos;
+		timepoints[ size ] = timepoint;
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 4; ++c )
+				transforms[ 12 * size + 4 * r + c ] = transform.get( r, c );
+		++size;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Get the time stamp of sample {@code i} in nanoseconds.
+	 */
+	public long getTimeNanos( final int i )
+	{
+		return times[ i ];
+	}
+
+	public int getTimepoint( final int i )
+	{
+		return timepoints[ i ];
+	}
+
+	public void getTransform( final int i, final AffineTransform3D transform )
+	{
+		for ( int r = 0; r < 3; ++r )
+			for ( int c = 0; c < 4; ++c )
+				transform.set( transforms[ 12 * i + 4 * r + c ], r, c );
+	}
+
+	/**
+	 * Get the duration of the path in nanoseconds.
+	 */
+	public long getDurationNanos()
+	{
+		return size == 0 ? 0 : times[ size - 1 ];
+	}
+
+	public void save( final File file ) throws IOException
+	{
+		try ( final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new GZIPOutputStream( new FileOutputStream( file ) ) ) ) )
+		{
+			out.writeInt( MAGIC );
+			out.writeInt( VERSION );
+			out.writeInt( size );
+			long previousMicros = 0;
+			for ( int i = 0; i < size; ++i )
+			{
+				final long micros = times[ i ] / 1000;
+				out.writeInt( ( int ) Math.min( micros - previousMicros, Integer.MAX_VALUE ) );
+				previousMicros = micros;
+				out.writeInt( timepoints[ i ] );
+				for ( int r = 0; r < 3; ++r )
+				{
+					for ( int c = 0; c < 3; ++c )
+						out.writeFloat( ( float ) transforms[ 12 * i + 4 * r + c ] );
+					out.writeDouble( transforms[ 12 * i + 4 * r + 3 ] );
+				}
+			}
+		}
+	}
+
+	public static NavigationPath load( final File file ) throws IOException
+	{
+		try ( final DataInputStream in = new DataInputStream( new BufferedInputStream( new GZIPInputStream( new FileInputStream( file ) ) ) ) )
+		{
+			if ( in.readInt() != MAGIC )
+				throw new IOException( "not a navigation path: " + file );
+			final int version = in.readInt();
+			if ( version != VERSION )
+				throw new IOException( "unsupported navigation path version " + version );
+			final int n = in.readInt();
+			final NavigationPath path = new NavigationPath();
+			final AffineTransform3D transform = new AffineTransform3D();
+			long micros = 0;
+			for ( int i = 0; i < n; ++i )
+			{
+				micros += in.readInt();
+				final int timepoint = in.readInt();
+				for ( int r = 0; r < 3; ++r )
+				{
+					for ( int c = 0; c < 3; ++c )
+						transform.set( in.readFloat(), r, c );
+					transform.set( in.readDouble(), r, 3 );
+				}
+				path.add( micros * 1000, transform, timepoint );
+			}
+			return path;
+		}
+	}
+}
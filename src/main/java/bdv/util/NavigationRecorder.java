@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import bdv.viewer.TimePointListener;
+import bdv.viewer.TransformListener;
+import bdv.viewer.ViewerPanel;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Records the viewer transforms and timepoints of a live {@link BdvHandle}
+ * into a {@link NavigationPath}, for replaying with {@link NavigationReplay}.
+ * <p>
+ * Example:
+ *
+ * <pre>
+ * final NavigationRecorder recorder = new NavigationRecorder( bdv.getBdvHandle() );
+ * recorder.start();
+ * // ... navigate ...
+ * recorder.stop().save( new File( "path.bdvp" ) );
+ * </pre>
+ */
+public class NavigationRecorder implements TransformListener< AffineTransform3D >, TimePointListener
+{
+	private final BdvHandle handle;
+
+	private final AffineTransform3D transform = new AffineTransform3D();
+
+	private NavigationPath path;
+
+	private long startNanos;
+
+	public NavigationRecorder( final BdvHandle handle )
+	{
+		this.handle = handle;
+	}
+
+	/**
+	 * Start recording a new path, beginning with the current view.
+	 */
+	public synchronized void start()
+	{
+		if ( path != null )
+			throw new IllegalStateException( "already recording" );
+		final ViewerPanel viewer = handle.getViewerPanel();
+		path = new NavigationPath();
+		startNanos = System.nanoTime();
+		transform.set( viewer.state().getViewerTransform() );
+		path.add( 0, transform, viewer.state().getCurrentTimepoint() );
+		viewer.addTransformListener( this );
+		viewer.addTimePointListener( this );
+	}
+
+	/**
+	 * Stop recording, and return the recorded path.
+	 */
+	public synchronized NavigationPath stop()
+	{
+		if ( path == null )
+			throw new IllegalStateException( "not recording" );
+		final ViewerPanel viewer = handle.getViewerPanel();
+		if ( viewer != null )
+		{
+			viewer.removeTransformListener( this );
+			viewer.removeTimePointListener( this );
+		}
+		final NavigationPath recorded = path;
+		path = null;
+		return recorded;
+	}
+
+	public synchronized boolean isRecording()
+	{
+		return path != null;
+	}
+
+	@Override
+	public void transformChanged( final AffineTransform3D t )
+	{
+		record();
+	}
+
+	@Override
+	public void timePointChanged( final int timePointIndex )
+	{
+		record();
+	}
+
+	private synchronized void record()
+	{
+		final ViewerPanel viewer = handle.getViewerPanel();
+		if ( path == null || viewer == null )
+			return;
+		transform.set( viewer.state().getViewerTransform() );
+		path.add( System.nanoTime() - startNanos, transform, viewer.state().getCurrentTimepoint() );
+	}
+}
@@ -0,0 +1,250 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import bdv.viewer.ViewerPanel;
+import bdv.viewer.ViewerState;
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Replays a {@link NavigationPath} against a {@link BdvHandle} and reports
+ * frame times, the time until each view is fully loaded, and the amount of
+ * data fetched (see {@link ReplayReport}). Replaying the same path with
+ * different fetcher, cache, and prefetch settings makes them comparable.
+ * <p>
+ * The handle must be created with {@link BdvOptions#collectMetrics()}. For
+ * a visible handle, frames are rendered by the viewer as usual, and a view is
+ * fully loaded when a frame at full screen scale, started after the view was
+ * shown, has a valid projector (no data missing, so no repaint is pending).
+ * For a {@link BdvHandleHeadless}, frames are rendered by the replay, and a
+ * view is fully loaded when {@link BdvHandleHeadless#render(int[])} reports a
+ * complete image. If the headless handle does not wait until loaded, the
+ * replay renders repeatedly, backing off between renders.
+ * <p>
+ * In real-time mode (the default), each view is shown at its recorded time,
+ * whether or not the previous view was fully loaded. Otherwise, views are
+ * replayed at maximum speed: each view is shown as soon as the previous one
+ * is fully loaded (or the load timeout expired).
+ */
+public class NavigationReplay
+{
+	private boolean realTime = true;
+
+	private long loadTimeoutNanos = TimeUnit.SECONDS.toNanos( 10 );
+
+	/**
+	 * Maximum pause between renders of a headless handle while waiting for
+	 * data to load.
+	 */
+	private static final long MAX_BACKOFF_MILLIS = 16;
+
+	/**
+	 * Set whether to replay at recorded times, or at maximum speed.
+	 */
+	public void setRealTime( final boolean realTime )
+	{
+		this.realTime = realTime;
+	}
+
+	/**
+	 * Set how long to wait at most for a view to be fully loaded, when
+	 * replaying at maximum speed and for the last view.
+	 */
+	public void setLoadTimeout( final long timeout, final TimeUnit unit )
+	{
+		loadTimeoutNanos = unit.toNanos( timeout );
+	}
+
+	public ReplayReport replay( final NavigationPath path, final BdvHandle handle ) throws InterruptedException
+	{
+		final BdvMetrics metrics = handle.getMetrics();
+		if ( metrics == null )
+			throw new IllegalArgumentException( "replay requires a handle created with Bdv.options().collectMetrics()" );
+
+		final ViewerPanel viewer = handle.getViewerPanel();
+		final BdvHandleHeadless headless = handle instanceof BdvHandleHeadless ? ( BdvHandleHeadless ) handle : null;
+		final int[] argb = headless == null ? null : new int[ headless.getWidth() * headless.getHeight() ];
+		final double fullScreenScale = Arrays.stream( viewer.getOptionValues().getScreenScales() ).max().orElse( 1 );
+
+		final int n = path.size();
+		final Monitor monitor = new Monitor( n, fullScreenScale, headless == null );
+		final long fetchedCells = metrics.getFetchedCells();
+		final long fetchedBytes = metrics.getFetchedBytes();
+		final AffineTransform3D transform = new AffineTransform3D();
+		metrics.frameListeners().add( monitor );
+		final long start = System.nanoTime();
+		try
+		{
+			for ( int i = 0; i < n; ++i )
+			{
+				if ( realTime )
+					sleepUntil( start + path.getTimeNanos( i ) );
+
+				path.getTransform( i, transform );
+				final ViewerState state = viewer.state();
+				state.setViewerTransform( transform );
+				state.setCurrentTimepoint( path.getTimepoint( i ) );
+				monitor.startView( i );
+				if ( headless == null )
+					viewer.requestRepaint();
+
+				final long deadline = realTime && i + 1 < n
+						? start + path.getTimeNanos( i + 1 )
+						: System.nanoTime() + loadTimeoutNanos;
+				if ( headless == null )
+					monitor.awaitLoaded( deadline );
+				else if ( renderUntilLoaded( headless, argb, deadline ) )
+					monitor.viewLoaded();
+			}
+		}
+		finally
+		{
+			metrics.frameListeners().remove( monitor );
+		}
+		final long duration = System.nanoTime() - start;
+
+		return new ReplayReport(
+				monitor.getFrameNanos(),
+				monitor.timeToLoadedMillis,
+				metrics.getFetchedCells() - fetchedCells,
+				metrics.getFetchedBytes() - fetchedBytes,
+				duration );
+	}
+
+	/**
+	 * Render {@code headless} until the rendered image is complete, or until
+	 * {@code deadline}, backing off between renders.
+	 *
+	 * @return whether the rendered image is complete.
+	 */
+	private static boolean renderUntilLoaded( final BdvHandleHeadless headless, final int[] argb, final long deadline ) throws InterruptedException
+	{
+		boolean complete = headless.render( argb );
+		long backoff = 1;
+		while ( !complete )
+		{
+			final long remaining = deadline - System.nanoTime();
+			if ( remaining <= 0 )
+				break;
+			TimeUnit.NANOSECONDS.sleep( Math.min( remaining, TimeUnit.MILLISECONDS.toNanos( backoff ) ) );
+			backoff = Math.min( 2 * backoff, MAX_BACKOFF_MILLIS );
+			complete = headless.render( argb );
+		}
+		return complete;
+	}
+
+	private static void sleepUntil( final long nanoTime ) throws InterruptedException
+	{
+		final long remaining = nanoTime - System.nanoTime();
+		if ( remaining > 0 )
+			TimeUnit.NANOSECONDS.sleep( remaining );
+	}
+
+	/**
+	 * Collects frame times, and records when the current view is fully
+	 * loaded.
+	 */
+	private static final class Monitor implements BdvMetrics.FrameListener
+	{
+		private final double fullScreenScale;
+
+		/**
+		 * Whether to detect fully loaded views from rendered frames.
+		 * Otherwise, {@link #viewLoaded()} is called.
+		 */
+		private final boolean detectLoaded;
+
+		private final TLongArrayList frameNanos = new TLongArrayList();
+
+		final double[] timeToLoadedMillis;
+
+		private int view = -1;
+
+		private long viewStartNanos;
+
+		private boolean loaded;
+
+		Monitor( final int numViews, final double fullScreenScale, final boolean detectLoaded )
+		{
+			this.fullScreenScale = fullScreenScale;
+			this.detectLoaded = detectLoaded;
+			timeToLoadedMillis = new double[ numViews ];
+			Arrays.fill( timeToLoadedMillis, Double.NaN );
+		}
+
+		@Override
+		public synchronized void frameRendered( final FrameMetrics metrics )
+		{
+			final long now = System.nanoTime();
+			frameNanos.add( metrics.getRenderNanos() );
+			if ( !detectLoaded || view < 0 || loaded || !metrics.isComplete() )
+				return;
+			// only frames started after the view was shown, at full resolution
+			if ( now - metrics.getRenderNanos() < viewStartNanos || metrics.getScreenScale() < fullScreenScale - 1e-3 )
+				return;
+			viewLoaded();
+		}
+
+		synchronized void viewLoaded()
+		{
+			if ( view < 0 || loaded )
+				return;
+			loaded = true;
+			timeToLoadedMillis[ view ] = ( System.nanoTime() - viewStartNanos ) / 1e6;
+			notifyAll();
+		}
+
+		synchronized void startView( final int i )
+		{
+			view = i;
+			viewStartNanos = System.nanoTime();
+			loaded = false;
+		}
+
+		synchronized void awaitLoaded( final long deadline ) throws InterruptedException
+		{
+			while ( !loaded )
+			{
+				final long remaining = deadline - System.nanoTime();
+				if ( remaining <= 0 )
+					return;
+				TimeUnit.NANOSECONDS.timedWait( this, remaining );
+			}
+		}
+
+		synchronized long[] getFrameNanos()
+		{
+			return frameNanos.toArray();
+		}
+	}
+}
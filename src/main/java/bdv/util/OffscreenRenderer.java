@@ -0,0 +1,315 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.type.numeric.ARGBType;
+
+import bdv.cache.CacheControl;
+import bdv.viewer.ViewerState;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.MultiResolutionRenderer;
+import bdv.viewer.render.RenderTarget;
+import bdv.viewer.render.awt.BufferedImageRenderResult;
+
+/**
+ * Renders a {@link ViewerState} into an offscreen image, using the same
+ * sources, converters, and projectors as the viewer, but without a display.
+ * <p>
+ * Volatile versions of the sources are rendered (where available), so
+ * missing data is requested asynchronously, and left blank or filled in from
+ * lower resolutions. If {@code waitUntilLoaded} is set, {@link #render} then
+ * repaints, backing off between attempts, until the renderer no longer
+ * requests a repaint (that is, all data is loaded and the rendered image is
+ * complete), or until the {@link #setLoadTimeout(long, TimeUnit) load
+ * timeout} expires. This also works for sources that only exist as volatile
+ * views (e.g., from {@link bdv.util.volatiles.VolatileViews}), whose loading
+ * strategy cannot be switched to blocking.
+ * <p>
+ * Overlays are not drawn.
+ */
+public class OffscreenRenderer
+{
+	private static final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+	/**
+	 * Default for {@link #setLoadTimeout(long, TimeUnit)}.
+	 */
+	public static final long DEFAULT_LOAD_TIMEOUT_MILLIS = 60_000;
+
+	/**
+	 * Maximum pause between repaints while waiting for data to load.
+	 */
+	private static final long MAX_BACKOFF_MILLIS = 16;
+
+	private final MultiResolutionRenderer renderer;
+
+	private final ExecutorService renderingExecutorService;
+
+	private final boolean ownsExecutorService;
+
+	private final Target target;
+
+	private final boolean waitUntilLoaded;
+
+	private long loadTimeoutNanos = TimeUnit.MILLISECONDS.toNanos( DEFAULT_LOAD_TIMEOUT_MILLIS );
+
+	/**
+	 * Set by {@link #renderer} during {@link MultiResolutionRenderer#paint} if
+	 * the rendered image is incomplete and should be repainted.
+	 */
+	private boolean repaintRequested;
+
+	/**
+	 * Create a renderer with its own pool of {@code numRenderingThreads}
+	 * rendering threads.
+	 */
+	public OffscreenRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final boolean waitUntilLoaded,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory,
+			final CacheControl cacheControl )
+	{
+		this( width, height, numRenderingThreads, waitUntilLoaded, accumulateProjectorFactory, cacheControl,
+				Executors.newFixedThreadPool( numRenderingThreads, createThreadFactory() ), true );
+	}
+
+	/**
+	 * Create a renderer that renders on the given {@code
+	 * renderingExecutorService}, which may be shared with other renderers.
+	 * The rendering is split into {@code numRenderingThreads} tasks.
+	 */
+	public OffscreenRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final boolean waitUntilLoaded,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory,
+			final CacheControl cacheControl,
+			final ExecutorService renderingExecutorService )
+	{
+		this( width, height, numRenderingThreads, waitUntilLoaded, accumulateProjectorFactory, cacheControl, renderingExecutorService, false );
+	}
+
+	private OffscreenRenderer(
+			final int width,
+			final int height,
+			final int numRenderingThreads,
+			final boolean waitUntilLoaded,
+			final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory,
+			final CacheControl cacheControl,
+			final ExecutorService renderingExecutorService,
+			final boolean ownsExecutorService )
+	{
+		this.renderingExecutorService = renderingExecutorService;
+		this.ownsExecutorService = ownsExecutorService;
+		this.waitUntilLoaded = waitUntilLoaded;
+		target = new Target();
+		target.width = width;
+		target.height = height;
+		renderer = new MultiResolutionRenderer(
+				target,
+				() -> repaintRequested = true,
+				new double[] { 1 },
+				0,
+				numRenderingThreads,
+				renderingExecutorService,
+				true,
+				accumulateProjectorFactory,
+				cacheControl == null ? new CacheControl.Dummy() : cacheControl );
+	}
+
+	/**
+	 * Create a factory for daemon rendering threads.
+	 */
+	static ThreadFactory createThreadFactory()
+	{
+		return r -> {
+			final Thread thread = new Thread( r, "bdv-offscreen-renderer-" + threadNumber.getAndIncrement() );
+			thread.setDaemon( true );
+			return thread;
+		};
+	}
+
+	/**
+	 * Set the size of the rendered image. The viewer transform of rendered
+	 * states must map to screen coordinates of this size.
+	 */
+	public synchronized void setSize( final int width, final int height )
+	{
+		target.width = width;
+		target.height = height;
+	}
+
+	public synchronized int getWidth()
+	{
+		return target.width;
+	}
+
+	public synchronized int getHeight()
+	{
+		return target.height;
+	}
+
+	/**
+	 * Set how long {@link #render} waits for data to load, if this renderer
+	 * waits until loaded. When the timeout expires, the incomplete image is
+	 * returned.
+	 */
+	public synchronized void setLoadTimeout( final long timeout, final TimeUnit unit )
+	{
+		loadTimeoutNanos = unit.toNanos( timeout );
+	}
+
+	/**
+	 * Render {@code state} into {@code argb}, which must have at least
+	 * {@code width * height} elements. Pixels are stored row by row.
+	 * <p>
+	 * If this renderer waits until loaded, this blocks until all data is
+	 * loaded, the load timeout expires, or the calling thread is interrupted.
+	 *
+	 * @return {@code true} if the rendered image is complete, {@code false} if
+	 *         data was missing.
+	 */
+	public synchronized boolean render( final ViewerState state, final int[] argb )
+	{
+		final int width = target.width;
+		final int height = target.height;
+		if ( argb.length < width * height )
+			throw new IllegalArgumentException( "buffer too small for " + width + "x" + height + " image" );
+
+		renderer.requestRepaint();
+		boolean complete = paint( state );
+		if ( waitUntilLoaded && !complete )
+		{
+			final long deadline = System.nanoTime() + loadTimeoutNanos;
+			long backoff = 1;
+			while ( !complete && deadline - System.nanoTime() > 0 )
+			{
+				try
+				{
+					Thread.sleep( backoff );
+				}
+				catch ( final InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+					break;
+				}
+				backoff = Math.min( 2 * backoff, MAX_BACKOFF_MILLIS );
+				complete = paint( state );
+			}
+		}
+
+		final BufferedImage image = target.result.getBufferedImage();
+		if ( image.getType() == BufferedImage.TYPE_INT_ARGB && image.getRaster().getDataBuffer() instanceof DataBufferInt )
+			System.arraycopy( ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData(), 0, argb, 0, width * height );
+		else
+			image.getRGB( 0, 0, width, height, argb, 0, width );
+		return complete;
+	}
+
+	/**
+	 * Paint (or repaint incomplete parts of) {@code state}.
+	 *
+	 * @return whether the image is complete.
+	 */
+	private boolean paint( final ViewerState state )
+	{
+		repaintRequested = false;
+		renderer.paint( state );
+		return !repaintRequested;
+	}
+
+	/**
+	 * Render {@code state} into a new {@link BufferedImage}.
+	 */
+	public synchronized BufferedImage render( final ViewerState state )
+	{
+		final BufferedImage image = new BufferedImage( target.width, target.height, BufferedImage.TYPE_INT_ARGB );
+		render( state, ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData() );
+		return image;
+	}
+
+	/**
+	 * Stop rendering, and shut down the rendering threads if they are not
+	 * shared.
+	 */
+	public synchronized void dispose()
+	{
+		renderer.kill();
+		if ( ownsExecutorService )
+			renderingExecutorService.shutdown();
+	}
+
+	private static final class Target implements RenderTarget< BufferedImageRenderResult >
+	{
+		final BufferedImageRenderResult result = new BufferedImageRenderResult();
+
+		int width;
+
+		int height;
+
+		@Override
+		public BufferedImageRenderResult getReusableRenderResult()
+		{
+			return result;
+		}
+
+		@Override
+		public BufferedImageRenderResult createRenderResult()
+		{
+			return new BufferedImageRenderResult();
+		}
+
+		@Override
+		public void setRenderResult( final BufferedImageRenderResult renderResult )
+		{}
+
+		@Override
+		public int getWidth()
+		{
+			return width;
+		}
+
+		@Override
+		public int getHeight()
+		{
+			return height;
+		}
+	}
+}
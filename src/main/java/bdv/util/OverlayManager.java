@@ -0,0 +1,266 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.Graphics;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import bdv.tools.brightness.ConverterSetup;
+import bdv.viewer.OverlayRenderer;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.TimePointListener;
+import bdv.viewer.TransformListener;
+import bdv.viewer.ViewerPanel;
+import bdv.viewer.ViewerStateChange;
+import bdv.viewer.ViewerStateChangeListener;
+
+/**
+ * Manages the {@link BdvOverlay}s of a {@link BdvHandle}. The manager is
+ * registered once as a transform, timepoint, and viewer state listener, and
+ * as a single {@link OverlayRenderer}. The {@link PlaceHolderOverlayInfo}s it
+ * creates get the viewer transform and timepoint from the manager, instead of
+ * registering their own listeners.
+ * <p>
+ * Overlays are drawn in one pass, in the order in which they were added.
+ * Overlays whose source is invisible, or whose
+ * {@link BdvOverlay#getSourceBounds() bounds} are outside the screen, are
+ * skipped.
+ */
+final class OverlayManager implements OverlayRenderer, TransformListener< AffineTransform3D >, TimePointListener, ViewerStateChangeListener
+{
+	/**
+	 * Margin (in screen pixels) around the screen, within which overlay
+	 * bounds are considered visible.
+	 */
+	private static final double CULL_MARGIN = 32;
+
+	private final ViewerPanel viewer;
+
+	private final AffineTransform3D viewerTransform = new AffineTransform3D();
+
+	private volatile int timePointIndex;
+
+	private final CopyOnWriteArrayList< BdvOverlay > overlays = new CopyOnWriteArrayList<>();
+
+	private final CopyOnWriteArrayList< PlaceHolderOverlayInfo > infos = new CopyOnWriteArrayList<>();
+
+	private volatile Set< SourceAndConverter< ? > > visibleSources = Collections.emptySet();
+
+	private int canvasWidth;
+
+	private int canvasHeight;
+
+	private final AffineTransform3D viewerToScreen = new AffineTransform3D();
+
+	private final AffineTransform3D transform = new AffineTransform3D();
+
+	private final double[] corner = new double[ 3 ];
+
+	private final double[] screen = new double[ 3 ];
+
+	OverlayManager( final ViewerPanel viewer )
+	{
+		this.viewer = viewer;
+		viewer.addRenderTransformListener( this );
+		viewer.addTimePointListener( this );
+		viewer.state().changeListeners().add( this );
+		viewer.getDisplay().overlays().add( this );
+		timePointIndex = viewer.state().getCurrentTimepoint();
+		updateVisibleSources();
+	}
+
+	ViewerPanel getViewer()
+	{
+		return viewer;
+	}
+
+	/**
+	 * Create a {@link PlaceHolderOverlayInfo} that gets viewer transform and
+	 * timepoint from this manager.
+	 */
+	PlaceHolderOverlayInfo createInfo( final SourceAndConverter< ? > source, final ConverterSetup converterSetup )
+	{
+		final PlaceHolderOverlayInfo info = new PlaceHolderOverlayInfo( this, source, converterSetup );
+		infos.add( info );
+		return info;
+	}
+
+	/**
+	 * Remove an {@code info} created by
+	 * {@link #createInfo(SourceAndConverter, ConverterSetup)} that is not
+	 * used by an overlay (otherwise, it is removed with the overlay).
+	 */
+	void removeInfo( final PlaceHolderOverlayInfo info )
+	{
+		infos.remove( info );
+	}
+
+	/**
+	 * Add an overlay. Its {@link PlaceHolderOverlayInfo} should have been
+	 * created by {@link #createInfo(SourceAndConverter, ConverterSetup)}.
+	 */
+	void add( final BdvOverlay overlay )
+	{
+		overlay.setCanvasSize( canvasWidth, canvasHeight );
+		overlays.add( overlay );
+		viewer.getDisplay().repaint();
+	}
+
+	void remove( final OverlayRenderer overlay )
+	{
+		if ( overlays.remove( overlay ) )
+		{
+			( ( BdvOverlay ) overlay ).cancelAsyncRendering();
+			infos.remove( ( ( BdvOverlay ) overlay ).info );
+			viewer.getDisplay().repaint();
+		}
+	}
+
+	void getViewerTransform( final AffineTransform3D t )
+	{
+		synchronized ( viewerTransform )
+		{
+			t.set( viewerTransform );
+		}
+	}
+
+	int getTimePointIndex()
+	{
+		return timePointIndex;
+	}
+
+	@Override
+	public void drawOverlays( final Graphics g )
+	{
+		final Set< SourceAndConverter< ? > > visible = visibleSources;
+		getViewerTransform( viewerToScreen );
+		for ( final BdvOverlay overlay : overlays )
+		{
+			final PlaceHolderOverlayInfo info = overlay.info;
+			if ( info == null || !visible.contains( info.getSource() ) )
+				continue;
+			if ( isOutsideScreen( overlay ) )
+				continue;
+			overlay.drawVisible( g );
+		}
+	}
+
+	/**
+	 * Whether the bounds of {@code overlay} project entirely outside of the
+	 * screen.
+	 */
+	private boolean isOutsideScreen( final BdvOverlay overlay )
+	{
+		final RealInterval bounds = overlay.getSourceBounds();
+		if ( bounds == null || canvasWidth <= 0 || canvasHeight <= 0 )
+			return false;
+
+		transform.set( viewerToScreen );
+		transform.concatenate( overlay.sourceTransform );
+		double minX = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		final int n = Math.min( 3, bounds.numDimensions() );
+		for ( int c = 0; c < 8; ++c )
+		{
+			for ( int d = 0; d < 3; ++d )
+				corner[ d ] = d >= n ? 0 : ( ( c >> d ) & 1 ) == 0 ? bounds.realMin( d ) : bounds.realMax( d );
+			transform.apply( corner, screen );
+			minX = Math.min( minX, screen[ 0 ] );
+			maxX = Math.max( maxX, screen[ 0 ] );
+			minY = Math.min( minY, screen[ 1 ] );
+			maxY = Math.max( maxY, screen[ 1 ] );
+		}
+		return maxX < -CULL_MARGIN
+				|| minX > canvasWidth + CULL_MARGIN
+				|| maxY < -CULL_MARGIN
+				|| minY > canvasHeight + CULL_MARGIN;
+	}
+
+	@Override
+	public void setCanvasSize( final int width, final int height )
+	{
+		canvasWidth = width;
+		canvasHeight = height;
+		for ( final BdvOverlay overlay : overlays )
+			overlay.setCanvasSize( width, height );
+	}
+
+	@Override
+	public void transformChanged( final AffineTransform3D t )
+	{
+		synchronized ( viewerTransform )
+		{
+			viewerTransform.set( t );
+		}
+	}
+
+	@Override
+	public void timePointChanged( final int timePointIndex )
+	{
+		this.timePointIndex = timePointIndex;
+	}
+
+	@Override
+	public void viewerStateChanged( final ViewerStateChange change )
+	{
+		if ( change == ViewerStateChange.VISIBILITY_CHANGED )
+		{
+			updateVisibleSources();
+			for ( final PlaceHolderOverlayInfo info : infos )
+				info.viewerStateChanged( change );
+		}
+	}
+
+	private void updateVisibleSources()
+	{
+		visibleSources = new HashSet<>( viewer.state().getVisibleSources() );
+	}
+
+	/**
+	 * Unregister from the viewer.
+	 */
+	void dispose()
+	{
+		viewer.removeTransformListener( this );
+		viewer.removeTimePointListener( this );
+		viewer.state().changeListeners().remove( this );
+		viewer.getDisplay().overlays().remove( this );
+		overlays.forEach( BdvOverlay::cancelAsyncRendering );
+		overlays.clear();
+		infos.clear();
+	}
+}
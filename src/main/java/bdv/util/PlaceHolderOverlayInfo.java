@@ -44,6 +44,12 @@ public final class PlaceHolderOverlayInfo implements TransformListener< AffineTr
 {
 	private final ViewerPanel viewer;
 
+	/**
+	 * If not {@code null}, viewer transform and timepoint are obtained from
+	 * the manager, instead of from listeners registered with the viewer.
+	 */
+	private final OverlayManager manager;
+
 	private final SourceAndConverter< ? > source;
 
 	private final ConverterSetup converterSetup;
@@ -74,6 +80,7 @@ public final class PlaceHolderOverlayInfo implements TransformListener< AffineTr
 			final ConverterSetup converterSetup )
 	{
 		this.viewer = viewer;
+		this.manager = null;
 		this.source = source;
 		this.converterSetup = converterSetup;
 		this.viewerTransform = new AffineTransform3D();
@@ -84,6 +91,50 @@ public final class PlaceHolderOverlayInfo implements TransformListener< AffineTr
 		viewer.state().changeListeners().add( this );
 	}
 
+	/**
+	 * Create a {@code PlaceHolderOverlayInfo} that doesn't register listeners
+	 * with the viewer, but gets viewer transform and timepoint from
+	 * {@code manager}. Viewer state changes are forwarded by {@code manager}.
+	 */
+	PlaceHolderOverlayInfo(
+			final OverlayManager manager,
+			final SourceAndConverter< ? > source,
+			final ConverterSetup converterSetup )
+	{
+		this.viewer = manager.getViewer();
+		this.manager = manager;
+		this.source = source;
+		this.converterSetup = converterSetup;
+		this.viewerTransform = new AffineTransform3D();
+		this.listeners = new Listeners.SynchronizedList<>();
+	}
+
+	/**
+	 * Create a {@code PlaceHolderOverlayInfo} that is not connected to a
+	 * viewer, for drawing overlays offscreen. Viewer transform and timepoint
+	 * are set through {@link #transformChanged(AffineTransform3D)} and
+	 * {@link #timePointChanged(int)}, and the overlay is always visible.
+	 */
+	PlaceHolderOverlayInfo(
+			final SourceAndConverter< ? > source,
+			final ConverterSetup converterSetup )
+	{
+		this.viewer = null;
+		this.manager = null;
+		this.source = source;
+		this.converterSetup = converterSetup;
+		this.viewerTransform = new AffineTransform3D();
+		this.listeners = new Listeners.SynchronizedList<>();
+	}
+
+	/**
+	 * Get the viewer, or {@code null} if this is not connected to a viewer.
+	 */
+	ViewerPanel getViewer()
+	{
+		return viewer;
+	}
+
 	SourceAndConverter< ? > getSource()
 	{
 		return source;
@@ -100,11 +151,16 @@ public final class PlaceHolderOverlayInfo implements TransformListener< AffineTr
 
 	public boolean isVisible()
 	{
-		return viewer.state().isSourceVisible( source );
+		return viewer == null || viewer.state().isSourceVisible( source );
 	}
 
 	public void getViewerTransform( final AffineTransform3D t )
 	{
+		if ( manager != null )
+		{
+			manager.getViewerTransform( t );
+			return;
+		}
 		synchronized( viewerTransform )
 		{
 			t.set( viewerTransform );
@@ -113,7 +169,7 @@ public final class PlaceHolderOverlayInfo implements TransformListener< AffineTr
 
 	public int getTimePointIndex()
 	{
-		return timePointIndex;
+		return manager != null ? manager.getTimePointIndex() : timePointIndex;
 	}
 
 	/**
@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an 8-bit RGBA PNG image row by row, such that the image does not
+ * have to be held in memory.
+ */
+final class PngStreamWriter implements Closeable
+{
+	private static final byte[] SIGNATURE = { ( byte ) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	private static final int IDAT_SIZE = 1 << 16;
+
+	/**
+	 * PNG "Sub" row filter.
+	 */
+	private static final byte FILTER_SUB = 1;
+
+	private final DataOutputStream out;
+
+	private final int width;
+
+	private final int height;
+
+	private final Deflater deflater = new Deflater( Deflater.DEFAULT_COMPRESSION );
+
+	private final byte[] row;
+
+	private final byte[] idat = new byte[ IDAT_SIZE ];
+
+	private int idatLength;
+
+	private int rowsWritten;
+
+	private final CRC32 crc = new CRC32();
+
+	PngStreamWriter( final OutputStream out, final int width, final int height ) throws IOException
+	{
+		this.out = new DataOutputStream( out );
+		this.width = width;
+		this.height = height;
+		row = new byte[ 1 + 4 * width ];
+
+		this.out.write( SIGNATURE );
+		final byte[] ihdr = new byte[ 13 ];
+		putInt( ihdr, 0, width );
+		putInt( ihdr, 4, height );
+		ihdr[ 8 ] = 8; // bit depth
+		ihdr[ 9 ] = 6; // color type RGBA
+		writeChunk( "IHDR", ihdr, ihdr.length );
+	}
+
+	/**
+	 * Write {@code numRows} rows of ARGB pixels, starting at
+	 * {@code argb[ offset ]}, with {@code stride} elements from one row to
+	 * the next.
+	 */
+	void writeRows( final int[] argb, final int offset, final int stride, final int numRows ) throws IOException
+	{
+		if ( rowsWritten + numRows > height )
+			throw new IllegalStateException( "more rows than the image height" );
+		for ( int y = 0; y < numRows; ++y )
+		{
+			final int o = offset + y * stride;
+			row[ 0 ] = FILTER_SUB;
+			int prev = 0;
+			for ( int x = 0; x < width; ++x )
+			{
+				final int v = argb[ o + x ];
+				final int rgba = ( v << 8 ) | ( v >>> 24 );
+				final int i = 1 + 4 * x;
+				row[ i ] = ( byte ) ( ( rgba >>> 24 ) - ( prev >>> 24 ) );
+				row[ i + 1 ] = ( byte ) ( ( rgba >>> 16 ) - ( prev >>> 16 ) );
+				row[ i + 2 ] = ( byte ) ( ( rgba >>> 8 ) - ( prev >>> 8 ) );
+				row[ i + 3 ] = ( byte ) ( rgba - prev );
+				prev = rgba;
+			}
+			deflater.setInput( row );
+			while ( !deflater.needsInput() )
+				deflate();
+			++rowsWritten;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			if ( rowsWritten != height )
+				throw new IllegalStateException( rowsWritten + " of " + height + " rows written" );
+			deflater.finish();
+			while ( !deflater.finished() )
+				deflate();
+			if ( idatLength > 0 )
+				writeChunk( "IDAT", idat, idatLength );
+			writeChunk( "IEND", idat, 0 );
+		}
+		finally
+		{
+			deflater.end();
+			out.close();
+		}
+	}
+
+	private void deflate() throws IOException
+	{
+		idatLength += deflater.deflate( idat, idatLength, IDAT_SIZE - idatLength );
+		if ( idatLength == IDAT_SIZE )
+		{
+			writeChunk( "IDAT", idat, idatLength );
+			idatLength = 0;
+		}
+	}
+
+	private void writeChunk( final String type, final byte[] data, final int length ) throws IOException
+	{
+		final byte[] typeBytes = type.getBytes( StandardCharsets.US_ASCII );
+		crc.reset();
+		crc.update( typeBytes );
+		crc.update( data, 0, length );
+		out.writeInt( length );
+		out.write( typeBytes );
+		out.write( data, 0, length );
+		out.writeInt( ( int ) crc.getValue() );
+	}
+
+	private static void putInt( final byte[] bytes, final int offset, final int value )
+	{
+		bytes[ offset ] = ( byte ) ( value >>> 24 );
+		bytes[ offset + 1 ] = ( byte ) ( value >>> 16 );
+		bytes[ offset + 2 ] = ( byte ) ( value >>> 8 );
+		bytes[ offset + 3 ] = ( byte ) value;
+	}
+}
@@ -0,0 +1,470 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.RealLocalizable;
+
+/**
+ * Columnar storage for a large number of points. Coordinates are stored in
+ * {@code float[]} columns. Optional per-point color, size, timepoint, track
+ * id, and value columns are created on first use.
+ * <p>
+ * If timepoints are set, each point is only shown at its timepoint. Points
+ * with the same track id at different timepoints belong to the same track.
+ * Values (for example a score or a class) can be mapped to colors and sizes
+ * with a {@link PointsStyle}.
+ * <p>
+ * Points can be modified in place, either through the {@code set} methods or
+ * by writing directly into the arrays returned by {@link #xs()},
+ * {@link #ys()}, {@link #zs()}, etc. After writing directly into the arrays,
+ * {@link #modified()} must be called.
+ * <p>
+ * {@code PointsData} is not thread-safe. Modifications made while the points
+ * are displayed become visible with the next repaint.
+ */
+public class PointsData
+{
+	private int size;
+
+	private float[] xs;
+
+	private float[] ys;
+
+	private float[] zs;
+
+	private int[] colors;
+
+	private float[] sizes;
+
+	private int[] timepoints;
+
+	private int[] trackIds;
+
+	private float[] values;
+
+	private int modCount;
+
+	public PointsData()
+	{
+		this( 16 );
+	}
+
+	public PointsData( final int initialCapacity )
+	{
+		final int capacity = Math.max( 1, initialCapacity );
+		xs = new float[ capacity ];
+		ys = new float[ capacity ];
+		zs = new float[ capacity ];
+	}
+
+	/**
+	 * Create {@code PointsData} with the coordinates of {@code points}.
+	 */
+	public static PointsData of( final List< ? extends RealLocalizable > points )
+	{
+		final PointsData data = new PointsData( points.size() );
+		data.addAll( points );
+		return data;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Append a point.
+	 *
+	 * @return index of the new point
+	 */
+	public int add( final double x, final double y, final double z )
+	{
+		ensureCapacity( size + 1 );
+		xs[ size ] = ( float ) x;
+		ys[ size ] = ( float ) y;
+		zs[ size ] = ( float ) z;
+		resetAttributes( size, size + 1 );
+		++modCount;
+		return size++;
+	}
+
+	/**
+	 * Append points with the given coordinate columns.
+	 *
+	 * @param x
+	 *            X coordinates
+	 * @param y
+	 *            Y coordinates
+	 * @param z
+	 *            Z coordinates, or {@code null} for 2D points
+	 */
+	public void addAll( final float[] x, final float[] y, final float[] z )
+	{
+		final int n = x.length;
+		if ( y.length != n || ( z != null && z.length != n ) )
+			throw new IllegalArgumentException( "coordinate columns must have the same length" );
+		ensureCapacity( size + n );
+		System.arraycopy( x, 0, xs, size, n );
+		System.arraycopy( y, 0, ys, size, n );
+		if ( z != null )
+			System.arraycopy( z, 0, zs, size, n );
+		else
+			Arrays.fill( zs, size, size + n, 0 );
+		resetAttributes( size, size + n );
+		size += n;
+		++modCount;
+	}
+
+	/**
+	 * Append the coordinates of {@code points}.
+	 */
+	public void addAll( final List< ? extends RealLocalizable > points )
+	{
+		ensureCapacity( size + points.size() );
+		resetAttributes( size, size + points.size() );
+		for ( final RealLocalizable p : points )
+		{
+			final int n = p.numDimensions();
+			xs[ size ] = n > 0 ? p.getFloatPosition( 0 ) : 0;
+			ys[ size ] = n > 1 ? p.getFloatPosition( 1 ) : 0;
+			zs[ size ] = n > 2 ? p.getFloatPosition( 2 ) : 0;
+			++size;
+		}
+		++modCount;
+	}
+
+	/**
+	 * Remove all points. Allocated storage is kept.
+	 */
+	public void clear()
+	{
+		size = 0;
+		++modCount;
+	}
+
+	public void set( final int i, final double x, final double y, final double z )
+	{
+		checkIndex( i );
+		xs[ i ] = ( float ) x;
+		ys[ i ] = ( float ) y;
+		zs[ i ] = ( float ) z;
+		++modCount;
+	}
+
+	public float getX( final int i )
+	{
+		return xs[ i ];
+	}
+
+	public float getY( final int i )
+	{
+		return ys[ i ];
+	}
+
+	public float getZ( final int i )
+	{
+		return zs[ i ];
+	}
+
+	public boolean hasColors()
+	{
+		return colors != null;
+	}
+
+	/**
+	 * Set ARGB color of point {@code i}. The color {@code 0} (the default)
+	 * means that the point is drawn with the color of the overlay.
+	 */
+	public void setColor( final int i, final int argb )
+	{
+		checkIndex( i );
+		if ( colors == null )
+			colors = new int[ xs.length ];
+		colors[ i ] = argb;
+		++modCount;
+	}
+
+	public int getColor( final int i )
+	{
+		return colors == null ? 0 : colors[ i ];
+	}
+
+	public boolean hasSizes()
+	{
+		return sizes != null;
+	}
+
+	/**
+	 * Set diameter (in screen pixels) of point {@code i}. The size {@code 0}
+	 * (the default) means that the point is drawn with the default size.
+	 */
+	public void setSize( final int i, final float size )
+	{
+		checkIndex( i );
+		if ( sizes == null )
+			sizes = new float[ xs.length ];
+		sizes[ i ] = size;
+		++modCount;
+	}
+
+	public float getSize( final int i )
+	{
+		return sizes == null ? 0 : sizes[ i ];
+	}
+
+	public boolean hasTimepoints()
+	{
+		return timepoints != null;
+	}
+
+	public void setTimepoint( final int i, final int timepoint )
+	{
+		checkIndex( i );
+		if ( timepoints == null )
+			timepoints = new int[ xs.length ];
+		timepoints[ i ] = timepoint;
+		++modCount;
+	}
+
+	public int getTimepoint( final int i )
+	{
+		return timepoints == null ? 0 : timepoints[ i ];
+	}
+
+	/**
+	 * Get the number of timepoints, i.e., one more than the largest timepoint
+	 * of any point, or {@code 1} if no timepoints have been set. This scans all
+	 * points.
+	 */
+	public int numTimepoints()
+	{
+		int max = 0;
+		if ( timepoints != null )
+			for ( int i = 0; i < size; ++i )
+				max = Math.max( max, timepoints[ i ] );
+		return max + 1;
+	}
+
+	public boolean hasTrackIds()
+	{
+		return trackIds != null;
+	}
+
+	/**
+	 * Set track id of point {@code i}. The track id {@code -1} (the default)
+	 * means that the point does not belong to a track.
+	 */
+	public void setTrackId( final int i, final int trackId )
+	{
+		checkIndex( i );
+		if ( trackIds == null )
+		{
+			trackIds = new int[ xs.length ];
+			Arrays.fill( trackIds, -1 );
+		}
+		trackIds[ i ] = trackId;
+		++modCount;
+	}
+
+	public int getTrackId( final int i )
+	{
+		return trackIds == null ? -1 : trackIds[ i ];
+	}
+
+	public boolean hasValues()
+	{
+		return values != null;
+	}
+
+	/**
+	 * Set the attribute value (for example a score or a class) of point
+	 * {@code i}, which is mapped to color and size by a {@link PointsStyle}.
+	 * The default value is {@code 0}.
+	 */
+	public void setValue( final int i, final float value )
+	{
+		checkIndex( i );
+		if ( values == null )
+			values = new float[ xs.length ];
+		values[ i ] = value;
+		++modCount;
+	}
+
+	public float getValue( final int i )
+	{
+		return values == null ? 0 : values[ i ];
+	}
+
+	/**
+	 * Get the X coordinate column. Only the first {@link #size()} elements
+	 * are valid. The array is replaced when the capacity grows.
+	 */
+	public float[] xs()
+	{
+		return xs;
+	}
+
+	/**
+	 * Get the Y coordinate column.
+	 *
+	 * @see #xs()
+	 */
+	public float[] ys()
+	{
+		return ys;
+	}
+
+	/**
+	 * Get the Z coordinate column.
+	 *
+	 * @see #xs()
+	 */
+	public float[] zs()
+	{
+		return zs;
+	}
+
+	/**
+	 * Get the color column, or {@code null} if no colors have been set.
+	 *
+	 * @see #xs()
+	 */
+	public int[] colors()
+	{
+		return colors;
+	}
+
+	/**
+	 * Get the size column, or {@code null} if no sizes have been set.
+	 *
+	 * @see #xs()
+	 */
+	public float[] sizes()
+	{
+		return sizes;
+	}
+
+	/**
+	 * Get the timepoint column, or {@code null} if no timepoints have been
+	 * set.
+	 *
+	 * @see #xs()
+	 */
+	public int[] timepoints()
+	{
+		return timepoints;
+	}
+
+	/**
+	 * Get the track id column, or {@code null} if no track ids have been set.
+	 *
+	 * @see #xs()
+	 */
+	public int[] trackIds()
+	{
+		return trackIds;
+	}
+
+	/**
+	 * Get the value column, or {@code null} if no values have been set.
+	 *
+	 * @see #xs()
+	 */
+	public float[] values()
+	{
+		return values;
+	}
+
+	/**
+	 * Must be called after modifying the arrays returned by {@link #xs()},
+	 * {@link #ys()}, {@link #zs()}, etc. directly.
+	 */
+	public void modified()
+	{
+		++modCount;
+	}
+
+	/**
+	 * Incremented on every modification.
+	 */
+	int modCount()
+	{
+		return modCount;
+	}
+
+	public void ensureCapacity( final int capacity )
+	{
+		if ( capacity <= xs.length )
+			return;
+		final int newCapacity = ( int ) Math.min( Integer.MAX_VALUE - 8, Math.max( capacity, xs.length * 3L / 2 ) );
+		xs = Arrays.copyOf( xs, newCapacity );
+		ys = Arrays.copyOf( ys, newCapacity );
+		zs = Arrays.copyOf( zs, newCapacity );
+		if ( colors != null )
+			colors = Arrays.copyOf( colors, newCapacity );
+		if ( sizes != null )
+			sizes = Arrays.copyOf( sizes, newCapacity );
+		if ( timepoints != null )
+			timepoints = Arrays.copyOf( timepoints, newCapacity );
+		if ( trackIds != null )
+		{
+			final int oldCapacity = trackIds.length;
+			trackIds = Arrays.copyOf( trackIds, newCapacity );
+			Arrays.fill( trackIds, oldCapacity, newCapacity, -1 );
+		}
+		if ( values != null )
+			values = Arrays.copyOf( values, newCapacity );
+	}
+
+	/**
+	 * Set optional attributes of points {@code [from, to)} to their defaults.
+	 */
+	private void resetAttributes( final int from, final int to )
+	{
+		if ( colors != null )
+			Arrays.fill( colors, from, to, 0 );
+		if ( sizes != null )
+			Arrays.fill( sizes, from, to, 0 );
+		if ( timepoints != null )
+			Arrays.fill( timepoints, from, to, 0 );
+		if ( trackIds != null )
+			Arrays.fill( trackIds, from, to, -1 );
+		if ( values != null )
+			Arrays.fill( values, from, to, 0 );
+	}
+
+	private void checkIndex( final int i )
+	{
+		if ( i < 0 || i >= size )
+			throw new IndexOutOfBoundsException( "index " + i + " out of bounds for size " + size );
+	}
+}
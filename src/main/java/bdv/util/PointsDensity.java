@@ -0,0 +1,175 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+/**
+ * Multi-resolution point counts, derived from the grid of a
+ * {@link PointsIndex}. Level {@code 0} has the counts of the index grid cells.
+ * Each following level combines {@code 2x2x2} cells of the previous level,
+ * until a single cell remains.
+ * <p>
+ * Used by {@link PointsOverlay} to draw a density heatmap instead of
+ * individual points when zoomed out.
+ */
+final class PointsDensity
+{
+	/**
+	 * Visits a cell with its center coordinates and point count.
+	 */
+	interface CellVisitor
+	{
+		void visit( double x, double y, double z, int count );
+	}
+
+	private final double[] origin;
+
+	private final double cellSize;
+
+	/**
+	 * Grid dimensions for each level.
+	 */
+	private final int[][] dimensions;
+
+	/**
+	 * Point counts for each level, flattened with X varying fastest.
+	 */
+	private final int[][] counts;
+
+	PointsDensity( final PointsIndex index )
+	{
+		origin = index.origin().clone();
+		cellSize = index.cellSize();
+
+		final int[] dims0 = index.gridDimensions().clone();
+		int numLevels = 1;
+		for ( int[] dims = dims0; dims[ 0 ] > 1 || dims[ 1 ] > 1 || dims[ 2 ] > 1; dims = downsampled( dims ) )
+			++numLevels;
+
+		dimensions = new int[ numLevels ][];
+		counts = new int[ numLevels ][];
+		dimensions[ 0 ] = dims0;
+		counts[ 0 ] = new int[ dims0[ 0 ] * dims0[ 1 ] * dims0[ 2 ] ];
+		for ( int c = 0; c < counts[ 0 ].length; ++c )
+			counts[ 0 ][ c ] = index.cellCount( c );
+
+		for ( int l = 1; l < numLevels; ++l )
+		{
+			final int[] sd = dimensions[ l - 1 ];
+			final int[] sc = counts[ l - 1 ];
+			final int[] td = downsampled( sd );
+			final int[] tc = new int[ td[ 0 ] * td[ 1 ] * td[ 2 ] ];
+			int c = 0;
+			for ( int z = 0; z < sd[ 2 ]; ++z )
+				for ( int y = 0; y < sd[ 1 ]; ++y )
+				{
+					final int row = ( ( z / 2 ) * td[ 1 ] + y / 2 ) * td[ 0 ];
+					for ( int x = 0; x < sd[ 0 ]; ++x )
+						tc[ row + x / 2 ] += sc[ c++ ];
+				}
+			dimensions[ l ] = td;
+			counts[ l ] = tc;
+		}
+	}
+
+	int numLevels()
+	{
+		return dimensions.length;
+	}
+
+	/**
+	 * Get the cell size (in source coordinates) of {@code level}.
+	 */
+	double cellSize( final int level )
+	{
+		return cellSize * ( 1 << level );
+	}
+
+	/**
+	 * Get the finest level with cells at least {@code minCellSize} (in source
+	 * coordinates).
+	 */
+	int levelFor( final double minCellSize )
+	{
+		int level = 0;
+		while ( level < numLevels() - 1 && cellSize( level ) < minCellSize )
+			++level;
+		return level;
+	}
+
+	/**
+	 * Visit the non-empty cells of {@code level} that overlap the box
+	 * {@code [min, max]}.
+	 */
+	void forEachCell( final int level, final double[] min, final double[] max, final CellVisitor visitor )
+	{
+		final int[] dims = dimensions[ level ];
+		final int[] c = counts[ level ];
+		final double s = cellSize( level );
+		final int[] lo = new int[ 3 ];
+		final int[] hi = new int[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			if ( max[ d ] < min[ d ] )
+				return;
+			lo[ d ] = cellPosition( min[ d ], d, s, dims );
+			hi[ d ] = cellPosition( max[ d ], d, s, dims );
+		}
+
+		for ( int z = lo[ 2 ]; z <= hi[ 2 ]; ++z )
+		{
+			final double cz = origin[ 2 ] + ( z + 0.5 ) * s;
+			for ( int y = lo[ 1 ]; y <= hi[ 1 ]; ++y )
+			{
+				final double cy = origin[ 1 ] + ( y + 0.5 ) * s;
+				final int row = ( z * dims[ 1 ] + y ) * dims[ 0 ];
+				for ( int x = lo[ 0 ]; x <= hi[ 0 ]; ++x )
+				{
+					final int count = c[ row + x ];
+					if ( count > 0 )
+						visitor.visit( origin[ 0 ] + ( x + 0.5 ) * s, cy, cz, count );
+				}
+			}
+		}
+	}
+
+	private int cellPosition( final double p, final int d, final double s, final int[] dims )
+	{
+		final double c = Math.floor( ( p - origin[ d ] ) / s );
+		if ( c < 0 )
+			return 0;
+		if ( c >= dims[ d ] )
+			return dims[ d ] - 1;
+		return ( int ) c;
+	}
+
+	private static int[] downsampled( final int[] dims )
+	{
+		return new int[] { ( dims[ 0 ] + 1 ) / 2, ( dims[ 1 ] + 1 ) / 2, ( dims[ 2 ] + 1 ) / 2 };
+	}
+}
@@ -0,0 +1,277 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over (a subset of) the points in a {@link PointsData}. Point
+ * indices are sorted by grid cell, such that the points in a box can be
+ * visited as a few contiguous ranges.
+ * <p>
+ * Used by {@link PointsOverlay} to visit only points near the visible part of
+ * the current slice.
+ */
+final class PointsIndex
+{
+	/**
+	 * Average number of points per grid cell to aim for.
+	 */
+	private static final int POINTS_PER_CELL = 8;
+
+	/**
+	 * Maximum number of grid cells.
+	 */
+	private static final long MAX_CELLS = 1 << 22;
+
+	/**
+	 * Visits a contiguous range {@code [from, to)} of sorted point indices.
+	 */
+	interface RangeVisitor
+	{
+		void visit( int from, int to );
+	}
+
+	private final int size;
+
+	/**
+	 * {@code order[i]} is the original index of the {@code i}-th sorted
+	 * point.
+	 */
+	private final int[] order;
+
+	private final double[] origin = new double[ 3 ];
+
+	private final int[] gridDimensions = new int[ 3 ];
+
+	private final double cellSize;
+
+	/**
+	 * Points in cell {@code c} are {@code [cellStart[c], cellStart[c+1])}.
+	 */
+	private final int[] cellStart;
+
+	private PointsDensity density;
+
+	/**
+	 * Build index over all points.
+	 */
+	PointsIndex( final PointsData points )
+	{
+		this( points, null, 0, points.size() );
+	}
+
+	/**
+	 * Build index over points {@code indices[from]}, ...,
+	 * {@code indices[to-1]}. If {@code indices == null}, points {@code from},
+	 * ..., {@code to-1} are indexed.
+	 */
+	PointsIndex( final PointsData points, final int[] indices, final int from, final int to )
+	{
+		size = to - from;
+		final int[] subset = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			subset[ i ] = indices == null ? from + i : indices[ from + i ];
+		final float[][] xyz = { points.xs(), points.ys(), points.zs() };
+
+		final double[] max = new double[ 3 ];
+		Arrays.fill( origin, Double.POSITIVE_INFINITY );
+		Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		for ( int i = 0; i < size; ++i )
+		{
+			for ( int d = 0; d < 3; ++d )
+			{
+				final double p = xyz[ d ][ subset[ i ] ];
+				if ( p < origin[ d ] )
+					origin[ d ] = p;
+				if ( p > max[ d ] )
+					max[ d ] = p;
+			}
+		}
+		if ( size == 0 )
+			Arrays.fill( origin, 0 );
+
+		// choose cubic cells such that there are about POINTS_PER_CELL points per cell
+		final double[] extent = new double[ 3 ];
+		double volume = 1;
+		int numNonFlatDimensions = 0;
+		for ( int d = 0; d < 3; ++d )
+		{
+			extent[ d ] = size == 0 ? 0 : max[ d ] - origin[ d ];
+			if ( extent[ d ] > 0 )
+			{
+				volume *= extent[ d ];
+				++numNonFlatDimensions;
+			}
+		}
+		final long targetNumCells = Math.max( 1, size / POINTS_PER_CELL );
+		double s = numNonFlatDimensions == 0
+				? 1
+				: Math.pow( volume / targetNumCells, 1.0 / numNonFlatDimensions );
+		while ( true )
+		{
+			long numCells = 1;
+			for ( int d = 0; d < 3; ++d )
+			{
+				gridDimensions[ d ] = ( int ) Math.min( MAX_CELLS, Math.max( 1, ( long ) Math.ceil( extent[ d ] / s ) ) );
+				numCells *= gridDimensions[ d ];
+			}
+			if ( numCells <= MAX_CELLS )
+				break;
+			s *= 2;
+		}
+		cellSize = s;
+
+		// counting sort by cell
+		final int numCells = gridDimensions[ 0 ] * gridDimensions[ 1 ] * gridDimensions[ 2 ];
+		final int[] cells = new int[ size ];
+		cellStart = new int[ numCells + 1 ];
+		for ( int i = 0; i < size; ++i )
+		{
+			final int j = subset[ i ];
+			final int c = cellIndex( xyz[ 0 ][ j ], xyz[ 1 ][ j ], xyz[ 2 ][ j ] );
+			cells[ i ] = c;
+			++cellStart[ c + 1 ];
+		}
+		for ( int c = 0; c < numCells; ++c )
+			cellStart[ c + 1 ] += cellStart[ c ];
+
+		final int[] next = Arrays.copyOf( cellStart, numCells );
+		order = new int[ size ];
+		for ( int i = 0; i < size; ++i )
+			order[ next[ cells[ i ] ]++ ] = subset[ i ];
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	int[] gridDimensions()
+	{
+		return gridDimensions;
+	}
+
+	double[] origin()
+	{
+		return origin;
+	}
+
+	double cellSize()
+	{
+		return cellSize;
+	}
+
+	/**
+	 * Get the number of points in grid cell {@code c}.
+	 */
+	int cellCount( final int c )
+	{
+		return cellStart[ c + 1 ] - cellStart[ c ];
+	}
+
+	/**
+	 * Get the multi-resolution point density, computed lazily. This can be
+	 * called concurrently.
+	 */
+	synchronized PointsDensity density()
+	{
+		if ( density == null )
+			density = new PointsDensity( this );
+		return density;
+	}
+
+	/**
+	 * Count the points in the ranges visited by
+	 * {@link #forEachRange(double[], double[], RangeVisitor)}. This is an
+	 * upper bound of the number of points in the box {@code [min, max]}.
+	 */
+	int estimateCount( final double[] min, final double[] max )
+	{
+		final int[] count = { 0 };
+		forEachRange( min, max, ( from, to ) -> count[ 0 ] += to - from );
+		return count[ 0 ];
+	}
+
+	/**
+	 * Get index in {@link PointsData} of the {@code i}-th sorted point.
+	 */
+	int originalIndex( final int i )
+	{
+		return order[ i ];
+	}
+
+	/**
+	 * Visit ranges of sorted point indices that contain all points in the box
+	 * {@code [min, max]}. The ranges may contain additional points outside of
+	 * the box.
+	 */
+	void forEachRange( final double[] min, final double[] max, final RangeVisitor visitor )
+	{
+		final int[] lo = new int[ 3 ];
+		final int[] hi = new int[ 3 ];
+		for ( int d = 0; d < 3; ++d )
+		{
+			if ( max[ d ] < min[ d ] )
+				return;
+			lo[ d ] = cellPosition( min[ d ], d );
+			hi[ d ] = cellPosition( max[ d ], d );
+		}
+
+		final int nx = gridDimensions[ 0 ];
+		final int ny = gridDimensions[ 1 ];
+		for ( int z = lo[ 2 ]; z <= hi[ 2 ]; ++z )
+		{
+			for ( int y = lo[ 1 ]; y <= hi[ 1 ]; ++y )
+			{
+				// cells along x are adjacent, so their points form one range
+				final int row = ( z * ny + y ) * nx;
+				final int from = cellStart[ row + lo[ 0 ] ];
+				final int to = cellStart[ row + hi[ 0 ] + 1 ];
+				if ( from < to )
+					visitor.visit( from, to );
+			}
+		}
+	}
+
+	private int cellIndex( final double x, final double y, final double z )
+	{
+		return ( cellPosition( z, 2 ) * gridDimensions[ 1 ] + cellPosition( y, 1 ) ) * gridDimensions[ 0 ] + cellPosition( x, 0 );
+	}
+
+	private int cellPosition( final double p, final int d )
+	{
+		final double c = Math.floor( ( p - origin[ d ] ) / cellSize );
+		if ( c < 0 )
+			return 0;
+		if ( c >= gridDimensions[ d ] )
+			return gridDimensions[ d ] - 1;
+		return ( int ) c;
+	}
+}
@@ -30,63 +30,909 @@ package bdv.util;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
 import java.util.List;
 
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.RealLocalizable;
 import net.imglib2.realtransform.AffineTransform3D;
 
+/**
+ * Draws the points of a {@link PointsData}. The points are indexed by
+ * timepoint and spatially, such that only points of the current timepoint
+ * close to the visible part of the current slice are visited when drawing.
+ * The index is rebuilt lazily when the points are modified. Note that
+ * {@code PointsData} stores coordinates as {@code float}.
+ * <p>
+ * Alternatively, the points of a {@code List} of {@link RealLocalizable} can
+ * be drawn, see {@link #setPoints(List)}. These are drawn directly from the
+ * list, in {@code double} precision, but without index.
+ * <p>
+ * If the points have track ids, tails connecting each point to the points of
+ * the same track at earlier timepoints can be drawn, see
+ * {@link #setTrackTailLength(int)}.
+ * <p>
+ * When zoomed out over many points, a density heatmap can be drawn instead of
+ * individual points, see {@link #setDensityThreshold(int)}.
+ * <p>
+ * Points can be colored and sized by their values through a
+ * {@link PointsStyle}, see {@link #setStyle(PointsStyle)}.
+ */
 public class PointsOverlay extends BdvOverlay
 {
-	private List< ? extends RealLocalizable > points;
+	/**
+	 * Default point size (in screen pixels) at the current slice.
+	 */
+	private static final double DEFAULT_POINT_SIZE = 5.0;
+
+	/**
+	 * Size (in screen pixels) of the bins of the density heatmap.
+	 */
+	private static final int DENSITY_BIN_SIZE = 4;
+
+	/**
+	 * Maximum number of cached colors for per-point colors.
+	 */
+	private static final int MAX_CACHED_COLORS = 1 << 16;
+
+	private volatile PointsData points;
+
+	private volatile List< ? extends RealLocalizable > list;
+
+	private volatile PointsTimeIndex timeIndex;
+
+	/**
+	 * Bounding box of all points, computed with {@link #timeIndex}.
+	 */
+	private volatile RealInterval bounds;
+
+	/**
+	 * Largest point size (in screen pixels) of the indexed points, used as
+	 * margin when culling points outside the screen.
+	 */
+	private volatile double maxPointSize;
+
+	private volatile double maxSliceDistance = Double.POSITIVE_INFINITY;
+
+	private volatile int trackTailLength = 0;
+
+	private volatile int densityThreshold = Integer.MAX_VALUE;
+
+	private volatile PointsStyle style;
+
+	private volatile StyleColors styleColors;
 
-	private Color col;
+	/**
+	 * Heatmap of the last frame, shared by all tiles of the frame when drawing
+	 * concurrently. Guarded by {@code this}.
+	 */
+	private DensityImage densityImage;
 
+	/**
+	 * Bins of the heatmap, reused between frames. Guarded by {@code this}.
+	 */
+	private float[] densityBins = new float[ 0 ];
+
+	private volatile int canvasWidth;
+
+	private volatile int canvasHeight;
+
+	/**
+	 * Colors with the current overlay color for each alpha value.
+	 */
+	private volatile Color[] colors;
+
+	/**
+	 * Colors for per-point colors, by ARGB value. Each drawing thread has its
+	 * own cache, such that {@link #draw(Graphics2D)} can be called
+	 * concurrently.
+	 */
+	private final ThreadLocal< TIntObjectHashMap< Color > > pointColors = ThreadLocal.withInitial( TIntObjectHashMap::new );
+
+	/**
+	 * Set points to draw. The points are drawn directly from the list, so
+	 * modifications of the list become visible with the next repaint. (If the
+	 * overlay is {@link #setCached(boolean) cached} or
+	 * {@link #setAsync(boolean) asynchronous}, {@link #invalidate()} must be
+	 * called after modifying the list.) All points of the list are visited
+	 * for every repaint. For large numbers of points, use
+	 * {@link #setPoints(PointsData)}.
+	 */
 	public < T extends RealLocalizable > void setPoints( final List< T > points )
+	{
+		this.list = points;
+		this.points = null;
+		invalidate();
+	}
+
+	/**
+	 * Set points to draw. The points are rendered directly from
+	 * {@code points}, modifications become visible with the next repaint.
+	 * Coordinates are stored as {@code float} in {@link PointsData}.
+	 */
+	public void setPoints( final PointsData points )
 	{
 		this.points = points;
+		this.list = null;
+		invalidate();
+	}
+
+	/**
+	 * Get the points set by {@link #setPoints(PointsData)}, or {@code null}
+	 * if points were set as a {@code List}.
+	 */
+	public PointsData getPoints()
+	{
+		return points;
+	}
+
+	/**
+	 * Set the maximum distance (in screen pixels) from the current slice for
+	 * which points are drawn. By default, this is infinite and all points are
+	 * drawn. Points outside the visible screen area are skipped through the
+	 * spatial index in any case. Setting a finite distance makes drawing large
+	 * point sets much faster, because only points close to the slice are
+	 * visited.
+	 */
+	public void setMaxSliceDistance( final double distance )
+	{
+		maxSliceDistance = distance;
+		invalidate();
+	}
+
+	public double getMaxSliceDistance()
+	{
+		return maxSliceDistance;
+	}
+
+	/**
+	 * Set the number of earlier timepoints for which track tails are drawn.
+	 * By default, this is {@code 0} and no tails are drawn. Tails are only
+	 * drawn if the points have timepoints and track ids.
+	 */
+	public void setTrackTailLength( final int numTimepoints )
+	{
+		trackTailLength = numTimepoints;
+		invalidate();
+	}
+
+	public int getTrackTailLength()
+	{
+		return trackTailLength;
+	}
+
+	/**
+	 * Set the number of points above which a density heatmap is drawn instead
+	 * of individual points. The number of points is estimated from the points
+	 * near the visible screen area, within the maximum slice distance (see
+	 * {@link #setMaxSliceDistance(double)}). By default, this is
+	 * {@link Integer#MAX_VALUE}, i.e., individual points are always drawn.
+	 */
+	public void setDensityThreshold( final int numPoints )
+	{
+		densityThreshold = numPoints;
+		invalidate();
+	}
+
+	public int getDensityThreshold()
+	{
+		return densityThreshold;
+	}
+
+	/**
+	 * Set the style that maps point values (see
+	 * {@link PointsData#setValue(int, float)}) to colors and sizes. Colors and
+	 * sizes from the style replace per-point colors and sizes. The style is
+	 * only used if the points have values. By default, this is {@code null}.
+	 */
+	public void setStyle( final PointsStyle style )
+	{
+		this.style = style;
+		invalidate();
+	}
+
+	public PointsStyle getStyle()
+	{
+		return style;
+	}
+
+	@Override
+	public void setCanvasSize( final int width, final int height )
+	{
+		super.setCanvasSize( width, height );
+		canvasWidth = width;
+		canvasHeight = height;
+	}
+
+	/**
+	 * Returns the bounding box of all points, or {@code null} if it is not
+	 * known because the points have been modified since the last draw.
+	 */
+	@Override
+	protected RealInterval getSourceBounds()
+	{
+		final PointsTimeIndex index = timeIndex;
+		if ( index == null || index.isOutdated() || index.getPoints() != points )
+			return null;
+		return bounds;
+	}
+
+	private static RealInterval computeBounds( final PointsData points )
+	{
+		final int size = points.size();
+		if ( size == 0 )
+			return null;
+		final float[][] xyz = { points.xs(), points.ys(), points.zs() };
+		final double[] min = new double[ 3 ];
+		final double[] max = new double[ 3 ];
+		Arrays.fill( min, Double.POSITIVE_INFINITY );
+		Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		for ( int d = 0; d < 3; ++d )
+		{
+			final float[] column = xyz[ d ];
+			for ( int i = 0; i < size; ++i )
+			{
+				min[ d ] = Math.min( min[ d ], column[ i ] );
+				max[ d ] = Math.max( max[ d ], column[ i ] );
+			}
+		}
+		return new FinalRealInterval( min, max );
+	}
+
+	@Override
+	protected long getModificationCount()
+	{
+		final PointsData points = this.points;
+		return points == null ? 0 : points.modCount();
+	}
+
+	/**
+	 * Returns {@code true}: all state that is modified while drawing is
+	 * local to the {@link #draw(Graphics2D)} call, and the lazily built
+	 * indices and heatmaps are computed once and shared.
+	 */
+	@Override
+	protected boolean isConcurrentDrawSupported()
+	{
+		return true;
 	}
 
 	@Override
 	protected void draw( final Graphics2D graphics )
 	{
+		final List< ? extends RealLocalizable > list = this.list;
+		if ( list != null )
+		{
+			drawList( graphics, list );
+			return;
+		}
+
+		final PointsData points = this.points;
 		if ( points == null )
 			return;
 
-		col = new Color( info.getColor().get() );
+		final PointsTimeIndex timeIndex = getTimeIndex( points );
+		final PointsIndex index = timeIndex.get( info.getTimePointIndex() );
+		if ( index == null )
+			return;
+
+		final DrawContext context = new DrawContext( timeIndex, getColors( info.getColor().get() ), getMargin() );
+		getCurrentTransform3D( context.transform );
+		final double maxDistance = maxSliceDistance;
+		final int canvasWidth = this.canvasWidth;
+		final int canvasHeight = this.canvasHeight;
+		final boolean hasCanvas = canvasWidth > 0 && canvasHeight > 0;
+		// Cull through the index by the visible screen area and the slab. If
+		// the slab is infinite, it is limited to the depth of the points.
+		final RealInterval bounds = this.bounds;
+		final boolean cull = hasCanvas && bounds != null;
+		final double cullDistance = cull ? Math.min( maxDistance, getMaxDepth( context.transform, bounds ) ) : maxDistance;
+		if ( cull )
+			getVisibleBoundingBox( context.transform, 0, 0, canvasWidth, canvasHeight, context.margin, cullDistance, context.bbMin, context.bbMax );
+		else
+		{
+			Arrays.fill( context.bbMin, Double.NEGATIVE_INFINITY );
+			Arrays.fill( context.bbMax, Double.POSITIVE_INFINITY );
+		}
+
+		// Decide on the whole canvas, such that all tiles draw the same way.
+		// Only points in the visible part of the slab count, such that points
+		// are drawn again when zooming in.
+		final int threshold = densityThreshold;
+		if ( hasCanvas && index.size() > threshold )
+		{
+			final int count = cull ? index.estimateCount( context.bbMin, context.bbMax ) : index.size();
+			if ( count > threshold )
+			{
+				final DensityImage density = getDensityImage( index, context, canvasWidth, canvasHeight, maxDistance );
+				graphics.drawImage( density.image, 0, 0, density.image.getWidth() * DENSITY_BIN_SIZE, density.image.getHeight() * DENSITY_BIN_SIZE, null );
+				return;
+			}
+		}
 
+		// Only visit points in the clip region. Tails may leave the clip, so
+		// with tails, points are visited on the whole canvas.
+		final int tailLength = timeIndex.hasTracks() ? trackTailLength : 0;
+		if ( hasCanvas )
+		{
+			final Rectangle clip = graphics.getClipBounds();
+			if ( clip == null || tailLength > 0 )
+				context.setRegion( 0, 0, canvasWidth, canvasHeight );
+			else
+				context.setRegion(
+						Math.max( 0, clip.x ),
+						Math.max( 0, clip.y ),
+						Math.min( canvasWidth, clip.x + clip.width ),
+						Math.min( canvasHeight, clip.y + clip.height ) );
+			if ( cull )
+				getVisibleBoundingBox( context.transform, context.minX, context.minY, context.maxX, context.maxY, context.margin, cullDistance, context.bbMin, context.bbMax );
+		}
+
+		if ( cull )
+			index.forEachRange( context.bbMin, context.bbMax, ( from, to ) -> drawRange( graphics, points, index, context, from, to, tailLength, maxDistance ) );
+		else
+			drawRange( graphics, points, index, context, 0, index.size(), tailLength, maxDistance );
+	}
+
+	/**
+	 * Draw all points of {@code list}, without index.
+	 */
+	private void drawList( final Graphics2D graphics, final List< ? extends RealLocalizable > list )
+	{
+		final Color[] colors = getColors( info.getColor().get() );
+		final double maxDistance = maxSliceDistance;
 		final AffineTransform3D transform = new AffineTransform3D();
 		getCurrentTransform3D( transform );
 		final double[] lPos = new double[ 3 ];
 		final double[] gPos = new double[ 3 ];
-		for ( final RealLocalizable p : points )
+		for ( final RealLocalizable p : list )
 		{
 			p.localize( lPos );
 			transform.apply( lPos, gPos );
-			final double size = getPointSize( gPos );
+			if ( Math.abs( gPos[ 2 ] ) > maxDistance )
+				continue;
+			final double size = getPointSize( gPos, DEFAULT_POINT_SIZE );
 			final int x = ( int ) ( gPos[ 0 ] - 0.5 * size );
 			final int y = ( int ) ( gPos[ 1 ] - 0.5 * size );
 			final int w = ( int ) size;
-			graphics.setColor( getColor( gPos ) );
+			graphics.setColor( colors[ getAlpha( gPos ) ] );
 			graphics.fillOval( x, y, w, w );
 		}
 	}
 
-	/** screen pixels [x,y,z] **/
-	private Color getColor( final double[] gPos )
+	/**
+	 * Get the largest distance (in screen pixels) from the current slice of
+	 * the corners of {@code bounds}, plus one pixel to be safe from rounding.
+	 *
+	 * @param sourceToScreen
+	 *            transform from source to screen coordinates
+	 */
+	static double getMaxDepth( final AffineTransform3D sourceToScreen, final RealInterval bounds )
+	{
+		double depth = 0;
+		for ( int corner = 0; corner < 8; ++corner )
+		{
+			double z = sourceToScreen.get( 2, 3 );
+			for ( int d = 0; d < 3; ++d )
+				z += sourceToScreen.get( 2, d ) * ( ( corner & ( 1 << d ) ) == 0 ? bounds.realMin( d ) : bounds.realMax( d ) );
+			depth = Math.max( depth, Math.abs( z ) );
+		}
+		return depth + 1;
+	}
+
+	/**
+	 * Get the heatmap for the current frame, computing it if it is not the
+	 * one of the last frame.
+	 */
+	private synchronized DensityImage getDensityImage(
+			final PointsIndex index,
+			final DrawContext context,
+			final int canvasWidth,
+			final int canvasHeight,
+			final double maxDistance )
 	{
-		int alpha = 255 - ( int ) Math.round( Math.abs( gPos[ 2 ] ) );
+		final int rgb = context.colors[ 255 ].getRGB() & 0x00ffffff;
+		if ( densityImage == null || !densityImage.isValid( index, context.transform, canvasWidth, canvasHeight, maxDistance, context.margin, rgb ) )
+			densityImage = new DensityImage( index, context.transform, canvasWidth, canvasHeight, maxDistance, context.margin, rgb, computeDensity( index, context, canvasWidth, canvasHeight, maxDistance, rgb ) );
+		return densityImage;
+	}
 
-		if ( alpha < 64 )
-			alpha = 64;
+	/**
+	 * Compute a heatmap of the number of points projected onto each bin of
+	 * {@link #DENSITY_BIN_SIZE}<sup>2</sup> screen pixels. Point counts are
+	 * taken from the finest level of the {@link PointsDensity} whose cells
+	 * are not smaller than a bin on screen.
+	 */
+	private BufferedImage computeDensity(
+			final PointsIndex index,
+			final DrawContext context,
+			final int canvasWidth,
+			final int canvasHeight,
+			final double maxDistance,
+			final int rgb )
+	{
+		final int bw = ( canvasWidth + DENSITY_BIN_SIZE - 1 ) / DENSITY_BIN_SIZE;
+		final int bh = ( canvasHeight + DENSITY_BIN_SIZE - 1 ) / DENSITY_BIN_SIZE;
+		final BufferedImage image = new BufferedImage( bw, bh, BufferedImage.TYPE_INT_ARGB );
+		if ( densityBins.length != bw * bh )
+			densityBins = new float[ bw * bh ];
+		final float[] bins = densityBins;
+		Arrays.fill( bins, 0 );
 
-		return new Color( col.getRed(), col.getGreen(), col.getBlue(), alpha );
+		final AffineTransform3D transform = context.transform;
+		final double[] lPos = context.lPos;
+		final double[] gPos = context.gPos;
+		final PointsDensity density = index.density();
+		final double scale = getScale( transform );
+		final int level = density.levelFor( DENSITY_BIN_SIZE / scale );
+		final double r = 0.5 * density.cellSize( level ) * scale;
+		final double maxCellDistance = maxDistance + Math.sqrt( 3 ) * r;
+		density.forEachCell( level, context.bbMin, context.bbMax, ( x, y, z, count ) -> {
+			lPos[ 0 ] = x;
+			lPos[ 1 ] = y;
+			lPos[ 2 ] = z;
+			transform.apply( lPos, gPos );
+			if ( Math.abs( gPos[ 2 ] ) > maxCellDistance )
+				return;
+			final int minX = Math.max( 0, ( int ) Math.floor( ( gPos[ 0 ] - r ) / DENSITY_BIN_SIZE ) );
+			final int maxX = Math.min( bw - 1, ( int ) Math.floor( ( gPos[ 0 ] + r ) / DENSITY_BIN_SIZE ) );
+			final int minY = Math.max( 0, ( int ) Math.floor( ( gPos[ 1 ] - r ) / DENSITY_BIN_SIZE ) );
+			final int maxY = Math.min( bh - 1, ( int ) Math.floor( ( gPos[ 1 ] + r ) / DENSITY_BIN_SIZE ) );
+			if ( minX > maxX || minY > maxY )
+				return;
+			final float value = ( float ) count / ( ( maxX - minX + 1 ) * ( maxY - minY + 1 ) );
+			for ( int by = minY; by <= maxY; ++by )
+				for ( int bx = minX; bx <= maxX; ++bx )
+					bins[ by * bw + bx ] += value;
+		} );
+
+		float max = 0;
+		for ( final float v : bins )
+			max = Math.max( max, v );
+		final double norm = 255 / Math.log1p( max );
+		final int[] pixels = ( ( DataBufferInt ) image.getRaster().getDataBuffer() ).getData();
+		for ( int i = 0; i < bins.length; ++i )
+		{
+			final int alpha = bins[ i ] > 0 ? ( int ) ( norm * Math.log1p( bins[ i ] ) ) : 0;
+			pixels[ i ] = ( Math.min( alpha, 255 ) << 24 ) | rgb;
+		}
+		return image;
+	}
+
+	/**
+	 * Get the average scaling from source coordinates to screen pixels of
+	 * {@code transform}.
+	 */
+	private static double getScale( final AffineTransform3D transform )
+	{
+		double sum = 0;
+		for ( int c = 0; c < 3; ++c )
+		{
+			final double x = transform.get( 0, c );
+			final double y = transform.get( 1, c );
+			final double z = transform.get( 2, c );
+			sum += Math.sqrt( x * x + y * y + z * z );
+		}
+		return sum / 3;
 	}
 
-	private double getPointSize( final double[] gPos )
+	/**
+	 * Get the index of {@code points}, rebuilding it if the points have been
+	 * modified. When drawing concurrently, the index is built only once.
+	 */
+	private PointsTimeIndex getTimeIndex( final PointsData points )
+	{
+		PointsTimeIndex index = timeIndex;
+		if ( index == null || index.isOutdated() || index.getPoints() != points )
+		{
+			synchronized ( this )
+			{
+				index = timeIndex;
+				if ( index == null || index.isOutdated() || index.getPoints() != points )
+				{
+					index = new PointsTimeIndex( points );
+					bounds = computeBounds( points );
+					double max = DEFAULT_POINT_SIZE;
+					final float[] sizes = points.sizes();
+					if ( sizes != null )
+						for ( int i = 0; i < points.size(); ++i )
+							max = Math.max( max, sizes[ i ] );
+					maxPointSize = max;
+					timeIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	private void drawRange(
+			final Graphics2D graphics,
+			final PointsData points,
+			final PointsIndex index,
+			final DrawContext context,
+			final int from,
+			final int to,
+			final int tailLength,
+			final double maxDistance )
+	{
+		final float[] xs = points.xs();
+		final float[] ys = points.ys();
+		final float[] zs = points.zs();
+		final int[] pointColors = points.colors();
+		final float[] pointSizes = points.sizes();
+		final float[] values = points.values();
+		final PointsStyle style = values == null ? null : this.style;
+		final boolean useStyleColors = style != null && style.hasColors();
+		final boolean useStyleSizes = style != null && style.hasSizes();
+		final Color[] styleColors = useStyleColors ? getStyleColors( style ) : null;
+		final int size = points.size();
+
+		final AffineTransform3D transform = context.transform;
+		final double[] lPos = context.lPos;
+		final double[] gPos = context.gPos;
+		final boolean cullXY = context.maxX > context.minX && context.maxY > context.minY;
+		final double margin = context.margin;
+		final double minX = context.minX - margin;
+		final double minY = context.minY - margin;
+		final double maxX = context.maxX + margin;
+		final double maxY = context.maxY + margin;
+		for ( int i = from; i < to; ++i )
+		{
+			final int p = index.originalIndex( i );
+			if ( p >= size )
+				continue;
+			lPos[ 0 ] = xs[ p ];
+			lPos[ 1 ] = ys[ p ];
+			lPos[ 2 ] = zs[ p ];
+			transform.apply( lPos, gPos );
+			if ( Math.abs( gPos[ 2 ] ) > maxDistance )
+				continue;
+			if ( cullXY && ( gPos[ 0 ] < minX || gPos[ 0 ] > maxX || gPos[ 1 ] < minY || gPos[ 1 ] > maxY ) )
+				continue;
+			final int entry = style == null ? 0 : style.entry( values[ p ] );
+			final float entrySize = useStyleSizes ? style.getSize( entry ) : 0;
+			final double pointSize = entrySize > 0
+					? entrySize
+					: pointSizes == null || pointSizes[ p ] <= 0
+							? DEFAULT_POINT_SIZE
+							: pointSizes[ p ];
+			final double size = getPointSize( gPos, pointSize );
+			final int x = ( int ) ( gPos[ 0 ] - 0.5 * size );
+			final int y = ( int ) ( gPos[ 1 ] - 0.5 * size );
+			final int w = ( int ) size;
+			final int argb = useStyleColors
+					? style.getColor( entry )
+					: pointColors == null ? 0 : pointColors[ p ];
+			if ( argb == 0 )
+				graphics.setColor( context.colors[ getAlpha( gPos ) ] );
+			else if ( useStyleColors )
+				graphics.setColor( getStyleColor( styleColors, style, entry, getAlpha( gPos ) ) );
+			else
+				graphics.setColor( getColor( getAlpha( gPos ), argb ) );
+			graphics.fillOval( x, y, w, w );
+			if ( tailLength > 0 )
+				drawTail( graphics, points, context, p, tailLength, argb == 0 ? context.colors[ 255 ].getRGB() : argb );
+		}
+	}
+
+	/**
+	 * Draw the track tail of point {@code p}, connecting it to the points of
+	 * the same track up to {@code tailLength} timepoints earlier. The tail
+	 * fades out towards earlier timepoints. Uses {@link DrawContext#gPos} as
+	 * the screen position of {@code p}.
+	 */
+	private void drawTail( final Graphics2D graphics, final PointsData points, final DrawContext context, final int p, final int tailLength, final int argb )
+	{
+		final float[] xs = points.xs();
+		final float[] ys = points.ys();
+		final float[] zs = points.zs();
+		final int[] timepoints = points.timepoints();
+		final int minTimepoint = timepoints[ p ] - tailLength;
+		final int size = points.size();
+		final PointsTimeIndex timeIndex = context.timeIndex;
+		final double[] lPos = context.lPos;
+		final double[] tPos = context.tPos;
+
+		int x0 = ( int ) context.gPos[ 0 ];
+		int y0 = ( int ) context.gPos[ 1 ];
+		for ( int q = timeIndex.previous( p ); q >= 0 && q < size && timepoints[ q ] >= minTimepoint; q = timeIndex.previous( q ) )
+		{
+			lPos[ 0 ] = xs[ q ];
+			lPos[ 1 ] = ys[ q ];
+			lPos[ 2 ] = zs[ q ];
+			context.transform.apply( lPos, tPos );
+			final int x1 = ( int ) tPos[ 0 ];
+			final int y1 = ( int ) tPos[ 1 ];
+			final int age = timepoints[ p ] - timepoints[ q ];
+			final int alpha = 255 - 191 * age / tailLength;
+			graphics.setColor( getColor( alpha, argb ) );
+			graphics.drawLine( x0, y0, x1, y1 );
+			x0 = x1;
+			y0 = y1;
+		}
+	}
+
+	/**
+	 * Get the largest point size (in screen pixels), used as margin when
+	 * culling points outside the screen.
+	 */
+	private double getMargin()
+	{
+		final PointsStyle style = this.style;
+		return style == null ? maxPointSize : Math.max( maxPointSize, style.getMaxSize() );
+	}
+
+	/**
+	 * Compute the bounding box (in source coordinates) of the visible screen
+	 * area, extended by {@code margin} screen pixels, and by
+	 * {@code maxDistance} in front of and behind the current slice.
+	 *
+	 * @param sourceToScreen
+	 *            transform from source to screen coordinates
+	 */
+	static void getVisibleBoundingBox(
+			final AffineTransform3D sourceToScreen,
+			final int width,
+			final int height,
+			final double margin,
+			final double maxDistance,
+			final double[] min,
+			final double[] max )
+	{
+		getVisibleBoundingBox( sourceToScreen, 0, 0, width, height, margin, maxDistance, min, max );
+	}
+
+	/**
+	 * Compute the bounding box (in source coordinates) of the screen area
+	 * {@code [minX, maxX] x [minY, maxY]}, extended by {@code margin} screen
+	 * pixels, and by {@code maxDistance} in front of and behind the current
+	 * slice.
+	 *
+	 * @param sourceToScreen
+	 *            transform from source to screen coordinates
+	 */
+	static void getVisibleBoundingBox(
+			final AffineTransform3D sourceToScreen,
+			final int minX,
+			final int minY,
+			final int maxX,
+			final int maxY,
+			final double margin,
+			final double maxDistance,
+			final double[] min,
+			final double[] max )
+	{
+		final AffineTransform3D screenToSource = sourceToScreen.inverse();
+		final double[] screen = new double[ 3 ];
+		final double[] source = new double[ 3 ];
+		Arrays.fill( min, Double.POSITIVE_INFINITY );
+		Arrays.fill( max, Double.NEGATIVE_INFINITY );
+		for ( int corner = 0; corner < 8; ++corner )
+		{
+			screen[ 0 ] = ( corner & 1 ) == 0 ? minX - margin : maxX + margin;
+			screen[ 1 ] = ( corner & 2 ) == 0 ? minY - margin : maxY + margin;
+			screen[ 2 ] = ( corner & 4 ) == 0 ? -maxDistance : maxDistance;
+			screenToSource.apply( screen, source );
+			for ( int d = 0; d < 3; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], source[ d ] );
+				max[ d ] = Math.max( max[ d ], source[ d ] );
+			}
+		}
+	}
+
+	/**
+	 * Get colors with the RGB of {@code argb} for each alpha value.
+	 */
+	private Color[] getColors( final int argb )
+	{
+		Color[] colors = this.colors;
+		if ( colors == null || ( colors[ 255 ].getRGB() & 0x00ffffff ) != ( argb & 0x00ffffff ) )
+		{
+			final Color col = new Color( argb );
+			colors = new Color[ 256 ];
+			for ( int alpha = 0; alpha < 256; ++alpha )
+				colors[ alpha ] = new Color( col.getRed(), col.getGreen(), col.getBlue(), alpha );
+			this.colors = colors;
+		}
+		return colors;
+	}
+
+	/**
+	 * Get the color table for {@code style}, replacing the current one if
+	 * {@code style} has changed.
+	 */
+	private Color[] getStyleColors( final PointsStyle style )
+	{
+		StyleColors colors = styleColors;
+		if ( colors == null || colors.style != style )
+		{
+			colors = new StyleColors( style );
+			styleColors = colors;
+		}
+		return colors.colors;
+	}
+
+	/**
+	 * Get color for lookup table {@code entry} of {@code style} with the given
+	 * {@code alpha}. The alpha of the table color is ignored.
+	 *
+	 * @param styleColors
+	 *            color table of {@code style}, filled on first use
+	 */
+	private static Color getStyleColor( final Color[] styleColors, final PointsStyle style, final int entry, final int alpha )
+	{
+		final int i = entry * 256 + alpha;
+		Color color = styleColors[ i ];
+		if ( color == null )
+		{
+			// racing threads create equal colors, Color is immutable
+			color = new Color( ( alpha << 24 ) | ( style.getColor( entry ) & 0x00ffffff ), true );
+			styleColors[ i ] = color;
+		}
+		return color;
+	}
+
+	private static int getAlpha( final double[] gPos )
+	{
+		final int alpha = 255 - ( int ) Math.round( Math.abs( gPos[ 2 ] ) );
+		return alpha < 64 ? 64 : alpha;
+	}
+
+	private Color getColor( final int alpha, final int argb )
+	{
+		final TIntObjectHashMap< Color > pointColors = this.pointColors.get();
+		final int key = ( alpha << 24 ) | ( argb & 0x00ffffff );
+		Color color = pointColors.get( key );
+		if ( color == null )
+		{
+			if ( pointColors.size() >= MAX_CACHED_COLORS )
+				pointColors.clear();
+			color = new Color( key, true );
+			pointColors.put( key, color );
+		}
+		return color;
+	}
+
+	private double getPointSize( final double[] gPos, final double pointSize )
 	{
 		if ( Math.abs( gPos[ 2 ] ) < 3 )
-			return 5.0;
+			return pointSize;
 		else
-			return 3.0;
+			return 0.6 * pointSize;
+	}
+
+	/**
+	 * State of one {@link #draw(Graphics2D)} call.
+	 */
+	private static final class DrawContext
+	{
+		final PointsTimeIndex timeIndex;
+
+		final Color[] colors;
+
+		final double margin;
+
+		final AffineTransform3D transform = new AffineTransform3D();
+
+		final double[] lPos = new double[ 3 ];
+
+		final double[] gPos = new double[ 3 ];
+
+		final double[] tPos = new double[ 3 ];
+
+		final double[] bbMin = new double[ 3 ];
+
+		final double[] bbMax = new double[ 3 ];
+
+		/**
+		 * Screen region in which points are drawn. Empty if the canvas size
+		 * is unknown.
+		 */
+		int minX;
+
+		int minY;
+
+		int maxX;
+
+		int maxY;
+
+		DrawContext( final PointsTimeIndex timeIndex, final Color[] colors, final double margin )
+		{
+			this.timeIndex = timeIndex;
+			this.colors = colors;
+			this.margin = margin;
+		}
+
+		void setRegion( final int minX, final int minY, final int maxX, final int maxY )
+		{
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+	}
+
+	/**
+	 * Colors for each entry of {@link #style} and each alpha value, at index
+	 * {@code entry * 256 + alpha}. Filled on first use.
+	 */
+	private static final class StyleColors
+	{
+		final PointsStyle style;
+
+		final Color[] colors;
+
+		StyleColors( final PointsStyle style )
+		{
+			this.style = style;
+			this.colors = new Color[ style.numEntries() * 256 ];
+		}
+	}
+
+	/**
+	 * A heatmap with the parameters it was computed for.
+	 */
+	private static final class DensityImage
+	{
+		final PointsIndex index;
+
+		final AffineTransform3D transform;
+
+		final int width;
+
+		final int height;
+
+		final double maxDistance;
+
+		final double margin;
+
+		final int rgb;
+
+		final BufferedImage image;
+
+		DensityImage(
+				final PointsIndex index,
+				final AffineTransform3D transform,
+				final int width,
+				final int height,
+				final double maxDistance,
+				final double margin,
+				final int rgb,
+				final BufferedImage image )
+		{
+			this.index = index;
+			this.transform = transform.copy();
+			this.width = width;
+			this.height = height;
+			this.maxDistance = maxDistance;
+			this.margin = margin;
+			this.rgb = rgb;
+			this.image = image;
+		}
+
+		boolean isValid(
+				final PointsIndex index,
+				final AffineTransform3D transform,
+				final int width,
+				final int height,
+				final double maxDistance,
+				final double margin,
+				final int rgb )
+		{
+			if ( index != this.index || width != this.width || height != this.height
+					|| maxDistance != this.maxDistance || margin != this.margin || rgb != this.rgb )
+				return false;
+			for ( int r = 0; r < 3; ++r )
+				for ( int c = 0; c < 4; ++c )
+					if ( transform.get( r, c ) != this.transform.get( r, c ) )
+						return false;
+			return true;
+		}
 	}
 }
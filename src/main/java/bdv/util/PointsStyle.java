@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+/**
+ * Maps per-point attribute values (see {@link PointsData#setValue(int, float)})
+ * to colors and sizes through lookup tables. Values are either mapped
+ * linearly from a range {@code [min, max]} onto the table entries, or used
+ * directly as table index (for classes). Values outside the table are clamped
+ * to the first or last entry.
+ * <p>
+ * An entry color of {@code 0} means that the point is drawn with the color of
+ * the overlay. An entry size of {@code 0} means that the point is drawn with
+ * its own size. {@code PointsStyle} is immutable.
+ */
+public class PointsStyle
+{
+	private final int[] colors;
+
+	private final float[] sizes;
+
+	private final double min;
+
+	private final double scale;
+
+	private final int numEntries;
+
+	private final float maxSize;
+
+	private PointsStyle( final int[] colors, final float[] sizes, final double min, final double scale )
+	{
+		if ( colors == null && sizes == null )
+			throw new IllegalArgumentException( "colors or sizes must be given" );
+		if ( colors != null && sizes != null && colors.length != sizes.length )
+			throw new IllegalArgumentException( "colors and sizes must have the same length" );
+		numEntries = colors != null ? colors.length : sizes.length;
+		if ( numEntries == 0 )
+			throw new IllegalArgumentException( "lookup table must not be empty" );
+		this.colors = colors == null ? null : colors.clone();
+		this.sizes = sizes == null ? null : sizes.clone();
+		this.min = min;
+		this.scale = scale;
+		float max = 0;
+		if ( sizes != null )
+			for ( final float size : sizes )
+				max = Math.max( max, size );
+		maxSize = max;
+	}
+
+	/**
+	 * Map values in {@code [min, max]} linearly onto the entries of the
+	 * lookup tables.
+	 *
+	 * @param colors
+	 *            ARGB color table, or {@code null} to keep point colors
+	 * @param sizes
+	 *            size (in screen pixels) table, or {@code null} to keep point
+	 *            sizes
+	 */
+	public static PointsStyle linear( final double min, final double max, final int[] colors, final float[] sizes )
+	{
+		final int n = colors != null ? colors.length : sizes != null ? sizes.length : 0;
+		final double scale = max > min ? n / ( max - min ) : 0;
+		return new PointsStyle( colors, sizes, min, scale );
+	}
+
+	public static PointsStyle linear( final double min, final double max, final int[] colors )
+	{
+		return linear( min, max, colors, null );
+	}
+
+	/**
+	 * Use values as index into the lookup tables. Values are rounded to the
+	 * nearest integer.
+	 *
+	 * @param colors
+	 *            ARGB color for each class, or {@code null} to keep point
+	 *            colors
+	 * @param sizes
+	 *            size (in screen pixels) for each class, or {@code null} to
+	 *            keep point sizes
+	 */
+	public static PointsStyle categorical( final int[] colors, final float[] sizes )
+	{
+		return new PointsStyle( colors, sizes, -0.5, 1 );
+	}
+
+	public static PointsStyle categorical( final int[] colors )
+	{
+		return categorical( colors, null );
+	}
+
+	/**
+	 * Create a color table of {@code n} colors interpolated linearly from
+	 * {@code fromArgb} to {@code toArgb}.
+	 */
+	public static int[] gradient( final int fromArgb, final int toArgb, final int n )
+	{
+		final int[] table = new int[ n ];
+		for ( int i = 0; i < n; ++i )
+		{
+			final double w = n == 1 ? 0 : ( double ) i / ( n - 1 );
+			int argb = 0;
+			for ( int shift = 0; shift < 32; shift += 8 )
+			{
+				final int a = ( fromArgb >>> shift ) & 0xff;
+				final int b = ( toArgb >>> shift ) & 0xff;
+				argb |= ( ( int ) Math.round( a + w * ( b - a ) ) ) << shift;
+			}
+			table[ i ] = argb;
+		}
+		return table;
+	}
+
+	public int numEntries()
+	{
+		return numEntries;
+	}
+
+	/**
+	 * Get the lookup table entry for {@code value}.
+	 */
+	public int entry( final float value )
+	{
+		final double e = ( value - min ) * scale;
+		if ( !( e > 0 ) ) // also handles NaN
+			return 0;
+		return e >= numEntries ? numEntries - 1 : ( int ) e;
+	}
+
+	public boolean hasColors()
+	{
+		return colors != null;
+	}
+
+	public boolean hasSizes()
+	{
+		return sizes != null;
+	}
+
+	/**
+	 * Get the ARGB color of lookup table {@code entry}. Returns {@code 0} if
+	 * there is no color table.
+	 */
+	public int getColor( final int entry )
+	{
+		return colors == null ? 0 : colors[ entry ];
+	}
+
+	/**
+	 * Get the size of lookup table {@code entry}. Returns {@code 0} if there
+	 * is no size table.
+	 */
+	public float getSize( final int entry )
+	{
+		return sizes == null ? 0 : sizes[ entry ];
+	}
+
+	/**
+	 * Get the largest size in the size table, or {@code 0} if there is no size
+	 * table.
+	 */
+	public float getMaxSize()
+	{
+		return maxSize;
+	}
+}
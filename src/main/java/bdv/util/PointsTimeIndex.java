@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Index of the points in a {@link PointsData} by timepoint. The points of each
+ * timepoint are available as a {@link PointsIndex}, which is built lazily on
+ * first access. If the points have track ids, the previous point of the same
+ * track is available for each point.
+ * <p>
+ * If the points have no timepoints, all points are shown at every timepoint.
+ */
+final class PointsTimeIndex
+{
+	private final PointsData points;
+
+	/**
+	 * {@link PointsData#modCount()} at the time the index was built.
+	 */
+	private final int modCount;
+
+	private final boolean hasTimepoints;
+
+	private final int minTimepoint;
+
+	/**
+	 * Point indices sorted by timepoint.
+	 */
+	private final int[] byTimepoint;
+
+	/**
+	 * Points of timepoint {@code t} are
+	 * {@code byTimepoint[timepointStart[t-minTimepoint]]}, ...,
+	 * {@code byTimepoint[timepointStart[t-minTimepoint+1]-1]}.
+	 */
+	private final int[] timepointStart;
+
+	/**
+	 * Spatial index for each timepoint, built lazily.
+	 */
+	private final PointsIndex[] spatialIndices;
+
+	/**
+	 * {@code previous[i]} is the index of the point of the same track at the
+	 * closest earlier timepoint, or {@code -1}. {@code null} if the points have
+	 * no track ids.
+	 */
+	private final int[] previous;
+
+	PointsTimeIndex( final PointsData points )
+	{
+		this.points = points;
+		modCount = points.modCount();
+		final int size = points.size();
+		final int[] timepoints = points.timepoints();
+		hasTimepoints = timepoints != null;
+
+		if ( !hasTimepoints )
+		{
+			minTimepoint = 0;
+			byTimepoint = null;
+			timepointStart = new int[] { 0, size };
+			spatialIndices = new PointsIndex[ 1 ];
+		}
+		else
+		{
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for ( int i = 0; i < size; ++i )
+			{
+				min = Math.min( min, timepoints[ i ] );
+				max = Math.max( max, timepoints[ i ] );
+			}
+			if ( size == 0 )
+				min = max = 0;
+			minTimepoint = min;
+
+			// counting sort by timepoint
+			final int numTimepoints = max - min + 1;
+			timepointStart = new int[ numTimepoints + 1 ];
+			for ( int i = 0; i < size; ++i )
+				++timepointStart[ timepoints[ i ] - min + 1 ];
+			for ( int t = 0; t < numTimepoints; ++t )
+				timepointStart[ t + 1 ] += timepointStart[ t ];
+			final int[] next = Arrays.copyOf( timepointStart, numTimepoints );
+			byTimepoint = new int[ size ];
+			for ( int i = 0; i < size; ++i )
+				byTimepoint[ next[ timepoints[ i ] - min ]++ ] = i;
+			spatialIndices = new PointsIndex[ numTimepoints ];
+		}
+
+		final int[] trackIds = points.trackIds();
+		if ( trackIds == null || !hasTimepoints )
+			previous = null;
+		else
+		{
+			// link each point to the most recent earlier point of its track
+			previous = new int[ size ];
+			final TIntIntHashMap last = new TIntIntHashMap( 16, 0.5f, -1, -1 );
+			for ( final int i : byTimepoint )
+			{
+				final int trackId = trackIds[ i ];
+				if ( trackId < 0 )
+					previous[ i ] = -1;
+				else
+				{
+					final int p = last.put( trackId, i );
+					previous[ i ] = p >= 0 && timepoints[ p ] < timepoints[ i ] ? p : -1;
+				}
+			}
+		}
+	}
+
+	PointsData getPoints()
+	{
+		return points;
+	}
+
+	/**
+	 * Whether the index is outdated, because the points have been modified
+	 * since it was built.
+	 */
+	boolean isOutdated()
+	{
+		return points.modCount() != modCount;
+	}
+
+	/**
+	 * Get spatial index of the points at {@code timepoint}, or {@code null}
+	 * if there are none. The spatial index is built on first use, this can be
+	 * called concurrently.
+	 */
+	synchronized PointsIndex get( final int timepoint )
+	{
+		final int t = hasTimepoints ? timepoint - minTimepoint : 0;
+		if ( t < 0 || t >= spatialIndices.length )
+			return null;
+		PointsIndex index = spatialIndices[ t ];
+		if ( index == null )
+		{
+			index = new PointsIndex( points, byTimepoint, timepointStart[ t ], timepointStart[ t + 1 ] );
+			spatialIndices[ t ] = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Get the index of the point of the same track at the closest earlier
+	 * timepoint, or {@code -1} if there is no such point.
+	 */
+	int previous( final int i )
+	{
+		return previous == null ? -1 : previous[ i ];
+	}
+
+	boolean hasTracks()
+	{
+		return previous != null;
+	}
+}
@@ -0,0 +1,314 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.RealLocalizable;
+
+/**
+ * Columnar storage for a large number of polylines and polygons. Vertex
+ * coordinates of all polylines are stored in shared {@code float[]} columns.
+ * An optional per-polyline color column is created on first use.
+ * <p>
+ * A closed polyline (polygon) has an additional segment connecting its last
+ * vertex to its first vertex.
+ * <p>
+ * {@code Polylines} is not thread-safe. Modifications made while the
+ * polylines are displayed become visible with the next repaint.
+ */
+public class Polylines
+{
+	private int size;
+
+	/**
+	 * Vertices of polyline {@code i} are
+	 * {@code [vertexStart[i], vertexStart[i+1])}.
+	 */
+	private int[] vertexStart;
+
+	private boolean[] closed;
+
+	private int[] colors;
+
+	private int numVertices;
+
+	private float[] xs;
+
+	private float[] ys;
+
+	private float[] zs;
+
+	private int modCount;
+
+	public Polylines()
+	{
+		vertexStart = new int[ 17 ];
+		closed = new boolean[ 16 ];
+		xs = new float[ 16 ];
+		ys = new float[ 16 ];
+		zs = new float[ 16 ];
+	}
+
+	/**
+	 * Create {@code Polylines} with the vertices of the given {@code polylines}.
+	 *
+	 * @param closed
+	 *            whether the polylines are closed (polygons)
+	 */
+	public static Polylines of( final List< ? extends List< ? extends RealLocalizable > > polylines, final boolean closed )
+	{
+		final Polylines data = new Polylines();
+		for ( final List< ? extends RealLocalizable > vertices : polylines )
+			data.add( vertices, closed );
+		return data;
+	}
+
+	/**
+	 * Get the number of polylines.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public int numVertices()
+	{
+		return numVertices;
+	}
+
+	/**
+	 * Get the total number of segments of all polylines.
+	 */
+	public int numSegments()
+	{
+		int n = 0;
+		for ( int i = 0; i < size; ++i )
+			n += numSegments( i );
+		return n;
+	}
+
+	/**
+	 * Append a polyline with the given vertex coordinate columns.
+	 *
+	 * @param x
+	 *            X coordinates
+	 * @param y
+	 *            Y coordinates
+	 * @param z
+	 *            Z coordinates, or {@code null} for 2D polylines
+	 * @param closed
+	 *            whether the polyline is closed (polygon)
+	 * @return index of the new polyline
+	 */
+	public int add( final float[] x, final float[] y, final float[] z, final boolean closed )
+	{
+		final int n = x.length;
+		if ( y.length != n || ( z != null && z.length != n ) )
+			throw new IllegalArgumentException( "coordinate columns must have the same length" );
+		ensureVertexCapacity( numVertices + n );
+		System.arraycopy( x, 0, xs, numVertices, n );
+		System.arraycopy( y, 0, ys, numVertices, n );
+		if ( z != null )
+			System.arraycopy( z, 0, zs, numVertices, n );
+		else
+			Arrays.fill( zs, numVertices, numVertices + n, 0 );
+		return append( n, closed );
+	}
+
+	/**
+	 * Append a polyline with the given {@code vertices}.
+	 *
+	 * @param closed
+	 *            whether the polyline is closed (polygon)
+	 * @return index of the new polyline
+	 */
+	public int add( final List< ? extends RealLocalizable > vertices, final boolean closed )
+	{
+		final int n = vertices.size();
+		ensureVertexCapacity( numVertices + n );
+		int v = numVertices;
+		for ( final RealLocalizable p : vertices )
+		{
+			final int nd = p.numDimensions();
+			xs[ v ] = nd > 0 ? p.getFloatPosition( 0 ) : 0;
+			ys[ v ] = nd > 1 ? p.getFloatPosition( 1 ) : 0;
+			zs[ v ] = nd > 2 ? p.getFloatPosition( 2 ) : 0;
+			++v;
+		}
+		return append( n, closed );
+	}
+
+	private int append( final int numNewVertices, final boolean isClosed )
+	{
+		if ( size + 1 >= vertexStart.length )
+		{
+			final int capacity = vertexStart.length * 3 / 2 + 1;
+			vertexStart = Arrays.copyOf( vertexStart, capacity + 1 );
+			closed = Arrays.copyOf( closed, capacity );
+			if ( colors != null )
+				colors = Arrays.copyOf( colors, capacity );
+		}
+		numVertices += numNewVertices;
+		vertexStart[ size + 1 ] = numVertices;
+		closed[ size ] = isClosed;
+		if ( colors != null )
+			colors[ size ] = 0;
+		++modCount;
+		return size++;
+	}
+
+	/**
+	 * Remove all polylines. Allocated storage is kept.
+	 */
+	public void clear()
+	{
+		size = 0;
+		numVertices = 0;
+		++modCount;
+	}
+
+	/**
+	 * Get index of the first vertex of polyline {@code i}.
+	 */
+	public int vertexStart( final int i )
+	{
+		return vertexStart[ i ];
+	}
+
+	/**
+	 * Get index one past the last vertex of polyline {@code i}.
+	 */
+	public int vertexEnd( final int i )
+	{
+		return vertexStart[ i + 1 ];
+	}
+
+	public boolean isClosed( final int i )
+	{
+		return closed[ i ];
+	}
+
+	/**
+	 * Get the number of segments of polyline {@code i}.
+	 */
+	public int numSegments( final int i )
+	{
+		final int n = vertexStart[ i + 1 ] - vertexStart[ i ];
+		if ( n < 2 )
+			return 0;
+		return closed[ i ] && n > 2 ? n : n - 1;
+	}
+
+	/**
+	 * Move vertex {@code v}.
+	 */
+	public void setVertex( final int v, final double x, final double y, final double z )
+	{
+		if ( v < 0 || v >= numVertices )
+			throw new IndexOutOfBoundsException( "vertex " + v + " out of bounds for " + numVertices + " vertices" );
+		xs[ v ] = ( float ) x;
+		ys[ v ] = ( float ) y;
+		zs[ v ] = ( float ) z;
+		++modCount;
+	}
+
+	public float getX( final int v )
+	{
+		return xs[ v ];
+	}
+
+	public float getY( final int v )
+	{
+		return ys[ v ];
+	}
+
+	public float getZ( final int v )
+	{
+		return zs[ v ];
+	}
+
+	public boolean hasColors()
+	{
+		return colors != null;
+	}
+
+	/**
+	 * Set ARGB color of polyline {@code i}. The color {@code 0} (the default)
+	 * means that the polyline is drawn with the color of the overlay.
+	 */
+	public void setColor( final int i, final int argb )
+	{
+		if ( i < 0 || i >= size )
+			throw new IndexOutOfBoundsException( "index " + i + " out of bounds for size " + size );
+		if ( colors == null )
+			colors = new int[ closed.length ];
+		colors[ i ] = argb;
+		++modCount;
+	}
+
+	public int getColor( final int i )
+	{
+		return colors == null ? 0 : colors[ i ];
+	}
+
+	float[] xs()
+	{
+		return xs;
+	}
+
+	float[] ys()
+	{
+		return ys;
+	}
+
+	float[] zs()
+	{
+		return zs;
+	}
+
+	/**
+	 * Incremented on every modification.
+	 */
+	int modCount()
+	{
+		return modCount;
+	}
+
+	private void ensureVertexCapacity( final int capacity )
+	{
+		if ( capacity <= xs.length )
+			return;
+		final int newCapacity = ( int ) Math.min( Integer.MAX_VALUE - 8, Math.max( capacity, xs.length * 3L / 2 ) );
+		xs = Arrays.copyOf( xs, newCapacity );
+		ys = Arrays.copyOf( ys, newCapacity );
+		zs = Arrays.copyOf( zs, newCapacity );
+	}
+}
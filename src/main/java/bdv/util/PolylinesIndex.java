@@ -0,0 +1,319 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+
+/**
+ * A bounding volume hierarchy over the segments of {@link Polylines}. Used by
+ * {@link PolylinesOverlay} to visit only segments that may intersect a slab
+ * around the current slice plane.
+ */
+final class PolylinesIndex
+{
+	/**
+	 * Maximum number of segments in a leaf node.
+	 */
+	private static final int LEAF_SIZE = 8;
+
+	/**
+	 * Visits a segment from vertex {@code a} to vertex {@code b} of polyline
+	 * {@code polyline}.
+	 */
+	interface SegmentVisitor
+	{
+		void visit( int a, int b, int polyline );
+	}
+
+	private final Polylines lines;
+
+	/**
+	 * {@link Polylines#modCount()} at the time the index was built.
+	 */
+	private final int modCount;
+
+	private final int numSegments;
+
+	/**
+	 * First vertex, second vertex, and polyline of each segment.
+	 */
+	private final int[] segA;
+
+	private final int[] segB;
+
+	private final int[] segPolyline;
+
+	/**
+	 * Segment indices, such that each leaf node refers to a contiguous range.
+	 */
+	private final int[] order;
+
+	/**
+	 * Bounding box of each node, {@code minX, minY, minZ, maxX, maxY, maxZ}.
+	 */
+	private float[] nodeBounds;
+
+	/**
+	 * For leaf nodes, the first index into {@link #order}. For inner nodes,
+	 * the index of the left child. The right child is the next node.
+	 */
+	private int[] nodeFirst;
+
+	/**
+	 * For leaf nodes, the number of segments. For inner nodes, {@code 0}.
+	 */
+	private int[] nodeCount;
+
+	private int numNodes;
+
+	PolylinesIndex( final Polylines lines )
+	{
+		this.lines = lines;
+		modCount = lines.modCount();
+		numSegments = lines.numSegments();
+		segA = new int[ numSegments ];
+		segB = new int[ numSegments ];
+		segPolyline = new int[ numSegments ];
+		int s = 0;
+		for ( int i = 0; i < lines.size(); ++i )
+		{
+			final int start = lines.vertexStart( i );
+			final int n = lines.numSegments( i );
+			final int numVertices = lines.vertexEnd( i ) - start;
+			for ( int j = 0; j < n; ++j, ++s )
+			{
+				segA[ s ] = start + j;
+				segB[ s ] = start + ( j + 1 ) % numVertices;
+				segPolyline[ s ] = i;
+			}
+		}
+
+		order = new int[ numSegments ];
+		for ( int i = 0; i < numSegments; ++i )
+			order[ i ] = i;
+
+		final int capacity = Math.max( 1, 4 * numSegments / LEAF_SIZE + 1 );
+		nodeBounds = new float[ 6 * capacity ];
+		nodeFirst = new int[ capacity ];
+		nodeCount = new int[ capacity ];
+		numNodes = 1;
+		if ( numSegments > 0 )
+		{
+			final float[] centers = new float[ 3 * numSegments ];
+			final float[][] xyz = { lines.xs(), lines.ys(), lines.zs() };
+			for ( int i = 0; i < numSegments; ++i )
+				for ( int d = 0; d < 3; ++d )
+					centers[ 3 * i + d ] = 0.5f * ( xyz[ d ][ segA[ i ] ] + xyz[ d ][ segB[ i ] ] );
+			build( 0, 0, numSegments, centers, xyz );
+		}
+	}
+
+	Polylines getPolylines()
+	{
+		return lines;
+	}
+
+	/**
+	 * Whether the index is outdated, because the polylines have been modified
+	 * since it was built.
+	 */
+	boolean isOutdated()
+	{
+		return lines.modCount() != modCount;
+	}
+
+	int numSegments()
+	{
+		return numSegments;
+	}
+
+	/**
+	 * Get the bounding box of all segments, or {@code null} if there are no
+	 * segments.
+	 */
+	RealInterval getBounds()
+	{
+		if ( numSegments == 0 )
+			return null;
+		return new FinalRealInterval(
+				new double[] { nodeBounds[ 0 ], nodeBounds[ 1 ], nodeBounds[ 2 ] },
+				new double[] { nodeBounds[ 3 ], nodeBounds[ 4 ], nodeBounds[ 5 ] } );
+	}
+
+	/**
+	 * Visit all segments that may intersect the slab
+	 * {@code -distance <= plane[0]*x + plane[1]*y + plane[2]*z + plane[3] <= distance}.
+	 * Some visited segments may be outside the slab.
+	 */
+	void forEachInSlab( final double[] plane, final double distance, final SegmentVisitor visitor )
+	{
+		if ( numSegments == 0 )
+			return;
+
+		final int[] stack = new int[ 128 ];
+		int top = 0;
+		stack[ top++ ] = 0;
+		while ( top > 0 )
+		{
+			final int node = stack[ --top ];
+			final int o = 6 * node;
+			double center = plane[ 3 ];
+			double extent = 0;
+			for ( int d = 0; d < 3; ++d )
+			{
+				final double c = 0.5 * ( nodeBounds[ o + d ] + nodeBounds[ o + 3 + d ] );
+				final double h = 0.5 * ( nodeBounds[ o + 3 + d ] - nodeBounds[ o + d ] );
+				center += plane[ d ] * c;
+				extent += Math.abs( plane[ d ] ) * h;
+			}
+			if ( center - extent > distance || center + extent < -distance )
+				continue;
+
+			final int count = nodeCount[ node ];
+			if ( count > 0 )
+			{
+				final int first = nodeFirst[ node ];
+				for ( int i = first; i < first + count; ++i )
+				{
+					final int s = order[ i ];
+					visitor.visit( segA[ s ], segB[ s ], segPolyline[ s ] );
+				}
+			}
+			else
+			{
+				stack[ top++ ] = nodeFirst[ node ];
+				stack[ top++ ] = nodeFirst[ node ] + 1;
+			}
+		}
+	}
+
+	/**
+	 * Build node {@code node} over segments {@code order[from]}, ...,
+	 * {@code order[to-1]}.
+	 */
+	private void build( final int node, final int from, final int to, final float[] centers, final float[][] xyz )
+	{
+		final int o = 6 * node;
+		Arrays.fill( nodeBounds, o, o + 3, Float.POSITIVE_INFINITY );
+		Arrays.fill( nodeBounds, o + 3, o + 6, Float.NEGATIVE_INFINITY );
+		final float[] cmin = { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY };
+		final float[] cmax = { Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY };
+		for ( int i = from; i < to; ++i )
+		{
+			final int s = order[ i ];
+			for ( int d = 0; d < 3; ++d )
+			{
+				final float a = xyz[ d ][ segA[ s ] ];
+				final float b = xyz[ d ][ segB[ s ] ];
+				nodeBounds[ o + d ] = Math.min( nodeBounds[ o + d ], Math.min( a, b ) );
+				nodeBounds[ o + 3 + d ] = Math.max( nodeBounds[ o + 3 + d ], Math.max( a, b ) );
+				final float c = centers[ 3 * s + d ];
+				cmin[ d ] = Math.min( cmin[ d ], c );
+				cmax[ d ] = Math.max( cmax[ d ], c );
+			}
+		}
+
+		if ( to - from <= LEAF_SIZE )
+		{
+			nodeFirst[ node ] = from;
+			nodeCount[ node ] = to - from;
+			return;
+		}
+
+		// split at the median of the segment centers along the longest axis
+		int axis = 0;
+		for ( int d = 1; d < 3; ++d )
+			if ( cmax[ d ] - cmin[ d ] > cmax[ axis ] - cmin[ axis ] )
+				axis = d;
+		final int mid = ( from + to ) >>> 1;
+		select( from, to - 1, mid, centers, axis );
+
+		final int left = allocateNodes();
+		nodeFirst[ node ] = left;
+		nodeCount[ node ] = 0;
+		build( left, from, mid, centers, xyz );
+		build( left + 1, mid, to, centers, xyz );
+	}
+
+	/**
+	 * Allocate two consecutive nodes, return the index of the first.
+	 */
+	private int allocateNodes()
+	{
+		if ( numNodes + 2 > nodeCount.length )
+		{
+			final int capacity = 2 * nodeCount.length + 2;
+			nodeBounds = Arrays.copyOf( nodeBounds, 6 * capacity );
+			nodeFirst = Arrays.copyOf( nodeFirst, capacity );
+			nodeCount = Arrays.copyOf( nodeCount, capacity );
+		}
+		final int left = numNodes;
+		numNodes += 2;
+		return left;
+	}
+
+	/**
+	 * Partially sort {@code order[left..right]} by the {@code axis}
+	 * coordinate of segment centers, such that the element at {@code k} is
+	 * in its sorted position.
+	 */
+	private void select( int left, int right, final int k, final float[] centers, final int axis )
+	{
+		while ( right > left )
+		{
+			final float pivot = centers[ 3 * order[ ( left + right ) >>> 1 ] + axis ];
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( centers[ 3 * order[ i ] + axis ] < pivot )
+					++i;
+				while ( centers[ 3 * order[ j ] + axis ] > pivot )
+					--j;
+				if ( i <= j )
+				{
+					final int tmp = order[ i ];
+					order[ i ] = order[ j ];
+					order[ j ] = tmp;
+					++i;
+					--j;
+				}
+			}
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return;
+		}
+	}
+}
@@ -0,0 +1,351 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Draws the intersection of {@link Polylines} with a slab around the current
+ * slice plane. Segments in the slab are clipped to the slab and drawn as
+ * lines. Points where segments cross the slice plane are marked.
+ * <p>
+ * Segments are indexed in a bounding volume hierarchy, such that only
+ * segments near the slab are visited. The clipped segments are cached and
+ * reused while the slice plane does not change, i.e., when the viewer
+ * transform only changes by a translation in the screen plane.
+ */
+public class PolylinesOverlay extends BdvOverlay
+{
+	/**
+	 * Diameter (in screen pixels) of the marks where segments cross the
+	 * slice plane.
+	 */
+	private static final int CROSSING_SIZE = 4;
+
+	private volatile Polylines lines;
+
+	private volatile double maxSliceDistance = 10;
+
+	private volatile PolylinesIndex index;
+
+	/**
+	 * Clipped segments for the last drawn slab, reused while the slice plane
+	 * does not change.
+	 */
+	private volatile Slab slab;
+
+	/**
+	 * Colors by RGB value. Each drawing thread has its own cache, such that
+	 * {@link #draw(Graphics2D)} can be called concurrently.
+	 */
+	private final ThreadLocal< TIntObjectHashMap< Color > > colors = ThreadLocal.withInitial( TIntObjectHashMap::new );
+
+	/**
+	 * Set polylines to draw. The polylines are rendered directly from
+	 * {@code lines}, modifications become visible with the next repaint.
+	 */
+	public void setPolylines( final Polylines lines )
+	{
+		this.lines = lines;
+		invalidate();
+	}
+
+	public Polylines getPolylines()
+	{
+		return lines;
+	}
+
+	/**
+	 * Set the maximum distance (in screen pixels) from the current slice for
+	 * which segments are drawn. Default is {@code 10}.
+	 */
+	public void setMaxSliceDistance( final double distance )
+	{
+		maxSliceDistance = distance;
+		invalidate();
+	}
+
+	public double getMaxSliceDistance()
+	{
+		return maxSliceDistance;
+	}
+
+	/**
+	 * Returns the bounding box of all segments, or {@code null} if it is not
+	 * known because the polylines have been modified since the last draw.
+	 */
+	@Override
+	protected RealInterval getSourceBounds()
+	{
+		final PolylinesIndex index = this.index;
+		if ( index == null || index.isOutdated() || index.getPolylines() != lines )
+			return null;
+		return index.getBounds();
+	}
+
+	@Override
+	protected long getModificationCount()
+	{
+		final Polylines lines = this.lines;
+		return lines == null ? 0 : lines.modCount();
+	}
+
+	/**
+	 * Returns {@code true}: the clipped segments are computed once per slab
+	 * and are not modified while drawing.
+	 */
+	@Override
+	protected boolean isConcurrentDrawSupported()
+	{
+		return true;
+	}
+
+	@Override
+	protected void draw( final Graphics2D graphics )
+	{
+		final Polylines lines = this.lines;
+		if ( lines == null )
+			return;
+
+		final AffineTransform3D transform = new AffineTransform3D();
+		getCurrentTransform3D( transform );
+		final Slab slab = getSlab( lines, transform, maxSliceDistance );
+
+		// the slab is valid for any translation in the screen plane
+		final float dx = ( float ) ( transform.get( 0, 3 ) - slab.transform.get( 0, 3 ) );
+		final float dy = ( float ) ( transform.get( 1, 3 ) - slab.transform.get( 1, 3 ) );
+
+		final int defaultColor = info.getColor().get();
+		final float[] segments = slab.segments;
+		final int[] segmentPolylines = slab.segmentPolylines;
+		for ( int i = 0; i < slab.numSegments; ++i )
+		{
+			graphics.setColor( getColor( lines, segmentPolylines[ i ], defaultColor ) );
+			final int o = 4 * i;
+			graphics.drawLine(
+					( int ) ( segments[ o ] + dx ), ( int ) ( segments[ o + 1 ] + dy ),
+					( int ) ( segments[ o + 2 ] + dx ), ( int ) ( segments[ o + 3 ] + dy ) );
+		}
+		final float[] crossings = slab.crossings;
+		final int[] crossingPolylines = slab.crossingPolylines;
+		for ( int i = 0; i < slab.numCrossings; ++i )
+		{
+			graphics.setColor( getColor( lines, crossingPolylines[ i ], defaultColor ) );
+			final int x = ( int ) ( crossings[ 2 * i ] + dx - 0.5 * CROSSING_SIZE );
+			final int y = ( int ) ( crossings[ 2 * i + 1 ] + dy - 0.5 * CROSSING_SIZE );
+			graphics.fillOval( x, y, CROSSING_SIZE, CROSSING_SIZE );
+		}
+	}
+
+	/**
+	 * Get the clipped segments for {@code transform}, reusing the last slab if
+	 * possible. When drawing concurrently, the slab is computed only once.
+	 */
+	private Slab getSlab( final Polylines lines, final AffineTransform3D transform, final double distance )
+	{
+		Slab slab = this.slab;
+		if ( slab != null && slab.isValid( lines, transform, distance ) )
+			return slab;
+		synchronized ( this )
+		{
+			slab = this.slab;
+			if ( slab != null && slab.isValid( lines, transform, distance ) )
+				return slab;
+			PolylinesIndex index = this.index;
+			if ( index == null || index.isOutdated() || index.getPolylines() != lines )
+			{
+				index = new PolylinesIndex( lines );
+				this.index = index;
+			}
+			slab = new Slab( lines, index, transform, distance );
+			this.slab = slab;
+			return slab;
+		}
+	}
+
+	/**
+	 * Get the color of {@code polyline}. The alpha of the color is ignored.
+	 */
+	private Color getColor( final Polylines lines, final int polyline, final int defaultColor )
+	{
+		final int c = polyline < lines.size() ? lines.getColor( polyline ) : 0;
+		final int rgb = ( c == 0 ? defaultColor : c ) & 0x00ffffff;
+		final TIntObjectHashMap< Color > colors = this.colors.get();
+		Color color = colors.get( rgb );
+		if ( color == null )
+		{
+			if ( colors.size() >= 1 << 16 )
+				colors.clear();
+			color = new Color( rgb );
+			colors.put( rgb, color );
+		}
+		return color;
+	}
+
+	/**
+	 * The segments of polylines clipped to the slab around the slice plane of
+	 * a viewer transform, in screen coordinates of that transform. Not
+	 * modified after construction.
+	 */
+	private static final class Slab
+	{
+		final Polylines lines;
+
+		final int modCount;
+
+		final double distance;
+
+		final AffineTransform3D transform;
+
+		/**
+		 * Clipped segments, {@code x0, y0, x1, y1} for each segment.
+		 */
+		float[] segments = new float[ 64 ];
+
+		/**
+		 * Polyline index of each clipped segment.
+		 */
+		int[] segmentPolylines = new int[ 16 ];
+
+		int numSegments;
+
+		/**
+		 * Slice plane crossings, {@code x, y} for each crossing.
+		 */
+		float[] crossings = new float[ 32 ];
+
+		int[] crossingPolylines = new int[ 16 ];
+
+		int numCrossings;
+
+		Slab( final Polylines lines, final PolylinesIndex index, final AffineTransform3D transform, final double distance )
+		{
+			this.lines = lines;
+			this.modCount = lines.modCount();
+			this.distance = distance;
+			this.transform = transform.copy();
+
+			// screen z as a function of source coordinates
+			final double[] plane = new double[ 4 ];
+			for ( int c = 0; c < 4; ++c )
+				plane[ c ] = transform.get( 2, c );
+
+			final float[] xs = lines.xs();
+			final float[] ys = lines.ys();
+			final float[] zs = lines.zs();
+			final double[] lPos = new double[ 3 ];
+			final double[] a = new double[ 3 ];
+			final double[] b = new double[ 3 ];
+			index.forEachInSlab( plane, distance, ( va, vb, polyline ) -> {
+				lPos[ 0 ] = xs[ va ];
+				lPos[ 1 ] = ys[ va ];
+				lPos[ 2 ] = zs[ va ];
+				transform.apply( lPos, a );
+				lPos[ 0 ] = xs[ vb ];
+				lPos[ 1 ] = ys[ vb ];
+				lPos[ 2 ] = zs[ vb ];
+				transform.apply( lPos, b );
+				addClipped( a, b, polyline );
+			} );
+		}
+
+		/**
+		 * Whether the slab can be reused for {@code transform}. This is the
+		 * case if only the X and Y translation changed.
+		 */
+		boolean isValid( final Polylines lines, final AffineTransform3D transform, final double distance )
+		{
+			if ( lines != this.lines || lines.modCount() != modCount || distance != this.distance )
+				return false;
+			for ( int r = 0; r < 3; ++r )
+				for ( int c = 0; c < 3; ++c )
+					if ( transform.get( r, c ) != this.transform.get( r, c ) )
+						return false;
+			return transform.get( 2, 3 ) == this.transform.get( 2, 3 );
+		}
+
+		/**
+		 * Clip the segment from {@code a} to {@code b} (screen coordinates) to
+		 * the slab {@code -distance <= z <= distance}, and add it.
+		 */
+		private void addClipped( final double[] a, final double[] b, final int polyline )
+		{
+			final double za = a[ 2 ];
+			final double zb = b[ 2 ];
+			double t0 = 0;
+			double t1 = 1;
+			final double dz = zb - za;
+			if ( dz == 0 )
+			{
+				if ( Math.abs( za ) > distance )
+					return;
+			}
+			else if ( !Double.isInfinite( distance ) )
+			{
+				final double ta = ( -distance - za ) / dz;
+				final double tb = ( distance - za ) / dz;
+				t0 = Math.max( t0, Math.min( ta, tb ) );
+				t1 = Math.min( t1, Math.max( ta, tb ) );
+				if ( t0 > t1 )
+					return;
+			}
+
+			if ( numSegments == segmentPolylines.length )
+			{
+				segmentPolylines = Arrays.copyOf( segmentPolylines, 2 * numSegments );
+				segments = Arrays.copyOf( segments, 8 * numSegments );
+			}
+			final int o = 4 * numSegments;
+			segments[ o ] = ( float ) ( a[ 0 ] + t0 * ( b[ 0 ] - a[ 0 ] ) );
+			segments[ o + 1 ] = ( float ) ( a[ 1 ] + t0 * ( b[ 1 ] - a[ 1 ] ) );
+			segments[ o + 2 ] = ( float ) ( a[ 0 ] + t1 * ( b[ 0 ] - a[ 0 ] ) );
+			segments[ o + 3 ] = ( float ) ( a[ 1 ] + t1 * ( b[ 1 ] - a[ 1 ] ) );
+			segmentPolylines[ numSegments++ ] = polyline;
+
+			if ( ( za < 0 ) != ( zb < 0 ) && dz != 0 )
+			{
+				final double t = -za / dz;
+				if ( numCrossings == crossingPolylines.length )
+				{
+					crossingPolylines = Arrays.copyOf( crossingPolylines, 2 * numCrossings );
+					crossings = Arrays.copyOf( crossings, 4 * numCrossings );
+				}
+				crossings[ 2 * numCrossings ] = ( float ) ( a[ 0 ] + t * ( b[ 0 ] - a[ 0 ] ) );
+				crossings[ 2 * numCrossings + 1 ] = ( float ) ( a[ 1 ] + t * ( b[ 1 ] - a[ 1 ] ) );
+				crossingPolylines[ numCrossings++ ] = polyline;
+			}
+		}
+	}
+}
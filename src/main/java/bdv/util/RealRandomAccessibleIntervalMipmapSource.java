@@ -0,0 +1,278 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileTypeMatcher;
+import bdv.viewer.Interpolation;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * A {@link RealRandomAccessibleIntervalSource} that, in addition to the full
+ * resolution level, provides coarser mipmap levels synthesized from the
+ * {@link RealRandomAccessible}.
+ * <p>
+ * Level {@code s} is downsampled by a factor of {@code 2^s} in every
+ * dimension that has more than one pixel (so 2D sources are not downsampled
+ * in Z). Each voxel of level {@code s} is the average of the voxels of level
+ * {@code s-1} it covers, that is, of the {@code 2^s} integer-coordinate
+ * samples of the function per axis in its footprint. So the number of samples
+ * grows with the downsampling factor and coarse levels do not alias. Levels
+ * are computed lazily, block by block, and cached. The per-level source
+ * transforms follow the same convention as
+ * {@link RandomAccessibleIntervalMipmapSource}, so the viewer picks an
+ * appropriate level when zoomed out, instead of densely evaluating the
+ * function.
+ * <p>
+ * The cached levels have volatile accesses. Use {@link #asVolatile(SharedQueue)}
+ * to compute them asynchronously instead of on the rendering threads.
+ *
+ * @param <T>
+ *            pixel type
+ */
+public class RealRandomAccessibleIntervalMipmapSource< T extends RealType< T > & NativeType< T > > extends RealRandomAccessibleIntervalSource< T >
+{
+	private static final int[] CELL_DIMENSIONS = new int[] { 32, 32, 32 };
+
+	private final RandomAccessibleInterval< T >[] levels;
+
+	private final RealRandomAccessible< T >[][] interpolatedLevels;
+
+	private final AffineTransform3D[] mipmapTransforms;
+
+	private final DefaultInterpolators< T > interpolators = new DefaultInterpolators<>();
+
+	public RealRandomAccessibleIntervalMipmapSource(
+			final RealRandomAccessible< T > accessible,
+			final Interval interval,
+			final T type,
+			final int numMipmapLevels,
+			final String name )
+	{
+		this( accessible, interval, type, numMipmapLevels, new AffineTransform3D(), name );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	public RealRandomAccessibleIntervalMipmapSource(
+			final RealRandomAccessible< T > accessible,
+			final Interval interval,
+			final T type,
+			final int numMipmapLevels,
+			final AffineTransform3D sourceTransform,
+			final String name )
+	{
+		super( accessible, interval, type, sourceTransform, name );
+		if ( numMipmapLevels < 1 )
+			throw new IllegalArgumentException( "numMipmapLevels must be at least 1" );
+		if ( interval.numDimensions() != 3 )
+			throw new IllegalArgumentException( "expected 3D interval" );
+
+		levels = new RandomAccessibleInterval[ numMipmapLevels ];
+		interpolatedLevels = new RealRandomAccessible[ numMipmapLevels ][];
+		mipmapTransforms = new AffineTransform3D[ numMipmapLevels ];
+
+		final T zero = type.createVariable();
+		zero.setZero();
+		final long[] previousFactors = new long[ 3 ];
+		for ( int s = 0; s < numMipmapLevels; ++s )
+		{
+			final long[] factors = new long[ 3 ];
+			for ( int d = 0; d < 3; ++d )
+				factors[ d ] = interval.dimension( d ) > 1 ? 1L << s : 1;
+
+			final AffineTransform3D mipmapTransform = new AffineTransform3D();
+			mipmapTransform.set(
+					factors[ 0 ], 0, 0, 0.5 * ( factors[ 0 ] - 1 ),
+					0, factors[ 1 ], 0, 0.5 * ( factors[ 1 ] - 1 ),
+					0, 0, factors[ 2 ], 0.5 * ( factors[ 2 ] - 1 ) );
+			mipmapTransform.preConcatenate( sourceTransform );
+			mipmapTransforms[ s ] = mipmapTransform;
+
+			interpolatedLevels[ s ] = new RealRandomAccessible[ Interpolation.values().length ];
+			if ( s == 0 )
+			{
+				levels[ s ] = super.getSource( 0, 0 );
+				for ( final Interpolation method : Interpolation.values() )
+					interpolatedLevels[ s ][ method.ordinal() ] = super.getInterpolatedSource( 0, 0, method );
+			}
+			else
+			{
+				final int[] steps = new int[ 3 ];
+				for ( int d = 0; d < 3; ++d )
+					steps[ d ] = ( int ) ( factors[ d ] / previousFactors[ d ] );
+				final RandomAccessible< T > previous = s == 1
+						? Views.raster( accessible )
+						: Views.extendBorder( levels[ s - 1 ] );
+				levels[ s ] = createLevel( previous, interval, type, factors, steps );
+				for ( final Interpolation method : Interpolation.values() )
+					interpolatedLevels[ s ][ method.ordinal() ] = Views.interpolate( Views.extendValue( levels[ s ], zero ), interpolators.get( method ) );
+			}
+			System.arraycopy( factors, 0, previousFactors, 0, 3 );
+		}
+	}
+
+	/**
+	 * Create a lazily computed, cached image of {@code accessible} downsampled
+	 * by {@code factors}, by averaging {@code steps} voxels per axis of the
+	 * {@code previous} level. Voxel {@code j} of the result is centered at
+	 * source coordinate {@code factors * j + 0.5 * (factors - 1)}.
+	 */
+	private static < T extends RealType< T > & NativeType< T > > RandomAccessibleInterval< T > createLevel(
+			final RandomAccessible< T > previous,
+			final Interval interval,
+			final T type,
+			final long[] factors,
+			final int[] steps )
+	{
+		final int n = interval.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] dimensions = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = Math.floorDiv( interval.min( d ), factors[ d ] );
+			dimensions[ d ] = Math.floorDiv( interval.max( d ), factors[ d ] ) - min[ d ] + 1;
+		}
+
+		final CellLoader< T > loader = new DownsamplingLoader<>( previous, steps, min );
+		final CachedCellImg< T, ? > img = new ReadOnlyCachedCellImgFactory().create(
+				dimensions,
+				type.createVariable(),
+				loader,
+				ReadOnlyCachedCellImgOptions.options()
+						.cellDimensions( CELL_DIMENSIONS )
+						.volatileAccesses( true ) );
+		return Views.translate( img, min );
+	}
+
+	/**
+	 * Fills cells of a downsampled level by averaging {@code steps} voxels per
+	 * axis of the previous level.
+	 */
+	private static class DownsamplingLoader< T extends RealType< T > > implements CellLoader< T >
+	{
+		private final RandomAccessible< T > previous;
+
+		private final int[] steps;
+
+		private final long[] offset;
+
+		private final int numSamples;
+
+		DownsamplingLoader(
+				final RandomAccessible< T > previous,
+				final int[] steps,
+				final long[] offset )
+		{
+			this.previous = previous;
+			this.steps = steps;
+			this.offset = offset;
+			int num = 1;
+			for ( final int step : steps )
+				num *= step;
+			numSamples = num;
+		}
+
+		@Override
+		public void load( final SingleCellArrayImg< T, ? > cell ) throws Exception
+		{
+			final int n = cell.numDimensions();
+			final RandomAccess< T > access = previous.randomAccess();
+			final long[] position = new long[ n ];
+			final Cursor< T > cursor = cell.localizingCursor();
+			while ( cursor.hasNext() )
+			{
+				final T t = cursor.next();
+				double sum = 0;
+				for ( int i = 0; i < numSamples; ++i )
+				{
+					int r = i;
+					for ( int d = 0; d < n; ++d )
+					{
+						final int o = r % steps[ d ];
+						r /= steps[ d ];
+						position[ d ] = steps[ d ] * ( cursor.getLongPosition( d ) + offset[ d ] ) + o;
+					}
+					access.setPosition( position );
+					sum += access.get().getRealDouble();
+				}
+				t.setReal( sum / numSamples );
+			}
+		}
+	}
+
+	/**
+	 * Create a volatile view of this source, computing the coarser levels
+	 * asynchronously through {@code queue}.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public < V extends Volatile< T > & NumericType< V > > VolatileRealRandomAccessibleIntervalMipmapSource< T, V > asVolatile( final SharedQueue queue )
+	{
+		return new VolatileRealRandomAccessibleIntervalMipmapSource<>( this, ( V ) VolatileTypeMatcher.getVolatileTypeForType( ( NativeType ) getType() ), queue );
+	}
+
+	@Override
+	public RandomAccessibleInterval< T > getSource( final int t, final int level )
+	{
+		return levels[ level ];
+	}
+
+	@Override
+	public RealRandomAccessible< T > getInterpolatedSource( final int t, final int level, final Interpolation method )
+	{
+		return interpolatedLevels[ level ][ method.ordinal() ];
+	}
+
+	@Override
+	public synchronized void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
+	{
+		transform.set( mipmapTransforms[ level ] );
+	}
+
+	@Override
+	public int getNumMipmapLevels()
+	{
+		return levels.length;
+	}
+}
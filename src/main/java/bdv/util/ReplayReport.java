@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+
+/**
+ * Result of a {@link NavigationReplay}: frame time percentiles, time until
+ * each view of the path was fully loaded, and the amount of data fetched.
+ */
+public class ReplayReport
+{
+	private final long[] sortedFrameNanos;
+
+	private final double[] timeToLoadedMillis;
+
+	private final long fetchedCells;
+
+	private final long fetchedBytes;
+
+	private final long durationNanos;
+
+	ReplayReport(
+			final long[] frameNanos,
+			final double[] timeToLoadedMillis,
+			final long fetchedCells,
+			final long fetchedBytes,
+			final long durationNanos )
+	{
+		this.sortedFrameNanos = frameNanos.clone();
+		Arrays.sort( sortedFrameNanos );
+		this.timeToLoadedMillis = timeToLoadedMillis.clone();
+		this.fetchedCells = fetchedCells;
+		this.fetchedBytes = fetchedBytes;
+		this.durationNanos = durationNanos;
+	}
+
+	/**
+	 * Get the number of frames rendered during the replay.
+	 */
+	public int getNumFrames()
+	{
+		return sortedFrameNanos.length;
+	}
+
+	/**
+	 * Get the {@code p}-th percentile ({@code 0 < p <= 100}, nearest rank) of
+	 * the frame render times in milliseconds, or {@code NaN} if no frames were
+	 * rendered.
+	 */
+	public double getFrameTimePercentile( final double p )
+	{
+		final int n = sortedFrameNanos.length;
+		if ( n == 0 )
+			return Double.NaN;
+		final int rank = ( int ) Math.ceil( p / 100 * n );
+		return sortedFrameNanos[ Math.max( 0, Math.min( rank, n ) - 1 ) ] / 1e6;
+	}
+
+	/**
+	 * Get the number of views of the replayed path.
+	 */
+	public int getNumViews()
+	{
+		return timeToLoadedMillis.length;
+	}
+
+	/**
+	 * Get the time in milliseconds from showing view {@code i} until a
+	 * complete frame at full resolution was rendered, or {@code NaN} if that
+	 * didn't happen before the next view was shown (or the load timeout
+	 * expired).
+	 */
+	public double getTimeToLoadedMillis( final int i )
+	{
+		return timeToLoadedMillis[ i ];
+	}
+
+	/**
+	 * Get the number of views that were fully loaded.
+	 */
+	public int getNumViewsLoaded()
+	{
+		int n = 0;
+		for ( final double t : timeToLoadedMillis )
+			if ( !Double.isNaN( t ) )
+				++n;
+		return n;
+	}
+
+	/**
+	 * Get the mean time to fully loaded, over all views that were fully
+	 * loaded, or {@code NaN} if none was.
+	 */
+	public double getMeanTimeToLoadedMillis()
+	{
+		double sum = 0;
+		int n = 0;
+		for ( final double t : timeToLoadedMillis )
+		{
+			if ( !Double.isNaN( t ) )
+			{
+				sum += t;
+				++n;
+			}
+		}
+		return n == 0 ? Double.NaN : sum / n;
+	}
+
+	/**
+	 * Get the number of cells fetched during the replay.
+	 */
+	public long getFetchedCells()
+	{
+		return fetchedCells;
+	}
+
+	/**
+	 * Get the total size in bytes of cells fetched during the replay.
+	 */
+	public long getFetchedBytes()
+	{
+		return fetchedBytes;
+	}
+
+	public double getDurationMillis()
+	{
+		return durationNanos / 1e6;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+				"replay: %.0f ms, %d frames%n"
+						+ "frame time (ms): p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n"
+						+ "views fully loaded: %d of %d, mean time to loaded %.1f ms%n"
+						+ "fetched: %d cells, %.1f MB%n",
+				getDurationMillis(), getNumFrames(),
+				getFrameTimePercentile( 50 ), getFrameTimePercentile( 90 ), getFrameTimePercentile( 99 ), getFrameTimePercentile( 100 ),
+				getNumViewsLoaded(), getNumViews(), getMeanTimeToLoadedMillis(),
+				fetchedCells, fetchedBytes / 1e6 );
+	}
+}
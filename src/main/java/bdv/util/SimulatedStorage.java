@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Simulates the timing of a disk or network store by delaying
+ * {@link CellLoader}s wrapped with {@link #wrap(CellLoader)}.
+ * <p>
+ * Loading a cell takes at least {@link #latency(double, double) latency} plus
+ * the time needed to transfer the cell's bytes at the configured
+ * {@link #bandwidth(double) bandwidth}. Latency is per request and requests
+ * wait for it concurrently. Bandwidth is shared by all loaders wrapped by the
+ * same {@code SimulatedStorage}: transfers are serialized, so {@code N}
+ * fetcher threads cannot load faster than the bandwidth allows. The time
+ * spent generating the cell content counts towards the simulated delay.
+ * <p>
+ * Jitter is deterministic: the latency of a cell depends only on the
+ * {@link #seed(long) seed} and the cell position, so repeated runs request
+ * the same delays. (Actual delays additionally depend on the scheduling of
+ * fetcher threads and the resolution of {@link Thread#sleep}.)
+ */
+public class SimulatedStorage
+{
+	private long latencyNanos;
+
+	private long jitterNanos;
+
+	private double nanosPerByte;
+
+	private long seed;
+
+	/**
+	 * Time at which the simulated channel is free for the next transfer.
+	 */
+	private long channelFreeNanos = System.nanoTime();
+
+	private final LongAdder loadedCells = new LongAdder();
+
+	private final LongAdder loadedBytes = new LongAdder();
+
+	/**
+	 * Set the latency of loading one cell to {@code millis} &plusmn;
+	 * {@code jitterMillis} (uniformly distributed, and never negative).
+	 */
+	public SimulatedStorage latency( final double millis, final double jitterMillis )
+	{
+		if ( millis < 0 || jitterMillis < 0 )
+			throw new IllegalArgumentException( "latency and jitter must not be negative" );
+		latencyNanos = ( long ) ( millis * 1_000_000 );
+		jitterNanos = ( long ) ( jitterMillis * 1_000_000 );
+		return this;
+	}
+
+	/**
+	 * Set the bandwidth shared by all wrapped loaders. A value {@code <= 0}
+	 * (the default) means unlimited bandwidth.
+	 */
+	public SimulatedStorage bandwidth( final double bytesPerSecond )
+	{
+		nanosPerByte = bytesPerSecond > 0 ? 1e9 / bytesPerSecond : 0;
+		return this;
+	}
+
+	/**
+	 * Set the seed for the (deterministic) latency jitter.
+	 */
+	public SimulatedStorage seed( final long seed )
+	{
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Get the number of cells loaded through this storage.
+	 */
+	public long getLoadedCells()
+	{
+		return loadedCells.sum();
+	}
+
+	/**
+	 * Get the number of bytes loaded through this storage.
+	 */
+	public long getLoadedBytes()
+	{
+		return loadedBytes.sum();
+	}
+
+	public void resetStatistics()
+	{
+		loadedCells.reset();
+		loadedBytes.reset();
+	}
+
+	/**
+	 * Wrap {@code loader} such that loading cells takes as long as it would
+	 * from this storage.
+	 */
+	public < T extends NativeType< T > > CellLoader< T > wrap( final CellLoader< T > loader )
+	{
+		return cell -> {
+			final long start = System.nanoTime();
+			loader.load( cell );
+			final long bytes = sizeInBytes( cell );
+			final long requested = start + latencyNanos( cell );
+			final long deadline = nanosPerByte > 0
+					? reserveChannel( requested, ( long ) ( bytes * nanosPerByte ) )
+					: requested;
+			final long remaining = deadline - System.nanoTime();
+			if ( remaining > 0 )
+				TimeUnit.NANOSECONDS.sleep( remaining );
+			loadedCells.increment();
+			loadedBytes.add( bytes );
+		};
+	}
+
+	/**
+	 * Reserve the channel for a transfer of {@code transferNanos} that may
+	 * start no earlier than {@code earliestNanos}.
+	 *
+	 * @return the time at which the transfer is complete.
+	 */
+	private synchronized long reserveChannel( final long earliestNanos, final long transferNanos )
+	{
+		final long start = channelFreeNanos - earliestNanos > 0 ? channelFreeNanos : earliestNanos;
+		channelFreeNanos = start + transferNanos;
+		return channelFreeNanos;
+	}
+
+	private long latencyNanos( final SingleCellArrayImg< ?, ? > cell )
+	{
+		if ( jitterNanos == 0 )
+			return latencyNanos;
+		long h = seed;
+		for ( int d = 0; d < cell.numDimensions(); ++d )
+			h = SyntheticDataset.mix( h + cell.min( d ) * 0x9E3779B97F4A7C15L );
+		final double u = 2 * SyntheticDataset.uniform( h ) - 1;
+		return Math.max( 0, latencyNanos + ( long ) ( u * jitterNanos ) );
+	}
+
+	private static long sizeInBytes( final SingleCellArrayImg< ? extends NativeType< ? >, ? > cell )
+	{
+		final NativeType< ? > t = cell.firstElement();
+		final double bitsPerPixel = t instanceof RealType
+				? ( ( RealType< ? > ) t ).getBitsPerPixel()
+				: 32 * t.getEntitiesPerPixel().getRatio();
+		return ( long ) Math.ceil( Intervals.numElements( cell ) * bitsPerPixel / 8 );
+	}
+}
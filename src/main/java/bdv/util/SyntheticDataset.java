@@ -0,0 +1,358 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.DiskCachedCellImgOptions.CacheType;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Procedurally generated, lazily loaded test images of arbitrary size (up to
+ * petavoxels), for exercising and benchmarking fetcher threads, loading
+ * priorities, and caches without real data on disk.
+ * <p>
+ * Voxel values are given by a function of the full-resolution voxel position
+ * (see {@link #checkerboard(long, double, double)},
+ * {@link #noise(long, double, double)}, {@link #spheres(long, long, double)}).
+ * Every cell of every mipmap level is filled by evaluating this function, so
+ * the same dataset always produces the same values, no matter in which order
+ * cells are loaded or evicted. Optionally, loading is slowed down by a
+ * {@link SimulatedStorage} to mimic a disk or network store.
+ * <p>
+ * Mipmap level {@code s} is downsampled by a factor of {@code 2^s} in every
+ * dimension that has more than one pixel. Voxels of coarser levels are point
+ * samples of the function at the center of their footprint (no averaging), so
+ * generating a coarse cell costs the same as generating a full-resolution
+ * cell.
+ * <p>
+ * Usage example:
+ *
+ * <pre>
+ * final SyntheticDataset&lt; UnsignedShortType &gt; dataset = new SyntheticDataset&lt;&gt;( new UnsignedShortType(), 100_000, 100_000, 100_000 )
+ * 		.cellDimensions( 64 )
+ * 		.numLevels( 12 )
+ * 		.function( SyntheticDataset.noise( 1, 0, 1000 ) )
+ * 		.storage( new SimulatedStorage().latency( 20, 10 ).bandwidth( 100e6 ) );
+ * BdvFunctions.show( dataset.createSource( "noise" ).asVolatile( new SharedQueue( 8 ) ) );
+ * </pre>
+ *
+ * @param <T>
+ *            pixel type
+ */
+public class SyntheticDataset< T extends RealType< T > & NativeType< T > >
+{
+	private final T type;
+
+	private final long[] dimensions;
+
+	private int[] cellDimensions;
+
+	private int numLevels = 1;
+
+	private ToDoubleFunction< long[] > function = checkerboard( 64, 0, 255 );
+
+	private SimulatedStorage storage;
+
+	private long maxCacheSize = -1;
+
+	/**
+	 * Create a dataset with the given full-resolution dimensions. By default,
+	 * the dataset has a single level of 64<sup>n</sup> cells, showing a
+	 * {@link #checkerboard(long, double, double) checkerboard}.
+	 *
+	 * @param type
+	 *            pixel type
+	 * @param dimensions
+	 *            full-resolution dimensions
+	 */
+	public SyntheticDataset( final T type, final long... dimensions )
+	{
+		for ( final long d : dimensions )
+			if ( d < 1 )
+				throw new IllegalArgumentException( "dimensions must be positive: " + Arrays.toString( dimensions ) );
+		this.type = type.createVariable();
+		this.dimensions = dimensions.clone();
+		this.cellDimensions = new int[ dimensions.length ];
+		Arrays.fill( cellDimensions, 64 );
+	}
+
+	/**
+	 * Set the cell size. If a single value is given, it is used for all
+	 * dimensions.
+	 */
+	public SyntheticDataset< T > cellDimensions( final int... cellDimensions )
+	{
+		if ( cellDimensions.length == 1 )
+			Arrays.fill( this.cellDimensions, cellDimensions[ 0 ] );
+		else if ( cellDimensions.length == dimensions.length )
+			System.arraycopy( cellDimensions, 0, this.cellDimensions, 0, dimensions.length );
+		else
+			throw new IllegalArgumentException( "expected 1 or " + dimensions.length + " cell dimensions" );
+		return this;
+	}
+
+	/**
+	 * Set the number of mipmap levels (including full resolution).
+	 */
+	public SyntheticDataset< T > numLevels( final int numLevels )
+	{
+		if ( numLevels < 1 || numLevels > 62 )
+			throw new IllegalArgumentException( "numLevels must be in [1, 62]" );
+		this.numLevels = numLevels;
+		return this;
+	}
+
+	/**
+	 * Set the function that maps full-resolution voxel positions to values.
+	 * The function is called concurrently from several loading threads and
+	 * must be thread-safe. It must not keep a reference to the position
+	 * array.
+	 */
+	public SyntheticDataset< T > function( final ToDoubleFunction< long[] > function )
+	{
+		this.function = function;
+		return this;
+	}
+
+	/**
+	 * Simulate loading cells from the given storage. Several datasets may
+	 * share a {@link SimulatedStorage}, and then also share its bandwidth.
+	 * {@code null} (the default) means cells are generated as fast as
+	 * possible.
+	 */
+	public SyntheticDataset< T > storage( final SimulatedStorage storage )
+	{
+		this.storage = storage;
+		return this;
+	}
+
+	/**
+	 * Bound the cache of each level to {@code numCells} cells. By default
+	 * (negative value), cells are softly referenced and evicted only under
+	 * memory pressure.
+	 */
+	public SyntheticDataset< T > maxCacheSize( final long numCells )
+	{
+		this.maxCacheSize = numCells;
+		return this;
+	}
+
+	public int getNumLevels()
+	{
+		return numLevels;
+	}
+
+	public SimulatedStorage getStorage()
+	{
+		return storage;
+	}
+
+	/**
+	 * Get the downsampling factors of the given level with respect to full
+	 * resolution.
+	 */
+	public long[] getDownsamplingFactors( final int level )
+	{
+		final long[] factors = new long[ dimensions.length ];
+		for ( int d = 0; d < dimensions.length; ++d )
+			factors[ d ] = dimensions[ d ] > 1 ? 1L << level : 1;
+		return factors;
+	}
+
+	/**
+	 * Get the dimensions of the given level.
+	 */
+	public long[] getDimensions( final int level )
+	{
+		final long[] factors = getDownsamplingFactors( level );
+		final long[] levelDimensions = new long[ dimensions.length ];
+		for ( int d = 0; d < dimensions.length; ++d )
+			levelDimensions[ d ] = ( dimensions[ d ] - 1 ) / factors[ d ] + 1;
+		return levelDimensions;
+	}
+
+	/**
+	 * Create a new cached image for the given level. Every call creates an
+	 * image with its own (empty) cache.
+	 */
+	public CachedCellImg< T, ? > createLevel( final int level )
+	{
+		if ( level < 0 || level >= numLevels )
+			throw new IllegalArgumentException( "level " + level + " out of range [0, " + numLevels + ")" );
+		CellLoader< T > loader = new FunctionLoader<>( function, getDownsamplingFactors( level ) );
+		if ( storage != null )
+			loader = storage.wrap( loader );
+		ReadOnlyCachedCellImgOptions options = ReadOnlyCachedCellImgOptions.options()
+				.cellDimensions( cellDimensions )
+				.volatileAccesses( true );
+		if ( maxCacheSize >= 0 )
+			options = options.cacheType( CacheType.BOUNDED ).maxCacheSize( maxCacheSize );
+		return new ReadOnlyCachedCellImgFactory( options ).create( getDimensions( level ), type, loader );
+	}
+
+	/**
+	 * Create a multi-resolution source with all levels of this (3D) dataset.
+	 * Use {@link RandomAccessibleIntervalMipmapSource#asVolatile(bdv.util.volatiles.SharedQueue)}
+	 * to load cells asynchronously.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public RandomAccessibleIntervalMipmapSource< T > createSource( final String name )
+	{
+		if ( dimensions.length != 3 )
+			throw new IllegalArgumentException( "expected 3D dataset" );
+		final RandomAccessibleInterval< T >[] levels = new RandomAccessibleInterval[ numLevels ];
+		final double[][] scales = new double[ numLevels ][];
+		for ( int level = 0; level < numLevels; ++level )
+		{
+			levels[ level ] = createLevel( level );
+			scales[ level ] = Arrays.stream( getDownsamplingFactors( level ) ).asDoubleStream().toArray();
+		}
+		return new RandomAccessibleIntervalMipmapSource<>( levels, type, scales, new FinalVoxelDimensions( "px", 1, 1, 1 ), name );
+	}
+
+	/**
+	 * A checkerboard of {@code squareSize}<sup>n</sup> squares, alternating
+	 * between {@code low} and {@code high}.
+	 */
+	public static ToDoubleFunction< long[] > checkerboard( final long squareSize, final double low, final double high )
+	{
+		return pos -> {
+			long sum = 0;
+			for ( final long p : pos )
+				sum += Math.floorDiv( p, squareSize );
+			return ( sum & 1 ) == 0 ? low : high;
+		};
+	}
+
+	/**
+	 * Uniformly distributed white noise in {@code [min, max)}. The value at
+	 * each position is a hash of the position and {@code seed}.
+	 */
+	public static ToDoubleFunction< long[] > noise( final long seed, final double min, final double max )
+	{
+		return pos -> {
+			long h = seed;
+			for ( final long p : pos )
+				h = mix( h + p * 0x9E3779B97F4A7C15L );
+			return min + ( max - min ) * uniform( h );
+		};
+	}
+
+	/**
+	 * Spheres of random radius and brightness (up to {@code value}) on a
+	 * jittered lattice with the given {@code spacing}, on a background of 0.
+	 * Each lattice cell contains exactly one sphere that lies completely
+	 * inside the lattice cell, so the cost per voxel does not depend on the
+	 * size of the dataset.
+	 */
+	public static ToDoubleFunction< long[] > spheres( final long spacing, final long seed, final double value )
+	{
+		if ( spacing < 4 )
+			throw new IllegalArgumentException( "spacing must be at least 4" );
+		return pos -> {
+			long h = seed;
+			for ( final long p : pos )
+				h = mix( h + Math.floorDiv( p, spacing ) * 0x9E3779B97F4A7C15L );
+			final double radius = spacing * ( 0.125 + 0.25 * uniform( h ) );
+			final double maxShift = 0.5 * spacing - radius;
+			double distSquared = 0;
+			for ( final long p : pos )
+			{
+				h = mix( h );
+				final double center = 0.5 * spacing + maxShift * ( 2 * uniform( h ) - 1 );
+				final double x = Math.floorMod( p, spacing ) + 0.5 - center;
+				distSquared += x * x;
+			}
+			return distSquared <= radius * radius
+					? value * ( 0.5 + 0.5 * uniform( mix( h ) ) )
+					: 0;
+		};
+	}
+
+	/**
+	 * SplitMix64 finalizer.
+	 */
+	static long mix( long z )
+	{
+		z = ( z ^ ( z >>> 30 ) ) * 0xBF58476D1CE4E5B9L;
+		z = ( z ^ ( z >>> 27 ) ) * 0x94D049BB133111EBL;
+		return z ^ ( z >>> 31 );
+	}
+
+	/**
+	 * Map a hash to {@code [0, 1)}.
+	 */
+	static double uniform( final long hash )
+	{
+		return ( hash >>> 11 ) * 0x1.0p-53;
+	}
+
+	/**
+	 * Fills cells of one level by evaluating the function at the center of
+	 * each voxel's footprint in full-resolution coordinates.
+	 */
+	private static class FunctionLoader< T extends RealType< T > > implements CellLoader< T >
+	{
+		private final ToDoubleFunction< long[] > function;
+
+		private final long[] factors;
+
+		FunctionLoader( final ToDoubleFunction< long[] > function, final long[] factors )
+		{
+			this.function = function;
+			this.factors = factors;
+		}
+
+		@Override
+		public void load( final SingleCellArrayImg< T, ? > cell ) throws Exception
+		{
+			final int n = cell.numDimensions();
+			final long[] pos = new long[ n ];
+			final Cursor< T > c = cell.localizingCursor();
+			while ( c.hasNext() )
+			{
+				final T t = c.next();
+				for ( int d = 0; d < n; ++d )
+					pos[ d ] = c.getLongPosition( d ) * factors[ d ] + factors[ d ] / 2;
+				t.setReal( function.applyAsDouble( pos ) );
+			}
+		}
+	}
+}
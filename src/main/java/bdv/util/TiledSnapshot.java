@@ -0,0 +1,252 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+import bdv.viewer.ViewerState;
+import bdv.viewer.render.AccumulateProjectorFactory;
+
+/**
+ * Renders the current view of a {@link BdvHandle} at an arbitrary resolution
+ * into a PNG file. The view is scaled to the output width and centered
+ * vertically, so the output shows what the viewer shows, with more pixels.
+ * <p>
+ * The output is split into square tiles, which are rendered in parallel with
+ * fully loaded data. Because the viewer transform is scaled, each source is
+ * rendered at the mipmap level that fits the output resolution. Rendering a
+ * tile waits until all data at that level is loaded, also for sources that
+ * only exist as volatile views (see {@link OffscreenRenderer}), or until the
+ * {@link #setLoadTimeout(long, TimeUnit) load timeout} expires. Tiles are
+ * rendered one band (row of tiles) at a time, and each band is written while
+ * the next one is rendered, so at most two bands are held in memory.
+ */
+public class TiledSnapshot
+{
+	private final BdvHandle handle;
+
+	private int tileSize = 512;
+
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
+	private long loadTimeoutMillis = OffscreenRenderer.DEFAULT_LOAD_TIMEOUT_MILLIS;
+
+	public TiledSnapshot( final BdvHandle handle )
+	{
+		this.handle = handle;
+	}
+
+	/**
+	 * Set the width and height of tiles. By default, this is {@code 512}.
+	 */
+	public void setTileSize( final int tileSize )
+	{
+		this.tileSize = Math.max( 1, tileSize );
+	}
+
+	/**
+	 * Set the number of tiles rendered in parallel. By default, this is the
+	 * number of available processors.
+	 */
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = Math.max( 1, numThreads );
+	}
+
+	/**
+	 * Set how long rendering a tile waits for its data to load.
+	 */
+	public void setLoadTimeout( final long timeout, final TimeUnit unit )
+	{
+		this.loadTimeoutMillis = unit.toMillis( timeout );
+	}
+
+	/**
+	 * Render the current view with {@code width x height} pixels into a PNG
+	 * {@code file}.
+	 *
+	 * @return the number of tiles that were written with missing data,
+	 *         because loading timed out.
+	 */
+	public int render( final int width, final int height, final File file ) throws IOException, InterruptedException
+	{
+		final ViewerState state = handle.getViewerPanel().state().snapshot();
+		final AffineTransform3D outputTransform = getOutputTransform( state.getViewerTransform(), handle.getViewerWidth(), handle.getViewerHeight(), width, height );
+		final AccumulateProjectorFactory< ARGBType > accumulateProjectorFactory = handle.getViewerPanel().getOptionValues().getAccumulateProjectorFactory();
+
+		final int tileSize = this.tileSize;
+		final int numThreads = this.numThreads;
+		final int numTilesX = ( width + tileSize - 1 ) / tileSize;
+		final int numBands = ( height + tileSize - 1 ) / tileSize;
+
+		final ExecutorService renderingExecutorService = Executors.newFixedThreadPool( numThreads, OffscreenRenderer.createThreadFactory() );
+		final ExecutorService tileExecutorService = Executors.newFixedThreadPool( numThreads, OffscreenRenderer.createThreadFactory() );
+		final BlockingQueue< OffscreenRenderer > renderers = new ArrayBlockingQueue<>( numThreads );
+		final List< OffscreenRenderer > allRenderers = new ArrayList<>();
+		for ( int i = 0; i < numThreads; ++i )
+		{
+			final OffscreenRenderer renderer = new OffscreenRenderer( tileSize, tileSize, 1, true, accumulateProjectorFactory, handle.getCacheControls(), renderingExecutorService );
+			renderer.setLoadTimeout( loadTimeoutMillis, TimeUnit.MILLISECONDS );
+			renderers.add( renderer );
+			allRenderers.add( renderer );
+		}
+
+		final AtomicInteger incompleteTiles = new AtomicInteger();
+		final int[][] bands = { new int[ width * tileSize ], new int[ width * tileSize ] };
+		List< Future< ? > > pending = new ArrayList<>();
+		try ( final PngStreamWriter writer = new PngStreamWriter( new BufferedOutputStream( new FileOutputStream( file ), 1 << 20 ), width, height ) )
+		{
+			pending = renderBand( 0, bands[ 0 ], state, outputTransform, width, height, numTilesX, renderers, tileExecutorService, incompleteTiles );
+			for ( int b = 0; b < numBands; ++b )
+			{
+				waitFor( pending );
+				pending = b + 1 < numBands
+						? renderBand( b + 1, bands[ ( b + 1 ) % 2 ], state, outputTransform, width, height, numTilesX, renderers, tileExecutorService, incompleteTiles )
+						: new ArrayList<>();
+				final int bandHeight = Math.min( tileSize, height - b * tileSize );
+				writer.writeRows( bands[ b % 2 ], 0, width, bandHeight );
+			}
+		}
+		finally
+		{
+			for ( final Future< ? > f : pending )
+				f.cancel( true );
+			tileExecutorService.shutdownNow();
+			for ( final OffscreenRenderer renderer : allRenderers )
+				renderer.dispose();
+			renderingExecutorService.shutdownNow();
+		}
+		return incompleteTiles.get();
+	}
+
+	/**
+	 * Submit rendering of the tiles of {@code band} into {@code argb}.
+	 */
+	private List< Future< ? > > renderBand(
+			final int band,
+			final int[] argb,
+			final ViewerState state,
+			final AffineTransform3D outputTransform,
+			final int width,
+			final int height,
+			final int numTilesX,
+			final BlockingQueue< OffscreenRenderer > renderers,
+			final ExecutorService executorService,
+			final AtomicInteger incompleteTiles )
+	{
+		final int y0 = band * tileSize;
+		final int th = Math.min( tileSize, height - y0 );
+		final List< Future< ? > > futures = new ArrayList<>();
+		for ( int tx = 0; tx < numTilesX; ++tx )
+		{
+			final int x0 = tx * tileSize;
+			final int tw = Math.min( tileSize, width - x0 );
+			futures.add( executorService.submit( () -> {
+				final ViewerState tileState = state.snapshot();
+				final AffineTransform3D transform = outputTransform.copy();
+				transform.translate( -x0, -y0, 0 );
+				tileState.setViewerTransform( transform );
+
+				final int[] tile = new int[ tw * th ];
+				final OffscreenRenderer renderer = renderers.take();
+				try
+				{
+					renderer.setSize( tw, th );
+					if ( !renderer.render( tileState, tile ) )
+						incompleteTiles.incrementAndGet();
+				}
+				finally
+				{
+					renderers.add( renderer );
+				}
+				for ( int y = 0; y < th; ++y )
+					System.arraycopy( tile, y * tw, argb, y * width + x0, tw );
+				return null;
+			} ) );
+		}
+		return futures;
+	}
+
+	private static void waitFor( final List< Future< ? > > futures ) throws IOException, InterruptedException
+	{
+		try
+		{
+			for ( final Future< ? > f : futures )
+				f.get();
+		}
+		catch ( final ExecutionException e )
+		{
+			final Throwable cause = e.getCause();
+			if ( cause instanceof RuntimeException )
+				throw ( RuntimeException ) cause;
+			if ( cause instanceof Error )
+				throw ( Error ) cause;
+			throw new IOException( cause );
+		}
+	}
+
+	/**
+	 * Get the transform to output pixels for a {@code viewerTransform} to a
+	 * {@code viewerWidth x viewerHeight} screen. The screen is scaled to the
+	 * output width, and centered vertically.
+	 */
+	static AffineTransform3D getOutputTransform(
+			final AffineTransform3D viewerTransform,
+			final int viewerWidth,
+			final int viewerHeight,
+			final int width,
+			final int height )
+	{
+		final double scale = viewerWidth > 0 ? ( double ) width / viewerWidth : 1;
+		final AffineTransform3D screenToOutput = new AffineTransform3D();
+		screenToOutput.set(
+				scale, 0, 0, 0,
+				0, scale, 0, 0.5 * ( height - scale * viewerHeight ),
+				0, 0, 1, 0 );
+		final AffineTransform3D transform = viewerTransform.copy();
+		transform.preConcatenate( screenToOutput );
+		return transform;
+	}
+}
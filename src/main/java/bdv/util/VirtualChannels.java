@@ -66,7 +66,7 @@ public class VirtualChannels
 	}
 
 	static List< BdvVirtualChannelSource > show(
-			final RandomAccessibleInterval< ARGBType > img,
+			RandomAccessibleInterval< ARGBType > img,
 			final List< ? extends VirtualChannel > virtualChannels,
 			final String name,
 			final BdvOptions options )
@@ -76,6 +76,9 @@ public class VirtualChannels
 				? new BdvHandleFrame( options )
 				: bdv.getBdvHandle();
 		final AffineTransform3D sourceTransform = options.values.getSourceTransform();
+		final AxisSpec axisSpec = options.values.axisSpec();
+		if ( axisSpec != null )
+			img = axisSpec.permute( img );
 		AxisOrder axisOrder = options.values.axisOrder();
 		axisOrder = AxisOrder.getAxisOrder( axisOrder, img, handle.is2D() );
 
@@ -98,7 +101,7 @@ public class VirtualChannels
 			final SourceAndConverter< ARGBType > soc = source.getSourceAndConverter();
 			handle.add( Collections.singletonList( setup ), Collections.singletonList( soc ), numTimepoints );
 
-			final PlaceHolderOverlayInfo info = new PlaceHolderOverlayInfo( handle.getViewerPanel(), soc, setup );
+			final PlaceHolderOverlayInfo info = handle.getOverlayManager().createInfo( soc, setup );
 			coordinator.sharedInfos.add( info );
 			setup.setupChangeListeners().add( s -> vc.updateSetupParameters() );
 			info.visibilityChangeListeners().add( vc::updateVisibility );
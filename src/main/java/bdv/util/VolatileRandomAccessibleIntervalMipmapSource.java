@@ -46,6 +46,14 @@ public class VolatileRandomAccessibleIntervalMipmapSource< T extends NumericType
 
 	private SharedQueue queue;
 
+	/**
+	 * Volatile views of the levels of {@link #source}, created on first use.
+	 * Reusing them keeps the volatile caches (and their cell access
+	 * statistics) across frames.
+	 */
+	private final RandomAccessibleInterval< V >[] levels;
+
+	@SuppressWarnings( "unchecked" )
 	public VolatileRandomAccessibleIntervalMipmapSource(
 			final RandomAccessibleIntervalMipmapSource< T > source,
 			final V type,
@@ -54,6 +62,7 @@ public class VolatileRandomAccessibleIntervalMipmapSource< T extends NumericType
 		super( type, source.getName() );
 		this.source = source;
 		this.queue = queue;
+		levels = new RandomAccessibleInterval[ source.getNumMipmapLevels() ];
 	}
 
 	public VolatileRandomAccessibleIntervalMipmapSource(
@@ -67,7 +76,14 @@ public class VolatileRandomAccessibleIntervalMipmapSource< T extends NumericType
 	@Override
 	public RandomAccessibleInterval< V > getSource( final int t, final int level )
 	{
-		return VolatileViews.wrapAsVolatile( source.getSource( t, level ), queue, new CacheHints( LoadingStrategy.VOLATILE, level, true ) );
+		RandomAccessibleInterval< V > img = levels[ level ];
+		if ( img == null )
+		{
+			// NB: racing threads create equivalent views, either one is fine
+			img = VolatileViews.wrapAsVolatile( source.getSource( t, level ), queue, new CacheHints( LoadingStrategy.VOLATILE, level, true ) );
+			levels[ level ] = img;
+		}
+		return img;
 	}
 
 	@Override
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileViews;
+import bdv.viewer.Interpolation;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.Volatile;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.converter.Converter;
+import net.imglib2.converter.Converters;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Volatile view of a {@link RealRandomAccessibleIntervalMipmapSource}. The
+ * full resolution level evaluates the function directly and is always valid.
+ * The coarser levels are computed asynchronously through a
+ * {@link SharedQueue}, so zooming out does not block the rendering threads.
+ *
+ * @param <T>
+ *            pixel type
+ * @param <V>
+ *            volatile pixel type
+ */
+public class VolatileRealRandomAccessibleIntervalMipmapSource< T extends RealType< T > & NativeType< T >, V extends Volatile< T > & NumericType< V > > extends AbstractSource< V >
+{
+	private final RealRandomAccessibleIntervalMipmapSource< T > source;
+
+	private final SharedQueue queue;
+
+	private final Converter< T, V > toVolatile = ( a, b ) -> {
+		b.get().set( a );
+		b.setValid( true );
+	};
+
+	/**
+	 * Volatile views of the levels of {@link #source}, created on first use.
+	 */
+	private final RandomAccessibleInterval< V >[] levels;
+
+	@SuppressWarnings( "unchecked" )
+	public VolatileRealRandomAccessibleIntervalMipmapSource(
+			final RealRandomAccessibleIntervalMipmapSource< T > source,
+			final V type,
+			final SharedQueue queue )
+	{
+		super( type, source.getName() );
+		this.source = source;
+		this.queue = queue;
+		levels = new RandomAccessibleInterval[ source.getNumMipmapLevels() ];
+	}
+
+	@Override
+	public RandomAccessibleInterval< V > getSource( final int t, final int level )
+	{
+		RandomAccessibleInterval< V > img = levels[ level ];
+		if ( img == null )
+		{
+			// NB: racing threads create equivalent views, either one is fine
+			img = level == 0
+					? Converters.convert( source.getSource( t, 0 ), toVolatile, type )
+					: VolatileViews.wrapAsVolatile( source.getSource( t, level ), queue, new CacheHints( LoadingStrategy.VOLATILE, level, true ) );
+			levels[ level ] = img;
+		}
+		return img;
+	}
+
+	@Override
+	public RealRandomAccessible< V > getInterpolatedSource( final int t, final int level, final Interpolation method )
+	{
+		if ( level == 0 )
+			return Converters.convert( source.getInterpolatedSource( t, 0, method ), toVolatile, type );
+		return super.getInterpolatedSource( t, level, method );
+	}
+
+	@Override
+	public boolean isPresent( final int t )
+	{
+		return source.isPresent( t );
+	}
+
+	@Override
+	public synchronized void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
+	{
+		source.getSourceTransform( t, level, transform );
+	}
+
+	@Override
+	public VoxelDimensions getVoxelDimensions()
+	{
+		return source.getVoxelDimensions();
+	}
+
+	@Override
+	public int getNumMipmapLevels()
+	{
+		return source.getNumMipmapLevels();
+	}
+}
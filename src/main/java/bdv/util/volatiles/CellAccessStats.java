@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util.volatiles;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts cell lookups of a volatile view (see {@link VolatileViews}), and how
+ * many of them returned cells that were not yet loaded (invalid). Also counts
+ * the cells fetched into the volatile cache, and their size. The counters are
+ * cumulative; callers compute rates from differences of successive readings.
+ * <p>
+ * Counting is thread-safe and does not allocate (after warm-up under
+ * contention).
+ */
+public class CellAccessStats
+{
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder invalid = new LongAdder();
+
+	private final LongAdder fetches = new LongAdder();
+
+	private final LongAdder fetchedBytes = new LongAdder();
+
+	/**
+	 * Record a cell lookup that returned a cell with the given validity.
+	 */
+	public void record( final boolean valid )
+	{
+		requests.increment();
+		if ( !valid )
+			invalid.increment();
+	}
+
+	/**
+	 * Record a cell fetched into the volatile cache, with its size in bytes
+	 * (or {@code -1} if unknown).
+	 */
+	public void recordFetch( final long bytes )
+	{
+		fetches.increment();
+		if ( bytes > 0 )
+			fetchedBytes.add( bytes );
+	}
+
+	/**
+	 * Get the number of cell lookups.
+	 */
+	public long getRequests()
+	{
+		return requests.sum();
+	}
+
+	/**
+	 * Get the number of cell lookups that returned an invalid (not yet
+	 * loaded) cell.
+	 */
+	public long getInvalid()
+	{
+		return invalid.sum();
+	}
+
+	/**
+	 * Get the fraction of cell lookups that returned a valid (cached) cell, or
+	 * {@code NaN} if there were no lookups.
+	 */
+	public double getHitRate()
+	{
+		final long r = getRequests();
+		return r == 0 ? Double.NaN : ( double ) ( r - getInvalid() ) / r;
+	}
+
+	/**
+	 * Get the number of cells fetched into the volatile cache.
+	 */
+	public long getFetches()
+	{
+		return fetches.sum();
+	}
+
+	/**
+	 * Get the total size in bytes of cells fetched into the volatile cache.
+	 */
+	public long getFetchedBytes()
+	{
+		return fetchedBytes.sum();
+	}
+}
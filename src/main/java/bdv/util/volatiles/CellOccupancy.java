@@ -0,0 +1,306 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util.volatiles;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.LongStream;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
+
+import gnu.trove.map.hash.TLongDoubleHashMap;
+
+/**
+ * Per-cell occupancy index of a cell image. For each cell of a
+ * {@link CellGrid}, it records whether the cell is known, and if so, the
+ * minimum and maximum value in the cell. Cells with {@code min == max == 0}
+ * are "empty".
+ * <p>
+ * The index can be filled as cells are loaded (by wrapping the
+ * {@link CellLoader} with {@link #recording(CellLoader)}), computed in bulk
+ * ({@link #compute(RandomAccessibleInterval, CellGrid)}), or set from external
+ * metadata ({@link #set(long, double, double)}).
+ * <p>
+ * When passed to
+ * {@link VolatileViews#wrapAsVolatile(RandomAccessibleInterval, SharedQueue, net.imglib2.cache.volatiles.CacheHints, CellOccupancy)},
+ * cells that are known to be empty are answered immediately with a shared
+ * zero cell, without being fetched or cached.
+ * <p>
+ * {@link #isEmpty(long)} is called for every cell lookup, so it doesn't lock:
+ * empty cells are recorded in a bitset with one bit per cell, which is
+ * updated atomically.
+ */
+public class CellOccupancy
+{
+	private final CellGrid grid;
+
+	private final long[] gridDimensions;
+
+	private final int[] cellDimensions;
+
+	private final long numCells;
+
+	/**
+	 * Bit {@code i} is set if cell {@code i} is empty. Written under the
+	 * write lock, read without locking.
+	 */
+	private final AtomicLongArray empty;
+
+	private final TLongDoubleHashMap min = new TLongDoubleHashMap();
+
+	private final TLongDoubleHashMap max = new TLongDoubleHashMap();
+
+	private final StampedLock lock = new StampedLock();
+
+	public CellOccupancy( final CellGrid grid )
+	{
+		this.grid = grid;
+		gridDimensions = grid.getGridDimensions();
+		cellDimensions = new int[ grid.numDimensions() ];
+		for ( int d = 0; d < cellDimensions.length; ++d )
+			cellDimensions[ d ] = grid.cellDimension( d );
+		numCells = numElements( gridDimensions );
+		final long numWords = ( numCells + 63 ) >>> 6;
+		if ( numWords > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "too many cells: " + numCells );
+		empty = new AtomicLongArray( ( int ) numWords );
+	}
+
+	public CellGrid getCellGrid()
+	{
+		return grid;
+	}
+
+	/**
+	 * Whether cell {@code index} is known to contain only zeros.
+	 */
+	public boolean isEmpty( final long index )
+	{
+		/*
+		 * A racing set() may not be seen yet, which only means the cell is
+		 * loaded normally.
+		 */
+		if ( index < 0 || index >= numCells )
+			return false;
+		return ( empty.get( ( int ) ( index >>> 6 ) ) & ( 1L << index ) ) != 0;
+	}
+
+	/**
+	 * Whether min and max of cell {@code index} are known.
+	 */
+	public boolean isKnown( final long index )
+	{
+		final long stamp = lock.readLock();
+		try
+		{
+			return min.containsKey( index );
+		}
+		finally
+		{
+			lock.unlockRead( stamp );
+		}
+	}
+
+	/**
+	 * Get the minimum value of cell {@code index}, or {@code NaN} if unknown.
+	 */
+	public double getMin( final long index )
+	{
+		final long stamp = lock.readLock();
+		try
+		{
+			return min.containsKey( index ) ? min.get( index ) : Double.NaN;
+		}
+		finally
+		{
+			lock.unlockRead( stamp );
+		}
+	}
+
+	/**
+	 * Get the maximum value of cell {@code index}, or {@code NaN} if unknown.
+	 */
+	public double getMax( final long index )
+	{
+		final long stamp = lock.readLock();
+		try
+		{
+			return max.containsKey( index ) ? max.get( index ) : Double.NaN;
+		}
+		finally
+		{
+			lock.unlockRead( stamp );
+		}
+	}
+
+	/**
+	 * Record minimum and maximum value of cell {@code index}.
+	 */
+	public void set( final long index, final double min, final double max )
+	{
+		if ( index < 0 || index >= numCells )
+			throw new IndexOutOfBoundsException( "cell index " + index + " outside of grid" );
+		final long stamp = lock.writeLock();
+		try
+		{
+			this.min.put( index, min );
+			this.max.put( index, max );
+			setEmptyBit( index, min == 0 && max == 0 );
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	/**
+	 * Record that cell {@code index} contains only zeros.
+	 */
+	public void setEmpty( final long index )
+	{
+		set( index, 0, 0 );
+	}
+
+	/**
+	 * Forget everything about cell {@code index}, e.g., after it was modified.
+	 */
+	public void invalidate( final long index )
+	{
+		final long stamp = lock.writeLock();
+		try
+		{
+			min.remove( index );
+			max.remove( index );
+			if ( index >= 0 && index < numCells )
+				setEmptyBit( index, false );
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	/**
+	 * Set or clear the bit of cell {@code index} in {@link #empty}. Must be
+	 * called while holding the write lock.
+	 */
+	private void setEmptyBit( final long index, final boolean isEmpty )
+	{
+		final int word = ( int ) ( index >>> 6 );
+		final long bit = 1L << index;
+		final long bits = empty.get( word );
+		empty.set( word, isEmpty ? bits | bit : bits & ~bit );
+	}
+
+	/**
+	 * Get the index of the cell with the given min corner.
+	 */
+	long cellIndex( final Interval cell )
+	{
+		final long[] position = new long[ gridDimensions.length ];
+		for ( int d = 0; d < position.length; ++d )
+			position[ d ] = cell.min( d ) / cellDimensions[ d ];
+		return IntervalIndexer.positionToIndex( position, gridDimensions );
+	}
+
+	/**
+	 * Wrap {@code loader} such that the min and max of every loaded cell are
+	 * recorded in this index.
+	 */
+	public < T extends RealType< T > > CellLoader< T > recording( final CellLoader< T > loader )
+	{
+		return cell -> {
+			loader.load( cell );
+			double cellMin = Double.POSITIVE_INFINITY;
+			double cellMax = Double.NEGATIVE_INFINITY;
+			for ( final T t : cell )
+			{
+				final double v = t.getRealDouble();
+				if ( v < cellMin )
+					cellMin = v;
+				if ( v > cellMax )
+					cellMax = v;
+			}
+			set( cellIndex( cell ), cellMin, cellMax );
+		};
+	}
+
+	/**
+	 * Compute the occupancy index of {@code img} for the given {@code grid}.
+	 * Cells are processed in parallel.
+	 */
+	public static < T extends RealType< T > > CellOccupancy compute(
+			final RandomAccessibleInterval< T > img,
+			final CellGrid grid )
+	{
+		final CellOccupancy occupancy = new CellOccupancy( grid );
+		final int n = grid.numDimensions();
+		final long numCells = numElements( occupancy.gridDimensions );
+		LongStream.range( 0, numCells ).parallel().forEach( index -> {
+			final long[] cellMin = new long[ n ];
+			final int[] cellDims = new int[ n ];
+			grid.getCellDimensions( index, cellMin, cellDims );
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = img.min( d ) + cellMin[ d ];
+				max[ d ] = min[ d ] + cellDims[ d ] - 1;
+			}
+			final Interval cell = new FinalInterval( min, max );
+			double cellValueMin = Double.POSITIVE_INFINITY;
+			double cellValueMax = Double.NEGATIVE_INFINITY;
+			for ( final T t : Views.flatIterable( Views.interval( img, cell ) ) )
+			{
+				final double v = t.getRealDouble();
+				if ( v < cellValueMin )
+					cellValueMin = v;
+				if ( v > cellValueMax )
+					cellValueMax = v;
+			}
+			occupancy.set( index, cellValueMin, cellValueMax );
+		} );
+		return occupancy;
+	}
+
+	private static long numElements( final long[] dimensions )
+	{
+		long numElements = 1;
+		for ( final long d : dimensions )
+			numElements *= d;
+		return numElements;
+	}
+}
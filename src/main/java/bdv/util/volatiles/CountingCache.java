@@ -0,0 +1,118 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util.volatiles;
+
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+import net.imglib2.cache.Cache;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+
+/**
+ * Wraps the backing cache of a volatile view to count the cells fetched into
+ * the volatile cache in {@link CellAccessStats}.
+ */
+class CountingCache< A > implements Cache< Long, Cell< A > >
+{
+	protected final Cache< Long, Cell< A > > cache;
+
+	private final CellAccessStats stats;
+
+	CountingCache( final Cache< Long, Cell< A > > cache, final CellAccessStats stats )
+	{
+		this.cache = cache;
+		this.stats = stats;
+	}
+
+	@Override
+	public Cell< A > getIfPresent( final Long key )
+	{
+		return cache.getIfPresent( key );
+	}
+
+	/**
+	 * Called by the fetcher threads to load cells.
+	 */
+	@Override
+	public Cell< A > get( final Long key ) throws ExecutionException
+	{
+		final Cell< A > cell = cache.get( key );
+		stats.recordFetch( sizeInBytes( cell ) );
+		return cell;
+	}
+
+	/**
+	 * Get the size in bytes of the data of {@code cell}, or {@code -1} if it
+	 * is unknown.
+	 */
+	static long sizeInBytes( final Cell< ? > cell )
+	{
+		final Object data = cell.getData();
+		return data instanceof ArrayDataAccess
+				? FlightRecorderEvents.sizeInBytes( ( ( ArrayDataAccess< ? > ) data ).getCurrentStorageArray() )
+				: -1;
+	}
+
+	@Override
+	public void persist( final Long key )
+	{
+		cache.persist( key );
+	}
+
+	@Override
+	public void persistIf( final Predicate< Long > condition )
+	{
+		cache.persistIf( condition );
+	}
+
+	@Override
+	public void persistAll()
+	{
+		cache.persistAll();
+	}
+
+	@Override
+	public void invalidate( final Long key )
+	{
+		cache.invalidate( key );
+	}
+
+	@Override
+	public void invalidateIf( final long parallelismThreshold, final Predicate< Long > condition )
+	{
+		cache.invalidateIf( parallelismThreshold, condition );
+	}
+
+	@Override
+	public void invalidateAll( final long parallelismThreshold )
+	{
+		cache.invalidateAll( parallelismThreshold );
+	}
+}
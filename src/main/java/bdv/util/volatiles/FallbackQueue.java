@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util.volatiles;
+
+import java.util.concurrent.Callable;
+
+import bdv.cache.CacheControl;
+import net.imglib2.cache.queue.BlockingFetchQueues;
+
+/**
+ * Queue of views that are wrapped without a {@link SharedQueue}. Such views
+ * are re-wrapped with the default queue of the {@link bdv.util.BdvHandle}
+ * they are shown in (see {@link VolatileViewData#withQueue(SharedQueue)}).
+ * Only if a view is read outside of a handle, requests are forwarded to
+ * {@link VolatileViews#getFallbackQueue()}, which is created on first use.
+ */
+final class FallbackQueue extends BlockingFetchQueues< Callable< ? > > implements CacheControl
+{
+	static final FallbackQueue INSTANCE = new FallbackQueue();
+
+	private FallbackQueue()
+	{
+		super( 1, 1 );
+	}
+
+	@Override
+	public void put( final Callable< ? > element, final int priority, final boolean enqueuToFront )
+	{
+		VolatileViews.getFallbackQueue().put( element, priority, enqueuToFront );
+	}
+
+	/**
+	 * Does nothing, views outside of a handle are not rendered in frames.
+	 */
+	@Override
+	public void prepareNextFrame()
+	{}
+}
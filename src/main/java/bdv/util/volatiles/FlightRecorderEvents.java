@@ -0,0 +1,101 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util.volatiles;
+
+/**
+ * Java Flight Recorder events of BigDataViewer vistools:
+ * <ul>
+ * <li>{@code bdv.CellFetch}: loading of a cell of a volatile view (see
+ * {@link VolatileViews}) by a {@link SharedQueue} fetcher thread, with
+ * start time, duration, cache, level, cell index, and size in bytes.</li>
+ * <li>{@code bdv.CacheInvalidation}: invalidation of one cell, or of all
+ * cells (matching a condition), of a volatile view.</li>
+ * <li>{@code bdv.FrameRender}: rendering of a frame by the viewer, with start
+ * time, duration, and screen scale.</li>
+ * </ul>
+ * The events are disabled by default, also in recordings with the standard
+ * settings. They are enabled in a recording by settings such as
+ * {@code <event name="bdv.CellFetch"><setting name="enabled">true</setting></event>}
+ * in a custom {@code .jfc} file. Disabled events do not allocate or take
+ * timestamps.
+ * <p>
+ * The events require Java 11. The classes that emit them are compiled from
+ * {@code src/main/java11} into the Java 11 part of the multi-release jar (by
+ * the {@code jfr} profile, which is active when building with Java 11 or
+ * newer). On older runtimes, and on runtimes without the {@code jdk.jfr}
+ * module, no events are emitted, and those classes are not loaded.
+ */
+public final class FlightRecorderEvents
+{
+	/**
+	 * Whether the Flight Recorder API is available in this JVM, and the event
+	 * classes can be loaded.
+	 */
+	public static final boolean AVAILABLE = isAvailable();
+
+	private FlightRecorderEvents()
+	{}
+
+	private static boolean isAvailable()
+	{
+		try
+		{
+			// fails unless running from the Java 11 part of the multi-release jar with jdk.jfr
+			Class.forName( "bdv.util.volatiles.CellFetchEvent", false, FlightRecorderEvents.class.getClassLoader() );
+			return true;
+		}
+		catch ( final ClassNotFoundException | LinkageError e )
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Get the size in bytes of a primitive {@code array}, or {@code -1} if
+	 * {@code array} is not a primitive array.
+	 */
+	static long sizeInBytes( final Object array )
+	{
+		if ( array instanceof byte[] )
+			return ( ( byte[] ) array ).length;
+		if ( array instanceof short[] )
+			return 2L * ( ( short[] ) array ).length;
+		if ( array instanceof char[] )
+			return 2L * ( ( char[] ) array ).length;
+		if ( array instanceof int[] )
+			return 4L * ( ( int[] ) array ).length;
+		if ( array instanceof float[] )
+			return 4L * ( ( float[] ) array ).length;
+		if ( array instanceof long[] )
+			return 8L * ( ( long[] ) array ).length;
+		if ( array instanceof double[] )
+			return 8L * ( ( double[] ) array ).length;
+		return -1;
+	}
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util.volatiles;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations with logarithmic buckets. Bucket {@code 0} counts
+ * durations below 1 microsecond, bucket {@code i > 0} counts durations in
+ * {@code [2^(i-1), 2^i)} microseconds. The last bucket also counts all longer
+ * durations.
+ * <p>
+ * Recording is thread-safe, lock-free, and does not allocate.
+ */
+public class LatencyHistogram
+{
+	public static final int NUM_BUCKETS = 32;
+
+	private final AtomicLongArray counts = new AtomicLongArray( NUM_BUCKETS );
+
+	/**
+	 * Get the bucket for a duration of {@code nanos} nanoseconds.
+	 */
+	public static int bucket( final long nanos )
+	{
+		final long micros = nanos / 1000;
+		return micros <= 0 ? 0 : Math.min( 64 - Long.numberOfLeadingZeros( micros ), NUM_BUCKETS - 1 );
+	}
+
+	/**
+	 * Get the smallest duration (in nanoseconds) counted in bucket {@code i}.
+	 */
+	public static long bucketMinNanos( final int i )
+	{
+		return i == 0 ? 0 : ( 1L << ( i - 1 ) ) * 1000;
+	}
+
+	public void record( final long nanos )
+	{
+		counts.incrementAndGet( bucket( nanos ) );
+	}
+
+	public long getCount( final int bucket )
+	{
+		return counts.get( bucket );
+	}
+
+	/**
+	 * Copy the counts of all buckets into {@code dest}, which must have at
+	 * least {@link #NUM_BUCKETS} elements.
+	 */
+	public void getCounts( final long[] dest )
+	{
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+			dest[ i ] = counts.get( i );
+	}
+
+	/**
+	 * Get the total number of recorded durations.
+	 */
+	public long getTotalCount()
+	{
+		long sum = 0;
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+			sum += counts.get( i );
+		return sum;
+	}
+
+	public void clear()
+	{
+		for ( int i = 0; i < NUM_BUCKETS; ++i )
+			counts.set( i, 0 );
+	}
+}
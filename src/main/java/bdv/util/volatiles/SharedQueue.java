@@ -28,7 +28,11 @@
  */
 package bdv.util.volatiles;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import bdv.cache.CacheControl;
 import net.imglib2.cache.queue.BlockingFetchQueues;
@@ -36,16 +40,72 @@ import net.imglib2.cache.queue.FetcherThreads;
 
 /**
  * Queue and threads for asynchronously loading data into a cache
+ * <p>
+ * The queue keeps track of the number of queued requests per priority
+ * ({@link #getQueueDepth(int)}), and of the durations of fetches
+ * ({@link #getFetchLatency()}). Bookkeeping does not allocate, so it is
+ * always on.
+ * <p>
+ * The requests are kept in deques of this class (not in those of
+ * {@link BlockingFetchQueues}, which remain empty), so that the counts are
+ * updated under the same lock as the deques. The order in which requests are
+ * taken is the same as in {@link BlockingFetchQueues}: by priority, then
+ * from the prefetch deque.
  *
  * @author Tobias Pietzsch
  */
 public class SharedQueue extends BlockingFetchQueues< Callable< ? > > implements CacheControl
 {
+	/**
+	 * Maximum number of requests in the prefetch deque. When clearing to
+	 * prefetch, the requests with the lowest priority beyond this capacity
+	 * are dropped.
+	 */
+	private static final int PREFETCH_CAPACITY = 16384;
+
 	private final FetcherThreads fetcherThreads;
 
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	/**
+	 * Queued requests for each priority.
+	 */
+	private final ArrayDeque< Callable< ? > >[] queues;
+
+	/**
+	 * Requests that were queued before the last {@link #clearToPrefetch()}.
+	 */
+	private final ArrayDeque< Callable< ? > > prefetch = new ArrayDeque<>();
+
+	/**
+	 * Number of queued requests for each priority, followed by the number of
+	 * requests in the prefetch deque. Guarded by {@link #lock}.
+	 */
+	private final int[] depths;
+
+	/**
+	 * Total number of requests. Guarded by {@link #lock}.
+	 */
+	private int count;
+
+	private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+	/**
+	 * For each fetcher thread, the time when it took its current request, or
+	 * {@code 0}.
+	 */
+	private final ThreadLocal< long[] > fetchStart = ThreadLocal.withInitial( () -> new long[ 1 ] );
+
+	@SuppressWarnings( "unchecked" )
 	public SharedQueue( final int numFetcherThreads, final int numPriorities )
 	{
 		super( numPriorities, numFetcherThreads );
+		queues = new ArrayDeque[ numPriorities ];
+		for ( int i = 0; i < numPriorities; ++i )
+			queues[ i ] = new ArrayDeque<>();
+		depths = new int[ numPriorities + 1 ];
 		fetcherThreads = new FetcherThreads( this, numFetcherThreads );
 	}
 
@@ -65,4 +125,192 @@ public class SharedQueue extends BlockingFetchQueues< Callable< ? > > implements
 	{
 		clearToPrefetch();
 	}
+
+	@Override
+	public void put( final Callable< ? > element, final int priority, final boolean enqueuToFront )
+	{
+		final int p = Math.max( 0, Math.min( priority, queues.length - 1 ) );
+		lock.lock();
+		try
+		{
+			if ( enqueuToFront )
+				queues[ p ].addFirst( element );
+			else
+				queues[ p ].addLast( element );
+			++depths[ p ];
+			++count;
+			notEmpty.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Take the next request. This is called by the fetcher threads, and is
+	 * used to measure the duration of the previous request of the calling
+	 * thread.
+	 */
+	@Override
+	public Callable< ? > take() throws InterruptedException
+	{
+		final long[] start = fetchStart.get();
+		if ( start[ 0 ] != 0 )
+		{
+			fetchLatency.record( System.nanoTime() - start[ 0 ] );
+			start[ 0 ] = 0;
+		}
+		final Callable< ? > element;
+		lock.lockInterruptibly();
+		try
+		{
+			while ( count == 0 )
+				notEmpty.await();
+			element = poll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		start[ 0 ] = System.nanoTime();
+		return element;
+	}
+
+	/**
+	 * Remove the request with the highest priority, from the prefetch deque
+	 * if no other requests are queued. Must be called with {@link #lock}
+	 * held, and {@code count > 0}.
+	 */
+	private Callable< ? > poll()
+	{
+		--count;
+		for ( int i = 0; i < queues.length; ++i )
+		{
+			if ( !queues[ i ].isEmpty() )
+			{
+				--depths[ i ];
+				return queues[ i ].pollFirst();
+			}
+		}
+		--depths[ queues.length ];
+		return prefetch.pollFirst();
+	}
+
+	/**
+	 * Move all queued requests to the prefetch deque, in front of the
+	 * requests that are already there, such that they are taken in order of
+	 * priority. Requests beyond {@link #PREFETCH_CAPACITY} are dropped.
+	 */
+	@Override
+	public void clearToPrefetch()
+	{
+		lock.lock();
+		try
+		{
+			for ( int i = queues.length - 1; i >= 0; --i )
+			{
+				final ArrayDeque< Callable< ? > > queue = queues[ i ];
+				while ( !queue.isEmpty() )
+					prefetch.addFirst( queue.pollLast() );
+				depths[ i ] = 0;
+			}
+			while ( prefetch.size() > PREFETCH_CAPACITY )
+				prefetch.pollLast();
+			depths[ queues.length ] = prefetch.size();
+			count = prefetch.size();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear()
+	{
+		lock.lock();
+		try
+		{
+			for ( final ArrayDeque< Callable< ? > > queue : queues )
+				queue.clear();
+			prefetch.clear();
+			Arrays.fill( depths, 0 );
+			count = 0;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of priorities.
+	 */
+	public int numPriorities()
+	{
+		return depths.length - 1;
+	}
+
+	/**
+	 * Get the number of queued requests with the given {@code priority}.
+	 * Requests that were moved to the prefetch deque by
+	 * {@link #prepareNextFrame()} are counted by {@link #getPrefetchDepth()}
+	 * instead.
+	 */
+	public int getQueueDepth( final int priority )
+	{
+		lock.lock();
+		try
+		{
+			return depths[ priority ];
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the number of requests in the prefetch deque.
+	 */
+	public int getPrefetchDepth()
+	{
+		lock.lock();
+		try
+		{
+			return depths[ depths.length - 1 ];
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Copy the number of queued requests for each priority into {@code dest},
+	 * followed by the number of requests in the prefetch deque. {@code dest}
+	 * must have at least {@code numPriorities() + 1} elements.
+	 */
+	public void getQueueDepths( final int[] dest )
+	{
+		lock.lock();
+		try
+		{
+			System.arraycopy( depths, 0, dest, 0, depths.length );
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Get the histogram of fetch durations, i.e., the time the fetcher
+	 * threads spent loading a request.
+	 */
+	public LatencyHistogram getFetchLatency()
+	{
+		return fetchLatency;
+	}
 }
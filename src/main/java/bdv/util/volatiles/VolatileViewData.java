@@ -28,10 +28,13 @@
  */
 package bdv.util.volatiles;
 
+import java.util.function.Function;
+
 import bdv.cache.CacheControl;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
+import net.imglib2.cache.Invalidate;
 import net.imglib2.cache.img.CachedCellImg;
 
 /**
@@ -61,16 +64,53 @@ public class VolatileViewData< T, V extends Volatile< T > >
 
 	private final V volatileType;
 
+	private final CellAccessStats cellAccessStats;
+
+	private final Invalidate< Long > invalidate;
+
+	private final Function< SharedQueue, VolatileViewData< T, V > > rewrap;
+
 	public VolatileViewData(
 			final RandomAccessible< V > img,
 			final CacheControl cacheControl,
 			final T type,
 			final V volatileType )
+	{
+		this( img, cacheControl, type, volatileType, null, null );
+	}
+
+	public VolatileViewData(
+			final RandomAccessible< V > img,
+			final CacheControl cacheControl,
+			final T type,
+			final V volatileType,
+			final CellAccessStats cellAccessStats,
+			final Invalidate< Long > invalidate )
 	{
 		this.img = img;
 		this.cacheControl = cacheControl;
 		this.type = type;
 		this.volatileType = volatileType;
+		this.cellAccessStats = cellAccessStats;
+		this.invalidate = invalidate;
+		this.rewrap = null;
+	}
+
+	/**
+	 * Copy {@code data}, remembering how to wrap the original view again with
+	 * another queue.
+	 */
+	VolatileViewData(
+			final VolatileViewData< T, V > data,
+			final Function< SharedQueue, VolatileViewData< T, V > > rewrap )
+	{
+		this.img = data.img;
+		this.cacheControl = data.cacheControl;
+		this.type = data.type;
+		this.volatileType = data.volatileType;
+		this.cellAccessStats = data.cellAccessStats;
+		this.invalidate = data.invalidate;
+		this.rewrap = rewrap;
 	}
 
 	/**
@@ -114,4 +154,53 @@ public class VolatileViewData< T, V extends Volatile< T > >
 	{
 		return volatileType;
 	}
+
+	/**
+	 * Get the counters of cell lookups in the {@link CachedCellImg} at the
+	 * bottom of the view cascade.
+	 *
+	 * @return the cell lookup counters, or {@code null} if not available
+	 */
+	public CellAccessStats getCellAccessStats()
+	{
+		return cellAccessStats;
+	}
+
+	/**
+	 * Get the volatile cache of the {@link CachedCellImg} at the bottom of the
+	 * view cascade, for invalidating cells by their index in the cell grid.
+	 * Invalidated cells are loaded again when they are accessed next.
+	 *
+	 * @return the volatile cache, or {@code null} if not available
+	 */
+	public Invalidate< Long > getInvalidate()
+	{
+		return invalidate;
+	}
+
+	/**
+	 * Whether the view was wrapped without a queue, and can be wrapped again
+	 * with the default queue of the handle it is shown in (see
+	 * {@link #withQueue(SharedQueue)}).
+	 *
+	 * @return {@code true} if the view loads through the default queue
+	 */
+	public boolean hasDefaultQueue()
+	{
+		return rewrap != null;
+	}
+
+	/**
+	 * Wrap the original view again, loading through {@code queue}. If the view
+	 * was wrapped with an explicit queue, this {@link VolatileViewData} is
+	 * returned unchanged.
+	 *
+	 * @param queue
+	 *            queue for asynchronous loading
+	 * @return view data loading through {@code queue}
+	 */
+	public VolatileViewData< T, V > withQueue( final SharedQueue queue )
+	{
+		return rewrap == null ? this : rewrap.apply( queue );
+	}
 }
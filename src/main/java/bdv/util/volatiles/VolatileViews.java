@@ -32,19 +32,24 @@ import static net.imglib2.img.basictypeaccess.AccessFlags.DIRTY;
 import static net.imglib2.img.basictypeaccess.AccessFlags.VOLATILE;
 
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
 import net.imglib2.cache.Cache;
 import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.queue.BlockingFetchQueues;
 import net.imglib2.cache.ref.WeakRefVolatileCache;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.CreateInvalid;
 import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.cache.volatiles.UncheckedVolatileCache;
 import net.imglib2.cache.volatiles.VolatileCache;
 import net.imglib2.img.WrappedImg;
 import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
 import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
@@ -52,6 +57,7 @@ import net.imglib2.type.NativeType;
 import net.imglib2.view.IntervalView;
 import net.imglib2.view.MixedTransformView;
 
+import bdv.cache.CacheControl;
 import bdv.img.cache.CreateInvalidVolatileCell;
 import bdv.img.cache.VolatileCachedCellImg;
 
@@ -59,11 +65,38 @@ import bdv.img.cache.VolatileCachedCellImg;
  * Wrap view cascades ending in {@link CachedCellImg} as volatile views.
  * {@link RandomAccessible}s wrapped in this way can be displayed in
  * BigDataViewer while loading asynchronously.
+ * <p>
+ * Cell lookups of wrapped views are counted, see
+ * {@link VolatileViewData#getCellAccessStats()}.
+ * <p>
+ * Views that are wrapped without a {@link SharedQueue} load through the
+ * default queue of the {@link bdv.util.BdvHandle} they are shown in (see
+ * {@link VolatileViewData#withQueue(SharedQueue)}), so handles don't share
+ * fetcher threads, and the threads are stopped when the handle is closed.
  *
  * @author Tobias Pietzsch
  */
 public class VolatileViews
 {
+	/**
+	 * Number of fetcher threads of default queues, based on the number of
+	 * processors.
+	 */
+	public static final int DEFAULT_NUM_FETCHER_THREADS = Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 );
+
+	private static SharedQueue fallbackQueue;
+
+	/**
+	 * Get the queue for views that are wrapped without a queue and are read
+	 * outside of a {@link bdv.util.BdvHandle}. It is created on first use.
+	 */
+	static synchronized SharedQueue getFallbackQueue()
+	{
+		if ( fallbackQueue == null )
+			fallbackQueue = new SharedQueue( DEFAULT_NUM_FETCHER_THREADS, 1 );
+		return fallbackQueue;
+	}
+
 	public static < T, V extends Volatile< T > > RandomAccessibleInterval< V > wrapAsVolatile(
 			final RandomAccessibleInterval< T > rai )
 	{
@@ -82,8 +115,32 @@ public class VolatileViews
 			final SharedQueue queue,
 			final CacheHints hints )
 	{
-		@SuppressWarnings( "unchecked" )
-		final VolatileViewData< T, V > viewData = ( VolatileViewData< T, V > ) wrapAsVolatileViewData( rai, queue, hints );
+		final VolatileViewData< T, V > viewData = wrap( rai, queue, hints, null );
+		return new VolatileRandomAccessibleIntervalView<>( viewData );
+	}
+
+	/**
+	 * Wrap {@code rai} as a volatile view. Cells that {@code occupancy} knows
+	 * to be empty (all zero) are answered immediately with a shared zero cell,
+	 * without fetching or caching them.
+	 *
+	 * @param rai
+	 *            view cascade ending in a {@link CachedCellImg}.
+	 * @param queue
+	 *            queue for asynchronous loading (may be {@code null}).
+	 * @param hints
+	 *            cache hints (may be {@code null}).
+	 * @param occupancy
+	 *            occupancy index for the cell grid of the {@link CachedCellImg}
+	 *            (may be {@code null}).
+	 */
+	public static < T, V extends Volatile< T > > RandomAccessibleInterval< V > wrapAsVolatile(
+			final RandomAccessibleInterval< T > rai,
+			final SharedQueue queue,
+			final CacheHints hints,
+			final CellOccupancy occupancy )
+	{
+		final VolatileViewData< T, V > viewData = wrap( rai, queue, hints, occupancy );
 		return new VolatileRandomAccessibleIntervalView<>( viewData );
 	}
 
@@ -105,23 +162,39 @@ public class VolatileViews
 			final SharedQueue queue,
 			final CacheHints hints )
 	{
-		@SuppressWarnings( "unchecked" )
-		final VolatileViewData< T, V > viewData = ( VolatileViewData< T, V > ) wrapAsVolatileViewData( rai, queue, hints );
+		final VolatileViewData< T, V > viewData = wrap( rai, queue, hints, null );
 		return new VolatileRandomAccessibleView<>( viewData );
 	}
 
 	// ==============================================================
 
+	/**
+	 * Wrap {@code rai}. If {@code queue} is {@code null}, the view data can be
+	 * re-wrapped with the queue of the handle it is shown in.
+	 */
+	private static < T, V extends Volatile< T > > VolatileViewData< T, V > wrap(
+			final RandomAccessible< T > rai,
+			final SharedQueue queue,
+			final CacheHints hints,
+			final CellOccupancy occupancy )
+	{
+		final VolatileViewData< T, V > viewData = wrapAsVolatileViewData( rai, queue, hints, occupancy );
+		if ( queue != null )
+			return viewData;
+		return new VolatileViewData<>( viewData, q -> wrapAsVolatileViewData( rai, q, hints, occupancy ) );
+	}
+
 	@SuppressWarnings( "unchecked" )
 	private static < T, V extends Volatile< T > > VolatileViewData< T, V > wrapAsVolatileViewData(
 			final RandomAccessible< T > rai,
 			final SharedQueue queue,
-			final CacheHints hints )
+			final CacheHints hints,
+			final CellOccupancy occupancy )
 	{
 		if ( rai instanceof CachedCellImg )
 		{
 			@SuppressWarnings( "rawtypes" )
-			final Object o = wrapCachedCellImg( ( CachedCellImg ) rai, queue, hints );
+			final Object o = wrapCachedCellImg( ( CachedCellImg ) rai, queue, hints, occupancy );
 			/*
 			 * Need to assign to a Object first to satisfy Eclipse... Otherwise
 			 * the following "unnecessary cast" will be removed, followed by
@@ -133,26 +206,30 @@ public class VolatileViews
 		else if ( rai instanceof IntervalView )
 		{
 			final IntervalView< T > view = ( IntervalView< T > ) rai;
-			final VolatileViewData< T, V > sourceData = wrapAsVolatileViewData( view.getSource(), queue, hints );
+			final VolatileViewData< T, V > sourceData = wrapAsVolatileViewData( view.getSource(), queue, hints, occupancy );
 			return new VolatileViewData<>(
 					new IntervalView<>( sourceData.getImg(), view ),
 					sourceData.getCacheControl(),
 					sourceData.getType(),
-					sourceData.getVolatileType() );
+					sourceData.getVolatileType(),
+					sourceData.getCellAccessStats(),
+					sourceData.getInvalidate() );
 		}
 		else if ( rai instanceof MixedTransformView )
 		{
 			final MixedTransformView< T > view = ( MixedTransformView< T > ) rai;
-			final VolatileViewData< T, V > sourceData = wrapAsVolatileViewData( view.getSource(), queue, hints );
+			final VolatileViewData< T, V > sourceData = wrapAsVolatileViewData( view.getSource(), queue, hints, occupancy );
 			return new VolatileViewData<>(
 					new MixedTransformView<>( sourceData.getImg(), view.getTransformToSource() ),
 					sourceData.getCacheControl(),
 					sourceData.getType(),
-					sourceData.getVolatileType() );
+					sourceData.getVolatileType(),
+					sourceData.getCellAccessStats(),
+					sourceData.getInvalidate() );
 		}
 		else if ( rai instanceof WrappedImg )
 		{
-			return wrapAsVolatileViewData( ( ( WrappedImg< T > ) rai ).getImg(), queue, hints );
+			return wrapAsVolatileViewData( ( ( WrappedImg< T > ) rai ).getImg(), queue, hints, occupancy );
 		}
 
 		throw new IllegalArgumentException();
@@ -161,8 +238,9 @@ public class VolatileViews
 	@SuppressWarnings( "unchecked" )
 	private static < T extends NativeType< T >, V extends Volatile< T > & NativeType< V >, A > VolatileViewData< T, V > wrapCachedCellImg(
 			final CachedCellImg< T, A > cachedCellImg,
-			SharedQueue queue,
-			CacheHints hints )
+			final SharedQueue queue,
+			CacheHints hints,
+			final CellOccupancy occupancy )
 	{
 		final T type = cachedCellImg.createLinkedType();
 		final CellGrid grid = cachedCellImg.getCellGrid();
@@ -174,28 +252,153 @@ public class VolatileViews
 		final boolean dirty = flags.contains( DIRTY );
 
 		final V vtype = ( V ) VolatileTypeMatcher.getVolatileTypeForType( type );
-		if ( queue == null )
-			queue = new SharedQueue( 1, 1 );
+		final BlockingFetchQueues< Callable< ? > > fetchQueue = queue == null ? FallbackQueue.INSTANCE : queue;
+		final CacheControl cacheControl = queue == null ? FallbackQueue.INSTANCE : queue;
 		if ( hints == null )
 			hints = new CacheHints( LoadingStrategy.VOLATILE, 0, false );
+		final CellAccessStats stats = new CellAccessStats();
+		@SuppressWarnings( "rawtypes" )
+		final VolatileCache< Long, Cell< A > > volatileCache = createVolatileCache( grid, vtype, dirty, ( Cache ) cache, fetchQueue, hints, stats );
 		@SuppressWarnings( "rawtypes" )
-		final VolatileCachedCellImg< V, ? > img = createVolatileCachedCellImg( grid, vtype, dirty, ( Cache ) cache, queue, hints );
+		final VolatileCachedCellImg< V, ? > img = createVolatileCachedCellImg( grid, vtype, dirty, ( VolatileCache ) volatileCache, hints, occupancy, stats );
 
-		return new VolatileViewData<>( img, queue, type, vtype );
+		return new VolatileViewData<>( img, cacheControl, type, vtype, stats, volatileCache );
 	}
 
-	private static < T extends NativeType< T >, A extends VolatileArrayDataAccess< A > > VolatileCachedCellImg< T, A > createVolatileCachedCellImg(
+	/**
+	 * Create a volatile cache that loads cells from {@code cache} through
+	 * {@code queue}. Fetched cells are counted in {@code stats}. Only if the
+	 * Flight Recorder is available, the backing cache is wrapped to emit
+	 * events for fetches and invalidations (see {@link FlightRecorderEvents}).
+	 */
+	private static < T extends NativeType< T >, A extends VolatileArrayDataAccess< A > > VolatileCache< Long, Cell< A > > createVolatileCache(
 			final CellGrid grid,
 			final T type,
 			final boolean dirty,
 			final Cache< Long, Cell< A > > cache,
-			final SharedQueue queue,
-			final CacheHints hints )
+			final BlockingFetchQueues< Callable< ? > > queue,
+			final CacheHints hints,
+			final CellAccessStats stats )
 	{
 		final CreateInvalid< Long, Cell< A > > createInvalid = CreateInvalidVolatileCell.get( grid, type, dirty );
-		final VolatileCache< Long, Cell< A > > volatileCache = new WeakRefVolatileCache<>( cache, queue, createInvalid );
-		final VolatileCachedCellImg< T, A > volatileImg = new VolatileCachedCellImg<>( grid, type, hints, volatileCache.unchecked()::get );
-		return volatileImg;
+		final Cache< Long, Cell< A > > backingCache = FlightRecorderEvents.AVAILABLE
+				? new TracingCache<>( cache, grid, hints.getQueuePriority(), stats )
+				: new CountingCache<>( cache, stats );
+		return new WeakRefVolatileCache<>( backingCache, queue, createInvalid );
+	}
+
+	private static < T extends NativeType< T >, A extends VolatileArrayDataAccess< A > > VolatileCachedCellImg< T, A > createVolatileCachedCellImg(
+			final CellGrid grid,
+			final T type,
+			final boolean dirty,
+			final VolatileCache< Long, Cell< A > > volatileCache,
+			final CacheHints hints,
+			final CellOccupancy occupancy,
+			final CellAccessStats stats )
+	{
+		final UncheckedVolatileCache< Long, Cell< A > > unchecked = volatileCache.unchecked();
+
+		/*
+		 * Empty cells share one zero array, so they must not be written to.
+		 * Therefore the occupancy index is only used for non-dirty images.
+		 */
+		if ( occupancy == null || dirty )
+			return new VolatileCachedCellImg<>( grid, type, hints, ( index, cellHints ) -> {
+				final Cell< A > cell = unchecked.get( index, cellHints );
+				stats.record( cell.getData().isValid() );
+				return cell;
+			} );
+
+		checkGrid( grid, occupancy.getCellGrid() );
+		final ZeroCells< A > zeroCells = new ZeroCells<>( grid, createValidZeros( grid, type ) );
+		return new VolatileCachedCellImg<>( grid, type, hints, ( index, cellHints ) -> {
+			if ( occupancy.isEmpty( index ) )
+			{
+				stats.record( true );
+				return zeroCells.get( index );
+			}
+			final Cell< A > cell = unchecked.get( index, cellHints );
+			stats.record( cell.getData().isValid() );
+			return cell;
+		} );
+	}
+
+	/**
+	 * Create a valid volatile access, large enough for the largest cell of
+	 * {@code grid}, filled with zeros.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static < T extends NativeType< T >, A extends VolatileArrayDataAccess< A > > A createValidZeros(
+			final CellGrid grid,
+			final T type )
+	{
+		long maxCellSize = 1;
+		for ( int d = 0; d < grid.numDimensions(); ++d )
+			maxCellSize *= grid.cellDimension( d );
+		final int numEntities = ( int ) type.getEntitiesPerPixel().mulCeil( maxCellSize );
+		final VolatileArrayDataAccess access = ( VolatileArrayDataAccess ) ArrayDataAccessFactory.get( type, AccessFlags.setOf( VOLATILE ) );
+		return ( A ) access.createArray( numEntities, true );
+	}
+
+	/**
+	 * Zero cells for empty cells of a grid, all sharing one zero array. The
+	 * most recently used cells are kept in a small direct-mapped cache, such
+	 * that repeated lookups of the same empty cell don't allocate.
+	 */
+	private static final class ZeroCells< A >
+	{
+		private static final int CACHE_SIZE = 256;
+
+		private final CellGrid grid;
+
+		private final A zeros;
+
+		private final AtomicReferenceArray< ZeroCell< A > > cache = new AtomicReferenceArray<>( CACHE_SIZE );
+
+		ZeroCells( final CellGrid grid, final A zeros )
+		{
+			this.grid = grid;
+			this.zeros = zeros;
+		}
+
+		Cell< A > get( final long index )
+		{
+			final int slot = ( int ) ( index & ( CACHE_SIZE - 1 ) );
+			final ZeroCell< A > cached = cache.get( slot );
+			if ( cached != null && cached.index == index )
+				return cached.cell;
+
+			final int n = grid.numDimensions();
+			final long[] cellMin = new long[ n ];
+			final int[] cellDims = new int[ n ];
+			grid.getCellDimensions( index, cellMin, cellDims );
+			final Cell< A > cell = new Cell<>( cellDims, cellMin, zeros );
+			cache.lazySet( slot, new ZeroCell<>( index, cell ) );
+			return cell;
+		}
+	}
+
+	private static final class ZeroCell< A >
+	{
+		final long index;
+
+		final Cell< A > cell;
+
+		ZeroCell( final long index, final Cell< A > cell )
+		{
+			this.index = index;
+			this.cell = cell;
+		}
+	}
+
+	private static void checkGrid( final CellGrid grid, final CellGrid occupancyGrid )
+	{
+		boolean matches = grid.numDimensions() == occupancyGrid.numDimensions();
+		for ( int d = 0; matches && d < grid.numDimensions(); ++d )
+			matches = grid.cellDimension( d ) == occupancyGrid.cellDimension( d )
+					&& grid.getGridDimensions()[ d ] == occupancyGrid.getGridDimensions()[ d ];
+		if ( !matches )
+			throw new IllegalArgumentException( "occupancy index doesn't match cell grid of " + CachedCellImg.class.getSimpleName() );
 	}
 }
 
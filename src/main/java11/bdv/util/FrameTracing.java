@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import bdv.util.volatiles.FlightRecorderEvents;
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.render.AccumulateProjectorFactory;
+import bdv.viewer.render.VolatileProjector;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Emits {@link FrameRenderEvent}s for frames rendered by projectors of a
+ * wrapped {@link AccumulateProjectorFactory}. Must only be used if
+ * {@link FlightRecorderEvents#AVAILABLE}.
+ * <p>
+ * This is the Java 11 version of the class in the multi-release jar.
+ */
+final class FrameTracing
+{
+	private FrameTracing()
+	{}
+
+	/**
+	 * Wrap {@code factory} such that frames rendered by projectors it creates
+	 * emit events.
+	 */
+	static AccumulateProjectorFactory< ARGBType > wrap( final AccumulateProjectorFactory< ARGBType > factory, final BdvHandle handle )
+	{
+		return new AccumulateProjectorFactory< ARGBType >()
+		{
+			@Override
+			public VolatileProjector createProjector(
+					final List< VolatileProjector > sourceProjectors,
+					final List< SourceAndConverter< ? > > sources,
+					final List< ? extends RandomAccessible< ? extends ARGBType > > sourceScreenImages,
+					final RandomAccessibleInterval< ARGBType > targetScreenImage,
+					final int numThreads,
+					final ExecutorService executorService )
+			{
+				final VolatileProjector projector = factory.createProjector( sourceProjectors, sources, sourceScreenImages, targetScreenImage, numThreads, executorService );
+				final double screenScale = handle.getScreenScale( targetScreenImage );
+				return new VolatileProjector()
+				{
+					@Override
+					public boolean map( final boolean clearUntouchedTargetPixels )
+					{
+						return FrameTracing.map( projector, clearUntouchedTargetPixels, screenScale );
+					}
+
+					@Override
+					public void cancel()
+					{
+						projector.cancel();
+					}
+
+					@Override
+					public long getLastFrameRenderNanoTime()
+					{
+						return projector.getLastFrameRenderNanoTime();
+					}
+
+					@Override
+					public boolean isValid()
+					{
+						return projector.isValid();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Render a frame with {@code projector} and emit a
+	 * {@link FrameRenderEvent}, if enabled.
+	 */
+	static boolean map( final VolatileProjector projector, final boolean clearUntouchedTargetPixels, final double screenScale )
+	{
+		final FrameRenderEvent event = new FrameRenderEvent();
+		event.begin();
+		final boolean success = projector.map( clearUntouchedTargetPixels );
+		if ( event.shouldCommit() )
+		{
+			event.screenScale = screenScale;
+			event.complete = projector.isValid();
+			event.commit();
+		}
+		return success;
+	}
+}
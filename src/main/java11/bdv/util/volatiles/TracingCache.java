@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util.volatiles;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+
+/**
+ * A {@link CountingCache} that also emits {@link CellFetchEvent}s for fetches
+ * and {@link CacheInvalidationEvent}s for invalidations. Only created (and
+ * loaded) if {@link FlightRecorderEvents#AVAILABLE}.
+ * <p>
+ * This is the Java 11 version of the class in the multi-release jar.
+ */
+class TracingCache< A > extends CountingCache< A >
+{
+	private final CellGrid grid;
+
+	private final int level;
+
+	private final CellAccessStats stats;
+
+	/**
+	 * Name of the cached image in events, created on first use.
+	 */
+	private String name;
+
+	TracingCache( final Cache< Long, Cell< A > > cache, final CellGrid grid, final int level, final CellAccessStats stats )
+	{
+		super( cache, stats );
+		this.grid = grid;
+		this.level = level;
+		this.stats = stats;
+	}
+
+	private String getName()
+	{
+		if ( name == null )
+			name = CachedCellImg.class.getSimpleName() + "@" + Integer.toHexString( System.identityHashCode( cache ) )
+					+ " " + Arrays.toString( grid.getImgDimensions() );
+		return name;
+	}
+
+	@Override
+	public Cell< A > get( final Long key ) throws ExecutionException
+	{
+		final CellFetchEvent event = new CellFetchEvent();
+		event.begin();
+		final Cell< A > cell = cache.get( key );
+		final long bytes = sizeInBytes( cell );
+		stats.recordFetch( bytes );
+		if ( event.shouldCommit() )
+		{
+			event.cache = getName();
+			event.level = level;
+			event.cellIndex = key;
+			event.bytes = bytes;
+			event.commit();
+		}
+		return cell;
+	}
+
+	@Override
+	public void invalidate( final Long key )
+	{
+		super.invalidate( key );
+		invalidated( key, "cell" );
+	}
+
+	@Override
+	public void invalidateIf( final long parallelismThreshold, final Predicate< Long > condition )
+	{
+		super.invalidateIf( parallelismThreshold, condition );
+		invalidated( -1, "condition" );
+	}
+
+	@Override
+	public void invalidateAll( final long parallelismThreshold )
+	{
+		super.invalidateAll( parallelismThreshold );
+		invalidated( -1, "all" );
+	}
+
+	private void invalidated( final long cellIndex, final String scope )
+	{
+		final CacheInvalidationEvent event = new CacheInvalidationEvent();
+		if ( event.shouldCommit() )
+		{
+			event.cache = getName();
+			event.cellIndex = cellIndex;
+			event.scope = scope;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,314 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import bdv.viewer.SourceAndConverter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+public class AsyncOverlayRendererTest
+{
+	private static final int WIDTH = 600;
+
+	private static final int HEIGHT = 300;
+
+	private static final RenderingHints HINTS = new RenderingHints( null );
+
+	@Test
+	public void testCoalescesRenders() throws InterruptedException
+	{
+		final RecordingOverlay overlay = new RecordingOverlay( false, 50 );
+		final AsyncOverlayRenderer renderer = new AsyncOverlayRenderer( overlay );
+		for ( int i = 1; i <= 20; ++i )
+			render( renderer, translation( i ) );
+		awaitIdle( renderer );
+
+		// the first request may be abandoned before drawing, all others are
+		// coalesced into the latest one
+		assertEquals( 1, overlay.maxActive.get() );
+		assertTrue( overlay.numDraws.get() >= 1 && overlay.numDraws.get() <= 2 );
+		assertEquals( 20, overlay.lastTranslation.get() );
+	}
+
+	@Test
+	public void testConcurrentDrawTiles() throws InterruptedException
+	{
+		final RecordingOverlay overlay = new RecordingOverlay( true, 0 );
+		final AsyncOverlayRenderer renderer = new AsyncOverlayRenderer( overlay );
+		render( renderer, new AffineTransform3D() );
+		awaitIdle( renderer );
+
+		assertEquals( 6, overlay.numDraws.get() );
+		assertEquals( WIDTH * HEIGHT, overlay.clipArea.get() );
+	}
+
+	@Test
+	public void testDrawFailure() throws InterruptedException
+	{
+		final RecordingOverlay overlay = new RecordingOverlay( false, 0 );
+		final AsyncOverlayRenderer renderer = new AsyncOverlayRenderer( overlay );
+		render( renderer, new AffineTransform3D() );
+		awaitIdle( renderer );
+
+		final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+		final AtomicReference< Throwable > failure = new AtomicReference<>();
+		Thread.setDefaultUncaughtExceptionHandler( ( thread, e ) -> failure.set( e ) );
+		try
+		{
+			overlay.fail = true;
+			render( renderer, translation( 1 ) );
+			awaitIdle( renderer );
+		}
+		finally
+		{
+			Thread.setDefaultUncaughtExceptionHandler( handler );
+		}
+		assertTrue( failure.get() instanceof IllegalStateException );
+
+		// the last complete rendering is still painted
+		final BufferedImage image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D g = image.createGraphics();
+		renderer.paint( g, new AffineTransform3D() );
+		g.dispose();
+		assertEquals( 0xffff0000, image.getRGB( 10, 10 ) );
+
+		// and later renderings succeed
+		overlay.fail = false;
+		render( renderer, translation( 2 ) );
+		awaitIdle( renderer );
+		assertEquals( 2, overlay.lastTranslation.get() );
+	}
+
+	@Test
+	public void testPointsTilesMatchFullDraw() throws InterruptedException
+	{
+		final PointsOverlay overlay = createPointsOverlay();
+		assertTrue( overlay.isConcurrentDrawSupported() );
+		assertTilesMatchFullDraw( overlay );
+	}
+
+	@Test
+	public void testPointsDensityTilesMatchFullDraw() throws InterruptedException
+	{
+		final PointsOverlay overlay = createPointsOverlay();
+		overlay.setDensityThreshold( 100 );
+		assertTilesMatchFullDraw( overlay );
+	}
+
+	@Test
+	public void testPolylinesTilesMatchFullDraw() throws InterruptedException
+	{
+		final Random random = new Random( 1 );
+		final Polylines lines = new Polylines();
+		for ( int i = 0; i < 50; ++i )
+		{
+			final float[] x = new float[ 10 ];
+			final float[] y = new float[ 10 ];
+			final float[] z = new float[ 10 ];
+			for ( int j = 0; j < 10; ++j )
+			{
+				x[ j ] = random.nextFloat() * WIDTH;
+				y[ j ] = random.nextFloat() * HEIGHT;
+				z[ j ] = random.nextFloat() * 20 - 10;
+			}
+			lines.add( x, y, z, false );
+		}
+		final PolylinesOverlay overlay = new PolylinesOverlay();
+		overlay.setPolylines( lines );
+		setupOverlay( overlay );
+		assertTrue( overlay.isConcurrentDrawSupported() );
+		assertTilesMatchFullDraw( overlay );
+	}
+
+	private static PointsOverlay createPointsOverlay()
+	{
+		final Random random = new Random( 1 );
+		final PointsData points = new PointsData();
+		for ( int i = 0; i < 2000; ++i )
+			points.add( random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT, 0 );
+		final PointsOverlay overlay = new PointsOverlay();
+		overlay.setPoints( points );
+		setupOverlay( overlay );
+		return overlay;
+	}
+
+	private static void setupOverlay( final BdvOverlay overlay )
+	{
+		final PlaceHolderOverlayInfo info = new PlaceHolderOverlayInfo(
+				new SourceAndConverter<>( new PlaceHolderSource( "overlay" ), null ),
+				new PlaceHolderConverterSetup( 0, 0, 255, new ARGBType( 0xff00ff00 ) ) );
+		info.transformChanged( new AffineTransform3D() );
+		overlay.setOverlayInfo( info );
+		overlay.setCanvasSize( WIDTH, HEIGHT );
+	}
+
+	/**
+	 * Check that the overlay rendered in tiles on background threads looks
+	 * like the overlay drawn at once, both painted on black.
+	 */
+	private static void assertTilesMatchFullDraw( final BdvOverlay overlay ) throws InterruptedException
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		final BufferedImage expected = blackImage();
+		final Graphics2D eg = expected.createGraphics();
+		overlay.drawWithViewerTransform( eg, transform );
+		eg.dispose();
+
+		final AsyncOverlayRenderer renderer = new AsyncOverlayRenderer( overlay );
+		render( renderer, transform );
+		awaitIdle( renderer );
+		final BufferedImage actual = blackImage();
+		final Graphics2D ag = actual.createGraphics();
+		renderer.paint( ag, transform );
+		ag.dispose();
+
+		int numDrawn = 0;
+		for ( int y = 0; y < HEIGHT; ++y )
+			for ( int x = 0; x < WIDTH; ++x )
+			{
+				final int e = expected.getRGB( x, y );
+				final int a = actual.getRGB( x, y );
+				for ( int shift = 0; shift < 24; shift += 8 )
+					assertEquals( ( e >> shift ) & 0xff, ( a >> shift ) & 0xff, 2 );
+				if ( ( e & 0x00ffffff ) != 0 )
+					++numDrawn;
+			}
+		assertTrue( numDrawn > 0 );
+	}
+
+	private static BufferedImage blackImage()
+	{
+		final BufferedImage image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D g = image.createGraphics();
+		g.setColor( Color.BLACK );
+		g.fillRect( 0, 0, WIDTH, HEIGHT );
+		g.dispose();
+		return image;
+	}
+
+	private static AffineTransform3D translation( final double x )
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.translate( x, 0, 0 );
+		return transform;
+	}
+
+	private static void render( final AsyncOverlayRenderer renderer, final AffineTransform3D transform )
+	{
+		renderer.render( transform, transform, WIDTH, HEIGHT, HINTS );
+	}
+
+	private static void awaitIdle( final AsyncOverlayRenderer renderer ) throws InterruptedException
+	{
+		final long deadline = System.currentTimeMillis() + 10_000;
+		while ( renderer.isRendering() )
+		{
+			assertTrue( "rendering did not finish", System.currentTimeMillis() < deadline );
+			Thread.sleep( 5 );
+		}
+	}
+
+	/**
+	 * Fills its clip with red and records draws.
+	 */
+	private static class RecordingOverlay extends BdvOverlay
+	{
+		private final boolean concurrent;
+
+		private final long drawMillis;
+
+		final AtomicInteger numDraws = new AtomicInteger();
+
+		final AtomicInteger active = new AtomicInteger();
+
+		final AtomicInteger maxActive = new AtomicInteger();
+
+		final AtomicLong clipArea = new AtomicLong();
+
+		final AtomicLong lastTranslation = new AtomicLong();
+
+		volatile boolean fail;
+
+		RecordingOverlay( final boolean concurrent, final long drawMillis )
+		{
+			this.concurrent = concurrent;
+			this.drawMillis = drawMillis;
+		}
+
+		@Override
+		protected boolean isConcurrentDrawSupported()
+		{
+			return concurrent;
+		}
+
+		@Override
+		protected void draw( final Graphics2D g )
+		{
+			final int a = active.incrementAndGet();
+			maxActive.accumulateAndGet( a, Math::max );
+			try
+			{
+				if ( fail )
+					throw new IllegalStateException( "draw failed" );
+				Thread.sleep( drawMillis );
+				final AffineTransform3D transform = new AffineTransform3D();
+				getCurrentTransform3D( transform );
+				lastTranslation.set( ( long ) transform.get( 0, 3 ) );
+				final Rectangle clip = g.getClipBounds();
+				clipArea.addAndGet( ( long ) clip.width * clip.height );
+				g.setColor( Color.RED );
+				g.fill( clip );
+				numDraws.incrementAndGet();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				active.decrementAndGet();
+			}
+		}
+	}
+}
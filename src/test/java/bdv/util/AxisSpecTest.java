@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+
+import org.junit.Test;
+
+public class AxisSpecTest
+{
+	@Test
+	public void testAxisOrder()
+	{
+		assertEquals( AxisOrder.XY, AxisSpec.parse( "yx" ).getAxisOrder() );
+		assertEquals( AxisOrder.XYZ, AxisSpec.parse( "zyx" ).getAxisOrder() );
+		assertEquals( AxisOrder.XYZC, AxisSpec.parse( "czyx" ).getAxisOrder() );
+		assertEquals( AxisOrder.XYZCT, AxisSpec.parse( "TCZYX" ).getAxisOrder() );
+		assertEquals( AxisOrder.XYCT, AxisSpec.parse( "tcyx" ).getAxisOrder() );
+		assertEquals( AxisOrder.XYZT, AxisSpec.parse( "xyzt" ).getAxisOrder() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testUnknownAxis()
+	{
+		AxisSpec.parse( "qyx" );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testDuplicateAxis()
+	{
+		AxisSpec.parse( "xyy" );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testMissingAxis()
+	{
+		AxisSpec.parse( "zx" );
+	}
+
+	@Test
+	public void testCanonicalIsNotPermuted()
+	{
+		final ArrayImg< IntType, IntArray > img = ArrayImgs.ints( 2, 3, 4 );
+		assertSame( img, AxisSpec.parse( "xyz" ).permute( img ) );
+	}
+
+	@Test
+	public void testPermute()
+	{
+		// t, c, z, y, x
+		final long[] dims = { 2, 3, 4, 5, 6 };
+		final ArrayImg< IntType, IntArray > img = ArrayImgs.ints( dims );
+		final RandomAccess< IntType > a = img.randomAccess();
+		a.setPosition( new long[] { 1, 2, 3, 4, 5 } );
+		a.get().set( 42 );
+
+		final RandomAccessibleInterval< IntType > permuted = AxisSpec.parse( "tczyx" ).permute( img );
+		assertArrayEquals( new long[] { 6, 5, 4, 3, 2 }, Intervals.dimensionsAsLongArray( permuted ) );
+
+		final RandomAccess< IntType > b = permuted.randomAccess();
+		b.setPosition( new long[] { 5, 4, 3, 2, 1 } );
+		assertEquals( 42, b.get().get() );
+	}
+}
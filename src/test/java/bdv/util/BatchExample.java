@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class BatchExample
+{
+	public static void main( final String[] args )
+	{
+		System.setProperty( "apple.laf.useScreenMenuBar", "true" );
+
+		final int numTiles = 2000;
+		final int tilesPerRow = 50;
+		final int tileSize = 32;
+
+		final ArrayImg< UnsignedByteType, ByteArray > first = ArrayImgs.unsignedBytes( tileSize, tileSize, tileSize );
+		final BdvHandle handle = BdvFunctions.show( first, "tile 0" ).getBdvHandle();
+
+		final long t0 = System.currentTimeMillis();
+		handle.batch( () -> {
+			for ( int i = 1; i < numTiles; ++i )
+			{
+				final ArrayImg< UnsignedByteType, ByteArray > tile = ArrayImgs.unsignedBytes( tileSize, tileSize, tileSize );
+				final int value = i % 256;
+				tile.forEach( t -> t.set( value ) );
+				final AffineTransform3D transform = new AffineTransform3D();
+				transform.translate( ( i % tilesPerRow ) * tileSize, ( i / tilesPerRow ) * tileSize, 0 );
+				BdvFunctions.show( tile, "tile " + i, Bdv.options().addTo( handle ).sourceTransform( transform ) );
+			}
+		} );
+		System.out.println( "added " + numTiles + " tiles in " + ( System.currentTimeMillis() - t0 ) + " ms" );
+	}
+}
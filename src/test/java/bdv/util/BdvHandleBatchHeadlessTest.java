@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.tools.brightness.ConverterSetup;
+import bdv.viewer.ViewerState;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+/**
+ * Tests {@link BdvHandle#batch(Runnable)} with {@link BdvHandleHeadless}. Run
+ * with {@code java.awt.headless=true}.
+ */
+public class BdvHandleBatchHeadlessTest
+{
+	private BdvHandleHeadless handle;
+
+	@Before
+	public void setUp()
+	{
+		handle = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options() );
+	}
+
+	@After
+	public void tearDown()
+	{
+		handle.close();
+	}
+
+	private BdvStackSource< UnsignedByteType > show( final String name )
+	{
+		return BdvFunctions.show( ArrayImgs.unsignedBytes( 8, 8, 8 ), name, Bdv.options().addTo( handle ) );
+	}
+
+	private BdvStackSource< UnsignedByteType > showTimeseries( final String name, final int numTimepoints )
+	{
+		return BdvFunctions.show( ArrayImgs.unsignedBytes( 8, 8, 8, numTimepoints ), name, Bdv.options().axisOrder( AxisOrder.XYZT ).addTo( handle ) );
+	}
+
+	private ViewerState state()
+	{
+		return handle.getViewerPanel().state();
+	}
+
+	@Test
+	public void testNestedBatches()
+	{
+		final List< BdvStackSource< ? > > shown = new ArrayList<>();
+		handle.batch( () -> {
+			shown.add( show( "a" ) );
+			handle.batch( () -> shown.add( show( "b" ) ) );
+			// the inner batch doesn't commit
+			assertTrue( state().getSources().isEmpty() );
+			shown.add( show( "c" ) );
+		} );
+
+		assertEquals( 3, state().getSources().size() );
+		for ( final BdvStackSource< ? > source : shown )
+		{
+			assertTrue( state().containsSource( source.getSources().get( 0 ) ) );
+			assertTrue( state().isSourceActive( source.getSources().get( 0 ) ) );
+		}
+	}
+
+	@Test
+	public void testAddAndRemoveInOneBatch()
+	{
+		final BdvStackSource< ? > kept = show( "kept" );
+		handle.batch( () -> {
+			show( "added and removed" ).removeFromBdv();
+			kept.removeFromBdv();
+			show( "added" );
+		} );
+
+		assertEquals( 1, state().getSources().size() );
+		assertFalse( state().containsSource( kept.getSources().get( 0 ) ) );
+		assertEquals( "added", state().getSources().get( 0 ).getSpimSource().getName() );
+	}
+
+	@Test
+	public void testSetupIdsAcrossBatches()
+	{
+		final List< BdvStackSource< ? > > shown = new ArrayList<>();
+		handle.batch( () -> {
+			shown.add( show( "a" ) );
+			shown.add( show( "b" ) );
+		} );
+		shown.add( show( "c" ) );
+		handle.batch( () -> {
+			shown.add( show( "d" ) );
+			handle.batch( () -> shown.add( show( "e" ) ) );
+		} );
+
+		final Set< Integer > setupIds = new HashSet<>();
+		for ( final BdvStackSource< ? > source : shown )
+			for ( final ConverterSetup setup : source.getConverterSetups() )
+				assertTrue( "duplicate setup id " + setup.getSetupId(), setupIds.add( setup.getSetupId() ) );
+		assertEquals( 5, setupIds.size() );
+	}
+
+	@Test
+	public void testNumTimepointsUpdatedWhenBatchEnds()
+	{
+		assertEquals( 1, state().getNumTimepoints() );
+		final List< BdvStackSource< ? > > shown = new ArrayList<>();
+		handle.batch( () -> {
+			shown.add( showTimeseries( "5", 5 ) );
+			shown.add( showTimeseries( "7", 7 ) );
+			assertEquals( 1, state().getNumTimepoints() );
+		} );
+		assertEquals( 7, state().getNumTimepoints() );
+
+		handle.batch( () -> {
+			shown.get( 1 ).removeFromBdv();
+			assertEquals( 7, state().getNumTimepoints() );
+		} );
+		assertEquals( 5, state().getNumTimepoints() );
+	}
+
+	@Test
+	public void testExceptionInBatch()
+	{
+		final List< BdvStackSource< ? > > shown = new ArrayList<>();
+		try
+		{
+			handle.batch( () -> {
+				shown.add( showTimeseries( "a", 3 ) );
+				throw new IllegalStateException( "failure in batch" );
+			} );
+			fail( "exception was not propagated" );
+		}
+		catch ( final IllegalStateException e )
+		{
+			assertEquals( "failure in batch", e.getMessage() );
+		}
+
+		// the changes made before the exception are committed
+		assertEquals( 1, state().getSources().size() );
+		assertTrue( state().containsSource( shown.get( 0 ).getSources().get( 0 ) ) );
+		assertEquals( 3, state().getNumTimepoints() );
+
+		// and the handle is no longer in a batch
+		show( "b" );
+		assertEquals( 2, state().getSources().size() );
+	}
+}
@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileViews;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+/**
+ * Opens and closes handles, and adds and removes sources and overlays
+ * repeatedly, and checks that nothing is left behind: no threads, and no
+ * reachable handles, sources, or overlays. (Retained heap and allocations
+ * per frame are measured by {@link BdvHandleMemoryBenchmark}.)
+ * <p>
+ * Uses {@link BdvHandleHeadless}. Run with {@code java.awt.headless=true}.
+ */
+public class BdvHandleLifecycleHeadlessTest
+{
+	private static final int CYCLES = 20;
+
+	private static final int WIDTH = 320;
+
+	private static final int HEIGHT = 240;
+
+	/**
+	 * Tolerance for unrelated threads started by the JVM during a test.
+	 */
+	private static final int THREAD_SLACK = 2;
+
+	@Test
+	public void testWrapAsVolatileThreads() throws InterruptedException
+	{
+		final CachedCellImg< UnsignedShortType, ? > img = new SyntheticDataset<>( new UnsignedShortType(), 64, 64, 64 )
+				.cellDimensions( 16 )
+				.createLevel( 0 );
+		VolatileViews.wrapAsVolatile( img );
+
+		final int threads = liveThreads();
+		for ( int i = 0; i < 10 * CYCLES; ++i )
+			VolatileViews.wrapAsVolatile( img );
+		awaitLiveThreads( threads + THREAD_SLACK );
+	}
+
+	@Test
+	public void testDefaultQueuePerHandle() throws InterruptedException
+	{
+		final CachedCellImg< UnsignedShortType, ? > img = new SyntheticDataset<>( new UnsignedShortType(), 64, 64, 64 )
+				.cellDimensions( 16 )
+				.createLevel( 0 );
+		final RandomAccessibleInterval< VolatileUnsignedShortType > vimg = VolatileViews.wrapAsVolatile( img );
+		openRenderClose( vimg );
+		final int threads = liveThreads();
+
+		for ( int i = 0; i < CYCLES; ++i )
+			openRenderClose( vimg );
+		awaitLiveThreads( threads + THREAD_SLACK );
+
+		final BdvHandleHeadless handle1 = new BdvHandleHeadless( options() );
+		final BdvHandleHeadless handle2 = new BdvHandleHeadless( options() );
+		try
+		{
+			BdvFunctions.show( vimg, "img", Bdv.options().addTo( handle1 ) );
+			BdvFunctions.show( vimg, "img", Bdv.options().addTo( handle2 ) );
+			assertNotSame( handle1.getDefaultQueue(), handle2.getDefaultQueue() );
+			assertEquals( VolatileViews.DEFAULT_NUM_FETCHER_THREADS, handle1.getDefaultQueue().getNumFetcherThreads() );
+		}
+		finally
+		{
+			handle1.close();
+			handle2.close();
+		}
+		awaitLiveThreads( threads + THREAD_SLACK );
+	}
+
+	@Test
+	public void testVolatileSourceLevelsAreReused()
+	{
+		final SharedQueue queue = new SharedQueue( 1, 2 );
+		try
+		{
+			final VolatileRandomAccessibleIntervalMipmapSource< UnsignedShortType, VolatileUnsignedShortType > source =
+					new SyntheticDataset<>( new UnsignedShortType(), 64, 64, 64 )
+							.numLevels( 2 )
+							.createSource( "synthetic" )
+							.asVolatile( queue );
+			for ( int level = 0; level < 2; ++level )
+				assertSame( source.getSource( 0, level ), source.getSource( 0, level ) );
+		}
+		finally
+		{
+			queue.shutdown();
+		}
+	}
+
+	@Test
+	public void testOpenCloseHandles() throws InterruptedException
+	{
+		openRenderClose();
+		final int threads = liveThreads();
+
+		WeakReference< BdvHandle > handleRef = null;
+		for ( int i = 0; i < CYCLES; ++i )
+		{
+			final BdvHandleHeadless handle = openRenderClose();
+			handleRef = new WeakReference<>( handle );
+		}
+		awaitLiveThreads( threads + THREAD_SLACK );
+		awaitCollected( handleRef, "handle" );
+	}
+
+	@Test
+	public void testAddRemoveSources() throws InterruptedException
+	{
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options() );
+		try
+		{
+			final List< WeakReference< ? > > refs = new ArrayList<>();
+			final int[] argb = new int[ WIDTH * HEIGHT ];
+			for ( int i = 0; i < CYCLES; ++i )
+			{
+				final RandomAccessibleInterval< UnsignedByteType > img = ArrayImgs.unsignedBytes( 128, 128, 64 );
+				final BdvStackSource< ? > source = BdvFunctions.show( img, "img", Bdv.options().addTo( handle ) );
+				handle.render( argb );
+				source.removeFromBdv();
+				refs.add( new WeakReference<>( img ) );
+				refs.add( new WeakReference<>( source ) );
+			}
+			assertTrue( handle.getViewerPanel().state().getSources().isEmpty() );
+			for ( final WeakReference< ? > ref : refs )
+				awaitCollected( ref, "source" );
+		}
+		finally
+		{
+			handle.close();
+		}
+	}
+
+	@Test
+	public void testAddRemoveOverlays() throws InterruptedException
+	{
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options() );
+		try
+		{
+			BdvFunctions.show( ArrayImgs.unsignedBytes( 64, 64, 64 ), "img", Bdv.options().addTo( handle ) );
+			final List< WeakReference< ? > > refs = new ArrayList<>();
+			for ( int i = 0; i < CYCLES; ++i )
+			{
+				final BdvOverlay overlay = new EmptyOverlay();
+				overlay.setAsync( i % 2 == 0 );
+				final BdvOverlaySource< ? > source = BdvFunctions.showOverlay( overlay, "overlay", Bdv.options().addTo( handle ) );
+				source.setActive( false );
+				source.setActive( true );
+				source.removeFromBdv();
+				refs.add( new WeakReference<>( overlay ) );
+				refs.add( new WeakReference<>( source ) );
+			}
+			assertEquals( 1, handle.getViewerPanel().state().getSources().size() );
+			for ( final WeakReference< ? > ref : refs )
+				awaitCollected( ref, "overlay" );
+		}
+		finally
+		{
+			handle.close();
+		}
+	}
+
+	// ==============================================================
+
+	private static BdvOptions options()
+	{
+		return Bdv.options().preferredSize( WIDTH, HEIGHT ).numRenderingThreads( 2 );
+	}
+
+	private static BdvHandleHeadless openRenderClose()
+	{
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options() );
+		BdvFunctions.show( ArrayImgs.unsignedBytes( 64, 64, 64 ), "img", Bdv.options().addTo( handle ) );
+		BdvFunctions.showOverlay( new EmptyOverlay(), "overlay", Bdv.options().addTo( handle ) );
+		handle.render( new int[ WIDTH * HEIGHT ] );
+		handle.close();
+		return handle;
+	}
+
+	private static void openRenderClose( final RandomAccessibleInterval< VolatileUnsignedShortType > img )
+	{
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options() );
+		BdvFunctions.show( img, "img", Bdv.options().addTo( handle ) );
+		final int[] argb = new int[ WIDTH * HEIGHT ];
+		for ( int i = 0; i < 3; ++i )
+			handle.render( argb );
+		handle.close();
+	}
+
+	private static class EmptyOverlay extends BdvOverlay
+	{
+		@Override
+		protected void draw( final Graphics2D g )
+		{}
+	}
+
+	private static int liveThreads()
+	{
+		return ManagementFactory.getThreadMXBean().getThreadCount();
+	}
+
+	/**
+	 * Wait (up to 5 seconds) for the number of live threads to drop to
+	 * {@code max}, because shut down executors terminate asynchronously.
+	 */
+	private static void awaitLiveThreads( final int max ) throws InterruptedException
+	{
+		for ( int i = 0; i < 100 && liveThreads() > max; ++i )
+			Thread.sleep( 50 );
+		final int live = liveThreads();
+		assertTrue( live + " live threads, expected at most " + max, live <= max );
+	}
+
+	private static void awaitCollected( final WeakReference< ? > ref, final String what ) throws InterruptedException
+	{
+		for ( int i = 0; i < 20 && ref.get() != null; ++i )
+		{
+			System.gc();
+			Thread.sleep( 50 );
+		}
+		assertNull( what + " is still reachable", ref.get() );
+	}
+}
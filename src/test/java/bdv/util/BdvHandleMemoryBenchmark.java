@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.Graphics2D;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+/**
+ * Measures the heap retained by a {@link BdvHandleHeadless} after adding and
+ * removing sources and overlays repeatedly, and the memory allocated per
+ * rendered frame. Both depend on the JVM and garbage collector, so they are
+ * printed rather than checked. Allocations per frame should stay well below
+ * the size of one ARGB frame buffer.
+ * <p>
+ * Run with {@code -Djava.awt.headless=true}.
+ */
+public class BdvHandleMemoryBenchmark
+{
+	private static final int CYCLES = 20;
+
+	private static final int WIDTH = 320;
+
+	private static final int HEIGHT = 240;
+
+	public static void main( final String[] args ) throws InterruptedException
+	{
+		retainedHeap();
+		frameAllocations();
+	}
+
+	private static void retainedHeap() throws InterruptedException
+	{
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options() );
+		try
+		{
+			addAndRemove( handle );
+			final long before = usedHeap();
+			for ( int i = 0; i < CYCLES; ++i )
+				addAndRemove( handle );
+			final long growth = usedHeap() - before;
+			System.out.println( String.format( "retained heap after %d add/remove cycles: %8.3f MB", CYCLES, growth / 1e6 ) );
+		}
+		finally
+		{
+			handle.close();
+		}
+	}
+
+	private static void frameAllocations()
+	{
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( !( bean instanceof com.sun.management.ThreadMXBean ) || !( ( com.sun.management.ThreadMXBean ) bean ).isThreadAllocatedMemorySupported() )
+		{
+			System.out.println( "thread allocation measurement is not supported by this JVM" );
+			return;
+		}
+		final com.sun.management.ThreadMXBean threads = ( com.sun.management.ThreadMXBean ) bean;
+		threads.setThreadAllocatedMemoryEnabled( true );
+
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options() );
+		try
+		{
+			final ArrayImg< UnsignedByteType, ByteArray > img = ArrayImgs.unsignedBytes( 256, 256, 64 );
+			BdvFunctions.show( img, "img", Bdv.options().addTo( handle ) );
+			BdvFunctions.show( img, "img2", Bdv.options().addTo( handle ) );
+			final int[] argb = new int[ WIDTH * HEIGHT ];
+			for ( int i = 0; i < CYCLES; ++i )
+				handle.render( argb );
+
+			final long[] ids = threads.getAllThreadIds();
+			final long before = sum( threads.getThreadAllocatedBytes( ids ) );
+			final int numFrames = 5 * CYCLES;
+			for ( int i = 0; i < numFrames; ++i )
+				handle.render( argb );
+			final long perFrame = ( sum( threads.getThreadAllocatedBytes( ids ) ) - before ) / numFrames;
+			System.out.println( String.format( "allocated per frame: %d bytes (frame buffer: %d bytes)", perFrame, 4L * WIDTH * HEIGHT ) );
+		}
+		finally
+		{
+			handle.close();
+		}
+	}
+
+	private static BdvOptions options()
+	{
+		return Bdv.options().preferredSize( WIDTH, HEIGHT ).numRenderingThreads( 2 );
+	}
+
+	private static void addAndRemove( final BdvHandleHeadless handle )
+	{
+		final BdvStackSource< ? > source = BdvFunctions.show( ArrayImgs.unsignedBytes( 128, 128, 64 ), "img", Bdv.options().addTo( handle ) );
+		final BdvOverlaySource< ? > overlay = BdvFunctions.showOverlay( new EmptyOverlay(), "overlay", Bdv.options().addTo( handle ) );
+		handle.render( new int[ WIDTH * HEIGHT ] );
+		overlay.removeFromBdv();
+		source.removeFromBdv();
+	}
+
+	private static class EmptyOverlay extends BdvOverlay
+	{
+		@Override
+		protected void draw( final Graphics2D g )
+		{}
+	}
+
+	private static long sum( final long[] values )
+	{
+		long sum = 0;
+		for ( final long value : values )
+			if ( value > 0 )
+				sum += value;
+		return sum;
+	}
+
+	private static long usedHeap() throws InterruptedException
+	{
+		for ( int i = 0; i < 3; ++i )
+		{
+			System.gc();
+			Thread.sleep( 50 );
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,83 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.junit.Test;
+
+/**
+ * Tests the JMX registration of {@link BdvMetrics} of
+ * {@link BdvHandleHeadless} handles. Run with {@code java.awt.headless=true}.
+ */
+public class BdvMetricsHeadlessTest
+{
+	@Test
+	public void testMetricsMBeanNames() throws Exception
+	{
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final BdvHandleHeadless handle1 = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options().collectMetrics() );
+		final ObjectName name1 = handle1.getMetrics().getObjectName();
+		final String id1 = name1.getKeyProperty( "id" );
+
+		// take the next name, as metrics of another class loader would
+		final ObjectName taken = new ObjectName( "bdv.util:type=BdvMetrics,id=" + ( Integer.parseInt( id1 ) + 1 ) );
+		server.registerMBean( new StandardMBean( ( Runnable ) () -> {}, Runnable.class ), taken );
+		final BdvHandleHeadless handle2 = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options().collectMetrics() );
+		try
+		{
+			final ObjectName name2 = handle2.getMetrics().getObjectName();
+			assertNotEquals( taken, name2 );
+			assertTrue( server.isRegistered( name1 ) );
+			assertTrue( server.isRegistered( name2 ) );
+
+			// closing a handle whose MBean is already gone is fine
+			server.unregisterMBean( name1 );
+			handle1.close();
+			handle2.close();
+			assertFalse( server.isRegistered( name2 ) );
+			assertNull( handle2.getMetrics().getObjectName() );
+		}
+		finally
+		{
+			server.unregisterMBean( taken );
+			handle1.close();
+			handle2.close();
+		}
+	}
+}
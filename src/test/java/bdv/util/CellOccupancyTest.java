@@ -0,0 +1,230 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.CellAccessStats;
+import bdv.util.volatiles.CellOccupancy;
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileView;
+import bdv.util.volatiles.VolatileViews;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.view.Views;
+
+public class CellOccupancyTest
+{
+	private static final CellGrid GRID = new CellGrid( new long[] { 64, 64, 64 }, new int[] { 16, 16, 16 } );
+
+	@Test
+	public void testSetAndInvalidate()
+	{
+		final CellOccupancy occupancy = new CellOccupancy( GRID );
+		assertFalse( occupancy.isKnown( 3 ) );
+		assertFalse( occupancy.isEmpty( 3 ) );
+		assertTrue( Double.isNaN( occupancy.getMin( 3 ) ) );
+		assertTrue( Double.isNaN( occupancy.getMax( 3 ) ) );
+
+		occupancy.setEmpty( 3 );
+		occupancy.set( 4, 1, 7 );
+		assertTrue( occupancy.isEmpty( 3 ) );
+		assertFalse( occupancy.isEmpty( 4 ) );
+		assertTrue( occupancy.isKnown( 4 ) );
+		assertEquals( 1, occupancy.getMin( 4 ), 0 );
+		assertEquals( 7, occupancy.getMax( 4 ), 0 );
+
+		// a cell that was written to is no longer empty
+		occupancy.set( 3, 0, 2 );
+		assertFalse( occupancy.isEmpty( 3 ) );
+		assertEquals( 2, occupancy.getMax( 3 ), 0 );
+
+		occupancy.setEmpty( 3 );
+		occupancy.invalidate( 3 );
+		occupancy.invalidate( 4 );
+		assertFalse( occupancy.isEmpty( 3 ) );
+		assertFalse( occupancy.isKnown( 3 ) );
+		assertFalse( occupancy.isKnown( 4 ) );
+		assertTrue( Double.isNaN( occupancy.getMin( 4 ) ) );
+	}
+
+	@Test( expected = IndexOutOfBoundsException.class )
+	public void testSetOutsideOfGrid()
+	{
+		new CellOccupancy( GRID ).setEmpty( 64 );
+	}
+
+	@Test
+	public void testCompute()
+	{
+		final RandomAccessibleInterval< UnsignedByteType > img = ArrayImgs.unsignedBytes( 64, 64, 64 );
+		Views.interval( img, new long[] { 20, 0, 0 }, new long[] { 20, 0, 0 } ).forEach( t -> t.set( 5 ) );
+		final CellOccupancy occupancy = CellOccupancy.compute( img, GRID );
+		for ( long index = 0; index < 64; ++index )
+		{
+			assertTrue( occupancy.isKnown( index ) );
+			assertEquals( index != 1, occupancy.isEmpty( index ) );
+		}
+		assertEquals( 0, occupancy.getMin( 1 ), 0 );
+		assertEquals( 5, occupancy.getMax( 1 ), 0 );
+	}
+
+	@Test
+	public void testRecording()
+	{
+		final CellOccupancy occupancy = new CellOccupancy( GRID );
+		final CachedCellImg< UnsignedByteType, ? > img = createImg( occupancy );
+		final RandomAccess< UnsignedByteType > access = img.randomAccess();
+		access.setPosition( new long[] { 1, 1, 1 } );
+		assertEquals( 1, access.get().get() );
+		access.setPosition( new long[] { 17, 1, 1 } );
+		assertEquals( 0, access.get().get() );
+
+		assertFalse( occupancy.isEmpty( 0 ) );
+		assertEquals( 1, occupancy.getMax( 0 ), 0 );
+		assertTrue( occupancy.isEmpty( 1 ) );
+		assertFalse( occupancy.isKnown( 2 ) );
+	}
+
+	@Test
+	public void testEmptyCellsAreNotFetched()
+	{
+		final CellOccupancy occupancy = new CellOccupancy( GRID );
+		final CachedCellImg< UnsignedByteType, ? > img = createImg( null );
+		occupancy.setEmpty( 1 );
+		final SharedQueue queue = new SharedQueue( 1 );
+		try
+		{
+			final RandomAccessibleInterval< VolatileUnsignedByteType > view = VolatileViews.wrapAsVolatile(
+					img, queue, new CacheHints( LoadingStrategy.BLOCKING, 0, false ), occupancy );
+			final CellAccessStats stats = ( ( VolatileView< ?, ? > ) view ).getVolatileViewData().getCellAccessStats();
+
+			final long[] inEmptyCell = new long[] { 17, 1, 1 };
+			assertEquals( 0, get( view, inEmptyCell ).get().get() );
+			assertEquals( 0, stats.getFetches() );
+
+			get( view, new long[] { 1, 1, 1 } );
+			assertEquals( 1, stats.getFetches() );
+
+			// after invalidation, the cell is fetched again
+			occupancy.invalidate( 1 );
+			final VolatileUnsignedByteType value = get( view, inEmptyCell );
+			assertTrue( value.isValid() );
+			assertEquals( 0, value.get().get() );
+			assertEquals( 2, stats.getFetches() );
+		}
+		finally
+		{
+			queue.shutdown();
+		}
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException
+	{
+		final CellOccupancy occupancy = new CellOccupancy( new CellGrid( new long[] { 1 << 20 }, new int[] { 1 } ) );
+		for ( long index = 0; index < 100; ++index )
+		{
+			occupancy.setEmpty( index );
+			occupancy.set( 100 + index, 1, 2 );
+		}
+
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicReference< String > failure = new AtomicReference<>();
+		final Thread[] readers = new Thread[ 4 ];
+		for ( int i = 0; i < readers.length; ++i )
+		{
+			readers[ i ] = new Thread( () -> {
+				while ( !stop.get() )
+					for ( long index = 0; index < 100; ++index )
+						if ( !occupancy.isEmpty( index ) || occupancy.isEmpty( 100 + index ) )
+							failure.compareAndSet( null, "wrong occupancy of cell " + index );
+			} );
+			readers[ i ].start();
+		}
+
+		// modify other cells, some of them in the same words of the bitset
+		for ( int round = 0; round < 20; ++round )
+		{
+			for ( long index = 200; index < 10200; ++index )
+				occupancy.setEmpty( index );
+			for ( long index = 200; index < 10200; ++index )
+				occupancy.invalidate( index );
+		}
+		stop.set( true );
+		for ( final Thread reader : readers )
+			reader.join();
+		assertNull( failure.get(), failure.get() );
+	}
+
+	/**
+	 * Create an image over {@link #GRID} with ones in cell 0 and zeros
+	 * elsewhere, recording cells in {@code occupancy} if it is not
+	 * {@code null}.
+	 */
+	private static CachedCellImg< UnsignedByteType, ? > createImg( final CellOccupancy occupancy )
+	{
+		final CellLoader< UnsignedByteType > loader = cell -> {
+			if ( cell.min( 0 ) == 0 && cell.min( 1 ) == 0 && cell.min( 2 ) == 0 )
+				cell.forEach( t -> t.set( 1 ) );
+		};
+		return new ReadOnlyCachedCellImgFactory().create(
+				GRID.getImgDimensions(),
+				new UnsignedByteType(),
+				occupancy == null ? loader : occupancy.recording( loader ),
+				ReadOnlyCachedCellImgOptions.options()
+						.cellDimensions( 16 )
+						.volatileAccesses( true ) );
+	}
+
+	private static VolatileUnsignedByteType get( final RandomAccessibleInterval< VolatileUnsignedByteType > view, final long[] position )
+	{
+		final RandomAccess< VolatileUnsignedByteType > access = view.randomAccess();
+		access.setPosition( position );
+		return access.get().copy();
+	}
+}
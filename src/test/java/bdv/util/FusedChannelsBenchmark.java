@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+import bdv.util.FusedChannels.FusedChannelsConverter;
+
+/**
+ * Compares rendering a slice of a 6-channel XYZC image as per-channel
+ * {@code hyperSlice} sources (as done by
+ * {@link AxisOrder#splitInputStackIntoSourceStacks}) against sampling all
+ * channels in one pass with {@link FusedChannels}.
+ * <p>
+ * Two layouts are benchmarked: planar (a {@code CellImg} with cells of size 1
+ * along C) and interleaved (an {@code ArrayImg} with C as the innermost axis).
+ * <p>
+ * Both paths apply the same display range and color to each channel, and
+ * blend additively, so they produce the same ARGB values.
+ */
+public class FusedChannelsBenchmark
+{
+	private static final int NUM_CHANNELS = 6;
+
+	private static final int SIZE = 256;
+
+	private static final int ITERATIONS = 20;
+
+	private static final double MIN = 0;
+
+	private static final double MAX = 65535;
+
+	private static final int COLOR = 0xffffffff;
+
+	public static void main( final String[] args )
+	{
+		final long[] dims = { SIZE, SIZE, 64, NUM_CHANNELS };
+
+		final Img< UnsignedShortType > planar = new CellImgFactory<>( new UnsignedShortType(), 64, 64, 64, 1 ).create( dims );
+		fillRandom( planar );
+
+		final RandomAccessibleInterval< UnsignedShortType > interleaved = Views.moveAxis(
+				ArrayImgs.unsignedShorts( NUM_CHANNELS, SIZE, SIZE, 64 ), 0, 3 );
+		fillRandom( interleaved );
+
+		benchmark( "planar", planar );
+		benchmark( "interleaved", interleaved );
+	}
+
+	private static void benchmark( final String layout, final RandomAccessibleInterval< UnsignedShortType > img )
+	{
+		final int[] screen = new int[ SIZE * SIZE ];
+
+		final List< RandomAccessibleInterval< UnsignedShortType > > channels = new ArrayList<>();
+		for ( int c = 0; c < NUM_CHANNELS; ++c )
+			channels.add( Views.hyperSlice( img, 3, c ) );
+
+		final FusedChannelsConverter< UnsignedShortType > converter = new FusedChannelsConverter<>( NUM_CHANNELS );
+		for ( int c = 0; c < NUM_CHANNELS; ++c )
+		{
+			converter.setDisplayRange( c, MIN, MAX );
+			converter.setColor( c, COLOR );
+		}
+		final RandomAccessibleInterval< ARGBType > fused = FusedChannels.fuse( img, 3, converter );
+
+		final int[] expected = new int[ SIZE * SIZE ];
+		renderSplit( channels, expected, 0 );
+		renderFused( fused, screen, 0 );
+		if ( !Arrays.equals( expected, screen ) )
+			throw new IllegalStateException( "split and fused rendering differ" );
+
+		// warm-up
+		for ( int i = 0; i < ITERATIONS; ++i )
+		{
+			renderSplit( channels, screen, i % 64 );
+			renderFused( fused, screen, i % 64 );
+		}
+
+		long t0 = System.nanoTime();
+		for ( int i = 0; i < ITERATIONS; ++i )
+			renderSplit( channels, screen, i % 64 );
+		final long splitNanos = ( System.nanoTime() - t0 ) / ITERATIONS;
+
+		t0 = System.nanoTime();
+		for ( int i = 0; i < ITERATIONS; ++i )
+			renderFused( fused, screen, i % 64 );
+		final long fusedNanos = ( System.nanoTime() - t0 ) / ITERATIONS;
+
+		System.out.println( String.format( "%-12s split: %8.3f ms/frame   fused: %8.3f ms/frame",
+				layout, splitNanos / 1e6, fusedNanos / 1e6 ) );
+	}
+
+	/**
+	 * Render each channel separately, scaling it from the display range to
+	 * {@code [0,1]} and multiplying with its color, and sum the channels.
+	 * (The same as {@link FusedChannelsConverter}, but channel by channel.)
+	 */
+	private static void renderSplit( final List< RandomAccessibleInterval< UnsignedShortType > > channels, final int[] screen, final int z )
+	{
+		final double scale = 1.0 / ( MAX - MIN );
+		final int red = ARGBType.red( COLOR );
+		final int green = ARGBType.green( COLOR );
+		final int blue = ARGBType.blue( COLOR );
+		final double[] accumulate = new double[ 3 * screen.length ];
+		for ( final RandomAccessibleInterval< UnsignedShortType > channel : channels )
+		{
+			final RandomAccess< UnsignedShortType > access = channel.randomAccess();
+			access.setPosition( z, 2 );
+			int o = 0;
+			for ( int y = 0; y < SIZE; ++y )
+			{
+				access.setPosition( y, 1 );
+				for ( int x = 0; x < SIZE; ++x )
+				{
+					access.setPosition( x, 0 );
+					final double v = ( access.get().getRealDouble() - MIN ) * scale;
+					final double w = v <= 0 ? 0 : v > 1 ? 1 : v;
+					accumulate[ o++ ] += w * red;
+					accumulate[ o++ ] += w * green;
+					accumulate[ o++ ] += w * blue;
+				}
+			}
+		}
+		for ( int i = 0; i < screen.length; ++i )
+			screen[ i ] = ARGBType.rgba(
+					clamp( accumulate[ 3 * i ] ),
+					clamp( accumulate[ 3 * i + 1 ] ),
+					clamp( accumulate[ 3 * i + 2 ] ),
+					255 );
+	}
+
+	private static int clamp( final double value )
+	{
+		return value > 255 ? 255 : ( int ) value;
+	}
+
+	private static void renderFused( final RandomAccessibleInterval< ARGBType > fused, final int[] screen, final int z )
+	{
+		final RandomAccess< ARGBType > access = fused.randomAccess();
+		access.setPosition( z, 2 );
+		int o = 0;
+		for ( int y = 0; y < SIZE; ++y )
+		{
+			access.setPosition( y, 1 );
+			for ( int x = 0; x < SIZE; ++x )
+			{
+				access.setPosition( x, 0 );
+				screen[ o++ ] = access.get().get();
+			}
+		}
+	}
+
+	private static void fillRandom( final RandomAccessibleInterval< UnsignedShortType > img )
+	{
+		final Random random = new Random( 1 );
+		Views.flatIterable( img ).forEach( t -> t.set( random.nextInt( 65536 ) ) );
+	}
+}
@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+/**
+ * Shows fused channels with {@link BdvHandleHeadless}, and checks that
+ * visibility changes of the virtual channel sources reach the fused
+ * converter. Run with {@code java.awt.headless=true}.
+ */
+public class FusedChannelsHeadlessTest
+{
+	@Test
+	public void testChannelVisibility()
+	{
+		final int size = OffscreenRendererHeadlessTest.SIZE;
+		final BdvHandleHeadless handle = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options() );
+		try
+		{
+			final Img< UnsignedByteType > img = ArrayImgs.unsignedBytes( size, size, 2 );
+			img.forEach( t -> t.set( 255 ) );
+			final List< BdvVirtualChannelSource > channels = BdvFunctions.showFusedChannels( img, "channels", Bdv.options().axisOrder( AxisOrder.XYC ).addTo( handle ) );
+			assertEquals( 2, channels.size() );
+			// saturate both channels
+			for ( final BdvVirtualChannelSource channel : channels )
+				channel.setDisplayRange( 0, 128 );
+			channels.get( 0 ).setColor( new ARGBType( 0xffff0000 ) );
+			channels.get( 1 ).setColor( new ARGBType( 0xff00ff00 ) );
+
+			final int[] argb = new int[ size * size ];
+			final int center = size / 2 * size + size / 2;
+			assertTrue( handle.render( argb ) );
+			assertEquals( 0xffffff00, argb[ center ] );
+
+			channels.get( 1 ).setActive( false );
+			assertTrue( handle.render( argb ) );
+			assertEquals( 0xffff0000, argb[ center ] );
+		}
+		finally
+		{
+			handle.close();
+		}
+	}
+}
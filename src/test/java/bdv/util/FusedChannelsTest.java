@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import bdv.util.FusedChannels.FusedChannelsConverter;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+public class FusedChannelsTest
+{
+	@Test
+	public void testFuse()
+	{
+		final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( 2, 2, 3 );
+		final RandomAccess< UnsignedShortType > access = img.randomAccess();
+		access.setPosition( new int[] { 1, 0, 0 } );
+		access.get().set( 64 );
+		access.setPosition( 1, 2 );
+		access.get().set( 128 );
+		access.setPosition( 2, 2 );
+		access.get().set( 1000 );
+
+		final FusedChannelsConverter< UnsignedShortType > converter = new FusedChannelsConverter<>( 3 );
+		converter.setColor( 0, 0xffff0000 );
+		converter.setDisplayRange( 0, 0, 256 );
+		converter.setColor( 1, 0xff00ff00 );
+		converter.setDisplayRange( 1, 0, 256 );
+		converter.setColor( 2, 0xff0000ff );
+		final RandomAccessibleInterval< ARGBType > fused = FusedChannels.fuse( img, 2, converter );
+		assertEquals( 2, fused.numDimensions() );
+
+		final RandomAccess< ARGBType > fusedAccess = fused.randomAccess();
+		fusedAccess.setPosition( new int[] { 1, 0 } );
+		assertEquals( ARGBType.rgba( 63, 127, 255, 255 ), fusedAccess.get().get() );
+		fusedAccess.setPosition( new int[] { 0, 0 } );
+		assertEquals( ARGBType.rgba( 0, 0, 0, 255 ), fusedAccess.get().get() );
+
+		converter.setVisible( 2, false );
+		fusedAccess.setPosition( new int[] { 1, 0 } );
+		assertEquals( ARGBType.rgba( 63, 127, 0, 255 ), fusedAccess.get().get() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testVolatileIsRejected()
+	{
+		final Img< VolatileUnsignedShortType > img = new ArrayImgFactory<>( new VolatileUnsignedShortType() ).create( 2, 2, 3 );
+		FusedChannels.show( img, "volatile", Bdv.options().axisOrder( AxisOrder.XYC ) );
+	}
+}
@@ -0,0 +1,214 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class LabelColorsTest
+{
+	@Test
+	public void testBackgroundIsTransparent()
+	{
+		final LabelColors colors = new LabelColors();
+		assertEquals( 0, colors.argb( 0 ) );
+		colors.setBackgroundLabel( -1 );
+		assertEquals( 0, colors.argb( -1 ) );
+		assertNotEquals( 0, colors.argb( 0 ) );
+	}
+
+	@Test
+	public void testHashColors()
+	{
+		final LabelColors colors = new LabelColors();
+		for ( long label = 1; label < 1000; ++label )
+		{
+			final int argb = colors.argb( label );
+			assertEquals( 0xff, argb >>> 24 );
+			assertEquals( argb, new LabelColors().argb( label ) );
+		}
+		assertNotEquals( colors.argb( 1 ), colors.argb( 2 ) );
+		assertNotEquals( colors.argb( Long.MAX_VALUE ), colors.argb( Long.MIN_VALUE ) );
+
+		final int before = colors.argb( 17 );
+		colors.setSeed( 42 );
+		assertNotEquals( before, colors.argb( 17 ) );
+	}
+
+	@Test
+	public void testAssignedColors()
+	{
+		final LabelColors colors = new LabelColors();
+		final long label = 1L << 40;
+		final int hashColor = colors.argb( label );
+		colors.setColor( label, 0xff123456 );
+		assertEquals( 0xff123456, colors.argb( label ) );
+		colors.setColors( new long[] { 1, 2 }, new int[] { 0xff000001, 0xff000002 } );
+		assertEquals( 0xff000001, colors.argb( 1 ) );
+		assertEquals( 0xff000002, colors.argb( 2 ) );
+		assertEquals( 0xff123456, colors.argb( label ) );
+		colors.setColor( label, 0 );
+		assertEquals( hashColor, colors.argb( label ) );
+	}
+
+	@Test
+	public void testHideAndHighlight()
+	{
+		final LabelColors colors = new LabelColors();
+		colors.hide( 3, 4 );
+		assertEquals( 0, colors.argb( 3 ) );
+		assertEquals( 0, colors.argb( 4 ) );
+		colors.unhide( 3 );
+		assertNotEquals( 0, colors.argb( 3 ) );
+		assertTrue( colors.isHidden( 4 ) );
+
+		final int color5 = colors.argb( 5 );
+		final int color6 = colors.argb( 6 );
+		colors.highlight( 5 );
+		assertEquals( color5, colors.argb( 5 ) );
+		assertTrue( ( colors.argb( 6 ) >>> 24 ) < 0xff );
+		colors.clearHighlight();
+		assertEquals( color6, colors.argb( 6 ) );
+	}
+
+	@Test
+	public void testChangeListener()
+	{
+		final LabelColors colors = new LabelColors();
+		final int[] count = { 0 };
+		colors.changeListeners().add( () -> ++count[ 0 ] );
+		colors.setColor( 1, 0xffffffff );
+		colors.hide( 2 );
+		colors.highlight( 3 );
+		assertEquals( 3, count[ 0 ] );
+	}
+
+	@Test
+	public void testModCount()
+	{
+		final LabelColors colors = new LabelColors();
+		final long before = colors.getModCount();
+		colors.setColor( 1, 0xffffffff );
+		colors.hide( 2 );
+		colors.setSeed( 3 );
+		assertEquals( before + 3, colors.getModCount() );
+	}
+
+	@Test
+	public void testManySingleEdits()
+	{
+		// single edits don't copy the whole map, so this is fast
+		final LabelColors colors = new LabelColors();
+		final int n = 200_000;
+		for ( int label = 1; label <= n; ++label )
+		{
+			colors.setColor( label, 0xff000000 | label );
+			colors.hide( -label );
+		}
+		for ( int label = 1; label <= n; ++label )
+		{
+			assertEquals( 0xff000000 | label, colors.argb( label ) );
+			assertEquals( 0, colors.argb( -label ) );
+		}
+	}
+
+	@Test
+	public void testRemoveColors()
+	{
+		// removing entries must not lose colliding entries of other labels
+		final LabelColors colors = new LabelColors();
+		final int n = 10_000;
+		for ( int label = 1; label <= n; ++label )
+			colors.setColor( label, 0xff000000 | label );
+		for ( int label = 1; label <= n; label += 2 )
+			colors.setColor( label, 0 );
+		for ( int label = 1; label <= n; ++label )
+		{
+			final int expected = label % 2 == 0 ? 0xff000000 | label : LabelColors.hashColor( label, 0 );
+			assertEquals( expected, colors.argb( label ) );
+		}
+		colors.hide( 2 );
+		colors.clearColors();
+		assertEquals( 0, colors.argb( 2 ) );
+		assertEquals( LabelColors.hashColor( 4, 0 ), colors.argb( 4 ) );
+	}
+
+	@Test
+	public void testConcurrentLookups() throws InterruptedException
+	{
+		final LabelColors colors = new LabelColors();
+		final int hashColor = colors.argb( 1 );
+		final AtomicReference< Throwable > failure = new AtomicReference<>();
+		final Thread[] readers = new Thread[ 4 ];
+		final AtomicBoolean stop = new AtomicBoolean();
+		for ( int i = 0; i < readers.length; ++i )
+		{
+			readers[ i ] = new Thread( () -> {
+				try
+				{
+					while ( !stop.get() )
+					{
+						// label 1 is never modified, other labels are
+						assertEquals( hashColor, colors.argb( 1 ) );
+						for ( long label = 2; label < 1000; ++label )
+							colors.argb( label );
+					}
+				}
+				catch ( final Throwable e )
+				{
+					failure.set( e );
+				}
+			} );
+			readers[ i ].start();
+		}
+
+		// edits cause rehashing of the map and set while reading
+		for ( int round = 0; round < 20; ++round )
+		{
+			for ( long label = 2; label < 10_000; ++label )
+			{
+				colors.setColor( label, 0xff00ff00 );
+				colors.hide( label + 10_000 );
+			}
+			colors.clearColors();
+			colors.clearHidden();
+		}
+		stop.set( true );
+		for ( final Thread reader : readers )
+			reader.join();
+		if ( failure.get() != null )
+			throw new AssertionError( failure.get() );
+	}
+}
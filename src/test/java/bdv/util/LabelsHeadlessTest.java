@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileViews;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+/**
+ * Shows a lazily loaded volatile label image with {@link BdvHandleHeadless}.
+ * Run with {@code java.awt.headless=true}.
+ */
+public class LabelsHeadlessTest
+{
+	@Test
+	public void testVolatileLabels()
+	{
+		final int size = OffscreenRendererHeadlessTest.SIZE;
+		final SharedQueue queue = new SharedQueue( 2 );
+		final BdvHandleHeadless handle = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options().collectMetrics(), true );
+		try
+		{
+			final RandomAccessibleInterval< UnsignedByteType > img = new SyntheticDataset<>( new UnsignedByteType(), 4 * size, 4 * size, 16 )
+					.cellDimensions( 16 )
+					.function( SyntheticDataset.checkerboard( 8, 1, 2 ) )
+					.storage( new SimulatedStorage().latency( 20, 5 ) )
+					.createLevel( 0 );
+			BdvFunctions.showLabels( VolatileViews.wrapAsVolatile( img, queue ), "labels", Bdv.options().addTo( handle ) );
+			final AffineTransform3D t = new AffineTransform3D();
+			t.translate( 0, 0, -8 );
+			handle.getViewerPanel().state().setViewerTransform( t );
+
+			final int[] argb = new int[ size * size ];
+			assertTrue( handle.render( argb ) );
+			OffscreenRendererHeadlessTest.assertComplete( argb );
+
+			// loading of the volatile label source is recorded
+			assertTrue( handle.getMetrics().getFetchedCells() > 0 );
+		}
+		finally
+		{
+			handle.close();
+			queue.shutdown();
+		}
+	}
+}
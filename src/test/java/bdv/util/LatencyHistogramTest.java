@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.CellAccessStats;
+import bdv.util.volatiles.LatencyHistogram;
+
+public class LatencyHistogramTest
+{
+	@Test
+	public void testBuckets()
+	{
+		assertEquals( 0, LatencyHistogram.bucket( 0 ) );
+		assertEquals( 0, LatencyHistogram.bucket( 999 ) );
+		assertEquals( 1, LatencyHistogram.bucket( 1000 ) );
+		assertEquals( 1, LatencyHistogram.bucket( 1999 ) );
+		assertEquals( 2, LatencyHistogram.bucket( 2000 ) );
+		assertEquals( 2, LatencyHistogram.bucket( 3999 ) );
+		assertEquals( 11, LatencyHistogram.bucket( 1_500_000 ) );
+		assertEquals( LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.bucket( Long.MAX_VALUE ) );
+		for ( int i = 1; i < LatencyHistogram.NUM_BUCKETS; ++i )
+		{
+			assertEquals( i, LatencyHistogram.bucket( LatencyHistogram.bucketMinNanos( i ) ) );
+			assertEquals( i - 1, LatencyHistogram.bucket( LatencyHistogram.bucketMinNanos( i ) - 1 ) );
+		}
+	}
+
+	@Test
+	public void testRecord()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record( 500 );
+		histogram.record( 5000 );
+		histogram.record( 6000 );
+		assertEquals( 3, histogram.getTotalCount() );
+		assertEquals( 1, histogram.getCount( 0 ) );
+		assertEquals( 2, histogram.getCount( 3 ) );
+		final long[] counts = new long[ LatencyHistogram.NUM_BUCKETS ];
+		histogram.getCounts( counts );
+		assertEquals( 2, counts[ 3 ] );
+		histogram.clear();
+		assertEquals( 0, histogram.getTotalCount() );
+	}
+
+	@Test
+	public void testCellAccessStats()
+	{
+		final CellAccessStats stats = new CellAccessStats();
+		assertEquals( Double.NaN, stats.getHitRate(), 0 );
+		stats.record( true );
+		stats.record( true );
+		stats.record( true );
+		stats.record( false );
+		assertEquals( 4, stats.getRequests() );
+		assertEquals( 1, stats.getInvalid() );
+		assertEquals( 0.75, stats.getHitRate(), 0 );
+	}
+}
@@ -0,0 +1,260 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedPointsStoreTest
+{
+	private Path dir;
+
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		dir = Files.createTempDirectory( "bdv-points" );
+		file = dir.resolve( "points.bdvp" );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		for ( final String name : new String[] { "points.bdvp", "points.bdvp.wal", "points.bdvp.tmp", "points.bdvp.wal.tmp", "old.wal" } )
+			Files.deleteIfExists( dir.resolve( name ) );
+		Files.deleteIfExists( dir );
+	}
+
+	/**
+	 * Points with x coordinate {@code i}, so that they can be identified
+	 * after being sorted into blocks.
+	 */
+	private static PointsData createPoints( final int size )
+	{
+		final Random random = new Random( 1 );
+		final PointsData points = new PointsData();
+		for ( int i = 0; i < size; ++i )
+		{
+			points.add( i, random.nextDouble() * 100, random.nextDouble() * 100 );
+			points.setColor( i, 0xff000000 | i );
+			points.setTimepoint( i, i % 3 );
+		}
+		return points;
+	}
+
+	/**
+	 * Check that every block contains the records inside its bounds, and that
+	 * point {@code i} has color {@code 0xff000000 | i}.
+	 */
+	private static void checkStore( final MappedPointsStore store, final int size )
+	{
+		assertEquals( size, store.size() );
+		final boolean[] found = new boolean[ size ];
+		final float[] xyz = new float[ 3 ];
+		long numRecords = 0;
+		for ( int b = 0; b < store.numBlocks(); ++b )
+		{
+			final double[] min = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+			final double[] max = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+			store.blockBounds( b, min, max );
+			final long first = store.blockFirst( b );
+			for ( long i = first; i < first + store.blockCount( b ); ++i )
+			{
+				store.getPosition( i, xyz );
+				for ( int d = 0; d < 3; ++d )
+				{
+					assertEquals( true, xyz[ d ] >= min[ d ] && xyz[ d ] <= max[ d ] );
+				}
+				final int p = ( int ) xyz[ 0 ];
+				assertEquals( 0xff000000 | p, store.getColor( i ) );
+				assertEquals( p % 3, store.getTimepoint( i ) );
+				found[ p ] = true;
+				++numRecords;
+			}
+		}
+		for ( long i = numRecords; i < size; ++i )
+		{
+			store.getPosition( i, xyz );
+			found[ ( int ) xyz[ 0 ] ] = true;
+		}
+		for ( int i = 0; i < size; ++i )
+			assertEquals( true, found[ i ] );
+	}
+
+	@Test
+	public void testCreateAndOpen() throws IOException
+	{
+		final int size = 20000;
+		try ( final MappedPointsStore store = MappedPointsStore.create( file, createPoints( size ) ) )
+		{
+			assertEquals( 3, store.numTimepoints() );
+			checkStore( store, size );
+		}
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			checkStore( store, size );
+		}
+	}
+
+	@Test
+	public void testWriteAheadAndCompact() throws IOException
+	{
+		final int size = 5000;
+		final float[] xyz = new float[ 3 ];
+		try ( final MappedPointsStore store = MappedPointsStore.create( file, createPoints( size ) ) )
+		{
+			store.add( size, 50, 50, 0xff000000 | size, size % 3 );
+			store.set( 0, 3.5f, 4, 5, 0xff123456, 7 );
+			store.sync();
+			store.getPosition( 0, xyz );
+			assertEquals( 3.5f, xyz[ 0 ], 0 );
+			assertEquals( 0xff123456, store.getColor( 0 ) );
+			assertEquals( 8, store.numTimepoints() );
+		}
+
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			assertEquals( size + 1, store.size() );
+			store.getPosition( 0, xyz );
+			assertEquals( 3.5f, xyz[ 0 ], 0 );
+			assertEquals( 7, store.getTimepoint( 0 ) );
+			store.getPosition( size, xyz );
+			assertEquals( size, xyz[ 0 ], 0 );
+
+			store.compact();
+			assertEquals( size + 1, store.size() );
+			assertEquals( 0, store.appended().size() );
+			assertEquals( 8, store.numTimepoints() );
+		}
+		assertEquals( MappedPointsStore.WAL_HEADER_SIZE, Files.size( file.resolveSibling( "points.bdvp.wal" ) ) );
+	}
+
+	/**
+	 * Simulate a crash during {@link MappedPointsStore#compact()} after the
+	 * main file was replaced, but before the write-ahead segment was: the
+	 * old segment must not be applied to the compacted file.
+	 */
+	@Test
+	public void testCrashAfterMainFileReplaced() throws IOException
+	{
+		final int size = 5000;
+		final Path wal = file.resolveSibling( "points.bdvp.wal" );
+		final Path oldWal = dir.resolve( "old.wal" );
+		final float[] xyz = new float[ 3 ];
+		try ( final MappedPointsStore store = MappedPointsStore.create( file, createPoints( size ) ) )
+		{
+			store.add( size, 50, 50, 0xff000000 | size, size % 3 );
+			store.set( 1, 1, 60, 70, 0xff000001, 1 );
+			store.sync();
+		}
+		Files.copy( wal, oldWal );
+
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			store.compact();
+		}
+		Files.copy( oldWal, wal, StandardCopyOption.REPLACE_EXISTING );
+
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			checkStore( store, size + 1 );
+			for ( long i = 0; i < size + 1; ++i )
+			{
+				store.getPosition( i, xyz );
+				if ( xyz[ 0 ] == 1 )
+					assertEquals( 60, xyz[ 1 ], 0 );
+			}
+
+			// the stale segment was replaced, new edits are kept
+			store.add( size + 1, 50, 50, 0xff000000 | ( size + 1 ), ( size + 1 ) % 3 );
+		}
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			checkStore( store, size + 2 );
+		}
+	}
+
+	/**
+	 * Simulate a crash during {@link MappedPointsStore#compact()} before the
+	 * main file was replaced: the write-ahead segment is still applied.
+	 */
+	@Test
+	public void testCrashBeforeMainFileReplaced() throws IOException
+	{
+		final int size = 5000;
+		try ( final MappedPointsStore store = MappedPointsStore.create( file, createPoints( size ) ) )
+		{
+			store.add( size, 50, 50, 0xff000000 | size, size % 3 );
+			store.sync();
+		}
+		// left behind by an interrupted compaction
+		Files.write( file.resolveSibling( "points.bdvp.tmp" ), new byte[] { 1, 2, 3 } );
+
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			checkStore( store, size + 1 );
+			store.compact();
+			checkStore( store, size + 1 );
+		}
+	}
+
+	@Test
+	public void testIncompleteWalEntry() throws IOException
+	{
+		final int size = 100;
+		final Path wal = file.resolveSibling( "points.bdvp.wal" );
+		try ( final MappedPointsStore store = MappedPointsStore.create( file, createPoints( size ) ) )
+		{
+			store.add( size, 50, 50, 0xff000000 | size, size % 3 );
+		}
+		// an interrupted write of the next entry
+		Files.write( wal, new byte[] { 1, 0, 0 }, StandardOpenOption.APPEND );
+
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			checkStore( store, size + 1 );
+			store.add( size + 1, 50, 50, 0xff000000 | ( size + 1 ), ( size + 1 ) % 3 );
+		}
+		try ( final MappedPointsStore store = MappedPointsStore.open( file ) )
+		{
+			checkStore( store, size + 2 );
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+public class MovieExportExample
+{
+	public static void main( final String[] args ) throws IOException, InterruptedException
+	{
+		final Random random = new Random();
+		final ArrayImg< ARGBType, IntArray > img = ArrayImgs.argbs( 100, 100, 100 );
+		img.forEach( t -> t.set( random.nextInt() & 0xFF00FF00 ) );
+
+		final int width = 640;
+		final int height = 480;
+		final BdvHandleHeadless handle = new BdvHandleHeadless( Bdv.options().preferredSize( width, height ) );
+		BdvFunctions.show( img, "greens", Bdv.options().addTo( handle ) );
+
+		final AffineTransform3D start = handle.getViewerPanel().state().getViewerTransform();
+		final AffineTransform3D end = start.copy();
+		end.rotate( 1, Math.PI / 2 );
+		final List< AffineTransform3D > path = MovieExporter.cameraPath( Arrays.asList( start, end ), 100, width, height );
+
+		final File dir = Files.createTempDirectory( "bdv-movie" ).toFile();
+		final MovieExporter exporter = new MovieExporter( handle, width, height );
+		final MovieExporter.Metrics metrics = exporter.export( path, MovieExporter.pngWriter( dir, "frame-%05d.png" ) );
+		System.out.println( metrics + " to " + dir );
+		handle.close();
+	}
+}
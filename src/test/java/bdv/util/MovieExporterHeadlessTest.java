@@ -0,0 +1,95 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static bdv.util.OffscreenRendererHeadlessTest.SIZE;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.SharedQueue;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Exports frames of a volatile view whose cells load slowly, and checks that
+ * no frame has missing data. Run with {@code java.awt.headless=true}.
+ */
+public class MovieExporterHeadlessTest
+{
+	@Test
+	public void testFramesAreComplete() throws IOException, InterruptedException
+	{
+		final SharedQueue queue = new SharedQueue( 2 );
+		final BdvHandleHeadless handle = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options() );
+		try
+		{
+			OffscreenRendererHeadlessTest.showSlowVolatileImage( handle, queue );
+
+			// pan across the image, such that every frame needs new cells
+			final List< AffineTransform3D > transforms = new ArrayList<>();
+			for ( int i = 0; i < 4; ++i )
+			{
+				final AffineTransform3D t = new AffineTransform3D();
+				t.translate( -32 * i, -32 * i, -8 );
+				transforms.add( t );
+			}
+
+			final List< int[] > frames = new ArrayList<>();
+			final MovieExporter exporter = new MovieExporter( handle, SIZE, SIZE );
+			exporter.setNumThreads( 2 );
+			final MovieExporter.Metrics metrics = exporter.export( transforms, new MovieExporter.FrameWriter()
+			{
+				@Override
+				public void write( final int frame, final BufferedImage image )
+				{
+					frames.add( image.getRGB( 0, 0, SIZE, SIZE, null, 0, SIZE ) );
+				}
+
+				@Override
+				public void close()
+				{}
+			} );
+
+			assertEquals( transforms.size(), frames.size() );
+			assertEquals( 0, metrics.getIncompleteFrames() );
+			for ( final int[] argb : frames )
+				OffscreenRendererHeadlessTest.assertComplete( argb );
+		}
+		finally
+		{
+			handle.close();
+			queue.shutdown();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class NavigationPathTest
+{
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSaveLoad() throws IOException
+	{
+		final NavigationPath path = new NavigationPath();
+		final AffineTransform3D t = new AffineTransform3D();
+		for ( int i = 0; i < 100; ++i )
+		{
+			t.rotate( 1, 0.01 );
+			t.translate( 1000.25, -3, 0.5 );
+			path.add( i * 16_000_000L + 123_000, t, i / 10 );
+		}
+
+		final File file = folder.newFile( "path.bdvp" );
+		path.save( file );
+		final NavigationPath loaded = NavigationPath.load( file );
+
+		assertEquals( path.size(), loaded.size() );
+		final AffineTransform3D expected = new AffineTransform3D();
+		final AffineTransform3D actual = new AffineTransform3D();
+		for ( int i = 0; i < path.size(); ++i )
+		{
+			assertEquals( path.getTimeNanos( i ), loaded.getTimeNanos( i ) );
+			assertEquals( path.getTimepoint( i ), loaded.getTimepoint( i ) );
+			path.getTransform( i, expected );
+			loaded.getTransform( i, actual );
+			for ( int r = 0; r < 3; ++r )
+			{
+				for ( int c = 0; c < 3; ++c )
+					assertEquals( expected.get( r, c ), actual.get( r, c ), 1e-6 );
+				assertEquals( expected.get( r, 3 ), actual.get( r, 3 ), 0 );
+			}
+		}
+		assertEquals( path.getDurationNanos(), loaded.getDurationNanos() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testDecreasingTime()
+	{
+		final NavigationPath path = new NavigationPath();
+		path.add( 10, new AffineTransform3D(), 0 );
+		path.add( 5, new AffineTransform3D(), 0 );
+	}
+
+	@Test
+	public void testReportPercentiles()
+	{
+		final long[] frames = new long[ 100 ];
+		for ( int i = 0; i < frames.length; ++i )
+			frames[ i ] = ( 100 - i ) * 1_000_000L;
+		final ReplayReport report = new ReplayReport( frames, new double[] { 10, Double.NaN, 30 }, 5, 5000, 1_000_000_000L );
+		assertEquals( 100, report.getNumFrames() );
+		assertEquals( 50, report.getFrameTimePercentile( 50 ), 0 );
+		assertEquals( 90, report.getFrameTimePercentile( 90 ), 0 );
+		assertEquals( 100, report.getFrameTimePercentile( 100 ), 0 );
+		assertEquals( 1, report.getFrameTimePercentile( 0.5 ), 0 );
+		assertEquals( 2, report.getNumViewsLoaded() );
+		assertEquals( 20, report.getMeanTimeToLoadedMillis(), 0 );
+		assertEquals( 1000, report.getDurationMillis(), 0 );
+	}
+}
@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.SharedQueue;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Replays a path over a volatile view whose cells take 50 ms to load, and
+ * checks that views are only reported as loaded once their data is there.
+ * Run with {@code java.awt.headless=true}.
+ */
+public class NavigationReplayHeadlessTest
+{
+	@Test
+	public void testTimeToLoaded() throws InterruptedException
+	{
+		final SharedQueue queue = new SharedQueue( 2 );
+		final BdvHandleHeadless handle = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options().collectMetrics(), false );
+		try
+		{
+			OffscreenRendererHeadlessTest.showSlowVolatileImage( handle, queue );
+
+			// each view shows cells that were not loaded before
+			final NavigationPath path = new NavigationPath();
+			final AffineTransform3D t = new AffineTransform3D();
+			for ( int i = 0; i < 3; ++i )
+			{
+				t.identity();
+				t.translate( -64 * i, -64 * i, -8 );
+				path.add( i * 1_000_000L, t, 0 );
+			}
+
+			final NavigationReplay replay = new NavigationReplay();
+			replay.setRealTime( false );
+			final ReplayReport report = replay.replay( path, handle );
+
+			assertEquals( 3, report.getNumViewsLoaded() );
+			for ( int i = 0; i < 3; ++i )
+				assertTrue( "view " + i + " loaded after " + report.getTimeToLoadedMillis( i ) + " ms",
+						report.getTimeToLoadedMillis( i ) >= 35 );
+			assertTrue( report.getFetchedCells() > 0 );
+		}
+		finally
+		{
+			handle.close();
+			queue.shutdown();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.GraphicsEnvironment;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileViews;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+
+/**
+ * Renders a lazily loaded volatile view, whose cells load slowly, with
+ * {@link BdvHandleHeadless}. Run with {@code java.awt.headless=true}.
+ */
+public class OffscreenRendererHeadlessTest
+{
+	static final int SIZE = 64;
+
+	private SharedQueue queue;
+
+	@Before
+	public void setUp()
+	{
+		queue = new SharedQueue( 2 );
+	}
+
+	@After
+	public void tearDown()
+	{
+		queue.shutdown();
+	}
+
+	@Test
+	public void testRunsHeadless()
+	{
+		assertTrue( "tests must run with -Djava.awt.headless=true", GraphicsEnvironment.isHeadless() );
+	}
+
+	@Test
+	public void testWaitUntilLoaded()
+	{
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options(), true );
+		try
+		{
+			showSlowVolatileImage( handle, queue );
+			final int[] argb = new int[ SIZE * SIZE ];
+			assertTrue( handle.render( argb ) );
+			assertComplete( argb );
+		}
+		finally
+		{
+			handle.close();
+		}
+	}
+
+	@Test
+	public void testDontWait()
+	{
+		final BdvHandleHeadless handle = new BdvHandleHeadless( options(), false );
+		try
+		{
+			showSlowVolatileImage( handle, queue );
+			assertFalse( handle.render( new int[ SIZE * SIZE ] ) );
+		}
+		finally
+		{
+			handle.close();
+		}
+	}
+
+	static BdvOptions options()
+	{
+		return Bdv.options().preferredSize( SIZE, SIZE ).numRenderingThreads( 2 );
+	}
+
+	/**
+	 * Show a volatile view of a checkerboard (with values 100 and 200) whose
+	 * cells take 50 ms to load, such that it covers the screen at the
+	 * identity viewer transform.
+	 */
+	static void showSlowVolatileImage( final BdvHandle handle, final SharedQueue queue )
+	{
+		final RandomAccessibleInterval< UnsignedByteType > img = new SyntheticDataset<>( new UnsignedByteType(), 4 * SIZE, 4 * SIZE, 16 )
+				.cellDimensions( 16 )
+				.function( SyntheticDataset.checkerboard( 8, 100, 200 ) )
+				.storage( new SimulatedStorage().latency( 50, 10 ) )
+				.createLevel( 0 );
+		final RandomAccessibleInterval< VolatileUnsignedByteType > volatileImg = VolatileViews.wrapAsVolatile( img, queue );
+		BdvFunctions.show( volatileImg, "slow", Bdv.options().addTo( handle ) ).setDisplayRange( 0, 255 );
+
+		final AffineTransform3D t = new AffineTransform3D();
+		t.translate( 0, 0, -8 );
+		handle.getViewerPanel().state().setViewerTransform( t );
+	}
+
+	/**
+	 * Check that no pixel of {@code argb} was left blank.
+	 */
+	static void assertComplete( final int[] argb )
+	{
+		for ( int i = 0; i < argb.length; ++i )
+			assertTrue( "blank pixel at " + i, ( argb[ i ] & 0x00ffffff ) != 0 );
+	}
+}
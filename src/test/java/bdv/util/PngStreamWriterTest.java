@@ -0,0 +1,69 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class PngStreamWriterTest
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final int width = 301;
+		final int height = 77;
+		final Random random = new Random( 1 );
+		final int[] argb = new int[ width * height ];
+		for ( int i = 0; i < argb.length; ++i )
+			argb[ i ] = random.nextInt();
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try ( final PngStreamWriter writer = new PngStreamWriter( bytes, width, height ) )
+		{
+			writer.writeRows( argb, 0, width, 30 );
+			writer.writeRows( argb, 30 * width, width, height - 30 );
+		}
+
+		final BufferedImage image = ImageIO.read( new ByteArrayInputStream( bytes.toByteArray() ) );
+		assertEquals( width, image.getWidth() );
+		assertEquals( height, image.getHeight() );
+		for ( int y = 0; y < height; ++y )
+			for ( int x = 0; x < width; ++x )
+				assertEquals( argb[ y * width + x ], image.getRGB( x, y ) );
+	}
+}
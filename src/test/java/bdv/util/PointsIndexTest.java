@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PointsIndexTest
+{
+	@Test
+	public void testBoxQuery()
+	{
+		final Random random = new Random( 1 );
+		final int size = 10000;
+		final PointsData points = new PointsData();
+		for ( int i = 0; i < size; ++i )
+			points.add( random.nextDouble() * 100, random.nextDouble() * 100, random.nextDouble() * 100 );
+		final PointsIndex index = new PointsIndex( points );
+		assertEquals( size, index.size() );
+
+		final double[] min = { 10, 20, 30 };
+		final double[] max = { 40, 35, 90 };
+		final boolean[] visited = new boolean[ size ];
+		index.forEachRange( min, max, ( from, to ) -> {
+			for ( int i = from; i < to; ++i )
+			{
+				final int o = index.originalIndex( i );
+				assertFalse( visited[ o ] );
+				visited[ o ] = true;
+			}
+		} );
+
+		for ( int i = 0; i < size; ++i )
+		{
+			final float[] p = { points.getX( i ), points.getY( i ), points.getZ( i ) };
+			boolean inside = true;
+			for ( int d = 0; d < 3; ++d )
+				inside &= p[ d ] >= min[ d ] && p[ d ] <= max[ d ];
+			if ( inside )
+				assertTrue( visited[ i ] );
+		}
+	}
+
+	@Test
+	public void testFlatAndEmpty()
+	{
+		final PointsData points = new PointsData();
+		points.addAll( new float[] { 1, 3, 5 }, new float[] { 2, 4, 6 }, null );
+		final PointsIndex index = new PointsIndex( points );
+		final int[] count = { 0 };
+		index.forEachRange( new double[] { 0, 0, -1 }, new double[] { 10, 10, 1 }, ( from, to ) -> count[ 0 ] += to - from );
+		assertEquals( 3, count[ 0 ] );
+
+		final PointsIndex empty = new PointsIndex( new PointsData() );
+		empty.forEachRange( new double[] { 0, 0, 0 }, new double[] { 1, 1, 1 }, ( from, to ) -> count[ 0 ] += to - from );
+		assertEquals( 3, count[ 0 ] );
+	}
+
+	@Test
+	public void testOutdated()
+	{
+		final PointsData points = new PointsData();
+		points.add( 1, 2, 3 );
+		final PointsTimeIndex index = new PointsTimeIndex( points );
+		assertFalse( index.isOutdated() );
+		points.set( 0, 4, 5, 6 );
+		assertTrue( index.isOutdated() );
+	}
+
+	@Test
+	public void testTimepoints()
+	{
+		final PointsData points = new PointsData();
+		for ( int t = 0; t < 5; ++t )
+		{
+			for ( int track = 0; track < 3; ++track )
+			{
+				final int i = points.add( track, t, 0 );
+				points.setTimepoint( i, 4 - t );
+				if ( track != 2 || t != 2 )
+					points.setTrackId( i, track );
+			}
+		}
+		assertEquals( 5, points.numTimepoints() );
+
+		final PointsTimeIndex index = new PointsTimeIndex( points );
+		assertTrue( index.hasTracks() );
+		assertNull( index.get( 5 ) );
+		for ( int t = 0; t < 5; ++t )
+		{
+			final PointsIndex slice = index.get( t );
+			assertEquals( 3, slice.size() );
+			for ( int i = 0; i < slice.size(); ++i )
+			{
+				final int p = slice.originalIndex( i );
+				assertEquals( t, points.getTimepoint( p ) );
+				final int q = index.previous( p );
+				if ( t == 0 || points.getTrackId( p ) < 0 )
+					assertEquals( -1, q );
+				else
+				{
+					assertEquals( points.getTrackId( p ), points.getTrackId( q ) );
+					// track 2 skips timepoint 2
+					assertEquals( t == 3 && points.getTrackId( p ) == 2 ? 1 : t - 1, points.getTimepoint( q ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDensity()
+	{
+		final Random random = new Random( 1 );
+		final int size = 50000;
+		final PointsData points = new PointsData();
+		for ( int i = 0; i < size; ++i )
+			points.add( random.nextDouble() * 100, random.nextDouble() * 50, random.nextDouble() * 10 );
+		final PointsDensity density = new PointsIndex( points ).density();
+
+		final double[] min = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		final double[] max = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+		for ( int level = 0; level < density.numLevels(); ++level )
+		{
+			final int[] count = { 0 };
+			density.forEachCell( level, min, max, ( x, y, z, c ) -> count[ 0 ] += c );
+			assertEquals( size, count[ 0 ] );
+		}
+
+		final int[] numCells = { 0 };
+		density.forEachCell( density.numLevels() - 1, min, max, ( x, y, z, c ) -> ++numCells[ 0 ] );
+		assertEquals( 1, numCells[ 0 ] );
+
+		assertEquals( 0, density.levelFor( 0 ) );
+		assertEquals( density.numLevels() - 1, density.levelFor( Double.POSITIVE_INFINITY ) );
+	}
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.viewer.SourceAndConverter;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+/**
+ * Benchmarks {@link PointsOverlay#draw(Graphics2D)} of 1M random points into
+ * an offscreen image, with and without slice distance culling.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( value = 1, jvmArgsAppend = "-Djava.awt.headless=true" )
+public class PointsOverlayBenchmark
+{
+	private static final int NUM_POINTS = 1_000_000;
+
+	private static final int WIDTH = 800;
+
+	private static final int HEIGHT = 600;
+
+	@Param( { "Infinity", "10" } )
+	public double maxSliceDistance;
+
+	private PointsOverlay overlay;
+
+	private BufferedImage image;
+
+	private Graphics2D graphics;
+
+	@Setup
+	public void setup()
+	{
+		final Random random = new Random( 1 );
+		final PointsData points = new PointsData( NUM_POINTS );
+		for ( int i = 0; i < NUM_POINTS; ++i )
+			points.add( random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 1000 );
+
+		overlay = new PointsOverlay();
+		overlay.setPoints( points );
+		overlay.setMaxSliceDistance( maxSliceDistance );
+
+		final PlaceHolderOverlayInfo info = new PlaceHolderOverlayInfo(
+				new SourceAndConverter<>( new PlaceHolderSource( "points" ), null ),
+				new PlaceHolderConverterSetup( 0, 0, 255, new ARGBType( 0xff00ff00 ) ) );
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerTransform.translate( -500, -500, -500 );
+		viewerTransform.scale( 0.5 );
+		viewerTransform.translate( 0.5 * WIDTH, 0.5 * HEIGHT, 0 );
+		info.transformChanged( viewerTransform );
+		overlay.setOverlayInfo( info );
+		overlay.setCanvasSize( WIDTH, HEIGHT );
+
+		image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		graphics = image.createGraphics();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage draw()
+	{
+		overlay.draw( graphics );
+		return image;
+	}
+}
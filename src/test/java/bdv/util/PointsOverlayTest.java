@@ -0,0 +1,187 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import bdv.viewer.SourceAndConverter;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealPoint;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+
+public class PointsOverlayTest
+{
+	private static final int WIDTH = 400;
+
+	private static final int HEIGHT = 300;
+
+	@Test
+	public void testMaxDepth()
+	{
+		final FinalRealInterval bounds = new FinalRealInterval( new double[] { 0, 0, 0 }, new double[] { 10, 20, 30 } );
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.translate( 0, 0, -10 );
+		assertEquals( 21, PointsOverlay.getMaxDepth( transform, bounds ), 1e-9 );
+
+		transform.scale( 2 );
+		assertEquals( 41, PointsOverlay.getMaxDepth( transform, bounds ), 1e-9 );
+	}
+
+	@Test
+	public void testCullingDrawsAllVisiblePoints()
+	{
+		final Random random = new Random( 1 );
+		final PointsData points = new PointsData();
+		for ( int i = 0; i < 20000; ++i )
+			points.add( random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 1000 );
+
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewerTransform.translate( -500, -500, -500 );
+		viewerTransform.rotate( 0, Math.PI / 6 );
+		viewerTransform.rotate( 1, Math.PI / 5 );
+		viewerTransform.scale( 0.7 );
+		viewerTransform.translate( 0.5 * WIDTH, 0.5 * HEIGHT, 0 );
+
+		final PointsOverlay overlay = createOverlay( points, viewerTransform );
+		final BufferedImage image = draw( overlay );
+
+		// every point projected onto the screen is drawn, check the center
+		// pixel of its oval
+		final double[] source = new double[ 3 ];
+		final double[] screen = new double[ 3 ];
+		int numVisible = 0;
+		for ( int i = 0; i < points.size(); ++i )
+		{
+			source[ 0 ] = points.getX( i );
+			source[ 1 ] = points.getY( i );
+			source[ 2 ] = points.getZ( i );
+			viewerTransform.apply( source, screen );
+			if ( screen[ 0 ] < 2 || screen[ 0 ] >= WIDTH || screen[ 1 ] < 2 || screen[ 1 ] >= HEIGHT )
+				continue;
+			final int x = ( int ) ( screen[ 0 ] - 0.5 );
+			final int y = ( int ) ( screen[ 1 ] - 0.5 );
+			++numVisible;
+			assertTrue( ( image.getRGB( x, y ) >>> 24 ) != 0 );
+		}
+		assertTrue( numVisible > 0 && numVisible < points.size() );
+	}
+
+	@Test
+	public void testDensityThresholdCountsVisiblePoints()
+	{
+		final Random random = new Random( 1 );
+		final PointsData points = new PointsData();
+		for ( int i = 0; i < 20000; ++i )
+			points.add( random.nextDouble() * 1000, random.nextDouble() * 1000, random.nextDouble() * 1000 );
+
+		// zoomed out, all points are visible and a heatmap is drawn
+		final AffineTransform3D zoomedOut = new AffineTransform3D();
+		zoomedOut.translate( -500, -500, -500 );
+		zoomedOut.scale( 0.25 );
+		zoomedOut.translate( 0.5 * WIDTH, 0.5 * HEIGHT, 0 );
+		assertDensity( true, points, zoomedOut );
+
+		// zoomed in, few points are visible and drawn individually, even
+		// though the slice distance is infinite
+		final AffineTransform3D zoomedIn = new AffineTransform3D();
+		zoomedIn.translate( -500, -500, -500 );
+		zoomedIn.scale( 20 );
+		zoomedIn.translate( 0.5 * WIDTH, 0.5 * HEIGHT, 0 );
+		assertDensity( false, points, zoomedIn );
+	}
+
+	@Test
+	public void testListIsDrawnLive()
+	{
+		final List< RealPoint > list = new ArrayList<>();
+		list.add( new RealPoint( 100.25, 100.25, 0 ) );
+		final PointsOverlay overlay = createOverlay( PointsData.of( list ), new AffineTransform3D() );
+		overlay.setPoints( list );
+		assertTrue( ( draw( overlay ).getRGB( 100, 100 ) >>> 24 ) > 0 );
+		assertEquals( 0, draw( overlay ).getRGB( 200, 200 ) >>> 24 );
+
+		// modifications of the list show up without setPoints()
+		list.add( new RealPoint( 200.25, 200.25, 0 ) );
+		list.get( 0 ).setPosition( 50.25, 0 );
+		final BufferedImage image = draw( overlay );
+		assertTrue( ( image.getRGB( 200, 200 ) >>> 24 ) > 0 );
+		assertTrue( ( image.getRGB( 50, 100 ) >>> 24 ) > 0 );
+		assertEquals( 0, image.getRGB( 100, 100 ) >>> 24 );
+	}
+
+	/**
+	 * Check whether drawing with a density threshold of 1000 draws a heatmap,
+	 * i.e., differs from drawing individual points.
+	 */
+	private static void assertDensity( final boolean expected, final PointsData points, final AffineTransform3D viewerTransform )
+	{
+		final PointsOverlay overlay = createOverlay( points, viewerTransform );
+		final BufferedImage individual = draw( overlay );
+		overlay.setDensityThreshold( 1000 );
+		final BufferedImage density = draw( overlay );
+
+		boolean equal = true;
+		for ( int y = 0; y < HEIGHT && equal; ++y )
+			for ( int x = 0; x < WIDTH && equal; ++x )
+				equal = individual.getRGB( x, y ) == density.getRGB( x, y );
+		assertEquals( expected, !equal );
+	}
+
+	static PointsOverlay createOverlay( final PointsData points, final AffineTransform3D viewerTransform )
+	{
+		final PointsOverlay overlay = new PointsOverlay();
+		overlay.setPoints( points );
+		final PlaceHolderOverlayInfo info = new PlaceHolderOverlayInfo(
+				new SourceAndConverter<>( new PlaceHolderSource( "points" ), null ),
+				new PlaceHolderConverterSetup( 0, 0, 255, new ARGBType( 0xff00ff00 ) ) );
+		info.transformChanged( viewerTransform );
+		overlay.setOverlayInfo( info );
+		overlay.setCanvasSize( WIDTH, HEIGHT );
+		return overlay;
+	}
+
+	static BufferedImage draw( final PointsOverlay overlay )
+	{
+		final BufferedImage image = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D g = image.createGraphics();
+		overlay.draw( g );
+		g.dispose();
+		return image;
+	}
+}
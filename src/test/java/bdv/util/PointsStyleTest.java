@@ -0,0 +1,73 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PointsStyleTest
+{
+	@Test
+	public void testLinear()
+	{
+		final PointsStyle style = PointsStyle.linear( 0, 1, PointsStyle.gradient( 0xff000000, 0xffffffff, 4 ) );
+		assertEquals( 4, style.numEntries() );
+		assertEquals( 0, style.entry( -1 ) );
+		assertEquals( 0, style.entry( 0.1f ) );
+		assertEquals( 1, style.entry( 0.3f ) );
+		assertEquals( 3, style.entry( 0.9f ) );
+		assertEquals( 3, style.entry( 1 ) );
+		assertEquals( 3, style.entry( 5 ) );
+		assertEquals( 0, style.entry( Float.NaN ) );
+		assertEquals( 0xff000000, style.getColor( 0 ) );
+		assertEquals( 0xff555555, style.getColor( 1 ) );
+		assertEquals( 0xffffffff, style.getColor( 3 ) );
+		assertEquals( 0, style.getSize( 0 ), 0 );
+	}
+
+	@Test
+	public void testCategorical()
+	{
+		final PointsStyle style = PointsStyle.categorical( new int[] { 0, 0xffff0000, 0xff00ff00 }, new float[] { 3, 5, 9 } );
+		assertEquals( 0, style.entry( 0 ) );
+		assertEquals( 1, style.entry( 1 ) );
+		assertEquals( 2, style.entry( 2 ) );
+		assertEquals( 2, style.entry( 7 ) );
+		assertEquals( 1, style.entry( 0.9f ) );
+		assertEquals( 0xffff0000, style.getColor( 1 ) );
+		assertEquals( 9, style.getMaxSize(), 0 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testMismatchedTables()
+	{
+		PointsStyle.categorical( new int[ 3 ], new float[ 2 ] );
+	}
+}
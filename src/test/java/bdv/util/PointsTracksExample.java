@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Random;
+
+public class PointsTracksExample
+{
+	public static void main( final String[] args )
+	{
+		System.setProperty( "apple.laf.useScreenMenuBar", "true" );
+
+		final Random random = new Random( 1 );
+		final int numTracks = 100000;
+		final int numTimepoints = 50;
+
+		final PointsData points = new PointsData( numTracks * numTimepoints );
+		for ( int track = 0; track < numTracks; ++track )
+		{
+			double x = random.nextDouble() * 1000;
+			double y = random.nextDouble() * 1000;
+			double z = random.nextDouble() * 1000;
+			for ( int t = 0; t < numTimepoints; ++t )
+			{
+				final int i = points.add( x, y, z );
+				points.setTimepoint( i, t );
+				points.setTrackId( i, track );
+				x += random.nextGaussian() * 2;
+				y += random.nextGaussian() * 2;
+				z += random.nextGaussian() * 2;
+			}
+		}
+
+		final BdvPointsSource source = BdvFunctions.showPoints( points, "tracks" );
+		source.setMaxSliceDistance( 20 );
+		source.setTrackTailLength( 10 );
+	}
+}
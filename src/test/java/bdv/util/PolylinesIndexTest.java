@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PolylinesIndexTest
+{
+	@Test
+	public void testNumSegments()
+	{
+		final Polylines lines = new Polylines();
+		lines.add( new float[] { 0, 1, 2 }, new float[] { 0, 0, 1 }, null, false );
+		lines.add( new float[] { 0, 1, 2 }, new float[] { 0, 0, 1 }, null, true );
+		lines.add( new float[] { 0 }, new float[] { 0 }, null, true );
+		assertEquals( 2, lines.numSegments( 0 ) );
+		assertEquals( 3, lines.numSegments( 1 ) );
+		assertEquals( 0, lines.numSegments( 2 ) );
+		assertEquals( 5, new PolylinesIndex( lines ).numSegments() );
+	}
+
+	@Test
+	public void testSlabQuery()
+	{
+		final Random random = new Random( 1 );
+		final Polylines lines = new Polylines();
+		for ( int i = 0; i < 1000; ++i )
+		{
+			final int n = 2 + random.nextInt( 20 );
+			final float[] x = new float[ n ];
+			final float[] y = new float[ n ];
+			final float[] z = new float[ n ];
+			x[ 0 ] = random.nextFloat() * 100;
+			y[ 0 ] = random.nextFloat() * 100;
+			z[ 0 ] = random.nextFloat() * 100;
+			for ( int j = 1; j < n; ++j )
+			{
+				x[ j ] = x[ j - 1 ] + ( float ) random.nextGaussian();
+				y[ j ] = y[ j - 1 ] + ( float ) random.nextGaussian();
+				z[ j ] = z[ j - 1 ] + ( float ) random.nextGaussian();
+			}
+			lines.add( x, y, z, random.nextBoolean() );
+		}
+		final PolylinesIndex index = new PolylinesIndex( lines );
+
+		// slab 48 <= 0.6 x + 0.8 z <= 52
+		final double[] plane = { 0.6, 0, 0.8, -50 };
+		final double distance = 2;
+		final boolean[] visited = new boolean[ lines.numVertices() ];
+		index.forEachInSlab( plane, distance, ( a, b, polyline ) -> visited[ a ] = true );
+
+		for ( int i = 0; i < lines.size(); ++i )
+		{
+			final int start = lines.vertexStart( i );
+			final int nv = lines.vertexEnd( i ) - start;
+			for ( int j = 0; j < lines.numSegments( i ); ++j )
+			{
+				final int a = start + j;
+				final int b = start + ( j + 1 ) % nv;
+				final double za = plane[ 0 ] * lines.getX( a ) + plane[ 2 ] * lines.getZ( a ) + plane[ 3 ];
+				final double zb = plane[ 0 ] * lines.getX( b ) + plane[ 2 ] * lines.getZ( b ) + plane[ 3 ];
+				final boolean intersects = Math.min( za, zb ) <= distance && Math.max( za, zb ) >= -distance;
+				if ( intersects )
+					assertTrue( visited[ a ] );
+			}
+		}
+	}
+}
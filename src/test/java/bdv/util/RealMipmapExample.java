@@ -0,0 +1,60 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.position.FunctionRealRandomAccessible;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Shows a high-frequency function with synthesized mipmap levels. Zoom out to
+ * see the prefiltered coarser levels being used instead of aliased dense
+ * sampling.
+ */
+public class RealMipmapExample
+{
+	public static void main( final String[] args )
+	{
+		System.setProperty( "apple.laf.useScreenMenuBar", "true" );
+
+		final RealRandomAccessible< FloatType > img = new FunctionRealRandomAccessible<>( 3,
+				( pos, t ) -> {
+					final double x = pos.getDoublePosition( 0 );
+					final double y = pos.getDoublePosition( 1 );
+					final double z = pos.getDoublePosition( 2 );
+					t.setReal( 128 + 127 * Math.sin( 0.002 * ( x * x + y * y + z * z ) ) );
+				},
+				FloatType::new );
+
+		final FinalInterval interval = new FinalInterval( 2000, 2000, 2000 );
+		BdvFunctions.show( img, interval, "sin(r^2)", Bdv.options().numRealMipmapLevels( 5 ) )
+				.setDisplayRange( 0, 255 );
+	}
+}
@@ -0,0 +1,154 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.SharedQueue;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.position.FunctionRealRandomAccessible;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.type.volatiles.VolatileFloatType;
+
+public class RealRandomAccessibleIntervalMipmapSourceTest
+{
+	/**
+	 * Pixels are {@code 1} where {@code x} is a multiple of 4, and {@code 0}
+	 * elsewhere.
+	 */
+	private static final RealRandomAccessible< FloatType > STRIPES = new FunctionRealRandomAccessible<>( 3,
+			( pos, t ) -> t.set( Math.floorMod( Math.round( pos.getDoublePosition( 0 ) ), 4 ) == 0 ? 1 : 0 ),
+			FloatType::new );
+
+	private static final RealRandomAccessible< FloatType > NOISE = new FunctionRealRandomAccessible<>( 3,
+			( pos, t ) -> t.set( noise(
+					Math.round( pos.getDoublePosition( 0 ) ),
+					Math.round( pos.getDoublePosition( 1 ) ),
+					Math.round( pos.getDoublePosition( 2 ) ) ) ),
+			FloatType::new );
+
+	@Test
+	public void testCoarseLevelsDoNotAlias()
+	{
+		final RealRandomAccessibleIntervalMipmapSource< FloatType > source = new RealRandomAccessibleIntervalMipmapSource<>(
+				STRIPES, new FinalInterval( 256, 256, 256 ), new FloatType(), 5, "stripes" );
+
+		// level 1 averages pairs of pixels
+		final RandomAccess< FloatType > level1 = source.getSource( 0, 1 ).randomAccess();
+		level1.setPosition( new long[] { 0, 3, 5 } );
+		assertEquals( 0.5, level1.get().get(), 1e-6 );
+		level1.setPosition( new long[] { 1, 3, 5 } );
+		assertEquals( 0, level1.get().get(), 1e-6 );
+
+		// from level 2 on, every voxel covers a full period
+		for ( int level = 2; level < 5; ++level )
+		{
+			final RandomAccess< FloatType > access = source.getSource( 0, level ).randomAccess();
+			for ( int x = 0; x < 8; ++x )
+			{
+				access.setPosition( new long[] { x, 1, 2 } );
+				assertEquals( "level " + level + ", x = " + x, 0.25, access.get().get(), 1e-6 );
+			}
+		}
+	}
+
+	@Test
+	public void testLevelValuesAreFootprintAverages()
+	{
+		final RealRandomAccessibleIntervalMipmapSource< FloatType > source = new RealRandomAccessibleIntervalMipmapSource<>(
+				NOISE, new FinalInterval( new long[] { -20, 0, 0 }, new long[] { 107, 63, 0 } ), new FloatType(), 4, "noise" );
+
+		for ( int level = 1; level < 4; ++level )
+		{
+			final int f = 1 << level;
+			final RandomAccess< FloatType > access = source.getSource( 0, level ).randomAccess();
+			for ( final long[] pos : new long[][] { { -2, 0, 0 }, { 3, 2, 0 }, { 5, 3, 0 } } )
+			{
+				double sum = 0;
+				for ( int y = 0; y < f; ++y )
+					for ( int x = 0; x < f; ++x )
+						sum += noise( f * pos[ 0 ] + x, f * pos[ 1 ] + y, 0 );
+				access.setPosition( pos );
+				assertEquals( "level " + level, sum / ( f * f ), access.get().get(), 1e-5 );
+			}
+		}
+	}
+
+	@Test
+	public void testVolatileLevels() throws InterruptedException
+	{
+		final SharedQueue queue = new SharedQueue( 2, 5 );
+		try
+		{
+			final VolatileRealRandomAccessibleIntervalMipmapSource< FloatType, VolatileFloatType > source =
+					new RealRandomAccessibleIntervalMipmapSource<>( STRIPES, new FinalInterval( 256, 256, 256 ), new FloatType(), 5, "stripes" )
+							.asVolatile( queue );
+
+			final RandomAccess< VolatileFloatType > level0 = source.getSource( 0, 0 ).randomAccess();
+			level0.setPosition( new long[] { 4, 0, 0 } );
+			assertTrue( level0.get().isValid() );
+			assertEquals( 1, level0.get().get().get(), 0 );
+
+			// the first access enqueues the cell, later accesses see it when loaded
+			VolatileFloatType value = level3Value( source );
+			for ( int i = 0; i < 100 && !value.isValid(); ++i )
+			{
+				Thread.sleep( 50 );
+				value = level3Value( source );
+			}
+			assertTrue( value.isValid() );
+			assertEquals( 0.25, value.get().get(), 1e-6 );
+		}
+		finally
+		{
+			queue.shutdown();
+		}
+	}
+
+	private static VolatileFloatType level3Value( final VolatileRealRandomAccessibleIntervalMipmapSource< FloatType, VolatileFloatType > source )
+	{
+		final RandomAccess< VolatileFloatType > access = source.getSource( 0, 3 ).randomAccess();
+		access.setPosition( new long[] { 2, 2, 2 } );
+		return access.get().copy();
+	}
+
+	private static float noise( final long x, final long y, final long z )
+	{
+		long h = x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL + z * 0x165667B19E3779F9L;
+		h ^= h >>> 31;
+		h *= 0xBF58476D1CE4E5B9L;
+		h ^= h >>> 29;
+		return ( h & 0xffff ) / 65536f;
+	}
+}
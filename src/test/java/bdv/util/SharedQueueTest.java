@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.SharedQueue;
+
+public class SharedQueueTest
+{
+	@Test
+	public void testQueueDepths() throws InterruptedException
+	{
+		final SharedQueue queue = new SharedQueue( 1, 2 );
+		try
+		{
+			// keep the fetcher thread busy
+			final CountDownLatch started = new CountDownLatch( 1 );
+			final CountDownLatch release = new CountDownLatch( 1 );
+			queue.put( () -> {
+				started.countDown();
+				return release.await( 10, TimeUnit.SECONDS );
+			}, 0, false );
+			assertTrue( started.await( 10, TimeUnit.SECONDS ) );
+
+			final List< Integer > order = new ArrayList<>();
+			final CountDownLatch done = new CountDownLatch( 4 );
+			queue.put( record( order, 1, done ), 1, false );
+			queue.put( record( order, 2, done ), 1, false );
+			queue.put( record( order, 3, done ), 0, false );
+			assertDepths( queue, 1, 2, 0 );
+
+			queue.prepareNextFrame();
+			assertDepths( queue, 0, 0, 3 );
+
+			queue.put( record( order, 4, done ), 1, true );
+			assertDepths( queue, 0, 1, 3 );
+
+			release.countDown();
+			assertTrue( done.await( 10, TimeUnit.SECONDS ) );
+			synchronized ( order )
+			{
+				assertEquals( Arrays.asList( 4, 3, 1, 2 ), order );
+			}
+			assertDepths( queue, 0, 0, 0 );
+		}
+		finally
+		{
+			queue.shutdown();
+		}
+	}
+
+	@Test
+	public void testQueueDepthsUnderLoad() throws InterruptedException
+	{
+		final SharedQueue queue = new SharedQueue( 4, 3 );
+		try
+		{
+			final int numProducers = 4;
+			final int numRequests = 20000;
+			final AtomicInteger executed = new AtomicInteger();
+			final Thread[] producers = new Thread[ numProducers ];
+			for ( int t = 0; t < numProducers; ++t )
+			{
+				final int seed = t;
+				producers[ t ] = new Thread( () -> {
+					for ( int i = 0; i < numRequests; ++i )
+					{
+						queue.put( executed::incrementAndGet, ( i + seed ) % 3, i % 2 == 0 );
+						if ( i % 1000 == 0 )
+							queue.prepareNextFrame();
+					}
+				} );
+				producers[ t ].start();
+			}
+			for ( final Thread producer : producers )
+				producer.join();
+
+			// all requests that were not dropped from the prefetch deque are executed
+			for ( int i = 0; i < 200 && sum( depths( queue ) ) > 0; ++i )
+				Thread.sleep( 50 );
+			assertDepths( queue, 0, 0, 0, 0 );
+			assertTrue( executed.get() > 0 );
+		}
+		finally
+		{
+			queue.shutdown();
+		}
+	}
+
+	private static Callable< Object > record( final List< Integer > order, final int id, final CountDownLatch done )
+	{
+		return () -> {
+			synchronized ( order )
+			{
+				order.add( id );
+			}
+			done.countDown();
+			return null;
+		};
+	}
+
+	private static int[] depths( final SharedQueue queue )
+	{
+		final int[] depths = new int[ queue.numPriorities() + 1 ];
+		queue.getQueueDepths( depths );
+		return depths;
+	}
+
+	private static void assertDepths( final SharedQueue queue, final int... expected )
+	{
+		assertArrayEquals( expected, depths( queue ) );
+	}
+
+	private static int sum( final int[] values )
+	{
+		int sum = 0;
+		for ( final int v : values )
+			sum += v;
+		return sum;
+	}
+}
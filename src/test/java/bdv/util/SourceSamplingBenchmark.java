@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import mpicbg.spim.data.sequence.FinalVoxelDimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+/**
+ * Samples a rotated screen plane from {@link RandomAccessibleIntervalSource},
+ * {@link RandomAccessibleIntervalSource4D}, and
+ * {@link RandomAccessibleIntervalMipmapSource}, as done when rendering.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SourceSamplingBenchmark
+{
+	private static final int SIZE = 256;
+
+	private static final int SCREEN_SIZE = 256;
+
+	private Source< UnsignedShortType > source3D;
+
+	private Source< UnsignedShortType > source4D;
+
+	private Source< UnsignedShortType > mipmapSource;
+
+	private final AffineTransform3D viewerTransform = new AffineTransform3D();
+
+	@Setup
+	public void setup()
+	{
+		final Random random = new Random( 1 );
+		final RandomAccessibleInterval< UnsignedShortType > img = ArrayImgs.unsignedShorts( SIZE, SIZE, SIZE );
+		Views.flatIterable( img ).forEach( t -> t.set( random.nextInt( 65536 ) ) );
+		final RandomAccessibleInterval< UnsignedShortType > img4D = ArrayImgs.unsignedShorts( SIZE, SIZE, SIZE / 4, 4 );
+		Views.flatIterable( img4D ).forEach( t -> t.set( random.nextInt( 65536 ) ) );
+
+		source3D = new RandomAccessibleIntervalSource<>( img, new UnsignedShortType(), "3D" );
+		source4D = new RandomAccessibleIntervalSource4D<>( img4D, new UnsignedShortType(), "4D" );
+
+		@SuppressWarnings( "unchecked" )
+		final RandomAccessibleInterval< UnsignedShortType >[] mipmaps = new RandomAccessibleInterval[] {
+				img,
+				Views.subsample( img, 2 ),
+				Views.subsample( img, 4 ) };
+		final double[][] scales = { { 1, 1, 1 }, { 2, 2, 2 }, { 4, 4, 4 } };
+		mipmapSource = new RandomAccessibleIntervalMipmapSource<>( mipmaps, new UnsignedShortType(), scales,
+				new FinalVoxelDimensions( "px", 1, 1, 1 ), new AffineTransform3D(), "mipmap" );
+
+		viewerTransform.translate( -0.5 * SIZE, -0.5 * SIZE, -0.5 * SIZE );
+		viewerTransform.rotate( 0, 0.3 );
+		viewerTransform.rotate( 1, 0.4 );
+		viewerTransform.translate( 0.5 * SCREEN_SIZE, 0.5 * SCREEN_SIZE, 0 );
+	}
+
+	@Benchmark
+	public long sample3D()
+	{
+		return samplePlane( source3D, 0, 0 );
+	}
+
+	@Benchmark
+	public long sample4D()
+	{
+		return samplePlane( source4D, 2, 0 );
+	}
+
+	@Benchmark
+	public long sampleMipmapLevel0()
+	{
+		return samplePlane( mipmapSource, 0, 0 );
+	}
+
+	@Benchmark
+	public long sampleMipmapLevel2()
+	{
+		return samplePlane( mipmapSource, 0, 2 );
+	}
+
+	private long samplePlane( final Source< UnsignedShortType > source, final int t, final int level )
+	{
+		final AffineTransform3D sourceToScreen = new AffineTransform3D();
+		source.getSourceTransform( t, level, sourceToScreen );
+		sourceToScreen.preConcatenate( viewerTransform );
+		final RandomAccess< UnsignedShortType > access = RealViews.affine(
+				source.getInterpolatedSource( t, level, Interpolation.NLINEAR ),
+				sourceToScreen ).randomAccess();
+		access.setPosition( 0, 2 );
+		long sum = 0;
+		for ( int y = 0; y < SCREEN_SIZE; ++y )
+		{
+			access.setPosition( y, 1 );
+			for ( int x = 0; x < SCREEN_SIZE; ++x )
+			{
+				access.setPosition( x, 0 );
+				sum += access.get().get();
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,54 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import bdv.util.volatiles.SharedQueue;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+/**
+ * Shows a petavoxel dataset of procedurally generated spheres, loaded from a
+ * simulated slow storage by 8 fetcher threads.
+ */
+public class SyntheticDatasetExample
+{
+	public static void main( final String[] args )
+	{
+		System.setProperty( "apple.laf.useScreenMenuBar", "true" );
+
+		final SyntheticDataset< UnsignedShortType > dataset = new SyntheticDataset<>( new UnsignedShortType(), 100_000, 100_000, 100_000 )
+				.cellDimensions( 64 )
+				.numLevels( 12 )
+				.function( SyntheticDataset.spheres( 100, 1, 1000 ) )
+				.storage( new SimulatedStorage().latency( 50, 30 ).bandwidth( 200e6 ) );
+
+		final SharedQueue queue = new SharedQueue( 8, dataset.getNumLevels() );
+		final BdvStackSource< ? > source = BdvFunctions.show( dataset.createSource( "spheres" ).asVolatile( queue ), Bdv.options() );
+		source.setDisplayRange( 0, 1000 );
+	}
+}
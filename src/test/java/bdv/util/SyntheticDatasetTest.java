@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.function.ToDoubleFunction;
+
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class SyntheticDatasetTest
+{
+	@Test
+	public void testLevelDimensions()
+	{
+		final SyntheticDataset< UnsignedByteType > dataset = new SyntheticDataset<>( new UnsignedByteType(), 100_000, 100_000, 100_000 )
+				.numLevels( 12 );
+		assertArrayEquals( new long[] { 100_000, 100_000, 100_000 }, dataset.getDimensions( 0 ) );
+		assertArrayEquals( new long[] { 49, 49, 49 }, dataset.getDimensions( 11 ) );
+
+		final CachedCellImg< UnsignedByteType, ? > img = dataset.createLevel( 0 );
+		assertEquals( 1_000_000_000_000_000L, img.size() );
+
+		final SyntheticDataset< UnsignedByteType > flat = new SyntheticDataset<>( new UnsignedByteType(), 1000, 1000, 1 )
+				.numLevels( 3 );
+		assertArrayEquals( new long[] { 4, 4, 1 }, flat.getDownsamplingFactors( 2 ) );
+		assertArrayEquals( new long[] { 250, 250, 1 }, flat.getDimensions( 2 ) );
+	}
+
+	@Test
+	public void testDeterministic()
+	{
+		final ToDoubleFunction< long[] > noise = SyntheticDataset.noise( 42, 0, 1000 );
+		final SyntheticDataset< FloatType > dataset = new SyntheticDataset<>( new FloatType(), 1 << 20, 1 << 20, 1 << 20 )
+				.cellDimensions( 16 )
+				.numLevels( 3 )
+				.function( noise );
+
+		final RandomAccess< FloatType > a = dataset.createLevel( 2 ).randomAccess();
+		final RandomAccess< FloatType > b = dataset.createLevel( 2 ).randomAccess();
+		final long[] pos = new long[] { 12345, 67, 89012 };
+		a.setPosition( pos );
+		b.setPosition( pos );
+		assertEquals( a.get().get(), b.get().get(), 0 );
+
+		// level 2 samples full resolution at the center of the 4x4x4 footprint
+		final long[] full = new long[] { 4 * pos[ 0 ] + 2, 4 * pos[ 1 ] + 2, 4 * pos[ 2 ] + 2 };
+		assertEquals( ( float ) noise.applyAsDouble( full ), a.get().get(), 0 );
+	}
+
+	@Test
+	public void testFunctions()
+	{
+		final ToDoubleFunction< long[] > checkerboard = SyntheticDataset.checkerboard( 10, 1, 2 );
+		assertEquals( 1, checkerboard.applyAsDouble( new long[] { 0, 0, 0 } ), 0 );
+		assertEquals( 2, checkerboard.applyAsDouble( new long[] { 10, 0, 0 } ), 0 );
+		assertEquals( 1, checkerboard.applyAsDouble( new long[] { 10, 10, 0 } ), 0 );
+		assertEquals( 2, checkerboard.applyAsDouble( new long[] { -1, 0, 0 } ), 0 );
+
+		final ToDoubleFunction< long[] > noise = SyntheticDataset.noise( 1, 10, 20 );
+		final ToDoubleFunction< long[] > spheres = SyntheticDataset.spheres( 16, 1, 100 );
+		final long[] pos = new long[] { 0, 0, 8 };
+		int numInside = 0;
+		for ( pos[ 0 ] = 0; pos[ 0 ] < 64; ++pos[ 0 ] )
+			for ( pos[ 1 ] = 0; pos[ 1 ] < 64; ++pos[ 1 ] )
+			{
+				final double n = noise.applyAsDouble( pos );
+				assertTrue( n >= 10 && n < 20 );
+				final double s = spheres.applyAsDouble( pos );
+				assertTrue( s >= 0 && s <= 100 );
+				if ( s > 0 )
+					++numInside;
+			}
+		assertTrue( numInside > 0 );
+	}
+
+	@Test
+	public void testSimulatedStorage() throws InterruptedException
+	{
+		// 32^3 bytes per cell at 10 cells per second
+		final SimulatedStorage storage = new SimulatedStorage()
+				.latency( 20, 0 )
+				.bandwidth( 10 * 32 * 32 * 32 );
+		final CachedCellImg< UnsignedByteType, ? > img = new SyntheticDataset<>( new UnsignedByteType(), 64, 64, 64 )
+				.cellDimensions( 32 )
+				.storage( storage )
+				.createLevel( 0 );
+
+		final long start = System.nanoTime();
+		final Thread[] threads = new Thread[ 2 ];
+		for ( int i = 0; i < threads.length; ++i )
+		{
+			final long x = 32 * i;
+			threads[ i ] = new Thread( () -> {
+				final RandomAccess< UnsignedByteType > access = img.randomAccess();
+				access.setPosition( x, 0 );
+				access.get().get();
+			} );
+			threads[ i ].start();
+		}
+		for ( final Thread thread : threads )
+			thread.join();
+		final long elapsedMillis = ( System.nanoTime() - start ) / 1_000_000;
+
+		// transfers share the bandwidth, so two cells take at least 200 ms
+		assertTrue( "elapsed " + elapsedMillis + " ms", elapsedMillis >= 200 );
+		assertEquals( 2, storage.getLoadedCells() );
+		assertEquals( 2 * 32 * 32 * 32, storage.getLoadedBytes() );
+	}
+}
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import bdv.util.volatiles.SharedQueue;
+
+/**
+ * Renders a tiled snapshot of a volatile view whose cells load slowly, and
+ * checks the rendered content. Run with {@code java.awt.headless=true}.
+ */
+public class TiledSnapshotHeadlessTest
+{
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testTilesShowLoadedData() throws IOException, InterruptedException
+	{
+		final SharedQueue queue = new SharedQueue( 2 );
+		final BdvHandleHeadless handle = new BdvHandleHeadless( OffscreenRendererHeadlessTest.options() );
+		try
+		{
+			OffscreenRendererHeadlessTest.showSlowVolatileImage( handle, queue );
+
+			// twice the viewer size, in 3x3 tiles (the last row and column are partial)
+			final int size = 2 * OffscreenRendererHeadlessTest.SIZE;
+			final TiledSnapshot snapshot = new TiledSnapshot( handle );
+			snapshot.setTileSize( 48 );
+			snapshot.setNumThreads( 2 );
+			final File file = folder.newFile( "snapshot.png" );
+			assertEquals( 0, snapshot.render( size, size, file ) );
+
+			final BufferedImage image = ImageIO.read( file );
+			assertEquals( size, image.getWidth() );
+			assertEquals( size, image.getHeight() );
+
+			/*
+			 * The checkerboard has squares of 8 voxels, which are 16 pixels
+			 * wide in the snapshot. The slice at z = 8 is in the second
+			 * layer of squares. Check pixels away from square borders.
+			 */
+			for ( int y = 0; y < size; ++y )
+			{
+				if ( y % 16 < 2 || y % 16 > 13 )
+					continue;
+				for ( int x = 0; x < size; ++x )
+				{
+					if ( x % 16 < 2 || x % 16 > 13 )
+						continue;
+					final int expected = ( ( x / 16 + y / 16 + 1 ) % 2 == 0 ) ? 100 : 200;
+					final int red = ( image.getRGB( x, y ) >> 16 ) & 0xff;
+					assertEquals( "pixel " + x + ", " + y, expected, red, 1 );
+				}
+			}
+		}
+		finally
+		{
+			handle.close();
+			queue.shutdown();
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileViews;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import net.imglib2.view.Views;
+
+/**
+ * Benchmarks {@link VolatileViews#wrapAsVolatile} on a view of a cached cell
+ * image, and cell lookups through the volatile view when all cells are
+ * loaded.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class VolatileViewsBenchmark
+{
+	private static final int SIZE = 256;
+
+	private static final int CELL_SIZE = 32;
+
+	private CachedCellImg< UnsignedShortType, ? > img;
+
+	private RandomAccessibleInterval< UnsignedShortType > view;
+
+	private RandomAccessibleInterval< VolatileUnsignedShortType > volatileView;
+
+	private SharedQueue queue;
+
+	@Setup
+	public void setup()
+	{
+		img = new ReadOnlyCachedCellImgFactory( ReadOnlyCachedCellImgOptions.options().cellDimensions( CELL_SIZE ) ).create(
+				new long[] { SIZE, SIZE, SIZE },
+				new UnsignedShortType(),
+				cell -> {
+					final int value = ( int ) ( ( cell.min( 0 ) + cell.min( 1 ) + cell.min( 2 ) ) & 0xffff );
+					cell.forEach( t -> t.set( value ) );
+				} );
+		queue = new SharedQueue( 1 );
+		view = Views.translate( Views.permute( img, 0, 2 ), 10, 20, 30 );
+		volatileView = VolatileViews.wrapAsVolatile( view, queue );
+
+		// load all cells
+		Views.flatIterable( img ).forEach( UnsignedShortType::get );
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		queue.shutdown();
+	}
+
+	@Benchmark
+	public Object wrap()
+	{
+		return VolatileViews.wrapAsVolatile( view, queue );
+	}
+
+	/**
+	 * Read a plane crossing {@code SIZE / CELL_SIZE}<sup>2</sup> cells.
+	 */
+	@Benchmark
+	public long cacheLookup()
+	{
+		final RandomAccess< VolatileUnsignedShortType > access = volatileView.randomAccess();
+		access.setPosition( 30 + SIZE / 2, 2 );
+		long sum = 0;
+		for ( int y = 0; y < SIZE; y += 4 )
+		{
+			access.setPosition( 20 + y, 1 );
+			for ( int x = 0; x < SIZE; x += 4 )
+			{
+				access.setPosition( 10 + x, 0 );
+				final VolatileUnsignedShortType v = access.get();
+				if ( v.isValid() )
+					sum += v.get().get();
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,128 @@
+/*-
+ * #%L
+ * BigDataViewer quick visualization API.
+ * %%
+ * Copyright (C) 2016 - 2020 BigDataViewer developers.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package bdv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import bdv.util.volatiles.FlightRecorderEvents;
+import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileView;
+import bdv.util.volatiles.VolatileViewData;
+import bdv.util.volatiles.VolatileViews;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+
+public class FlightRecorderEventsTest
+{
+	@Test
+	public void testCellEvents() throws Exception
+	{
+		assertTrue( FlightRecorderEvents.AVAILABLE );
+
+		final CachedCellImg< UnsignedByteType, ? > img = new SyntheticDataset<>( new UnsignedByteType(), 64, 64, 64 )
+				.cellDimensions( 32 )
+				.createLevel( 0 );
+		final SharedQueue queue = new SharedQueue( 2, 1 );
+		final Map< String, Integer > counts = new HashMap<>();
+		long bytes = 0;
+		try ( Recording recording = new Recording() )
+		{
+			recording.enable( "bdv.CellFetch" );
+			recording.enable( "bdv.CacheInvalidation" );
+			recording.start();
+
+			final RandomAccessibleInterval< VolatileUnsignedByteType > view = VolatileViews.wrapAsVolatile( img, queue );
+			final VolatileViewData< ?, ? > data = ( ( VolatileView< ?, ? > ) view ).getVolatileViewData();
+			awaitAllCellsValid( view );
+			data.getInvalidate().invalidateAll();
+			assertEquals( 8, data.getCellAccessStats().getFetches() );
+
+			recording.stop();
+			final Path file = Files.createTempFile( "bdv-events", ".jfr" );
+			try
+			{
+				recording.dump( file );
+				for ( final RecordedEvent event : RecordingFile.readAllEvents( file ) )
+				{
+					counts.merge( event.getEventType().getName(), 1, Integer::sum );
+					if ( event.getEventType().getName().equals( "bdv.CellFetch" ) )
+						bytes += event.getLong( "bytes" );
+				}
+			}
+			finally
+			{
+				Files.delete( file );
+			}
+		}
+		finally
+		{
+			queue.shutdown();
+		}
+
+		assertEquals( 8, counts.getOrDefault( "bdv.CellFetch", 0 ).intValue() );
+		assertEquals( 8 * 32 * 32 * 32, bytes );
+		assertEquals( 1, counts.getOrDefault( "bdv.CacheInvalidation", 0 ).intValue() );
+	}
+
+	/**
+	 * Access one voxel of each 32<sup>3</sup> cell until all are loaded.
+	 */
+	private static void awaitAllCellsValid( final RandomAccessibleInterval< VolatileUnsignedByteType > view ) throws InterruptedException
+	{
+		final RandomAccess< VolatileUnsignedByteType > access = view.randomAccess();
+		final long deadline = System.currentTimeMillis() + 10_000;
+		boolean valid = false;
+		while ( !valid )
+		{
+			assertTrue( "cells did not load", System.currentTimeMillis() < deadline );
+			valid = true;
+			for ( int cell = 0; cell < 8; ++cell )
+			{
+				access.setPosition( new long[] { ( cell & 1 ) * 32, ( ( cell >> 1 ) & 1 ) * 32, ( ( cell >> 2 ) & 1 ) * 32 } );
+				valid &= access.get().isValid();
+			}
+			if ( !valid )
+				Thread.sleep( 5 );
+		}
+	}
+}